@@ -0,0 +1,75 @@
+/*
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * http://ec.europa.eu/idabc/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package it.bancaditalia.oss.sdmx.ut;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import it.bancaditalia.oss.sdmx.client.SDMXClientFactory;
+import it.bancaditalia.oss.sdmx.client.SdmxClientHandler;
+import it.bancaditalia.oss.sdmx.mock.MockSdmxServer;
+import it.bancaditalia.oss.sdmx.mock.SdmxGenerator;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class FlightEventsTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testEvents() throws Exception
+	{
+		File dump = folder.newFile("sdmx.jfr");
+		try (MockSdmxServer server = new MockSdmxServer(new SdmxGenerator().setSeries(20).setObservations(10).setDimensions(2), 1).start();
+				Recording recording = new Recording())
+		{
+			recording.enable("it.bancaditalia.oss.sdmx.HttpExchange");
+			recording.enable("it.bancaditalia.oss.sdmx.Parse");
+			recording.enable("it.bancaditalia.oss.sdmx.CacheLoad");
+			recording.start();
+
+			String provider = "JFR_" + server.getPort();
+			SdmxClientHandler.addProvider(provider, server.getEndpoint(MockSdmxServer.V21).toString(), false, false, false, "Mock", SDMXClientFactory.SDMX_V2);
+			SdmxClientHandler.getFlows(provider, null);
+			SdmxClientHandler.getTimeSeries(provider, "FLOW0/C0.", null, null);
+
+			recording.stop();
+			recording.dump(dump.toPath());
+		}
+
+		Map<String, Integer> counts = new HashMap<>();
+		long observations = 0;
+		for (RecordedEvent event : RecordingFile.readAllEvents(dump.toPath()))
+		{
+			counts.merge(event.getEventType().getName(), 1, Integer::sum);
+			if (event.getEventType().getName().endsWith(".HttpExchange"))
+				Assert.assertEquals(200, event.getInt("status"));
+			if (event.getEventType().getName().endsWith(".Parse"))
+				observations += event.getLong("observations");
+		}
+		Assert.assertEquals(counts.toString(), Integer.valueOf(3), counts.get("it.bancaditalia.oss.sdmx.HttpExchange"));
+		Assert.assertEquals(counts.toString(), Integer.valueOf(3), counts.get("it.bancaditalia.oss.sdmx.Parse"));
+		Assert.assertNotNull(counts.toString(), counts.get("it.bancaditalia.oss.sdmx.CacheLoad"));
+		Assert.assertEquals(50, observations);
+	}
+}
@@ -0,0 +1,177 @@
+/* Copyright 2010,2014 Bank Of Italy
+*
+* Licensed under the EUPL, Version 1.1 or - as soon they
+* will be approved by the European Commission - subsequent
+* versions of the EUPL (the "Licence");
+* You may not use this work except in compliance with the
+* Licence.
+* You may obtain a copy of the Licence at:
+*
+*
+* http://ec.europa.eu/idabc/eupl
+*
+* Unless required by applicable law or agreed to in
+* writing, software distributed under the Licence is
+* distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied.
+* See the Licence for the specific language governing
+* permissions and limitations under the Licence.
+*/
+package it.bancaditalia.oss.sdmx.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * The Java Flight Recorder implementation of {@link FlightEvents}. Do not reference this class directly: it cannot be
+ * loaded on JVMs without <code>jdk.jfr</code>.
+ */
+public class JfrFlightEvents implements FlightEvents.Factory
+{
+	@Name("it.bancaditalia.oss.sdmx.HttpExchange")
+	@Label("SDMX HTTP Exchange")
+	@Category({ "SDMX" })
+	@Description("A query sent to an SDMX provider, including redirections, transfer and parsing of the response")
+	public static class HttpExchangeEvent extends Event implements FlightEvents.Exchange
+	{
+		@Label("Provider")
+		String	provider;
+
+		@Label("URL")
+		String	url;
+
+		@Label("Status")
+		int		status;
+
+		@Label("Bytes on Wire")
+		@DataAmount
+		long	wireBytes;
+
+		@Label("Decompressed Bytes")
+		@DataAmount
+		long	bytes;
+
+		@Label("Connect Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long	connectTime;
+
+		@Label("Time to First Byte")
+		@Timespan(Timespan.NANOSECONDS)
+		long	firstByteTime;
+
+		@Label("Transfer Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long	transferTime;
+
+		@Override
+		public void setStatus(int status)
+		{
+			this.status = status;
+		}
+
+		@Override
+		public void setBytes(long wire, long decompressed)
+		{
+			wireBytes = wire;
+			bytes = decompressed;
+		}
+
+		@Override
+		public void setPhases(long connect, long firstByte, long transfer)
+		{
+			connectTime = connect;
+			firstByteTime = firstByte;
+			transferTime = transfer;
+		}
+	}
+
+	@Name("it.bancaditalia.oss.sdmx.Parse")
+	@Label("SDMX Parse")
+	@Category({ "SDMX" })
+	@Description("The parsing of an SDMX message")
+	public static class ParseEvent extends Event implements FlightEvents.Parse
+	{
+		@Label("Provider")
+		String	provider;
+
+		@Label("Parser")
+		String	parser;
+
+		@Label("Series")
+		long	series;
+
+		@Label("Observations")
+		long	observations;
+
+		@Override
+		public void setCounts(long series, long observations)
+		{
+			this.series = series;
+			this.observations = observations;
+		}
+	}
+
+	@Name("it.bancaditalia.oss.sdmx.CacheLoad")
+	@Label("SDMX Cache Load")
+	@Category({ "SDMX" })
+	@Description("The load of a missing entry of a metadata cache")
+	public static class CacheLoadEvent extends Event implements FlightEvents.CacheLoad
+	{
+		@Label("Cache")
+		String	cache;
+
+		@Label("Key")
+		String	key;
+
+		@Label("Found")
+		boolean	found;
+
+		@Override
+		public void setFound(boolean found)
+		{
+			this.found = found;
+		}
+	}
+
+	@Override
+	public FlightEvents.Exchange exchange(String provider, String url)
+	{
+		HttpExchangeEvent event = new HttpExchangeEvent();
+		if (!event.isEnabled())
+			return null;
+		event.provider = provider;
+		event.url = url;
+		event.begin();
+		return event;
+	}
+
+	@Override
+	public FlightEvents.Parse parse(String provider, String parser)
+	{
+		ParseEvent event = new ParseEvent();
+		if (!event.isEnabled())
+			return null;
+		event.provider = provider;
+		event.parser = parser;
+		event.begin();
+		return event;
+	}
+
+	@Override
+	public FlightEvents.CacheLoad cacheLoad(String cache, String key)
+	{
+		CacheLoadEvent event = new CacheLoadEvent();
+		if (!event.isEnabled())
+			return null;
+		event.cache = cache;
+		event.key = key;
+		event.begin();
+		return event;
+	}
+}
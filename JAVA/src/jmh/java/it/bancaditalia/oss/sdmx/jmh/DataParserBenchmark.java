@@ -0,0 +1,194 @@
+/* Copyright 2010,2014 Bank Of Italy
+*
+* Licensed under the EUPL, Version 1.1 or - as soon they
+* will be approved by the European Commission - subsequent
+* versions of the EUPL (the "Licence");
+* You may not use this work except in compliance with the
+* Licence.
+* You may obtain a copy of the Licence at:
+*
+*
+* http://ec.europa.eu/idabc/eupl
+*
+* Unless required by applicable law or agreed to in
+* writing, software distributed under the Licence is
+* distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied.
+* See the Licence for the specific language governing
+* permissions and limitations under the Licence.
+*/
+package it.bancaditalia.oss.sdmx.jmh;
+
+import java.util.List;
+import java.util.Locale.LanguageRange;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLInputFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import it.bancaditalia.oss.sdmx.api.DataFlowStructure;
+import it.bancaditalia.oss.sdmx.api.Dataflow;
+import it.bancaditalia.oss.sdmx.api.PortableTimeSeries;
+import it.bancaditalia.oss.sdmx.jmh.Fixtures.Shape;
+import it.bancaditalia.oss.sdmx.mock.SdmxGenerator;
+import it.bancaditalia.oss.sdmx.parser.v21.CompactDataParser;
+import it.bancaditalia.oss.sdmx.parser.v21.DataParsingResult;
+import it.bancaditalia.oss.sdmx.parser.v21.DataStructureParser;
+import it.bancaditalia.oss.sdmx.parser.v21.GenericDataParser;
+import it.bancaditalia.oss.sdmx.util.LocalizedText;
+
+/**
+ * Throughput of the data parsers, in observations per second. Each benchmark parses a whole message of a given
+ * {@link Shape}, structure specific (CompactDataParser) or generic (GenericDataParser), plain or gzipped. Since every
+ * invocation is normalized by the number of observations in the message, the {@code gc.alloc.rate.norm} reported by
+ * the GC profiler is the number of bytes allocated for each observation.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class DataParserBenchmark
+{
+	@State(Scope.Benchmark)
+	public abstract static class Message
+	{
+		@Param({ "compact", "generic" })
+		public String					format;
+
+		@Param({ "plain", "gzip" })
+		public String					encoding;
+
+		private XMLInputFactory			factory;
+		private List<LanguageRange>		languages;
+		private DataFlowStructure		dsd;
+		private Dataflow				dataflow;
+		private byte[]					bytes;
+		private boolean					gzip;
+
+		protected abstract Shape getShape();
+
+		@Setup(Level.Trial)
+		public void setup() throws Exception
+		{
+			Shape shape = getShape();
+			factory = Fixtures.newInputFactory();
+			languages = LanguageRange.parse("en");
+			SdmxGenerator generator = shape.getGenerator();
+			dsd = new DataStructureParser().parse(Fixtures.open(factory, Fixtures.encode(generator::writeDataStructure, false), false), languages).get(0);
+			dataflow = new Dataflow("BENCH", generator.getAgency(), "1.0", new LocalizedText("Benchmark dataflow"));
+			dataflow.setDsdIdentifier(dsd);
+			gzip = "gzip".equals(encoding);
+			bytes = Fixtures.encode("compact".equals(format) ? generator::writeStructureSpecificData : generator::writeGenericData, gzip);
+
+			// guard against fixtures drifting away from the normalization constants
+			int observations = 0;
+			for (PortableTimeSeries<Double> ts : parse())
+				observations += ts.size();
+			if (observations != shape.getObservations())
+				throw new IllegalStateException(shape + ": expected " + shape.getObservations() + " observations, parsed " + observations);
+		}
+
+		DataParsingResult parse() throws Exception
+		{
+			if ("compact".equals(format))
+				return new CompactDataParser(dsd, dataflow, true).parse(Fixtures.open(factory, bytes, gzip), languages);
+			else
+				return new GenericDataParser(dsd, dataflow, true).parse(Fixtures.open(factory, bytes, gzip), languages);
+		}
+	}
+
+	public static class Small extends Message
+	{
+		@Override
+		protected Shape getShape()
+		{
+			return Shape.SMALL;
+		}
+	}
+
+	public static class Huge extends Message
+	{
+		@Override
+		protected Shape getShape()
+		{
+			return Shape.HUGE;
+		}
+	}
+
+	public static class Sparse extends Message
+	{
+		@Override
+		protected Shape getShape()
+		{
+			return Shape.SPARSE;
+		}
+	}
+
+	public static class Dense extends Message
+	{
+		@Override
+		protected Shape getShape()
+		{
+			return Shape.DENSE;
+		}
+	}
+
+	public static class ManyAttributes extends Message
+	{
+		@Override
+		protected Shape getShape()
+		{
+			return Shape.ATTRIBUTES;
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(Fixtures.SMALL_OBSERVATIONS)
+	public DataParsingResult small(Small message) throws Exception
+	{
+		return message.parse();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(Fixtures.HUGE_OBSERVATIONS)
+	public DataParsingResult huge(Huge message) throws Exception
+	{
+		return message.parse();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(Fixtures.SPARSE_OBSERVATIONS)
+	public DataParsingResult sparse(Sparse message) throws Exception
+	{
+		return message.parse();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(Fixtures.DENSE_OBSERVATIONS)
+	public DataParsingResult dense(Dense message) throws Exception
+	{
+		return message.parse();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(Fixtures.ATTRIBUTES_OBSERVATIONS)
+	public DataParsingResult manyAttributes(ManyAttributes message) throws Exception
+	{
+		return message.parse();
+	}
+}
@@ -0,0 +1,143 @@
+/* Copyright 2010,2014 Bank Of Italy
+*
+* Licensed under the EUPL, Version 1.1 or - as soon they
+* will be approved by the European Commission - subsequent
+* versions of the EUPL (the "Licence");
+* You may not use this work except in compliance with the
+* Licence.
+* You may obtain a copy of the Licence at:
+*
+*
+* http://ec.europa.eu/idabc/eupl
+*
+* Unless required by applicable law or agreed to in
+* writing, software distributed under the Licence is
+* distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied.
+* See the Licence for the specific language governing
+* permissions and limitations under the Licence.
+*/
+package it.bancaditalia.oss.sdmx.jmh;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import it.bancaditalia.oss.sdmx.api.PortableTimeSeries;
+import it.bancaditalia.oss.sdmx.client.SDMXClientFactory;
+import it.bancaditalia.oss.sdmx.client.SdmxClientHandler;
+import it.bancaditalia.oss.sdmx.exceptions.SdmxException;
+import it.bancaditalia.oss.sdmx.exceptions.SdmxResponseException;
+import it.bancaditalia.oss.sdmx.mock.MockSdmxServer;
+import it.bancaditalia.oss.sdmx.mock.SdmxGenerator;
+
+/**
+ * End-to-end throughput and latency of data queries through {@link SdmxClientHandler}, against a local
+ * {@link MockSdmxServer}: http, decompression, parsing and the session caches. Each query selects the series of one
+ * code of the first dimension, cycling over all the codes; the structure is loaded once before the measurement.
+ * 
+ * <p>
+ * The concurrency is the number of benchmark threads, all querying the same provider: change it with {@code -t},
+ * e.g. {@code -Djmh.args="EndToEnd -t 16"}. Failures injected with the {@code errorRatio} parameter are counted as
+ * completed queries, so that the cost of the error path is measured too.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class EndToEndBenchmark
+{
+	@State(Scope.Benchmark)
+	public static class Provider
+	{
+		static final int		ERROR_CODE	= 500;
+
+		@Param({ MockSdmxServer.V21, MockSdmxServer.V30 })
+		public String			version;
+
+		@Param({ "true", "false" })
+		public boolean			gzip;
+
+		@Param({ "0", "20" })
+		public long				latency;
+
+		@Param({ "0" })
+		public long				bandwidth;
+
+		@Param({ "0" })
+		public double			errorRatio;
+
+		private MockSdmxServer	server;
+		private String			name;
+		private int				codes;
+
+		@Setup(Level.Trial)
+		public void setup() throws Exception
+		{
+			SdmxGenerator generator = new SdmxGenerator().setSeries(1000).setObservations(120).setDimensions(4);
+			codes = generator.getCodesPerDimension();
+			server = new MockSdmxServer(generator, 10).start();
+			server.setGzip(gzip);
+			server.setLatency(latency);
+			server.setBandwidth(bandwidth);
+			name = "MOCK_" + server.getPort();
+			SdmxClientHandler.addProvider(name, server.getEndpoint(version).toString(), false, false, gzip, "Mock provider",
+					MockSdmxServer.V30.equals(version) ? SDMXClientFactory.SDMX_V3 : SDMXClientFactory.SDMX_V2);
+			SdmxClientHandler.getFlow(name, "FLOW0");
+			SdmxClientHandler.getDataFlowStructure(name, "FLOW0");
+			// failures only once the metadata is cached
+			server.setErrors(ERROR_CODE, errorRatio);
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown()
+		{
+			server.close();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Keys
+	{
+		private int next = 0;
+
+		String next(Provider provider)
+		{
+			return "C" + next++ % provider.codes + ".*.*.*";
+		}
+	}
+
+	@Benchmark
+	public List<PortableTimeSeries<Double>> timeSeries(Provider provider, Keys keys) throws SdmxException
+	{
+		try
+		{
+			return SdmxClientHandler.getTimeSeries(provider.name, "FLOW0", keys.next(provider), null, null, null, false, null, false);
+		}
+		catch (SdmxException e)
+		{
+			// only the errors injected by the server are expected
+			for (Throwable cause = e; cause != null; cause = cause.getCause())
+				if (cause instanceof SdmxResponseException && ((SdmxResponseException) cause).getResponseCode() == Provider.ERROR_CODE)
+					return null;
+			throw e;
+		}
+	}
+}
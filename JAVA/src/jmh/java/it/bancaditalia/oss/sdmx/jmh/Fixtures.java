@@ -0,0 +1,161 @@
+/* Copyright 2010,2014 Bank Of Italy
+*
+* Licensed under the EUPL, Version 1.1 or - as soon they
+* will be approved by the European Commission - subsequent
+* versions of the EUPL (the "Licence");
+* You may not use this work except in compliance with the
+* Licence.
+* You may obtain a copy of the Licence at:
+*
+*
+* http://ec.europa.eu/idabc/eupl
+*
+* Unless required by applicable law or agreed to in
+* writing, software distributed under the Licence is
+* distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied.
+* See the Licence for the specific language governing
+* permissions and limitations under the Licence.
+*/
+package it.bancaditalia.oss.sdmx.jmh;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+
+import it.bancaditalia.oss.sdmx.mock.SdmxGenerator;
+
+/**
+ * The SDMX 2.1 messages parsed by the benchmarks. They are produced in memory by the {@link SdmxGenerator} with its
+ * default seed, so that every run parses exactly the same bytes.
+ * 
+ * <p>
+ * The data messages share one DSD: four dimensions of {@value #CODES_PER_DIMENSION} codes each, plus a coded
+ * observation status and a number of free observation attributes that depends on the {@link Shape}.
+ */
+final class Fixtures
+{
+	static final int		DIMENSIONS			= 4;
+	static final int		CODES_PER_DIMENSION	= 10;
+
+	static final int		SMALL_OBSERVATIONS		= 10 * 12;
+	static final int		HUGE_OBSERVATIONS		= 1000 * 500;
+	static final int		SPARSE_OBSERVATIONS		= 10000 * 2;
+	static final int		DENSE_OBSERVATIONS		= 20 * 1000;
+	static final int		ATTRIBUTES_OBSERVATIONS	= 200 * 100;
+
+	/** Number of codes in the structure benchmarks, both in the DSD and in the standalone codelist. */
+	static final int		STRUCTURE_CODES		= 10000;
+
+	/**
+	 * The shapes of the data messages. The number of observations of each shape is also available as a constant, to
+	 * be used in {@code @OperationsPerInvocation}.
+	 */
+	enum Shape
+	{
+		/** A handful of short series, like a single key query. */
+		SMALL(10, 12, 1),
+		/** Many long series: half a million observations. */
+		HUGE(1000, 500, 1),
+		/** Many series with very few observations, where the series keys dominate. */
+		SPARSE(10000, 2, 1),
+		/** Few very long series, with the same number of observations as {@link #SPARSE}. */
+		DENSE(20, 1000, 1),
+		/** Like {@link #SPARSE} and {@link #DENSE} in size, but with twenty free attributes on each observation. */
+		ATTRIBUTES(200, 100, 21);
+
+		final int	series;
+		final int	observations;
+		final int	attributes;
+
+		private Shape(int series, int observations, int attributes)
+		{
+			this.series = series;
+			this.observations = observations;
+			this.attributes = attributes;
+		}
+
+		int getObservations()
+		{
+			return series * observations;
+		}
+
+		SdmxGenerator getGenerator()
+		{
+			return new SdmxGenerator().setSeries(series).setObservations(observations).setAttributes(attributes)
+					.setDimensions(DIMENSIONS).setCodesPerDimension(CODES_PER_DIMENSION);
+		}
+	}
+
+	interface Message
+	{
+		public void write(OutputStream out) throws XMLStreamException;
+	}
+
+	private Fixtures()
+	{
+	}
+
+	/**
+	 * @param message a message
+	 * @param gzip true to compress the message
+	 * @return the UTF-8 bytes of the message, compressed if requested
+	 */
+	static byte[] encode(Message message, boolean gzip)
+	{
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream(1 << 16);
+		try (OutputStream out = gzip ? new GZIPOutputStream(buffer) : buffer)
+		{
+			message.write(out);
+		}
+		catch (IOException | XMLStreamException e)
+		{
+			throw new IllegalStateException(e);
+		}
+		return buffer.toByteArray();
+	}
+
+	/**
+	 * Opens a message the same way the REST client does: decompressing it if needed, decoding it as UTF-8 and
+	 * buffering the characters.
+	 * 
+	 * @param factory the factory
+	 * @param bytes the encoded message
+	 * @param gzip true if the message is compressed
+	 * @return a reader of the message
+	 * @throws IOException
+	 * @throws XMLStreamException
+	 */
+	static XMLEventReader open(XMLInputFactory factory, byte[] bytes, boolean gzip) throws IOException, XMLStreamException
+	{
+		InputStream stream = new ByteArrayInputStream(bytes);
+		if (gzip)
+			stream = new GZIPInputStream(stream);
+		return factory.createXMLEventReader(new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * @return an input factory configured as in the REST client
+	 */
+	static XMLInputFactory newInputFactory()
+	{
+		XMLInputFactory factory = XMLInputFactory.newFactory();
+		if (factory.isPropertySupported(XMLInputFactory.SUPPORT_DTD))
+			factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		if (factory.isPropertySupported(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES))
+			factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		return factory;
+	}
+}
@@ -0,0 +1,111 @@
+/* Copyright 2010,2014 Bank Of Italy
+*
+* Licensed under the EUPL, Version 1.1 or - as soon they
+* will be approved by the European Commission - subsequent
+* versions of the EUPL (the "Licence");
+* You may not use this work except in compliance with the
+* Licence.
+* You may obtain a copy of the Licence at:
+*
+*
+* http://ec.europa.eu/idabc/eupl
+*
+* Unless required by applicable law or agreed to in
+* writing, software distributed under the Licence is
+* distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied.
+* See the Licence for the specific language governing
+* permissions and limitations under the Licence.
+*/
+package it.bancaditalia.oss.sdmx.jmh;
+
+import java.util.List;
+import java.util.Locale.LanguageRange;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLInputFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import it.bancaditalia.oss.sdmx.api.Codelist;
+import it.bancaditalia.oss.sdmx.api.DataFlowStructure;
+import it.bancaditalia.oss.sdmx.mock.SdmxGenerator;
+import it.bancaditalia.oss.sdmx.parser.v21.CodelistParser;
+import it.bancaditalia.oss.sdmx.parser.v21.DataStructureParser;
+
+/**
+ * Throughput of the structure parsers, in codes per second, over multilingual messages. The DSD message carries
+ * {@value Fixtures#STRUCTURE_CODES} hierarchical dimension codes (plus a few attribute codes), the codelist message
+ * {@value Fixtures#STRUCTURE_CODES} hierarchical codes. The {@code gc.alloc.rate.norm} reported by the GC profiler is the number of
+ * bytes allocated for each code.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class StructureParserBenchmark
+{
+	@State(Scope.Benchmark)
+	public static class Messages
+	{
+		@Param({ "1", "10" })
+		public int						languages;
+
+		@Param({ "plain", "gzip" })
+		public String					encoding;
+
+		private XMLInputFactory			factory;
+		private List<LanguageRange>		preferences;
+		private byte[]					dataStructure;
+		private byte[]					codelist;
+		private boolean					gzip;
+
+		@Setup(Level.Trial)
+		public void setup()
+		{
+			factory = Fixtures.newInputFactory();
+			// the preferred language is not the first one in the messages
+			preferences = LanguageRange.parse("it,en;q=0.5");
+			gzip = "gzip".equals(encoding);
+			SdmxGenerator generator = new SdmxGenerator().setLanguages(languages).setDimensions(Fixtures.DIMENSIONS)
+					.setCodesPerDimension(Fixtures.STRUCTURE_CODES / Fixtures.DIMENSIONS).setHierarchy(10);
+			dataStructure = Fixtures.encode(generator::writeDataStructure, gzip);
+			codelist = Fixtures.encode(out -> generator.writeCodelist(out, "CL_BENCH", Fixtures.STRUCTURE_CODES), gzip);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(Fixtures.STRUCTURE_CODES)
+	public List<DataFlowStructure> dataStructure(Messages messages) throws Exception
+	{
+		return new DataStructureParser().parse(Fixtures.open(messages.factory, messages.dataStructure, messages.gzip), messages.preferences);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(Fixtures.STRUCTURE_CODES)
+	public List<DataFlowStructure> dataStructureDeferred(Messages messages) throws Exception
+	{
+		return new DataStructureParser(true).parse(Fixtures.open(messages.factory, messages.dataStructure, messages.gzip), messages.preferences);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(Fixtures.STRUCTURE_CODES)
+	public Codelist codelist(Messages messages) throws Exception
+	{
+		return new CodelistParser().parse(Fixtures.open(messages.factory, messages.codelist, messages.gzip), messages.preferences);
+	}
+}
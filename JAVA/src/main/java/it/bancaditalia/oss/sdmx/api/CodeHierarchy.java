@@ -0,0 +1,266 @@
+/* Copyright 2010,2014 Bank Of Italy
+*
+* Licensed under the EUPL, Version 1.1 or - as soon they
+* will be approved by the European Commission - subsequent
+* versions of the EUPL (the "Licence");
+* You may not use this work except in compliance with the
+* Licence.
+* You may obtain a copy of the Licence at:
+*
+*
+* http://ec.europa.eu/idabc/eupl
+*
+* Unless required by applicable law or agreed to in
+* writing, software distributed under the Licence is
+* distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied.
+* See the Licence for the specific language governing
+* permissions and limitations under the Licence.
+*/
+package it.bancaditalia.oss.sdmx.api;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>
+ * The hierarchy of the codes of a {@link Codelist}, built from the parent of each code. Codes without a parent, or
+ * whose parent is not in the codelist, are roots. Roots and children are in lexicographic order, as the positions
+ * returned by {@link Codelist#indexOf(String)}.
+ * 
+ * <p>
+ * The codes are numbered in a depth-first visit of the hierarchy: the codes below a code are then numbered
+ * contiguously after it. Checking whether a code is below another takes constant time, and listing the codes below
+ * a code takes time proportional to their number.
+ * 
+ * <p>
+ * Instances are immutable. Use {@link Codelist#getHierarchy()} to get the hierarchy of a codelist.
+ * 
+ * @author Attilio Mattiocco
+ *
+ */
+public class CodeHierarchy
+{
+	private final Codelist	codelist;
+	// by position in the codelist
+	private final int[]		parent;
+	private final int[][]	children;
+	private final int[]		depth;
+	// first and last number in the visit of the subtree of each code
+	private final int[]		enter;
+	private final int[]		exit;
+	// number in the visit --> position in the codelist
+	private final int[]		visit;
+	private final int[]		roots;
+
+	CodeHierarchy(Codelist codelist)
+	{
+		this.codelist = codelist;
+		int size = codelist.size();
+		parent = new int[size];
+		depth = new int[size];
+		enter = new int[size];
+		exit = new int[size];
+		visit = new int[size];
+
+		int[] childCount = new int[size];
+		int rootCount = 0;
+		for (int i = 0; i < size; i++)
+		{
+			String p = codelist.getParent(codelist.getCode(i));
+			parent[i] = p != null ? codelist.indexOf(p) : -1;
+			if (parent[i] == i)
+				parent[i] = -1;
+			if (parent[i] >= 0)
+				childCount[parent[i]]++;
+			else
+				rootCount++;
+		}
+
+		children = new int[size][];
+		for (int i = 0; i < size; i++)
+			children[i] = new int[childCount[i]];
+		int[] rootList = new int[rootCount];
+		Arrays.fill(childCount, 0);
+		rootCount = 0;
+		for (int i = 0; i < size; i++)
+			if (parent[i] >= 0)
+				children[parent[i]][childCount[parent[i]]++] = i;
+			else
+				rootList[rootCount++] = i;
+
+		// codes never reached from a root are in a parent cycle or below one: following the parents of such a code
+		// leads into the cycle, and the first code seen twice becomes a root to break it
+		boolean[] visited = new boolean[size];
+		int[] stack = new int[size];
+		int[] next = new int[size];
+		int[] seen = new int[size];
+		List<Integer> allRoots = new ArrayList<>();
+		int counter = 0;
+		for (int root : rootList)
+		{
+			allRoots.add(root);
+			counter = visit(root, counter, visited, stack, next);
+		}
+		for (int i = 0; i < size; i++)
+			if (!visited[i])
+			{
+				int member = i;
+				while (seen[member] != i + 1)
+				{
+					seen[member] = i + 1;
+					member = parent[member];
+				}
+				int cut = member;
+				children[parent[cut]] = Arrays.stream(children[parent[cut]]).filter(c -> c != cut).toArray();
+				parent[cut] = -1;
+				allRoots.add(cut);
+				counter = visit(cut, counter, visited, stack, next);
+			}
+
+		roots = allRoots.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	// iterative depth-first visit of a subtree
+	private int visit(int root, int counter, boolean[] visited, int[] stack, int[] next)
+	{
+		int top = 0;
+		stack[0] = root;
+		next[0] = 0;
+		visited[root] = true;
+		depth[root] = 0;
+		enter[root] = counter;
+		visit[counter++] = root;
+		while (top >= 0)
+		{
+			int code = stack[top];
+			if (next[top] < children[code].length)
+			{
+				int child = children[code][next[top]++];
+				if (visited[child])
+					continue;
+				visited[child] = true;
+				depth[child] = depth[code] + 1;
+				enter[child] = counter;
+				visit[counter++] = child;
+				stack[++top] = child;
+				next[top] = 0;
+			}
+			else
+			{
+				exit[code] = counter - 1;
+				top--;
+			}
+		}
+		return counter;
+	}
+
+	/**
+	 * @return The codes without a parent
+	 */
+	public List<String> getRoots()
+	{
+		return toCodes(roots);
+	}
+
+	/**
+	 * @param code A code
+	 * @return The codes whose parent is the given code, or an empty list if the code is not in the codelist
+	 */
+	public List<String> getChildren(String code)
+	{
+		int i = codelist.indexOf(code);
+		return i >= 0 ? toCodes(children[i]) : Collections.emptyList();
+	}
+
+	/**
+	 * @param code A code
+	 * @return The parent of the code in this hierarchy, or null if it is a root or it is not in the codelist
+	 */
+	public String getParent(String code)
+	{
+		int i = codelist.indexOf(code);
+		return i >= 0 && parent[i] >= 0 ? codelist.getCode(parent[i]) : null;
+	}
+
+	/**
+	 * @param code A code
+	 * @return The depth of a code: 0 for the roots, 1 for their children and so on. -1 if the code is not in the
+	 *         codelist.
+	 */
+	public int getDepth(String code)
+	{
+		int i = codelist.indexOf(code);
+		return i >= 0 ? depth[i] : -1;
+	}
+
+	/**
+	 * Checks in constant time if a code is below another one in the hierarchy.
+	 * 
+	 * @param code A code
+	 * @param ancestor Another code
+	 * @return true if the code is the ancestor itself or is below it
+	 */
+	public boolean isDescendant(String code, String ancestor)
+	{
+		int i = codelist.indexOf(code);
+		int a = codelist.indexOf(ancestor);
+		return i >= 0 && a >= 0 && enter[a] <= enter[i] && enter[i] <= exit[a];
+	}
+
+	/**
+	 * @param code A code
+	 * @param includeSelf true to include the code itself
+	 * @return The codes below the given one in depth-first order, or an empty list if the code is not in the codelist
+	 */
+	public List<String> getDescendants(String code, boolean includeSelf)
+	{
+		int i = codelist.indexOf(code);
+		if (i < 0)
+			return Collections.emptyList();
+		return toCodes(Arrays.copyOfRange(visit, includeSelf ? enter[i] : enter[i] + 1, exit[i] + 1));
+	}
+
+	/**
+	 * @param code A code
+	 * @param leavesOnly true to list only the codes without children
+	 * @return The given code and the codes below it, or only the ones without children, joined with '+' as in
+	 *         the OR syntax of the series keys (e.g. "EU27+AT+BE+..."). Null if the code is not in the codelist.
+	 */
+	public String toKey(String code, boolean leavesOnly)
+	{
+		int i = codelist.indexOf(code);
+		if (i < 0)
+			return null;
+		StringBuilder key = new StringBuilder();
+		for (int v = enter[i]; v <= exit[i]; v++)
+			if (!leavesOnly || children[visit[v]].length == 0)
+				key.append(key.length() > 0 ? "+" : "").append(codelist.getCode(visit[v]));
+		return key.toString();
+	}
+
+	/**
+	 * @param code A code
+	 * @return The ancestors of the code, from its parent up to the root, or an empty list if the code is not in the
+	 *         codelist
+	 */
+	public List<String> getAncestors(String code)
+	{
+		List<String> result = new ArrayList<>();
+		int i = codelist.indexOf(code);
+		for (int p = i >= 0 ? parent[i] : -1; p >= 0; p = parent[p])
+			result.add(codelist.getCode(p));
+		return result;
+	}
+
+	private List<String> toCodes(int[] positions)
+	{
+		String[] result = new String[positions.length];
+		for (int i = 0; i < positions.length; i++)
+			result[i] = codelist.getCode(positions[i]);
+		return Arrays.asList(result);
+	}
+}
@@ -23,14 +23,18 @@ package it.bancaditalia.oss.sdmx.api;
 import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toSet;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.AbstractMap.SimpleEntry;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.TreeSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 
+import it.bancaditalia.oss.sdmx.exceptions.SdmxException;
 import it.bancaditalia.oss.sdmx.util.LocalizedText;
 
 /**
@@ -46,6 +50,25 @@ public class Codelist extends SDMXReference implements Iterable<String>, Map<Str
 
 	private final Map<String, LocalizedText>	codes	= new HashMap<>();
 	private final Map<String, String>			parents	= new HashMap<>();
+	// the codes sorted, and their positions, built on first use
+	private transient volatile String[]			index	= null;
+	private transient Map<String, Integer>		positions;
+	private transient volatile CodeHierarchy	hierarchy	= null;
+	// the contents still to be decoded, if any
+	private transient volatile Loader			deferred	= null;
+	private transient int						deferredSize;
+
+	/**
+	 * Decodes the contents of a codelist on demand.
+	 */
+	public interface Loader
+	{
+		/**
+		 * @return A codelist with the codes and their parents
+		 * @throws SdmxException if the contents cannot be decoded
+		 */
+		public Codelist load() throws SdmxException;
+	}
 
 	/**
 	 * Creates a codelist with givem id, agency and version.
@@ -68,6 +91,81 @@ public class Codelist extends SDMXReference implements Iterable<String>, Map<Str
 			this.parents.putAll(parents);
 	}
 
+	/**
+	 * Creates a codelist whose contents are decoded only when they are first accessed.
+	 * 
+	 * @param coordinates The id, agency and version of the codelist
+	 * @param loader Decodes the contents of the codelist
+	 * @param size The number of codes in the codelist, known before decoding them
+	 */
+	public Codelist(SDMXReference coordinates, Loader loader, int size)
+	{
+		super(coordinates);
+		this.deferred = loader;
+		this.deferredSize = size;
+	}
+
+	/**
+	 * @return True if the contents of this codelist have not been decoded yet
+	 */
+	public boolean isDeferred()
+	{
+		return deferred != null;
+	}
+
+	/**
+	 * @return The number of codes in this codelist, without decoding its contents if they are deferred.
+	 */
+	public int estimatedSize()
+	{
+		return deferred != null ? deferredSize : codes.size();
+	}
+
+	/**
+	 * Decodes the contents of this codelist if they are deferred. Callers that need to handle a decoding failure
+	 * should call this method before using this codelist as a map, because the map methods cannot throw a checked
+	 * exception.
+	 * 
+	 * @throws SdmxException if the contents cannot be decoded. The codelist stays deferred.
+	 */
+	public void decode() throws SdmxException
+	{
+		if (deferred != null)
+			synchronized (this)
+			{
+				if (deferred != null)
+				{
+					Codelist loaded = deferred.load();
+					if (loaded != null)
+					{
+						codes.putAll(loaded.codes);
+						parents.putAll(loaded.parents);
+					}
+					deferred = null;
+				}
+			}
+	}
+
+	// decodes the deferred contents, if any
+	private Map<String, LocalizedText> codes()
+	{
+		try
+		{
+			decode();
+		}
+		catch (SdmxException e)
+		{
+			throw new IllegalStateException("Could not decode codelist " + getFullIdentifier(), e);
+		}
+		return codes;
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException
+	{
+		codes();
+		out.defaultWriteObject();
+	}
+
 	@Override
 	public Iterator<String> iterator()
 	{
@@ -82,6 +180,7 @@ public class Codelist extends SDMXReference implements Iterable<String>, Map<Str
 	 */
 	public String getParent(String code)
 	{
+		codes();
 		return parents.get(code);
 	}
 
@@ -97,64 +196,128 @@ public class Codelist extends SDMXReference implements Iterable<String>, Map<Str
 		return get(code);
 	}
 
+	/**
+	 * Returns the position of a code in this codelist. Codes are numbered from 0 in lexicographic order, so that
+	 * a set of codes can be represented by a {@link java.util.BitSet} over these positions.
+	 * 
+	 * @param code The code
+	 * @return The position of the code, or -1 if it is not in this codelist
+	 */
+	public int indexOf(String code)
+	{
+		buildIndex();
+		Integer position = positions.get(code);
+		return position != null ? position : -1;
+	}
+
+	/**
+	 * @param index The position of a code, as returned by {@link #indexOf(String)}
+	 * @return The code at the given position
+	 * @throws ArrayIndexOutOfBoundsException if there is no code at given position
+	 */
+	public String getCode(int index)
+	{
+		return buildIndex()[index];
+	}
+
+	private String[] buildIndex()
+	{
+		String[] result = index;
+		if (result == null)
+			synchronized (this)
+			{
+				result = index;
+				if (result == null)
+				{
+					result = new TreeSet<>(codes().keySet()).toArray(new String[0]);
+					Map<String, Integer> newPositions = new HashMap<>();
+					for (int i = 0; i < result.length; i++)
+						newPositions.put(result[i], i);
+					positions = newPositions;
+					index = result;
+				}
+			}
+		return result;
+	}
+
+	/**
+	 * @return The hierarchy of the codes of this codelist, built on first use
+	 */
+	public CodeHierarchy getHierarchy()
+	{
+		CodeHierarchy result = hierarchy;
+		if (result == null)
+			synchronized (this)
+			{
+				result = hierarchy;
+				if (result == null)
+					hierarchy = result = new CodeHierarchy(this);
+			}
+		return result;
+	}
+
 	@Override
 	public String toString()
 	{
+		if (deferred != null)
+			return String.format("Codelist [id=%s, codes=<%d not decoded>]", getFullIdentifier(), deferredSize);
 		return String.format("Codelist [id=%s, codes=%s]", getFullIdentifier(), codes);
 	}
 
 	@Override
-	public void clear()
+	public synchronized void clear()
 	{
-		codes.clear();
+		codes().clear();
+		index = null;
+		hierarchy = null;
 	}
 
 	@Override
 	public boolean containsKey(Object key)
 	{
-		return codes.containsKey(key);
+		return codes().containsKey(key);
 	}
 
 	@Override
 	public boolean containsValue(Object value)
 	{
-		return codes.containsValue(value);
+		return codes().containsValue(value);
 	}
 
 	@Override
 	public Set<Entry<String, String>> entrySet()
 	{
-		return codes.keySet().stream().map(c -> new SimpleEntry<>(c, codes.get(c).getText())).collect(toSet());
+		return codes().keySet().stream().map(c -> new SimpleEntry<>(c, codes().get(c).getText())).collect(toSet());
 	}
 
 	@Override
 	public boolean equals(Object o)
 	{
-		return codes.equals(o);
+		return codes().equals(o);
 	}
 
 	@Override
 	public String get(Object key)
 	{
-		return codes.get(key).getText();
+		return codes().get(key).getText();
 	}
 
 	@Override
 	public int hashCode()
 	{
-		return codes.hashCode();
+		return codes().hashCode();
 	}
 
 	@Override
 	public boolean isEmpty()
 	{
-		return codes.isEmpty();
+		return codes().isEmpty();
 	}
 
 	@Override
 	public Set<String> keySet()
 	{
-		return codes.keySet();
+		return codes().keySet();
 	}
 
 	@Override
@@ -172,13 +335,13 @@ public class Codelist extends SDMXReference implements Iterable<String>, Map<Str
 	@Override
 	public int size()
 	{
-		return codes.size();
+		return codes().size();
 	}
 
 	@Override
 	public Collection<String> values()
 	{
-		return codes.values().stream().map(LocalizedText::getText).collect(toList());
+		return codes().values().stream().map(LocalizedText::getText).collect(toList());
 	}
 
 	@Override
@@ -189,6 +352,6 @@ public class Codelist extends SDMXReference implements Iterable<String>, Map<Str
 
 	public Map<String, LocalizedText> localizedCodes()
 	{
-		return codes;
+		return codes();
 	}
 }
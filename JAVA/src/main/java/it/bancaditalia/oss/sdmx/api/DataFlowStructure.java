@@ -48,7 +48,25 @@ public class DataFlowStructure extends SDMXReference
 	{
 		super(id, agency, version);
 	}
-	
+
+	/**
+	 * Creates a copy of another structure. Dimensions and attributes are copied, so that they can be modified without
+	 * affecting the original; their codelists are shared.
+	 *
+	 * @param other The structure to copy.
+	 */
+	public DataFlowStructure(DataFlowStructure other)
+	{
+		super(other.getId(), other.getAgency(), other.getVersion());
+		setName(other.getName());
+		setTimeDimension(other.getTimeDimension());
+		setMeasure(other.getMeasure());
+		for (Dimension dimension : other.dimensions.values())
+			dimensions.put(dimension.getId(), new Dimension(dimension));
+		for (SdmxAttribute attribute : other.attributes.values())
+			attributes.put(attribute.getId(), new SdmxAttribute(attribute));
+	}
+
 	/**
 	 * @param name This dataflow structure name
 	 */
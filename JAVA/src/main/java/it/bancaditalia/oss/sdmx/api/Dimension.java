@@ -47,6 +47,17 @@ public class Dimension extends SdmxMetaElement
 		this.position = position;
 	}
 
+	/**
+	 * Creates a copy of another dimension, sharing its codelist.
+	 * 
+	 * @param other The dimension to copy
+	 */
+	public Dimension(Dimension other)
+	{
+		super(other);
+		this.position = other.position;
+	}
+
 	/**
 	 * @return The dimension ordinality in the dataflow structure.
 	 */
@@ -21,6 +21,8 @@
 package it.bancaditalia.oss.sdmx.api;
 
 import java.net.URI;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -81,6 +83,27 @@ public interface GenericSDMXClient {
 		return getCodes(cl.getId(), cl.getAgency(), cl.getVersion());
 	}
 
+	/**
+	 * <p>Gets all the codes from this provider for many codelists. Clients that support it retrieve them with as
+	 * few queries as possible; by default they are retrieved one at a time.
+	 * 
+	 * @param codelists The SDMX coordinates of the codelists
+	 * @return key: full identifier of the requested codelist --&gt; codelist. Codelists that were not found are
+	 *         missing.
+	 * @throws SdmxException
+	 */
+	public default Map<String, Codelist> getCodes(Collection<? extends SDMXReference> codelists) throws SdmxException
+	{
+		Map<String, Codelist> result = new LinkedHashMap<>();
+		for (SDMXReference cl : codelists)
+		{
+			Codelist codes = getCodes(cl);
+			if (codes != null)
+				result.put(cl.getFullIdentifier(), codes);
+		}
+		return result;
+	}
+
 	/**
      * <p>Gets a time series list with the specified classification keys. The id is in a dot separated
      * form, where the first token is the name of  the dataflow. Note that single keys can be 
@@ -29,6 +29,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -69,7 +70,8 @@ public class PortableTimeSeries<T> implements List<BaseObservation<? extends T>>
 	// Map each dimension to its content representation (list of codes)
 	// TODO: implement a Code class and use Map<Dimension, List<Code>>.
 	private final Map<String, Entry<String, String>>	dimensions				= new LinkedHashMap<>();
-	private final List<BaseObservation<? extends T>>	observations			= new ArrayList<>();
+	// an ArrayList, or a read-only view installed by setObservationStore() and copied on the first modification
+	private List<BaseObservation<? extends T>>			observations			= new ArrayList<>();
 	private final Map<String, String>					attributes				= new HashMap<>();
 
 	private boolean										errorFlag				= false;
@@ -102,6 +104,43 @@ public class PortableTimeSeries<T> implements List<BaseObservation<? extends T>>
 		}
 	}
 
+	// reads from the current observations and copies a read-only store only when it is modified
+	private class ObservationsView extends AbstractList<BaseObservation<? extends T>> implements RandomAccess
+	{
+		@Override
+		public int size()
+		{
+			return observations.size();
+		}
+
+		@Override
+		public BaseObservation<? extends T> get(int index)
+		{
+			return observations.get(index);
+		}
+
+		@Override
+		public BaseObservation<? extends T> set(int index, BaseObservation<? extends T> element)
+		{
+			return modifiable().set(index, element);
+		}
+
+		@Override
+		public void add(int index, BaseObservation<? extends T> element)
+		{
+			modifiable().add(index, element);
+			modCount++;
+		}
+
+		@Override
+		public BaseObservation<? extends T> remove(int index)
+		{
+			BaseObservation<? extends T> removed = modifiable().remove(index);
+			modCount++;
+			return removed;
+		}
+	}
+
 	/**
 	 * Creates an empty time series, ready to be populated
 	 */
@@ -597,6 +636,33 @@ public class PortableTimeSeries<T> implements List<BaseObservation<? extends T>>
 		this.numeric = numeric;
 	}
 
+	/**
+	 * Replaces the observations of this series with a read-only list, e.g. a view on observations stored outside of
+	 * the heap. The list is not copied until this series is modified.
+	 * 
+	 * @param store The list of observations to use.
+	 */
+	@SuppressWarnings("unchecked")
+	public void setObservationStore(List<? extends BaseObservation<? extends T>> store)
+	{
+		observations = (List<BaseObservation<? extends T>>) store;
+	}
+
+	/**
+	 * @return True if the observations of this series are held in an ordinary list on the heap.
+	 */
+	public boolean isObservationStoreInMemory()
+	{
+		return observations instanceof ArrayList;
+	}
+
+	private List<BaseObservation<? extends T>> modifiable()
+	{
+		if (!(observations instanceof ArrayList))
+			observations = new ArrayList<>(observations);
+		return observations;
+	}
+
 	/**
 	 * @return a default representation of this series.
 	 */
@@ -788,31 +854,31 @@ public class PortableTimeSeries<T> implements List<BaseObservation<? extends T>>
 	@Override
 	public boolean add(BaseObservation<? extends T> e)
 	{
-		return observations.add(e);
+		return modifiable().add(e);
 	}
 
 	@Override
 	public void add(int index, BaseObservation<? extends T> element)
 	{
-		observations.add(index, element);
+		modifiable().add(index, element);
 	}
 
 	@Override
 	public boolean addAll(Collection<? extends BaseObservation<? extends T>> c)
 	{
-		return observations.addAll(c);
+		return modifiable().addAll(c);
 	}
 
 	@Override
 	public boolean addAll(int index, Collection<? extends BaseObservation<? extends T>> c)
 	{
-		return observations.addAll(index, c);
+		return modifiable().addAll(index, c);
 	}
 
 	@Override
 	public void clear()
 	{
-		observations.clear();
+		modifiable().clear();
 	}
 
 	@Override
@@ -872,43 +938,43 @@ public class PortableTimeSeries<T> implements List<BaseObservation<? extends T>>
 	@Override
 	public ListIterator<BaseObservation<? extends T>> listIterator()
 	{
-		return observations.listIterator();
+		return new ObservationsView().listIterator();
 	}
 
 	@Override
 	public ListIterator<BaseObservation<? extends T>> listIterator(int index)
 	{
-		return observations.listIterator(index);
+		return new ObservationsView().listIterator(index);
 	}
 
 	@Override
 	public boolean remove(Object o)
 	{
-		return observations.remove(o);
+		return modifiable().remove(o);
 	}
 
 	@Override
 	public BaseObservation<? extends T> remove(int index)
 	{
-		return observations.remove(index);
+		return modifiable().remove(index);
 	}
 
 	@Override
 	public boolean removeAll(Collection<?> c)
 	{
-		return observations.removeAll(c);
+		return modifiable().removeAll(c);
 	}
 
 	@Override
 	public boolean retainAll(Collection<?> c)
 	{
-		return observations.retainAll(c);
+		return modifiable().retainAll(c);
 	}
 
 	@Override
 	public BaseObservation<? extends T> set(int index, BaseObservation<? extends T> element)
 	{
-		return observations.set(index, element);
+		return modifiable().set(index, element);
 	}
 
 	@Override
@@ -920,7 +986,29 @@ public class PortableTimeSeries<T> implements List<BaseObservation<? extends T>>
 	@Override
 	public List<BaseObservation<? extends T>> subList(int fromIndex, int toIndex)
 	{
-		return observations.subList(fromIndex, toIndex);
+		return new ObservationsView().subList(fromIndex, toIndex);
+	}
+
+	@Override
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void sort(Comparator<? super BaseObservation<? extends T>> c)
+	{
+		if (observations instanceof ArrayList)
+		{
+			observations.sort(c);
+			return;
+		}
+
+		// a read-only store is usually sorted already: it is copied only if the order changes
+		Object[] original = observations.toArray();
+		Object[] sorted = original.clone();
+		Arrays.sort(sorted, (Comparator) c);
+		for (int i = 0; i < sorted.length; i++)
+			if (sorted[i] != original[i])
+			{
+				observations = new ArrayList<>((List<BaseObservation<? extends T>>) (List) Arrays.asList(sorted));
+				return;
+			}
 	}
 
 	@Override
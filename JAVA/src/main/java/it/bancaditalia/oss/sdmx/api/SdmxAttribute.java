@@ -24,8 +24,45 @@ package it.bancaditalia.oss.sdmx.api;
 
 public class SdmxAttribute extends SdmxMetaElement{
 	
+	/**
+	 * The level at which the values of an attribute are reported, as declared by its attribute relationship.
+	 */
+	public enum AttachmentLevel
+	{
+		DATASET, SERIES, OBSERVATION
+	}
+
+	private AttachmentLevel attachmentLevel = null;
+
 	public SdmxAttribute(String id)
 	{
 		super(id);
 	}
+
+	/**
+	 * Creates a copy of another attribute, sharing its codelist.
+	 * 
+	 * @param other The attribute to copy
+	 */
+	public SdmxAttribute(SdmxAttribute other)
+	{
+		super(other);
+		this.attachmentLevel = other.attachmentLevel;
+	}
+
+	/**
+	 * @return The attachment level of this attribute, or null if it is not known
+	 */
+	public AttachmentLevel getAttachmentLevel()
+	{
+		return attachmentLevel;
+	}
+
+	/**
+	 * @param attachmentLevel The attachment level of this attribute
+	 */
+	public void setAttachmentLevel(AttachmentLevel attachmentLevel)
+	{
+		this.attachmentLevel = attachmentLevel;
+	}
 }
@@ -52,6 +52,19 @@ public class SdmxMetaElement
 		this.id = id;
 	}
 
+	/**
+	 * Creates a copy of another sdmx metadata element, sharing its codelist.
+	 * 
+	 * @param other The element to copy
+	 */
+	protected SdmxMetaElement(SdmxMetaElement other)
+	{
+		super();
+		this.id = other.id;
+		this.codeList = other.codeList;
+		this.name = other.name;
+	}
+
 	/**
 	 * @return The id of this metadata element
 	 */
@@ -0,0 +1,338 @@
+/* Copyright 2010,2014 Bank Of Italy
+*
+* Licensed under the EUPL, Version 1.1 or - as soon they
+* will be approved by the European Commission - subsequent
+* versions of the EUPL (the "Licence");
+* You may not use this work except in compliance with the
+* Licence.
+* You may obtain a copy of the Licence at:
+*
+*
+* http://ec.europa.eu/idabc/eupl
+*
+* Unless required by applicable law or agreed to in
+* writing, software distributed under the Licence is
+* distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied.
+* See the Licence for the specific language governing
+* permissions and limitations under the Licence.
+*/
+package it.bancaditalia.oss.sdmx.client;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import it.bancaditalia.oss.sdmx.api.Codelist;
+import it.bancaditalia.oss.sdmx.util.Configuration;
+
+/**
+ * <p>
+ * Caches the responses of the availability endpoint of a provider for a limited time. Sets of codes are kept as
+ * bitsets over the positions of the codes in the codelists (see {@link Codelist#indexOf(String)}).
+ * 
+ * <p>
+ * The cache stores projections: the codes of a dimension that appear in the series selected by a filter. An
+ * availability response in "available" mode gives, for each dimension, the projection of the series selected by the
+ * filter without the constraint on that same dimension. A narrower filter (one that restricts the codes of some
+ * dimensions further) is answered locally when the cached projections prove that it selects exactly the same series:
+ * that is, when the codes left by the broader filter in each further restricted dimension are all kept by the
+ * narrower one. When they are all discarded instead, the narrower filter selects nothing. In all other cases the
+ * provider is called again.
+ * 
+ * <p>
+ * Filters are understood only in the form {@code c[DIM]=A,B&c[DIM2]=C}; other filters are never cached. The cache of a
+ * dataflow is discarded when the codelists of its dimensions change.
+ * 
+ * @author Attilio Mattiocco
+ *
+ */
+public class AvailabilityCache
+{
+	protected static final Logger	LOGGER			= Configuration.getSdmxLogger();
+
+	private static final Pattern	CONSTRAINT		= Pattern.compile("c\\[([^\\]]+)\\]=([^&:]*)");
+
+	private static class Region
+	{
+		private final long					expires;
+		// key: dimension id --> codes in the series selected by the filter
+		private final Map<String, BitSet>	projections	= new HashMap<>();
+
+		private Region(long expires)
+		{
+			this.expires = expires;
+		}
+	}
+
+	private static class FlowEntry
+	{
+		private final Map<String, Codelist>					codelists;
+		// key: filter (dimension id --> allowed codes) --> region
+		private final Map<Map<String, BitSet>, Region>		regions	= new HashMap<>();
+
+		private FlowEntry(Map<String, Codelist> codelists)
+		{
+			this.codelists = codelists;
+		}
+	}
+
+	private final long						ttl;
+	// key: dataflow full id --> cached regions
+	private final Map<String, FlowEntry>	flows	= new HashMap<>();
+
+	private long							hits	= 0;
+	private long							misses	= 0;
+
+	/**
+	 * @param ttl the number of milliseconds a response is reused; 0 or less disables the cache
+	 */
+	public AvailabilityCache(long ttl)
+	{
+		this.ttl = ttl;
+	}
+
+	/**
+	 * @return true if responses are cached
+	 */
+	public boolean isEnabled()
+	{
+		return ttl > 0;
+	}
+
+	/**
+	 * Translates a filter into sets of codes.
+	 * 
+	 * @param filter a filter in the form {@code c[DIM]=A,B&c[DIM2]=C}, or null
+	 * @param codelists key: dimension id --&gt; codelist, for all the dimensions of the dataflow
+	 * @return key: dimension id --&gt; allowed codes, or null if the filter cannot be represented (other operators,
+	 *         unknown dimensions or codes, repeated dimensions)
+	 */
+	public static Map<String, BitSet> parseFilter(String filter, Map<String, Codelist> codelists)
+	{
+		Map<String, BitSet> result = new TreeMap<>();
+		if (filter == null || filter.trim().isEmpty())
+			return result;
+
+		for (String part : filter.split("&"))
+		{
+			Matcher matcher = CONSTRAINT.matcher(part.trim());
+			if (!matcher.matches())
+				return null;
+			Codelist codelist = codelists.get(matcher.group(1));
+			if (codelist == null || result.containsKey(matcher.group(1)))
+				return null;
+			BitSet codes = new BitSet();
+			for (String code : matcher.group(2).split(","))
+			{
+				int index = codelist.indexOf(code.trim());
+				if (index < 0)
+					return null;
+				codes.set(index);
+			}
+			result.put(matcher.group(1), codes);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the codes available for some dimensions, as the availability endpoint in "available" mode would.
+	 * 
+	 * @param dataflow the dataflow full id
+	 * @param filter the filter, as returned by {@link #parseFilter(String, Map)}
+	 * @param codelists key: dimension id --&gt; codelist, for all the dimensions of the dataflow
+	 * @param dimensions the requested dimensions
+	 * @return key: dimension id --&gt; available codes, or null if some dimension cannot be answered locally
+	 */
+	public synchronized Map<String, BitSet> getAvailable(String dataflow, Map<String, BitSet> filter, Map<String, Codelist> codelists, 
+			Collection<String> dimensions)
+	{
+		FlowEntry entry = getEntry(dataflow, codelists);
+		Map<String, BitSet> result = new LinkedHashMap<>();
+		for (String dimension : dimensions)
+		{
+			BitSet codes = getProjection(entry, exclude(filter, dimension), dimension);
+			if (codes == null)
+			{
+				misses++;
+				LOGGER.finer("Availability of " + dimension + " in " + dataflow + " not cached.");
+				return null;
+			}
+			result.put(dimension, codes);
+		}
+
+		hits++;
+		return result;
+	}
+
+	/**
+	 * Stores an availability response in "available" mode.
+	 * 
+	 * @param dataflow the dataflow full id
+	 * @param filter the filter, as returned by {@link #parseFilter(String, Map)}
+	 * @param codelists key: dimension id --&gt; codelist, for all the dimensions of the dataflow
+	 * @param available key: dimension id --&gt; available codes. Dimensions whose codes are not all known should be
+	 *            left out.
+	 */
+	public synchronized void putAvailable(String dataflow, Map<String, BitSet> filter, Map<String, Codelist> codelists, 
+			Map<String, BitSet> available)
+	{
+		FlowEntry entry = getEntry(dataflow, codelists);
+		long now = System.currentTimeMillis();
+		for (Iterator<Region> i = entry.regions.values().iterator(); i.hasNext();)
+			if (i.next().expires <= now)
+				i.remove();
+
+		for (Entry<String, BitSet> projection : available.entrySet())
+		{
+			Map<String, BitSet> key = exclude(filter, projection.getKey());
+			Region region = entry.regions.get(key);
+			if (region == null)
+			{
+				region = new Region(now + ttl);
+				entry.regions.put(key, region);
+			}
+			region.projections.put(projection.getKey(), projection.getValue());
+		}
+	}
+
+	public synchronized void clear()
+	{
+		flows.clear();
+	}
+
+	public synchronized long getHitCount()
+	{
+		return hits;
+	}
+
+	public synchronized long getMissCount()
+	{
+		return misses;
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		int size = 0;
+		for (FlowEntry entry : flows.values())
+			size += entry.regions.size();
+		return "availability [ttl=" + ttl + "ms, size=" + size + ", hits=" + hits + ", misses=" + misses + "]";
+	}
+
+	private FlowEntry getEntry(String dataflow, Map<String, Codelist> codelists)
+	{
+		FlowEntry entry = flows.get(dataflow);
+		if (entry == null || !sameCodelists(entry.codelists, codelists))
+		{
+			entry = new FlowEntry(new HashMap<>(codelists));
+			flows.put(dataflow, entry);
+		}
+		return entry;
+	}
+
+	// the projection on a dimension of the series selected by a filter
+	private BitSet getProjection(FlowEntry entry, Map<String, BitSet> filter, String dimension)
+	{
+		long now = System.currentTimeMillis();
+		Region exact = entry.regions.get(filter);
+		if (exact != null && exact.expires > now && exact.projections.containsKey(dimension))
+			return exact.projections.get(dimension);
+
+		for (Entry<Map<String, BitSet>, Region> cached : entry.regions.entrySet())
+		{
+			Region region = cached.getValue();
+			if (region.expires <= now || !isBroader(cached.getKey(), filter))
+				continue;
+
+			boolean same = region.projections.containsKey(dimension);
+			for (Entry<String, BitSet> constraint : filter.entrySet())
+			{
+				if (constraint.getValue().equals(cached.getKey().get(constraint.getKey())))
+					continue;
+				BitSet left = region.projections.get(constraint.getKey());
+				if (left == null)
+				{
+					same = false;
+					continue;
+				}
+				if (!left.intersects(constraint.getValue()))
+					// the narrower filter selects no series
+					return new BitSet();
+				BitSet discarded = (BitSet) left.clone();
+				discarded.andNot(constraint.getValue());
+				if (!discarded.isEmpty())
+					same = false;
+			}
+
+			if (same)
+				return region.projections.get(dimension);
+		}
+
+		return null;
+	}
+
+	// true if every constraint of broader is relaxed by a constraint of narrower
+	private static boolean isBroader(Map<String, BitSet> broader, Map<String, BitSet> narrower)
+	{
+		for (Entry<String, BitSet> constraint : broader.entrySet())
+		{
+			BitSet other = narrower.get(constraint.getKey());
+			if (other == null)
+				return false;
+			BitSet outside = (BitSet) other.clone();
+			outside.andNot(constraint.getValue());
+			if (!outside.isEmpty())
+				return false;
+		}
+		return true;
+	}
+
+	private static Map<String, BitSet> exclude(Map<String, BitSet> filter, String dimension)
+	{
+		if (!filter.containsKey(dimension))
+			return filter;
+		Map<String, BitSet> result = new TreeMap<>(filter);
+		result.remove(dimension);
+		return result;
+	}
+
+	private static boolean sameCodelists(Map<String, Codelist> cached, Map<String, Codelist> current)
+	{
+		if (cached.size() != current.size())
+			return false;
+		for (Entry<String, Codelist> codelist : current.entrySet())
+			if (cached.get(codelist.getKey()) != codelist.getValue())
+				return false;
+		return true;
+	}
+
+	/**
+	 * Translates the codes of an availability response into bitsets.
+	 * 
+	 * @param codes the codes of a dimension
+	 * @param codelist the codelist of the dimension
+	 * @return the positions of the codes in the codelist. Codes not in the codelist are skipped.
+	 */
+	public static BitSet toBitSet(Collection<String> codes, Codelist codelist)
+	{
+		BitSet result = new BitSet(codelist.size());
+		for (String code : codes)
+		{
+			int index = codelist.indexOf(code);
+			if (index >= 0)
+				result.set(index);
+		}
+		return result;
+	}
+}
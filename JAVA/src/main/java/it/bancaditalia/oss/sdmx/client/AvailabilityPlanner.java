@@ -0,0 +1,329 @@
+/* Copyright 2010,2014 Bank Of Italy
+*
+* Licensed under the EUPL, Version 1.1 or - as soon they
+* will be approved by the European Commission - subsequent
+* versions of the EUPL (the "Licence");
+* You may not use this work except in compliance with the
+* Licence.
+* You may obtain a copy of the Licence at:
+*
+*
+* http://ec.europa.eu/idabc/eupl
+*
+* Unless required by applicable law or agreed to in
+* writing, software distributed under the Licence is
+* distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied.
+* See the Licence for the specific language governing
+* permissions and limitations under the Licence.
+*/
+package it.bancaditalia.oss.sdmx.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import it.bancaditalia.oss.sdmx.api.DataFlowStructure;
+import it.bancaditalia.oss.sdmx.api.Dataflow;
+import it.bancaditalia.oss.sdmx.api.Dimension;
+import it.bancaditalia.oss.sdmx.api.PortableTimeSeries;
+import it.bancaditalia.oss.sdmx.exceptions.SdmxException;
+import it.bancaditalia.oss.sdmx.exceptions.SdmxExceptionFactory;
+import it.bancaditalia.oss.sdmx.exceptions.SdmxInvalidParameterException;
+import it.bancaditalia.oss.sdmx.exceptions.SdmxResponseException;
+import it.bancaditalia.oss.sdmx.util.Configuration;
+
+/**
+ * <p>
+ * Plans data queries to SDMX 3.0 providers using the availability endpoint. Before downloading, the number of series
+ * selected by the query is asked to the provider, then:
+ * <ul>
+ * <li>queries selecting no series are not run;</li>
+ * <li>queries selecting more series than a hard limit are refused;</li>
+ * <li>queries selecting up to a given number of series are run in one shot;</li>
+ * <li>bigger queries are split by the codes of one dimension into chunks, downloaded in parallel.</li>
+ * </ul>
+ * 
+ * <p>
+ * The chunks of all the queries to a provider share the same worker threads, so that the provider never receives
+ * more parallel chunk downloads than its concurrency budget, even when many queries (e.g. of a {@link BatchExecutor})
+ * are split at the same time.
+ * 
+ * <p>
+ * The planning is enabled per provider with the <code>availability.planning</code> configuration property.
+ */
+public class AvailabilityPlanner
+{
+	protected static final Logger	LOGGER		= Configuration.getSdmxLogger();
+	private static final String		sourceClass	= AvailabilityPlanner.class.getSimpleName();
+
+	/**
+	 * How a query is run.
+	 */
+	public enum Strategy
+	{
+		/**
+		 * The query selects no series: nothing to download.
+		 */
+		EMPTY,
+		/**
+		 * The query is run as it is.
+		 */
+		ONE_SHOT,
+		/**
+		 * The query is split into chunks downloaded in parallel.
+		 */
+		SPLIT,
+		/**
+		 * The query selects too many series and is not run.
+		 */
+		REFUSE
+	}
+
+	/**
+	 * The outcome of the planning of a query.
+	 */
+	public static class Plan
+	{
+		private final Strategy		strategy;
+		private final Integer		seriesCount;
+		private final String		dimension;
+		private final List<String>	filters;
+
+		private Plan(Strategy strategy, Integer seriesCount, String dimension, List<String> filters)
+		{
+			this.strategy = strategy;
+			this.seriesCount = seriesCount;
+			this.dimension = dimension;
+			this.filters = filters;
+		}
+
+		public Strategy getStrategy()
+		{
+			return strategy;
+		}
+
+		/**
+		 * @return the number of series selected, or null if the provider did not report it
+		 */
+		public Integer getSeriesCount()
+		{
+			return seriesCount;
+		}
+
+		/**
+		 * @return the dimension used to split the query, or null
+		 */
+		public String getDimension()
+		{
+			return dimension;
+		}
+
+		/**
+		 * @return the filters of the chunks, in order. Empty unless the strategy is SPLIT.
+		 */
+		public List<String> getFilters()
+		{
+			return filters;
+		}
+
+		@Override
+		public String toString()
+		{
+			return "Plan [strategy=" + strategy + ", seriesCount=" + seriesCount + ", dimension=" + dimension
+					+ ", chunks=" + filters.size() + "]";
+		}
+	}
+
+	private final int	maxSeriesPerQuery;
+	private final long	maxSeries;
+	private final int	parallelism;
+
+	/**
+	 * Creates a planner with the configured limits of a provider.
+	 * 
+	 * @param provider the provider name
+	 */
+	public AvailabilityPlanner(String provider)
+	{
+		this(Configuration.getMaxSeriesPerQuery(provider), Configuration.getMaxSeries(provider),
+				Configuration.getMaxConcurrency(provider));
+	}
+
+	/**
+	 * @param maxSeriesPerQuery queries selecting more series than this are split
+	 * @param maxSeries queries selecting more series than this are refused. Zero or less means no limit.
+	 * @param parallelism the maximum number of chunks downloaded at the same time from a provider
+	 */
+	public AvailabilityPlanner(int maxSeriesPerQuery, long maxSeries, int parallelism)
+	{
+		this.maxSeriesPerQuery = Math.max(1, maxSeriesPerQuery);
+		this.maxSeries = maxSeries;
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	/**
+	 * Plans a data query.
+	 * 
+	 * @param client the client of the provider
+	 * @param dataflow the dataflow
+	 * @param dsd the structure of the dataflow
+	 * @param tsKey the series key (may be null)
+	 * @param filter the filter (may be null)
+	 * @return the plan
+	 * @throws SdmxException if the availability queries fail
+	 */
+	public Plan plan(RestSdmx30Client client, Dataflow dataflow, DataFlowStructure dsd, String tsKey, String filter)
+			throws SdmxException
+	{
+		final String sourceMethod = "plan";
+		LOGGER.entering(sourceClass, sourceMethod);
+
+		Integer count;
+		try
+		{
+			count = client.getAvailableTimeSeriesNumber(dataflow, dsd, tsKey, filter);
+		}
+		catch (SdmxResponseException e)
+		{
+			if (e.getResponseCode() != SdmxResponseException.SDMX_NO_RESULTS_FOUND)
+				throw e;
+			count = 0;
+		}
+
+		Plan plan;
+		if (count == null)
+			plan = new Plan(Strategy.ONE_SHOT, null, null, Collections.emptyList());
+		else if (count == 0)
+			plan = new Plan(Strategy.EMPTY, count, null, Collections.emptyList());
+		else if (maxSeries > 0 && count > maxSeries)
+			plan = new Plan(Strategy.REFUSE, count, null, Collections.emptyList());
+		else if (count <= maxSeriesPerQuery)
+			plan = new Plan(Strategy.ONE_SHOT, count, null, Collections.emptyList());
+		else
+			plan = split(client, dataflow, dsd, tsKey, filter, count);
+
+		LOGGER.fine("Query " + dataflow.getFullIdentifier() + " key=" + tsKey + " filter=" + filter + ": " + plan);
+		LOGGER.exiting(sourceClass, sourceMethod);
+		return plan;
+	}
+
+	/**
+	 * Plans and runs a data query.
+	 * 
+	 * @param client the client of the provider
+	 * @param dataflow the dataflow
+	 * @param dsd the structure of the dataflow
+	 * @param tsKey the series key (may be null)
+	 * @param filter the filter (may be null)
+	 * @param startTime the start period
+	 * @param endTime the end period
+	 * @return the series downloaded
+	 * @throws SdmxException if the query is refused or fails
+	 */
+	public List<PortableTimeSeries<Double>> getTimeSeries(RestSdmx30Client client, Dataflow dataflow,
+			DataFlowStructure dsd, String tsKey, String filter, String startTime, String endTime) throws SdmxException
+	{
+		Plan plan = plan(client, dataflow, dsd, tsKey, filter);
+		switch (plan.getStrategy())
+		{
+			case EMPTY:
+				return new ArrayList<>();
+			case REFUSE:
+				String msg = "The query selects " + plan.getSeriesCount() + " time series, more than the limit of "
+						+ maxSeries + ". Please restrict the query.";
+				LOGGER.severe(msg);
+				throw new SdmxInvalidParameterException(msg);
+			case SPLIT:
+				return getChunks(client, dataflow, dsd, tsKey, plan.getFilters(), startTime, endTime);
+			default:
+				return client.getTimeSeries(dataflow, dsd, tsKey, filter, startTime, endTime, false, null, false);
+		}
+	}
+
+	private Plan split(RestSdmx30Client client, Dataflow dataflow, DataFlowStructure dsd, String tsKey, String filter,
+			int count) throws SdmxException
+	{
+		Map<String, List<String>> region = client.getAvailableCubeRegion(dataflow, dsd, tsKey, filter, "exact");
+		String[] keyPositions = tsKey != null ? tsKey.split("\\.", -1) : new String[0];
+
+		// split on the free dimension with most codes
+		String dimension = null;
+		List<String> codes = Collections.emptyList();
+		for (Dimension dim : dsd.getDimensions())
+		{
+			int position = dim.getPosition() - 1;
+			boolean inKey = position < keyPositions.length && !keyPositions[position].isEmpty()
+					&& !"*".equals(keyPositions[position]);
+			boolean inFilter = filter != null && filter.contains("c[" + dim.getId() + "]");
+			List<String> available = region.get(dim.getId());
+			if (!inKey && !inFilter && available != null && available.size() > codes.size())
+			{
+				dimension = dim.getId();
+				codes = available;
+			}
+		}
+
+		if (codes.size() < 2)
+			return new Plan(Strategy.ONE_SHOT, count, null, Collections.emptyList());
+
+		int chunks = Math.min(codes.size(), (count + maxSeriesPerQuery - 1) / maxSeriesPerQuery);
+		List<String> filters = new ArrayList<>();
+		for (int i = 0; i < chunks; i++)
+		{
+			List<String> chunk = codes.subList(i * codes.size() / chunks, (i + 1) * codes.size() / chunks);
+			String chunkFilter = "c[" + dimension + "]=" + String.join(",", chunk);
+			filters.add(filter != null && !filter.isEmpty() ? filter + "&" + chunkFilter : chunkFilter);
+		}
+		return new Plan(Strategy.SPLIT, count, dimension, filters);
+	}
+
+	private List<PortableTimeSeries<Double>> getChunks(RestSdmx30Client client, Dataflow dataflow,
+			DataFlowStructure dsd, String tsKey, List<String> filters, String startTime, String endTime)
+			throws SdmxException
+	{
+		ExecutorService executor = ProviderWorkers.get(client.getName(), "chunk", parallelism);
+		List<Future<List<PortableTimeSeries<Double>>>> futures = new ArrayList<>();
+		try
+		{
+			for (String chunkFilter : filters)
+				futures.add(executor.submit(() -> {
+					try
+					{
+						return client.getTimeSeries(dataflow, dsd, tsKey, chunkFilter, startTime, endTime, false, null, false);
+					}
+					catch (SdmxResponseException e)
+					{
+						if (e.getResponseCode() == SdmxResponseException.SDMX_NO_RESULTS_FOUND)
+							return Collections.<PortableTimeSeries<Double>>emptyList();
+						throw e;
+					}
+				}));
+
+			List<PortableTimeSeries<Double>> result = new ArrayList<>();
+			for (Future<List<PortableTimeSeries<Double>>> future : futures)
+				result.addAll(future.get());
+			return result;
+		}
+		catch (InterruptedException e)
+		{
+			throw SdmxExceptionFactory.interrupted(e);
+		}
+		catch (ExecutionException e)
+		{
+			throw SdmxExceptionFactory.unwrap(e);
+		}
+		finally
+		{
+			// after a failure, the chunks not yet downloaded are useless
+			for (Future<List<PortableTimeSeries<Double>>> future : futures)
+				future.cancel(true);
+		}
+	}
+}
@@ -0,0 +1,278 @@
+/* Copyright 2010,2014 Bank Of Italy
+*
+* Licensed under the EUPL, Version 1.1 or - as soon they
+* will be approved by the European Commission - subsequent
+* versions of the EUPL (the "Licence");
+* You may not use this work except in compliance with the
+* Licence.
+* You may obtain a copy of the Licence at:
+*
+*
+* http://ec.europa.eu/idabc/eupl
+*
+* Unless required by applicable law or agreed to in
+* writing, software distributed under the Licence is
+* distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied.
+* See the Licence for the specific language governing
+* permissions and limitations under the Licence.
+*/
+package it.bancaditalia.oss.sdmx.client;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import it.bancaditalia.oss.sdmx.api.PortableTimeSeries;
+import it.bancaditalia.oss.sdmx.exceptions.SdmxException;
+import it.bancaditalia.oss.sdmx.exceptions.SdmxExceptionFactory;
+import it.bancaditalia.oss.sdmx.exceptions.SdmxInvalidParameterException;
+import it.bancaditalia.oss.sdmx.exceptions.SdmxXmlContentException;
+import it.bancaditalia.oss.sdmx.util.Configuration;
+
+/**
+ * <p>
+ * Downloads many time series queries, possibly from different providers, in parallel. Each provider has its own pool
+ * of worker threads, sized by its concurrency budget (the <code>max.concurrency</code> configuration property, which
+ * can be overridden per provider as <code>PROVIDER.max.concurrency</code>), so that a slow provider does not delay the
+ * others. The pool is shared by all the executors, and the calls of the queries are also limited together with the
+ * other calls to the provider, so that no provider receives more parallel calls than it allows.
+ * 
+ * <p>
+ * Requests are grouped by provider, dataflow, filter and period. If the provider enables it (the
+ * <code>query.merge.max.key.length</code> configuration property), the keys of a group are merged into as few queries
+ * as possible (see {@link KeyMerger}); identical requests are downloaded only once. Results and errors are delivered
+ * to a {@link BatchListener} as soon as each request completes.
+ * 
+ * <p>
+ * An executor can be reused for many batches. Idle worker threads terminate by themselves.
+ */
+public class BatchExecutor
+{
+	protected static final Logger				LOGGER			= Configuration.getSdmxLogger();
+	private static final String					sourceClass		= BatchExecutor.class.getSimpleName();
+
+	private final SdmxSession					session;
+
+	/**
+	 * Creates an executor running queries through the default session.
+	 */
+	public BatchExecutor()
+	{
+		this(SdmxSession.getDefault());
+	}
+
+	/**
+	 * @param session the session used to run the queries
+	 */
+	public BatchExecutor(SdmxSession session)
+	{
+		this.session = session;
+	}
+
+	/**
+	 * Runs a batch of requests and waits for all of them to complete.
+	 * 
+	 * @param requests the requests
+	 * @param listener receives the result or the error of each request. Requests submitted more than once are
+	 *            downloaded once, and share the same result.
+	 * @throws InterruptedException if the calling thread is interrupted while waiting. Requests already queued go on.
+	 */
+	public void execute(Collection<BatchRequest> requests, BatchListener listener) throws InterruptedException
+	{
+		final String sourceMethod = "execute";
+		LOGGER.entering(sourceClass, sourceMethod);
+
+		// key: normalized request --> requests as submitted
+		Map<BatchRequest, List<BatchRequest>> originals = new LinkedHashMap<>();
+		for (BatchRequest request : requests)
+			try
+			{
+				originals.computeIfAbsent(normalize(request), k -> new ArrayList<>()).add(request);
+			}
+			catch (SdmxException e)
+			{
+				deliver(request, () -> listener.onError(request, e));
+			}
+
+		// key: provider, dataflow, filter and period --> distinct requests with those values, in order
+		Map<String, List<BatchRequest>> groups = new LinkedHashMap<>();
+		for (BatchRequest request : originals.keySet())
+			groups.computeIfAbsent(request.getProvider() + "|" + request.getDataflow() + "|" + request.getFilter() + "|"
+					+ request.getStartTime() + "|" + request.getEndTime(), k -> new ArrayList<>()).add(request);
+		LOGGER.fine("Running " + originals.size() + " requests in " + groups.size() + " groups");
+
+		// called exactly once for each distinct request, and never throws: a failing listener cannot stop the batch
+		CountDownLatch done = new CountDownLatch(originals.size());
+		BatchListener serialized = new BatchListener() {
+			@Override
+			public synchronized void onResult(BatchRequest request, List<PortableTimeSeries<Double>> result)
+			{
+				try
+				{
+					for (BatchRequest original : originals.get(request))
+						deliver(original, () -> listener.onResult(original, result));
+				}
+				finally
+				{
+					done.countDown();
+				}
+			}
+
+			@Override
+			public synchronized void onError(BatchRequest request, SdmxException error)
+			{
+				try
+				{
+					for (BatchRequest original : originals.get(request))
+						deliver(original, () -> listener.onError(original, error));
+				}
+				finally
+				{
+					done.countDown();
+				}
+			}
+		};
+
+		for (List<BatchRequest> group : groups.values())
+			submitGroup(group, serialized);
+
+		done.await();
+		LOGGER.exiting(sourceClass, sourceMethod);
+	}
+
+	/**
+	 * Does nothing: the worker threads are shared by all the executors, and terminate by themselves when idle.
+	 */
+	public void shutdown()
+	{
+	}
+
+	/**
+	 * Schedules the requests of a group, all sharing provider, dataflow, filter and period.
+	 * 
+	 * @param group the requests
+	 * @param listener the listener to notify once for each request
+	 */
+	protected void submitGroup(List<BatchRequest> group, BatchListener listener)
+	{
+		BatchRequest first = group.get(0);
+		ExecutorService executor = getWorkers(first.getProvider());
+		int maxKeyLength = Configuration.getMaxMergedKeyLength(first.getProvider());
+
+		// key: requested key --> request; keys already listing many series are not merged
+		Map<String, BatchRequest> mergeable = new LinkedHashMap<>();
+		for (BatchRequest request : group)
+			if (maxKeyLength > 0 && request.getTsKey() != null && !request.getTsKey().trim().isEmpty()
+					&& !request.getTsKey().contains(";"))
+				mergeable.put(request.getTsKey(), request);
+			else
+				executor.execute(() -> runSingle(request, listener));
+
+		for (KeyMerger.MergedKey mergedKey : new KeyMerger(maxKeyLength).merge(new ArrayList<>(mergeable.keySet())))
+			if (mergedKey.getRequestedKeys().size() == 1)
+			{
+				BatchRequest request = mergeable.get(mergedKey.getRequestedKeys().get(0));
+				executor.execute(() -> runSingle(request, listener));
+			}
+			else
+				executor.execute(() -> runMerged(first, mergedKey, mergeable, listener));
+	}
+
+	private void runSingle(BatchRequest request, BatchListener listener)
+	{
+		List<PortableTimeSeries<Double>> result;
+		try
+		{
+			result = session.getTimeSeries(request.getProvider(), request.getDataflow(), request.getTsKey(),
+					request.getFilter(), request.getStartTime(), request.getEndTime(), false, null, false);
+		}
+		catch (SdmxException | RuntimeException e)
+		{
+			listener.onError(request, SdmxExceptionFactory.toSdmxException(e));
+			return;
+		}
+		listener.onResult(request, result);
+	}
+
+	private void runMerged(BatchRequest template, KeyMerger.MergedKey mergedKey, Map<String, BatchRequest> requests,
+			BatchListener listener)
+	{
+		Map<String, List<PortableTimeSeries<Double>>> result;
+		try
+		{
+			result = session.getTimeSeries(template.getProvider(), template.getDataflow(), mergedKey,
+					template.getFilter(), template.getStartTime(), template.getEndTime(), false, null, false);
+		}
+		catch (SdmxException | RuntimeException e)
+		{
+			SdmxException error = SdmxExceptionFactory.toSdmxException(e);
+			for (String key : mergedKey.getRequestedKeys())
+				deliver(requests.get(key), () -> listener.onError(requests.get(key), error));
+			return;
+		}
+
+		// each requested key is notified, even if the listener fails on another one
+		for (String key : mergedKey.getRequestedKeys())
+		{
+			List<PortableTimeSeries<Double>> series = result.get(key);
+			if (series == null || series.isEmpty())
+				deliver(requests.get(key), () -> listener.onError(requests.get(key), new SdmxXmlContentException(
+						"The query: key=" + key + " and filter=" + template.getFilter()
+								+ " did not match any time series on the provider for dataflow: " + template.getDataflow())));
+			else
+				deliver(requests.get(key), () -> listener.onResult(requests.get(key), series));
+		}
+	}
+
+	protected SdmxSession getSession()
+	{
+		return session;
+	}
+
+	protected ExecutorService getWorkers(String provider)
+	{
+		return ProviderWorkers.get(provider, "query", Configuration.getMaxConcurrency(provider));
+	}
+
+	// a failing listener must not stop the notification of the other requests
+	private static void deliver(BatchRequest request, Runnable callback)
+	{
+		try
+		{
+			callback.run();
+		}
+		catch (RuntimeException e)
+		{
+			LOGGER.log(Level.WARNING, "The batch listener failed on " + request, e);
+		}
+	}
+
+	// split legacy flow/key requests, so that requests on the same flow are grouped
+	private static BatchRequest normalize(BatchRequest request) throws SdmxException
+	{
+		if (request.getProvider() == null || request.getProvider().trim().isEmpty())
+		{
+			LOGGER.severe("The name of the provider cannot be null");
+			throw new SdmxInvalidParameterException("The name of the provider cannot be null");
+		}
+		if (request.getDataflow() != null && !request.getDataflow().isEmpty())
+			return request;
+		if (request.getTsKey() == null || request.getTsKey().trim().isEmpty())
+		{
+			LOGGER.severe("Either the ts key or the dataflow must have valid values");
+			throw new SdmxInvalidParameterException("Either the ts key or the dataflow must have valid values");
+		}
+
+		String[] tokens = SdmxSession.extractFlowAndResource(request.getTsKey());
+		return new BatchRequest(request.getProvider(), tokens[0], tokens[1], request.getFilter(),
+				request.getStartTime(), request.getEndTime());
+	}
+}
@@ -0,0 +1,49 @@
+/* Copyright 2010,2014 Bank Of Italy
+*
+* Licensed under the EUPL, Version 1.1 or - as soon they
+* will be approved by the European Commission - subsequent
+* versions of the EUPL (the "Licence");
+* You may not use this work except in compliance with the
+* Licence.
+* You may obtain a copy of the Licence at:
+*
+*
+* http://ec.europa.eu/idabc/eupl
+*
+* Unless required by applicable law or agreed to in
+* writing, software distributed under the Licence is
+* distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied.
+* See the Licence for the specific language governing
+* permissions and limitations under the Licence.
+*/
+package it.bancaditalia.oss.sdmx.client;
+
+import java.util.List;
+
+import it.bancaditalia.oss.sdmx.api.PortableTimeSeries;
+import it.bancaditalia.oss.sdmx.exceptions.SdmxException;
+
+/**
+ * Receives the outcome of each request of a batch, as soon as it is available. The methods are never called
+ * concurrently for the same batch, but they are called from the batch worker threads.
+ */
+public interface BatchListener
+{
+	/**
+	 * Called when a request completes successfully.
+	 * 
+	 * @param request the request
+	 * @param result the downloaded time series
+	 */
+	public void onResult(BatchRequest request, List<PortableTimeSeries<Double>> result);
+
+	/**
+	 * Called when a request fails. The other requests of the batch go on.
+	 * 
+	 * @param request the request
+	 * @param error the cause
+	 */
+	public void onError(BatchRequest request, SdmxException error);
+}
@@ -0,0 +1,125 @@
+/* Copyright 2010,2014 Bank Of Italy
+*
+* Licensed under the EUPL, Version 1.1 or - as soon they
+* will be approved by the European Commission - subsequent
+* versions of the EUPL (the "Licence");
+* You may not use this work except in compliance with the
+* Licence.
+* You may obtain a copy of the Licence at:
+*
+*
+* http://ec.europa.eu/idabc/eupl
+*
+* Unless required by applicable law or agreed to in
+* writing, software distributed under the Licence is
+* distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied.
+* See the Licence for the specific language governing
+* permissions and limitations under the Licence.
+*/
+package it.bancaditalia.oss.sdmx.client;
+
+import java.util.Objects;
+
+/**
+ * A single time series query of a batch, see {@link BatchExecutor}. Two requests with the same fields are the same
+ * request, and are downloaded only once.
+ */
+public class BatchRequest
+{
+	private final String	provider;
+	private final String	dataflow;
+	private final String	tsKey;
+	private final String	filter;
+	private final String	startTime;
+	private final String	endTime;
+
+	/**
+	 * @param provider the provider name
+	 * @param dataflow the dataflow id
+	 * @param tsKey the series key (may be null if filter is set)
+	 * @param filter the v3 filter (may be null)
+	 * @param startTime the start period (may be null)
+	 * @param endTime the end period (may be null)
+	 */
+	public BatchRequest(String provider, String dataflow, String tsKey, String filter, String startTime, String endTime)
+	{
+		this.provider = provider;
+		this.dataflow = dataflow;
+		this.tsKey = tsKey;
+		this.filter = filter;
+		this.startTime = startTime;
+		this.endTime = endTime;
+	}
+
+	/**
+	 * Creates a request from a key in the form used by {@link SdmxClientHandler#getTimeSeries(String, String, String, String)}
+	 * (e.g. EXR/M.USD.EUR.SP00.A).
+	 * 
+	 * @param provider the provider name
+	 * @param tsKey the flow and key
+	 * @param startTime the start period (may be null)
+	 * @param endTime the end period (may be null)
+	 */
+	public BatchRequest(String provider, String tsKey, String startTime, String endTime)
+	{
+		this(provider, null, tsKey, null, startTime, endTime);
+	}
+
+	public String getProvider()
+	{
+		return provider;
+	}
+
+	public String getDataflow()
+	{
+		return dataflow;
+	}
+
+	public String getTsKey()
+	{
+		return tsKey;
+	}
+
+	public String getFilter()
+	{
+		return filter;
+	}
+
+	public String getStartTime()
+	{
+		return startTime;
+	}
+
+	public String getEndTime()
+	{
+		return endTime;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return Objects.hash(provider, dataflow, tsKey, filter, startTime, endTime);
+	}
+
+	@Override
+	public boolean equals(Object obj)
+	{
+		if (this == obj)
+			return true;
+		if (obj == null || getClass() != obj.getClass())
+			return false;
+		BatchRequest other = (BatchRequest) obj;
+		return Objects.equals(provider, other.provider) && Objects.equals(dataflow, other.dataflow)
+				&& Objects.equals(tsKey, other.tsKey) && Objects.equals(filter, other.filter)
+				&& Objects.equals(startTime, other.startTime) && Objects.equals(endTime, other.endTime);
+	}
+
+	@Override
+	public String toString()
+	{
+		return "BatchRequest [provider=" + provider + ", dataflow=" + dataflow + ", tsKey=" + tsKey + ", filter="
+				+ filter + ", startTime=" + startTime + ", endTime=" + endTime + "]";
+	}
+}
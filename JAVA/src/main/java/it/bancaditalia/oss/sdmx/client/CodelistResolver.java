@@ -0,0 +1,164 @@
+/* Copyright 2010,2014 Bank Of Italy
+*
+* Licensed under the EUPL, Version 1.1 or - as soon they
+* will be approved by the European Commission - subsequent
+* versions of the EUPL (the "Licence");
+* You may not use this work except in compliance with the
+* Licence.
+* You may obtain a copy of the Licence at:
+*
+*
+* http://ec.europa.eu/idabc/eupl
+*
+* Unless required by applicable law or agreed to in
+* writing, software distributed under the Licence is
+* distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied.
+* See the Licence for the specific language governing
+* permissions and limitations under the Licence.
+*/
+package it.bancaditalia.oss.sdmx.client;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import it.bancaditalia.oss.sdmx.api.Codelist;
+import it.bancaditalia.oss.sdmx.api.GenericSDMXClient;
+import it.bancaditalia.oss.sdmx.api.SDMXReference;
+import it.bancaditalia.oss.sdmx.exceptions.SdmxException;
+import it.bancaditalia.oss.sdmx.exceptions.SdmxExceptionFactory;
+import it.bancaditalia.oss.sdmx.util.Configuration;
+import it.bancaditalia.oss.sdmx.util.MetadataCache;
+
+/**
+ * <p>
+ * Retrieves the codelists referenced by structures, reusing those already in the codelist cache of the provider.
+ * 
+ * <p>
+ * Missing codelists are retrieved with a single structure query when the provider is configured to accept many
+ * codelist ids in one query (see {@link GenericSDMXClient#getCodes(Collection)}). Otherwise, or for the codelists that
+ * the query did not return, they are retrieved with concurrent queries, at most max.concurrency at a time for all
+ * the structures of the provider.
+ * Concurrent requests for the same codelist result in a single call to the provider.
+ * 
+ * @author Attilio Mattiocco
+ *
+ */
+public class CodelistResolver
+{
+	protected static final Logger					LOGGER		= Configuration.getSdmxLogger();
+	private static final String						sourceClass	= CodelistResolver.class.getSimpleName();
+
+	private final String							provider;
+	private final GenericSDMXClient					client;
+	private final MetadataCache<String, Codelist>	cache;
+
+	/**
+	 * @param provider the provider
+	 * @param client the client of the provider
+	 */
+	public CodelistResolver(Provider provider, GenericSDMXClient client)
+	{
+		this.provider = provider.getName();
+		this.client = client;
+		this.cache = provider.getCodelistCache();
+	}
+
+	/**
+	 * Gets the contents of many codelists.
+	 * 
+	 * @param codelists the coordinates of the codelists. Duplicates are retrieved once.
+	 * @return key: full identifier of the requested codelist --&gt; codelist. Codelists that the provider did not
+	 *         return are missing.
+	 * @throws SdmxException if a query fails
+	 */
+	public Map<String, Codelist> resolve(Collection<? extends SDMXReference> codelists) throws SdmxException
+	{
+		final String sourceMethod = "resolve";
+		LOGGER.entering(sourceClass, sourceMethod);
+
+		Map<String, Codelist> result = new LinkedHashMap<>();
+		Map<String, SDMXReference> missing = new LinkedHashMap<>();
+		for (SDMXReference cl : codelists)
+		{
+			Codelist codes = cache.get(cl.getFullIdentifier());
+			if (codes != null)
+				result.put(cl.getFullIdentifier(), codes);
+			else
+				missing.putIfAbsent(cl.getFullIdentifier(), cl);
+		}
+
+		if (missing.size() > 1 && Configuration.isCodelistsBatchQuery(provider))
+			try
+			{
+				LOGGER.finer("Getting " + missing.size() + " codelists in a single query from " + provider);
+				for (Map.Entry<String, Codelist> found : client.getCodes(missing.values()).entrySet())
+				{
+					cache.put(found.getKey(), found.getValue());
+					result.put(found.getKey(), found.getValue());
+					missing.remove(found.getKey());
+				}
+			}
+			catch (SdmxException e)
+			{
+				LOGGER.warning("The query for many codelists failed in " + provider + ": " + e.getMessage()
+						+ ". Getting them one by one.");
+				LOGGER.log(Level.FINER, "", e);
+			}
+
+		if (missing.size() == 1)
+		{
+			SDMXReference cl = missing.values().iterator().next();
+			putIfFound(result, cl.getFullIdentifier(), cache.get(cl.getFullIdentifier(), key -> client.getCodes(cl)));
+		}
+		else if (!missing.isEmpty())
+			resolveConcurrently(missing.values(), result);
+
+		LOGGER.exiting(sourceClass, sourceMethod);
+		return result;
+	}
+
+	private void resolveConcurrently(Collection<SDMXReference> codelists, Map<String, Codelist> result) throws SdmxException
+	{
+		ExecutorService executor = ProviderWorkers.get(provider, "codelist", Configuration.getMaxConcurrency(provider));
+		List<Future<Codelist>> futures = new ArrayList<>();
+		try
+		{
+			for (SDMXReference cl : codelists)
+				futures.add(executor.submit(() -> cache.get(cl.getFullIdentifier(), key -> client.getCodes(cl))));
+
+			int i = 0;
+			for (SDMXReference cl : codelists)
+				putIfFound(result, cl.getFullIdentifier(), futures.get(i++).get());
+		}
+		catch (InterruptedException e)
+		{
+			throw SdmxExceptionFactory.interrupted(e);
+		}
+		catch (ExecutionException e)
+		{
+			throw SdmxExceptionFactory.unwrap(e);
+		}
+		finally
+		{
+			// loads already running may be shared with other callers of the cache: let them complete
+			for (Future<Codelist> future : futures)
+				future.cancel(false);
+		}
+	}
+
+	private static void putIfFound(Map<String, Codelist> result, String id, Codelist codes)
+	{
+		if (codes != null)
+			result.put(id, codes);
+	}
+}
@@ -0,0 +1,409 @@
+/* Copyright 2010,2014 Bank Of Italy
+*
+* Licensed under the EUPL, Version 1.1 or - as soon they
+* will be approved by the European Commission - subsequent
+* versions of the EUPL (the "Licence");
+* You may not use this work except in compliance with the
+* Licence.
+* You may obtain a copy of the Licence at:
+*
+*
+* http://ec.europa.eu/idabc/eupl
+*
+* Unless required by applicable law or agreed to in
+* writing, software distributed under the Licence is
+* distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied.
+* See the Licence for the specific language governing
+* permissions and limitations under the Licence.
+*/
+package it.bancaditalia.oss.sdmx.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import it.bancaditalia.oss.sdmx.api.Dataflow;
+
+/**
+ * <p>
+ * An inverted index over a catalogue of dataflows, built once when the catalogue is loaded. It answers three kinds of
+ * queries:
+ * <ul>
+ * <li>glob patterns ({@code *} and {@code ?}) matching the whole id or the whole description, as
+ * {@link SdmxSession#getFlows(String, String)} always did;</li>
+ * <li>case insensitive substrings of the id, agency or description;</li>
+ * <li>keywords, ranked by relevance. A flow matching more keywords ranks higher, a match in the id counts more than
+ * one in the description, and rare words count more than common ones. The last keyword also matches as a prefix.</li>
+ * </ul>
+ * 
+ * <p>
+ * Candidates are looked up through the trigrams of the lowercase fields and the words of ids and descriptions, then
+ * verified against the fields themselves. The index is immutable and safe to share between threads.
+ * 
+ * @author Attilio Mattiocco
+ *
+ */
+public class FlowIndex
+{
+	/**
+	 * The fields of a dataflow searched by {@link FlowIndex#substring(String, boolean, Field...)}.
+	 */
+	public enum Field
+	{
+		/**
+		 * The id of the flow, without agency and version.
+		 */
+		ID,
+		/**
+		 * The maintenance agency of the flow.
+		 */
+		AGENCY,
+		/**
+		 * The description of the flow.
+		 */
+		DESCRIPTION
+	}
+
+	private static final Pattern			WORD_SEPARATOR	= Pattern.compile("[^\\p{L}\\p{N}]+");
+	private static final Pattern			REGEX_CHARS		= Pattern.compile("[\\\\\\[\\](){}.+^$|]");
+	private static final double				ID_WEIGHT		= 3.0;
+	private static final double				PREFIX_WEIGHT	= 0.5;
+	private static final int[]				NONE			= new int[0];
+
+	private final String[]					keys;
+	private final Dataflow[]				flows;
+	// field ordinal --> flow position --> field value (original and lower case)
+	private final String[][]				values;
+	private final String[][]				lowerValues;
+	// key: trigram of any lowercase field --> positions of the flows containing it
+	private final Map<String, int[]>		trigrams;
+	// key: lowercase word --> positions of the flows containing it
+	private final TreeMap<String, int[]>	idWords;
+	private final TreeMap<String, int[]>	descriptionWords;
+
+	/**
+	 * Indexes a catalogue of flows.
+	 * 
+	 * @param flows the flows, keyed by full identifier as returned by {@link GenericSDMXClient#getDataflows()}
+	 */
+	public FlowIndex(Map<String, Dataflow> flows)
+	{
+		int size = flows != null ? flows.size() : 0;
+		keys = new String[size];
+		this.flows = new Dataflow[size];
+		values = new String[Field.values().length][size];
+		lowerValues = new String[Field.values().length][size];
+
+		Map<String, List<Integer>> trigramLists = new HashMap<>();
+		Map<String, List<Integer>> idLists = new HashMap<>();
+		Map<String, List<Integer>> descriptionLists = new HashMap<>();
+
+		int pos = 0;
+		if (flows != null)
+			for (Entry<String, Dataflow> entry : flows.entrySet())
+			{
+				keys[pos] = entry.getKey();
+				this.flows[pos] = entry.getValue();
+				String[] parts = entry.getKey().split(",");
+				setValue(Field.ID, pos, parts.length > 2 ? parts[1] : entry.getKey());
+				setValue(Field.AGENCY, pos, entry.getValue().getAgency());
+				setValue(Field.DESCRIPTION, pos, entry.getValue().getDescription());
+
+				Set<String> flowTrigrams = new HashSet<>();
+				for (Field field : Field.values())
+					addTrigrams(lowerValues[field.ordinal()][pos], flowTrigrams);
+				for (String trigram : flowTrigrams)
+					trigramLists.computeIfAbsent(trigram, k -> new ArrayList<>()).add(pos);
+
+				Set<String> words = words(lowerValues[Field.ID.ordinal()][pos]);
+				// the whole id is a word too, so that an exact id ranks first
+				words.add(lowerValues[Field.ID.ordinal()][pos]);
+				for (String word : words)
+					idLists.computeIfAbsent(word, k -> new ArrayList<>()).add(pos);
+				for (String word : words(lowerValues[Field.DESCRIPTION.ordinal()][pos]))
+					descriptionLists.computeIfAbsent(word, k -> new ArrayList<>()).add(pos);
+
+				pos++;
+			}
+
+		trigrams = new HashMap<>(toPostings(trigramLists));
+		idWords = toPostings(idLists);
+		descriptionWords = toPostings(descriptionLists);
+	}
+
+	// a copy of an index with other flows at the same positions and with the same indexed values
+	private FlowIndex(FlowIndex other, Dataflow[] flows)
+	{
+		keys = other.keys;
+		this.flows = flows;
+		values = other.values;
+		lowerValues = other.lowerValues;
+		trigrams = other.trigrams;
+		idWords = other.idWords;
+		descriptionWords = other.descriptionWords;
+	}
+
+	/**
+	 * Returns an index with a flow added or replaced. If the flow replaces one with the same agency and description,
+	 * the new index shares everything else with this one; otherwise the catalogue is indexed again.
+	 * 
+	 * @param key the full identifier of the flow
+	 * @param flow the flow
+	 * @return the new index
+	 */
+	public FlowIndex with(String key, Dataflow flow)
+	{
+		int pos = Arrays.asList(keys).indexOf(key);
+		if (pos >= 0 && values[Field.AGENCY.ordinal()][pos].equals(flow.getAgency() != null ? flow.getAgency() : "")
+				&& values[Field.DESCRIPTION.ordinal()][pos].equals(flow.getDescription() != null ? flow.getDescription() : ""))
+		{
+			Dataflow[] replaced = flows.clone();
+			replaced[pos] = flow;
+			return new FlowIndex(this, replaced);
+		}
+
+		Map<String, Dataflow> catalogue = new LinkedHashMap<>();
+		for (int i = 0; i < keys.length; i++)
+			catalogue.put(keys[i], flows[i]);
+		catalogue.put(key, flow);
+		return new FlowIndex(catalogue);
+	}
+
+	/**
+	 * @return the number of indexed flows
+	 */
+	public int size()
+	{
+		return flows.length;
+	}
+
+	/**
+	 * Finds the flows whose id or description matches a glob pattern. The pattern must match the whole value, and it
+	 * is case sensitive. Other regular expression constructs in the pattern are honoured as before.
+	 * 
+	 * @param pattern the pattern. Null or empty selects all the flows.
+	 * @return the matching flows, keyed as in the indexed catalogue
+	 */
+	public Map<String, Dataflow> glob(String pattern)
+	{
+		Map<String, Dataflow> result = new HashMap<>();
+		if (pattern == null || pattern.trim().isEmpty())
+		{
+			for (int i = 0; i < flows.length; i++)
+				result.put(keys[i], flows[i]);
+			return result;
+		}
+
+		Pattern regex = Pattern.compile(pattern.replaceAll("\\*", ".*").replaceAll("\\?", "."));
+		int[] candidates = null;
+		// literal parts of a plain glob must appear in the matching value
+		if (!REGEX_CHARS.matcher(pattern).find())
+			for (String literal : pattern.split("[*?]+"))
+				candidates = intersect(candidates, withTrigrams(literal.toLowerCase(Locale.ROOT)));
+
+		for (int i : candidates != null ? candidates : all())
+			if (regex.matcher(values[Field.ID.ordinal()][i]).matches()
+					|| regex.matcher(values[Field.DESCRIPTION.ordinal()][i]).matches())
+				result.put(keys[i], flows[i]);
+
+		return result;
+	}
+
+	/**
+	 * Finds the flows containing a text in any of the given fields.
+	 * 
+	 * @param text the text to find. Null or empty selects all the flows.
+	 * @param caseSensitive true if the case of the text must match
+	 * @param fields the fields to search, or none to search them all
+	 * @return the matching flows in catalogue order, keyed as in the indexed catalogue
+	 */
+	public Map<String, Dataflow> substring(String text, boolean caseSensitive, Field... fields)
+	{
+		if (fields == null || fields.length == 0)
+			fields = Field.values();
+
+		Map<String, Dataflow> result = new LinkedHashMap<>();
+		String needle = text == null ? "" : caseSensitive ? text : text.toLowerCase(Locale.ROOT);
+		int[] candidates = withTrigrams(text == null ? "" : text.toLowerCase(Locale.ROOT));
+		for (int i : candidates != null ? candidates : all())
+			for (Field field : fields)
+				if ((caseSensitive ? values : lowerValues)[field.ordinal()][i].contains(needle))
+				{
+					result.put(keys[i], flows[i]);
+					break;
+				}
+
+		return result;
+	}
+
+	/**
+	 * Ranks the flows by relevance to some keywords. Flows matching none of the keywords are left out.
+	 * 
+	 * @param keywords the words to search, separated by spaces or punctuation
+	 * @param maxResults the maximum number of flows returned, or a value less than or equal to zero for no limit
+	 * @return the matching flows, most relevant first
+	 */
+	public List<Dataflow> search(String keywords, int maxResults)
+	{
+		List<String> words = new ArrayList<>(words(keywords == null ? "" : keywords.toLowerCase(Locale.ROOT)));
+		if (words.isEmpty())
+			return Collections.emptyList();
+
+		double[] scores = new double[flows.length];
+		int[] matched = new int[flows.length];
+		double[] wordScores = new double[flows.length];
+		int[] touched = new int[flows.length];
+		for (int w = 0; w < words.size(); w++)
+		{
+			String word = words.get(w);
+			// only the last keyword may be incomplete while the user is typing
+			boolean prefix = w == words.size() - 1;
+			int count = score(idWords, word, prefix, ID_WEIGHT, wordScores, touched, 0);
+			count = score(descriptionWords, word, prefix, 1.0, wordScores, touched, count);
+			for (int t = 0; t < count; t++)
+			{
+				int i = touched[t];
+				scores[i] += wordScores[i];
+				matched[i]++;
+				wordScores[i] = 0;
+			}
+		}
+
+		List<Integer> ranked = new ArrayList<>();
+		for (int i = 0; i < flows.length; i++)
+			if (matched[i] > 0)
+			{
+				scores[i] *= matched[i] / (double) words.size();
+				ranked.add(i);
+			}
+		ranked.sort((a, b) -> scores[a] != scores[b] ? Double.compare(scores[b], scores[a]) : keys[a].compareTo(keys[b]));
+
+		List<Dataflow> result = new ArrayList<>();
+		for (int i : ranked)
+			if (maxResults <= 0 || result.size() < maxResults)
+				result.add(flows[i]);
+		return result;
+	}
+
+	/*
+	 * Adds the score of a word in a field to wordScores, keeping the best one for each flow. Returns the number of
+	 * flows in touched.
+	 */
+	private int score(TreeMap<String, int[]> field, String word, boolean prefix, double weight, double[] wordScores,
+			int[] touched, int count)
+	{
+		SortedMap<String, int[]> entries = prefix ? field.subMap(word, word + Character.MAX_VALUE)
+				: field.subMap(word, true, word, true);
+		for (Entry<String, int[]> entry : entries.entrySet())
+		{
+			// rare words weigh more
+			double score = weight * Math.log(1.0 + flows.length / (double) entry.getValue().length);
+			if (!entry.getKey().equals(word))
+				score *= PREFIX_WEIGHT;
+			for (int i : entry.getValue())
+			{
+				if (wordScores[i] == 0)
+					touched[count++] = i;
+				wordScores[i] = Math.max(wordScores[i], score);
+			}
+		}
+		return count;
+	}
+
+	private void setValue(Field field, int pos, String value)
+	{
+		values[field.ordinal()][pos] = value != null ? value : "";
+		lowerValues[field.ordinal()][pos] = values[field.ordinal()][pos].toLowerCase(Locale.ROOT);
+	}
+
+	/*
+	 * Returns the positions of the flows containing all the trigrams of a lowercase text, or null if the text is too
+	 * short to have any.
+	 */
+	private int[] withTrigrams(String text)
+	{
+		Set<String> textTrigrams = new HashSet<>();
+		addTrigrams(text, textTrigrams);
+		int[] result = null;
+		for (String trigram : textTrigrams)
+		{
+			int[] postings = trigrams.get(trigram);
+			result = intersect(result, postings != null ? postings : NONE);
+			if (result.length == 0)
+				break;
+		}
+		return result;
+	}
+
+	private int[] all()
+	{
+		int[] result = new int[flows.length];
+		for (int i = 0; i < result.length; i++)
+			result[i] = i;
+		return result;
+	}
+
+	/*
+	 * Intersects two sorted arrays of positions. A null array stands for all the positions.
+	 */
+	private static int[] intersect(int[] a, int[] b)
+	{
+		if (a == null)
+			return b;
+		if (b == null)
+			return a;
+
+		int[] result = new int[Math.min(a.length, b.length)];
+		int count = 0;
+		for (int i = 0, j = 0; i < a.length && j < b.length;)
+			if (a[i] < b[j])
+				i++;
+			else if (a[i] > b[j])
+				j++;
+			else
+			{
+				result[count++] = a[i];
+				i++;
+				j++;
+			}
+		return Arrays.copyOf(result, count);
+	}
+
+	private static void addTrigrams(String text, Set<String> trigrams)
+	{
+		for (int i = 0; i + 3 <= text.length(); i++)
+			trigrams.add(text.substring(i, i + 3));
+	}
+
+	private static Set<String> words(String text)
+	{
+		// keeps the order of the words
+		Set<String> result = new LinkedHashSet<>();
+		for (String word : WORD_SEPARATOR.split(text))
+			if (!word.isEmpty())
+				result.add(word);
+		return result;
+	}
+
+	private static TreeMap<String, int[]> toPostings(Map<String, List<Integer>> lists)
+	{
+		TreeMap<String, int[]> result = new TreeMap<>();
+		for (Entry<String, List<Integer>> entry : lists.entrySet())
+			result.put(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+		return result;
+	}
+}
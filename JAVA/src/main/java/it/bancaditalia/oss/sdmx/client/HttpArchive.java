@@ -0,0 +1,439 @@
+/* Copyright 2010,2014 Bank Of Italy
+*
+* Licensed under the EUPL, Version 1.1 or - as soon they
+* will be approved by the European Commission - subsequent
+* versions of the EUPL (the "Licence");
+* You may not use this work except in compliance with the
+* Licence.
+* You may obtain a copy of the Licence at:
+*
+*
+* http://ec.europa.eu/idabc/eupl
+*
+* Unless required by applicable law or agreed to in
+* writing, software distributed under the Licence is
+* distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied.
+* See the Licence for the specific language governing
+* permissions and limitations under the Licence.
+*/
+package it.bancaditalia.oss.sdmx.client;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.logging.Logger;
+
+import it.bancaditalia.oss.sdmx.exceptions.SdmxException;
+import it.bancaditalia.oss.sdmx.exceptions.SdmxExceptionFactory;
+import it.bancaditalia.oss.sdmx.exceptions.SdmxIOException;
+import it.bancaditalia.oss.sdmx.util.Configuration;
+
+/**
+ * <p>
+ * Archive of http exchanges used by {@link RestSdmxClient} to record the responses of the providers and to replay
+ * them later without contacting the network, e.g. for reproducible performance runs or offline work.
+ *
+ * <p>
+ * Each exchange (final url, status, response headers and raw body) is stored in its own file, named after a digest
+ * of the canonical request: url with sorted query parameters, <code>Accept</code> and <code>Accept-Language</code>.
+ * Every hop of a redirection is a separate exchange. The file <code>index.txt</code> lists the recorded requests.
+ * Credentials and cookies are never stored. Bodies are streamed to and from the files, so responses of any size can be
+ * recorded without holding them in memory.
+ *
+ * <p>
+ * The archive is enabled by setting the <code>http.archive.dir</code> and <code>http.archive.mode</code>
+ * (<code>record</code> or <code>replay</code>) configuration properties, or calling
+ * {@link Configuration#setHttpArchive(String, String)}.
+ */
+public class HttpArchive
+{
+	private static final Logger				LOGGER			= Configuration.getSdmxLogger();
+
+	private static final int				FORMAT_VERSION	= 3;
+	private static final String				FILE_SUFFIX		= ".http";
+	private static final String				TMP_SUFFIX		= ".tmp";
+	private static final String				INDEX_FILE		= "index.txt";
+	private static final List<String>		SKIPPED_HEADERS	= Arrays.asList("set-cookie", "set-cookie2");
+
+	private static final HttpArchive		INSTANCE		= new HttpArchive();
+
+	private HttpArchive()
+	{
+	}
+
+	public static HttpArchive getInstance()
+	{
+		return INSTANCE;
+	}
+
+	public boolean isRecording()
+	{
+		return Configuration.HTTP_ARCHIVE_RECORD.equals(Configuration.getHttpArchiveMode());
+	}
+
+	public boolean isReplaying()
+	{
+		return Configuration.HTTP_ARCHIVE_REPLAY.equals(Configuration.getHttpArchiveMode());
+	}
+
+	/**
+	 * Returns a connection that serves the recorded response of a request.
+	 * 
+	 * @param url the requested url
+	 * @param accept the value of the Accept header
+	 * @param acceptLanguage the value of the Accept-Language header
+	 * @return a connection over the recorded response
+	 * @throws SdmxException if the request was never recorded
+	 */
+	public HttpURLConnection replay(URL url, String accept, String acceptLanguage) throws SdmxException
+	{
+		String request = canonicalRequest(url, accept, acceptLanguage);
+		File file = getFile(request);
+		if (file == null || !file.exists())
+			throw new SdmxIOException("No recorded response in http archive for request " + request, null);
+
+		// the header is small: only the body is buffered when it is read
+		try (RandomAccessFile in = new RandomAccessFile(file, "r"))
+		{
+			if (in.readInt() != FORMAT_VERSION || !request.equals(readString(in)))
+				throw new SdmxIOException("Incompatible http archive file " + file, null);
+			URL responseURL = new URL(readString(in));
+			int status = in.readInt();
+			String message = readString(in);
+			Map<String, List<String>> headers = new LinkedHashMap<>();
+			for (int i = in.readInt(); i > 0; i--)
+				headers.computeIfAbsent(readString(in), k -> new ArrayList<>()).add(readString(in));
+			long length = in.readLong();
+			long offset = in.getFilePointer();
+			if (offset + length != in.length())
+				throw new SdmxIOException("Truncated http archive file " + file, null);
+			LOGGER.fine("Replaying " + status + " response from " + file);
+			return new ArchivedConnection(responseURL, status, message, headers, file, offset);
+		}
+		catch (IOException e)
+		{
+			throw SdmxExceptionFactory.wrap(e);
+		}
+	}
+
+	/**
+	 * Stores the response of an open connection. The connection is fully read and closed.
+	 * 
+	 * @param url the requested url
+	 * @param accept the value of the Accept header
+	 * @param acceptLanguage the value of the Accept-Language header
+	 * @param conn the connection to record
+	 * @return a connection over the recorded response, to be used in place of the original one
+	 * @throws IOException if the response could not be read or stored
+	 */
+	public HttpURLConnection record(URL url, String accept, String acceptLanguage, HttpURLConnection conn) throws IOException
+	{
+		int status = conn.getResponseCode();
+		String message = conn.getResponseMessage();
+		Map<String, List<String>> headers = new LinkedHashMap<>();
+		for (Entry<String, List<String>> header : conn.getHeaderFields().entrySet())
+			// the null key is the status line
+			if (header.getKey() != null && !SKIPPED_HEADERS.contains(header.getKey().toLowerCase(Locale.ROOT)))
+				headers.put(header.getKey(), header.getValue());
+
+		String request = canonicalRequest(url, accept, acceptLanguage);
+		File file = getFile(request);
+		File tmp = File.createTempFile(file.getName() + ".", TMP_SUFFIX, file.getParentFile());
+		try
+		{
+			long offset;
+			try (RandomAccessFile out = new RandomAccessFile(tmp, "rw");
+					InputStream in = status >= HttpURLConnection.HTTP_BAD_REQUEST ? conn.getErrorStream() : conn.getInputStream())
+			{
+				out.write(header(request, conn.getURL(), status, message, headers));
+				long lengthPosition = out.getFilePointer();
+				out.writeLong(0);
+				offset = out.getFilePointer();
+				long length = 0;
+				if (in != null)
+				{
+					byte[] buf = new byte[65536];
+					int i;
+					while ((i = in.read(buf)) > 0)
+					{
+						out.write(buf, 0, i);
+						length += i;
+					}
+				}
+				out.seek(lengthPosition);
+				out.writeLong(length);
+			}
+			finally
+			{
+				conn.disconnect();
+			}
+
+			boolean stored = store(request, file, tmp);
+			if (stored)
+				LOGGER.fine("Recorded " + status + " response to " + file);
+			else
+				// serve the response from the temporary file
+				tmp.deleteOnExit();
+			return new ArchivedConnection(conn.getURL(), status, message, headers, stored ? file : tmp, offset);
+		}
+		catch (IOException | RuntimeException e)
+		{
+			// an incomplete recording
+			if (!tmp.delete())
+				tmp.deleteOnExit();
+			throw e;
+		}
+	}
+
+	/**
+	 * Removes all the recorded exchanges.
+	 */
+	public synchronized void clear()
+	{
+		File dir = getDirectory();
+		if (dir != null)
+		{
+			File[] files = dir.listFiles((d, name) -> name.endsWith(FILE_SUFFIX) || name.endsWith(TMP_SUFFIX) || name.equals(INDEX_FILE));
+			if (files != null)
+				for (File file : files)
+					if (!file.delete())
+						LOGGER.warning("Could not delete http archive file " + file);
+		}
+	}
+
+	static String canonicalRequest(URL url, String accept, String acceptLanguage)
+	{
+		StringBuilder request = new StringBuilder("GET ").append(url.getProtocol().toLowerCase(Locale.ROOT)).append("://")
+				.append(url.getHost().toLowerCase(Locale.ROOT));
+		if (url.getPort() != -1 && url.getPort() != url.getDefaultPort())
+			request.append(':').append(url.getPort());
+		request.append(url.getPath().isEmpty() ? "/" : url.getPath());
+
+		if (url.getQuery() != null && !url.getQuery().isEmpty())
+		{
+			List<String> params = new ArrayList<>();
+			for (String param : url.getQuery().split("&"))
+				if (!param.isEmpty())
+					params.add(param);
+			Collections.sort(params);
+			request.append('?').append(String.join("&", params));
+		}
+
+		return request.append("\nAccept: ").append(accept != null && !accept.isEmpty() ? accept : "*/*")
+				.append("\nAccept-Language: ").append(acceptLanguage != null ? acceptLanguage : "").toString();
+	}
+
+	private static byte[] header(String request, URL responseURL, int status, String message, Map<String, List<String>> headers) throws IOException
+	{
+		ByteArrayOutputStream header = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(header))
+		{
+			out.writeInt(FORMAT_VERSION);
+			writeString(out, request);
+			writeString(out, responseURL.toString());
+			out.writeInt(status);
+			writeString(out, message != null ? message : "");
+			int count = 0;
+			for (List<String> values : headers.values())
+				count += values.size();
+			out.writeInt(count);
+			for (Entry<String, List<String>> entry : headers.entrySet())
+				for (String value : entry.getValue())
+				{
+					writeString(out, entry.getKey());
+					writeString(out, value);
+				}
+		}
+		return header.toByteArray();
+	}
+
+	// writeUTF is limited to 64KB, which a long URL or header value can exceed
+	private static void writeString(DataOutputStream out, String value) throws IOException
+	{
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(RandomAccessFile in) throws IOException
+	{
+		int length = in.readInt();
+		if (length < 0 || length > in.length() - in.getFilePointer())
+			throw new IOException("Corrupted http archive string of length " + length);
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	// moves a complete recording in place, and returns false if it could not
+	private synchronized boolean store(String request, File file, File tmp)
+	{
+		boolean isNew = !file.exists();
+		if (file.exists() && !file.delete() || !tmp.renameTo(file))
+		{
+			LOGGER.warning("Could not update http archive file " + file);
+			return false;
+		}
+
+		if (isNew)
+			try (Writer index = new OutputStreamWriter(new FileOutputStream(new File(file.getParentFile(), INDEX_FILE), true), StandardCharsets.UTF_8))
+			{
+				index.write(file.getName() + "\t" + request.replace('\n', '\t') + "\n");
+			}
+			catch (IOException e)
+			{
+				LOGGER.warning("Could not update http archive index: " + e.getMessage());
+			}
+		return true;
+	}
+
+	private static File getDirectory()
+	{
+		return Configuration.getHttpArchiveMode() != null ? new File(Configuration.getHttpArchiveDir()) : null;
+	}
+
+	private static File getFile(String request)
+	{
+		File dir = getDirectory();
+		if (dir == null)
+			return null;
+		try
+		{
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(request.getBytes(StandardCharsets.UTF_8));
+			StringBuilder name = new StringBuilder();
+			for (byte b : digest)
+				name.append(String.format("%02x", b));
+			return new File(dir, name.append(FILE_SUFFIX).toString());
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			// SHA-1 is mandatory on every Java platform
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * A connection that serves a recorded response, reading the body from the archive file.
+	 */
+	private static class ArchivedConnection extends HttpURLConnection
+	{
+		private final Map<String, List<String>>		headers;
+		private final File							file;
+		private final long							offset;
+
+		private ArchivedConnection(URL url, int status, String message, Map<String, List<String>> headers, File file, long offset)
+		{
+			super(url);
+			this.headers = headers;
+			this.file = file;
+			this.offset = offset;
+			this.responseCode = status;
+			this.responseMessage = message;
+		}
+
+		@Override
+		public void connect()
+		{
+			connected = true;
+		}
+
+		@Override
+		public void disconnect()
+		{
+			connected = false;
+		}
+
+		@Override
+		public boolean usingProxy()
+		{
+			return false;
+		}
+
+		@Override
+		public int getResponseCode()
+		{
+			return responseCode;
+		}
+
+		@Override
+		public String getResponseMessage()
+		{
+			return responseMessage;
+		}
+
+		@Override
+		public String getHeaderField(String name)
+		{
+			for (Entry<String, List<String>> header : headers.entrySet())
+				if (header.getKey().equalsIgnoreCase(name) && !header.getValue().isEmpty())
+					return header.getValue().get(header.getValue().size() - 1);
+			return null;
+		}
+
+		@Override
+		public Map<String, List<String>> getHeaderFields()
+		{
+			return Collections.unmodifiableMap(headers);
+		}
+
+		@Override
+		public InputStream getInputStream() throws IOException
+		{
+			if (responseCode >= HTTP_BAD_REQUEST)
+				throw new IOException("Server returned HTTP response code: " + responseCode + " for URL: " + getURL());
+			return openBody();
+		}
+
+		@Override
+		public InputStream getErrorStream()
+		{
+			try
+			{
+				return responseCode >= HTTP_BAD_REQUEST ? openBody() : null;
+			}
+			catch (IOException e)
+			{
+				LOGGER.warning("Could not read http archive file " + file + ": " + e.getMessage());
+				return null;
+			}
+		}
+
+		private InputStream openBody() throws IOException
+		{
+			FileInputStream in = new FileInputStream(file);
+			try
+			{
+				in.getChannel().position(offset);
+				return new BufferedInputStream(in);
+			}
+			catch (IOException e)
+			{
+				in.close();
+				throw e;
+			}
+		}
+	}
+}
@@ -0,0 +1,261 @@
+/* Copyright 2010,2014 Bank Of Italy
+*
+* Licensed under the EUPL, Version 1.1 or - as soon they
+* will be approved by the European Commission - subsequent
+* versions of the EUPL (the "Licence");
+* You may not use this work except in compliance with the
+* Licence.
+* You may obtain a copy of the Licence at:
+*
+*
+* http://ec.europa.eu/idabc/eupl
+*
+* Unless required by applicable law or agreed to in
+* writing, software distributed under the Licence is
+* distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied.
+* See the Licence for the specific language governing
+* permissions and limitations under the Licence.
+*/
+package it.bancaditalia.oss.sdmx.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import it.bancaditalia.oss.sdmx.api.PortableTimeSeries;
+
+/**
+ * <p>
+ * Plans the download of many series keys of the same dataflow with as few queries as possible. Keys that differ only
+ * in one position are merged into a single key using the SDMX OR syntax (e.g. <code>M.USD.EUR.SP00.A</code> and
+ * <code>M.GBP.EUR.SP00.A</code> become <code>M.USD+GBP.EUR.SP00.A</code>). Merging is repeated on every position,
+ * so that keys forming a full cartesian product are downloaded with one query, but a merged key never matches a
+ * series that was not requested.
+ * 
+ * <p>
+ * Merged keys longer than a maximum length are split into more queries. The series downloaded with a merged key are
+ * assigned back to the requested keys with {@link #split(List, List, List)}.
+ */
+public class KeyMerger
+{
+	private static final String	OR			= "+";
+	private static final String	WILDCARD	= "*";
+
+	private final int			maxKeyLength;
+
+	/**
+	 * A key to download, and the requested keys it includes.
+	 */
+	public static class MergedKey
+	{
+		private final String		key;
+		private final List<String>	requestedKeys;
+
+		private MergedKey(String key, List<String> requestedKeys)
+		{
+			this.key = key;
+			this.requestedKeys = Collections.unmodifiableList(requestedKeys);
+		}
+
+		/**
+		 * @return the key to be queried
+		 */
+		public String getKey()
+		{
+			return key;
+		}
+
+		/**
+		 * @return the requested keys satisfied by this key
+		 */
+		public List<String> getRequestedKeys()
+		{
+			return requestedKeys;
+		}
+
+		@Override
+		public String toString()
+		{
+			return key + " " + requestedKeys;
+		}
+	}
+
+	// a (possibly merged) key being planned
+	private static class Node
+	{
+		private final String[]		positions;
+		private final List<String>	requestedKeys	= new ArrayList<>();
+
+		private Node(String[] positions)
+		{
+			this.positions = positions;
+		}
+
+		private String signature(int excluded)
+		{
+			StringBuilder signature = new StringBuilder().append(positions.length);
+			for (int i = 0; i < positions.length; i++)
+				signature.append('.').append(i == excluded ? "" : positions[i]);
+			return signature.toString();
+		}
+
+		private String key()
+		{
+			return String.join(".", positions);
+		}
+	}
+
+	/**
+	 * @param maxKeyLength the maximum length of a merged key. Keys longer than this are never merged.
+	 */
+	public KeyMerger(int maxKeyLength)
+	{
+		this.maxKeyLength = maxKeyLength;
+	}
+
+	/**
+	 * Merges series keys of the same dataflow.
+	 * 
+	 * @param keys the requested keys, in the dot separated SDMX 2.1 form
+	 * @return the keys to download. Each requested key is included in exactly one of them.
+	 */
+	public List<MergedKey> merge(List<String> keys)
+	{
+		// key: requested key --> node
+		Map<String, Node> distinct = new LinkedHashMap<>();
+		for (String key : keys)
+			distinct.computeIfAbsent(key, k -> new Node(k.split("\\.", -1))).requestedKeys.add(key);
+		List<Node> nodes = new ArrayList<>(distinct.values());
+
+		int maxPositions = 0;
+		for (Node node : nodes)
+			maxPositions = Math.max(maxPositions, node.positions.length);
+
+		boolean changed = true;
+		while (changed)
+		{
+			changed = false;
+			for (int position = 0; position < maxPositions; position++)
+			{
+				// key: key without the current position --> nodes differing only in that position
+				Map<String, List<Node>> groups = new LinkedHashMap<>();
+				for (Node node : nodes)
+					groups.computeIfAbsent(node.signature(position), k -> new ArrayList<>()).add(node);
+
+				List<Node> merged = new ArrayList<>();
+				for (List<Node> group : groups.values())
+					if (group.size() > 1 && position < group.get(0).positions.length)
+						merged.addAll(mergeGroup(group, position));
+					else
+						merged.addAll(group);
+
+				changed |= merged.size() < nodes.size();
+				nodes = merged;
+			}
+		}
+
+		List<MergedKey> result = new ArrayList<>();
+		for (Node node : nodes)
+			result.add(new MergedKey(node.key(), node.requestedKeys));
+		return result;
+	}
+
+	/**
+	 * Assigns downloaded series to the requested keys they match.
+	 * 
+	 * @param requestedKeys the requested keys
+	 * @param series the series downloaded for them
+	 * @param dimensions the ids of the key dimensions, in the order of the key
+	 * @return the matching series for each requested key, in the order of the requested keys
+	 */
+	public static <T> Map<String, List<PortableTimeSeries<T>>> split(List<String> requestedKeys,
+			List<PortableTimeSeries<T>> series, List<String> dimensions)
+	{
+		Map<String, List<PortableTimeSeries<T>>> result = new LinkedHashMap<>();
+		for (String key : requestedKeys)
+			result.put(key, new ArrayList<>());
+
+		for (PortableTimeSeries<T> ts : series)
+		{
+			String[] codes = new String[dimensions.size()];
+			for (int i = 0; i < codes.length; i++)
+				codes[i] = ts.getDimension(dimensions.get(i));
+			for (Map.Entry<String, List<PortableTimeSeries<T>>> entry : result.entrySet())
+				if (matches(entry.getKey(), codes))
+					entry.getValue().add(ts);
+		}
+		return result;
+	}
+
+	/**
+	 * Checks if a series key matches a key pattern.
+	 * 
+	 * @param key a key with optional wildcards (empty or *) and OR (+) positions
+	 * @param codes the codes of a series, in the order of the key
+	 * @return true if the series is selected by the key
+	 */
+	public static boolean matches(String key, String[] codes)
+	{
+		String[] positions = key.split("\\.", -1);
+		for (int i = 0; i < positions.length; i++)
+		{
+			String position = positions[i];
+			if (position.isEmpty() || WILDCARD.equals(position))
+				continue;
+			if (i >= codes.length || codes[i] == null
+					|| !Arrays.asList(position.split("\\" + OR)).contains(codes[i]))
+				return false;
+		}
+		return true;
+	}
+
+	private List<Node> mergeGroup(List<Node> group, int position)
+	{
+		// a wildcard includes every other code
+		for (Node node : group)
+			if (node.positions[position].isEmpty() || WILDCARD.equals(node.positions[position]))
+			{
+				Node wildcard = new Node(node.positions.clone());
+				for (Node other : group)
+					wildcard.requestedKeys.addAll(other.requestedKeys);
+				return Collections.singletonList(wildcard);
+			}
+
+		int baseLength = group.get(0).key().length() - group.get(0).positions[position].length();
+		List<Node> result = new ArrayList<>();
+		Set<String> codes = new LinkedHashSet<>();
+		List<String> requested = new ArrayList<>();
+		for (Node node : group)
+		{
+			Set<String> candidate = new LinkedHashSet<>(codes);
+			candidate.addAll(Arrays.asList(node.positions[position].split("\\" + OR)));
+			if (!codes.isEmpty() && baseLength + String.join(OR, candidate).length() > maxKeyLength)
+			{
+				// too long: close this chunk and start a new one
+				result.add(chunk(group.get(0), position, codes, requested));
+				codes = new LinkedHashSet<>();
+				requested = new ArrayList<>();
+				candidate = new LinkedHashSet<>(Arrays.asList(node.positions[position].split("\\" + OR)));
+			}
+			codes = candidate;
+			requested.addAll(node.requestedKeys);
+		}
+		result.add(chunk(group.get(0), position, codes, requested));
+		return result;
+	}
+
+	private static Node chunk(Node template, int position, Set<String> codes, List<String> requested)
+	{
+		Node node = new Node(template.positions.clone());
+		node.positions[position] = String.join(OR, codes);
+		node.requestedKeys.addAll(requested);
+		return node;
+	}
+}
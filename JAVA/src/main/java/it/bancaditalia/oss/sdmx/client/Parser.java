@@ -1,5 +1,7 @@
 package it.bancaditalia.oss.sdmx.client;
 
+import java.io.BufferedReader;
+import java.io.IOException;
 import java.util.List;
 import java.util.Locale.LanguageRange;
 
@@ -11,4 +13,29 @@ import it.bancaditalia.oss.sdmx.exceptions.SdmxException;
 public interface Parser<T> 
 {
 	public T parse(XMLEventReader eventReader, List<LanguageRange> languages) throws XMLStreamException, SdmxException;
+
+	/**
+	 * Checks if a response is read as plain text instead of XML, e.g. SDMX-CSV.
+	 * 
+	 * @param contentType The content type of the response, or null
+	 * @return true if the response must be passed to {@link #parse(BufferedReader, List)}
+	 */
+	public default boolean isTextFormat(String contentType)
+	{
+		return false;
+	}
+
+	/**
+	 * Parses a plain text response. Only called if {@link #isTextFormat(String)} returns true.
+	 * 
+	 * @param reader The response
+	 * @param languages The preferred languages
+	 * @return The parsed result
+	 * @throws IOException If the response cannot be read
+	 * @throws SdmxException If the response is not valid
+	 */
+	public default T parse(BufferedReader reader, List<LanguageRange> languages) throws IOException, SdmxException
+	{
+		throw new UnsupportedOperationException(getClass().getSimpleName() + " only parses XML.");
+	}
 }
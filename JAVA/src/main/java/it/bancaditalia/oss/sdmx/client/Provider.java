@@ -20,6 +20,7 @@
  */
 package it.bancaditalia.oss.sdmx.client;
 
+import java.lang.ref.SoftReference;
 import java.net.URI;
 import java.security.KeyManagementException;
 import java.security.KeyStore;
@@ -27,17 +28,21 @@ import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.Map;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManagerFactory;
 
+import it.bancaditalia.oss.sdmx.api.Codelist;
 import it.bancaditalia.oss.sdmx.api.DataFlowStructure;
 import it.bancaditalia.oss.sdmx.api.Dataflow;
+import it.bancaditalia.oss.sdmx.api.Dimension;
 import it.bancaditalia.oss.sdmx.api.SDMXReference;
+import it.bancaditalia.oss.sdmx.api.SdmxAttribute;
 import it.bancaditalia.oss.sdmx.exceptions.SdmxException;
+import it.bancaditalia.oss.sdmx.util.Configuration;
+import it.bancaditalia.oss.sdmx.util.MetadataCache;
 
 /**
  * 
@@ -53,11 +58,26 @@ public class Provider {
 	private boolean needsURLEncoding;
 	private boolean supportsCompression;
 	private boolean isCustom = false;
+	private String dataFormat;
 
 	// key: flow id (full) --> flow
-	private Map<String, Dataflow> flows; 
+	private MetadataCache<String, Dataflow> flows; 
+	// true if flows holds the whole catalogue of the provider, and nothing was evicted since
+	private volatile boolean flowCatalogue = false;
+	// search index over the cached flows, rebuilt when they change
+	private volatile FlowIndex flowIndex = null;
+	// index over a whole catalogue that does not fit the flows cache, released when memory is low
+	private volatile SoftReference<FlowIndex> oversizedCatalogue = null;
+	// guards the indexes. The eviction listener takes it while the flows cache is locked: never call the cache
+	// while holding it
+	private final Object flowIndexLock = new Object();
+	// incremented under flowIndexLock on every change to the cached flows
+	private long flowsVersion = 0;
 	// key: dsd id (full) --> structure
-	private Map<String, DataFlowStructure> dsdNameToStructureCache = null;
+	private MetadataCache<String, DataFlowStructure> dsdNameToStructureCache = null;
+	// key: codelist full id --> codelist, shared by the structures that reference it
+	private final MetadataCache<String, Codelist> codelists;
+	private final AvailabilityCache availabilityCache;
 	private SSLSocketFactory sslSocketFactory;
 
 	public Provider(String name, URI endpoint, KeyStore trustStore, boolean needsCredentials, 
@@ -66,13 +86,26 @@ public class Provider {
 		this.name = name;
 		this.endpoint = endpoint;
 		this.description = description;
-		this.flows = new HashMap<>();
-		this.dsdNameToStructureCache = new HashMap<>();
+		this.flows = new MetadataCache<>(name + " dataflows", Configuration.getCachePolicy(name), 
+				Configuration.getFlowsCacheMaxSize(name));
+		this.flows.setEvictionListener((id, flow) -> {
+			flowCatalogue = false;
+			synchronized (flowIndexLock) {
+				flowIndex = null;
+				flowsVersion++;
+			}
+		});
+		this.dsdNameToStructureCache = new MetadataCache<>(name + " structures", Configuration.getCachePolicy(name), 
+				Configuration.getDsdCacheMaxWeight(name), Provider::weigh);
+		this.codelists = new MetadataCache<>(name + " codelists", Configuration.getCachePolicy(name), 
+				Configuration.getCodelistsCacheMaxWeight(name), cl -> 1 + cl.estimatedSize());
+		this.availabilityCache = new AvailabilityCache(Configuration.getAvailabilityCacheTtl(name) * 1000);
 		this.needsCredentials = needsCredentials;
 		this.needsURLEncoding = needsURLEncoding;
 		this.supportsCompression = supportsCompression;
 		this.isCustom = isCustom;
 		this.sdmxVersion = sdmxVersion;
+		this.dataFormat = Configuration.getDataFormat(name);
 		
 	    try {
 			if (trustStore != null)
@@ -110,25 +143,43 @@ public class Provider {
 		this.endpoint = endpoint;
 	}
 
-	public void setFlows(Map<String, Dataflow> flows) {
-		this.flows = flows;
+	public synchronized void setFlows(Map<String, Dataflow> flows) {
+		this.flowCatalogue = false;
+		// readers never see a partial catalogue. It is not complete if it does not fit the cache
+		this.flowCatalogue = this.flows.replaceAll(flows) == 0;
+		// keep it anyway while there is memory, instead of downloading it again on every call
+		FlowIndex index = new FlowIndex(flowCatalogue ? this.flows.asMap() : flows);
+		synchronized (flowIndexLock) {
+			flowsVersion++;
+			this.flowIndex = flowCatalogue ? index : null;
+			this.oversizedCatalogue = flowCatalogue ? null : new SoftReference<>(index);
+		}
 	}
 
-	public void setFlow(Dataflow flow) {
+	public synchronized void setFlow(Dataflow flow) {
 		/* BUG: flow is inserted using just the id, but this.flows is set up using the
 		*  full identifier, this creates duplicates inside this.flows. */
 		//this.flows.put(flow.getId(), flow);
 		this.flows.put(flow.getFullIdentifier(), flow);
+		// the index of an oversized catalogue is returned first: it must hold the new flow too
+		FlowIndex catalogue = getOversizedCatalogue();
+		FlowIndex updated = catalogue != null ? catalogue.with(flow.getFullIdentifier(), flow) : null;
+		synchronized (flowIndexLock) {
+			flowsVersion++;
+			this.flowIndex = null;
+			this.oversizedCatalogue = updated != null ? new SoftReference<>(updated) : null;
+		}
 	}
 
 
 	public Dataflow getFlow(String dataflow) {
-		if (flows.containsKey(dataflow)) {
-			return flows.get(dataflow);
+		Dataflow flow = flows.get(dataflow);
+		if (flow != null) {
+			return flow;
 		} else {
 			// it could be because we got the simple flow id (e.g. from getTimSeries).
 			// We try to handle it matching the id (if any) and returning the first available agency and the latest version
-			return flows.values()
+			return flows.asMap().values()
 					.stream()
 					.filter(df -> df.getId().equals(dataflow))
 					.max(Comparator.comparing(Dataflow::getVersion))
@@ -136,8 +187,51 @@ public class Provider {
 		}
 	}
 
+	/**
+	 * @return a snapshot of the cached flows. It is the whole catalogue only if {@link #hasFlowCatalogue()}.
+	 */
 	public Map<String, Dataflow> getFlows() {
-		return flows;
+		return flows.asMap();
+	}
+
+	/**
+	 * @return a search index over the cached flows, or over the whole catalogue if it does not fit the cache but is
+	 *         still held. It is rebuilt by {@link #setFlows(Map)}, and lazily after any other change to the cached
+	 *         flows.
+	 */
+	public FlowIndex getFlowIndex() {
+		FlowIndex index = getOversizedCatalogue();
+		if (index != null)
+			return index;
+		index = flowIndex;
+		if (index != null)
+			return index;
+		long version;
+		synchronized (flowIndexLock) {
+			if (flowIndex != null)
+				return flowIndex;
+			version = flowsVersion;
+		}
+		// built outside the lock, and kept only if the flows did not change meanwhile
+		index = new FlowIndex(flows.asMap());
+		synchronized (flowIndexLock) {
+			if (flowsVersion == version)
+				flowIndex = index;
+		}
+		return index;
+	}
+
+	/**
+	 * @return true if the whole dataflow catalogue was set and none of its flows was evicted since, or if it did not
+	 *         fit the cache but its index is still held.
+	 */
+	public boolean hasFlowCatalogue() {
+		return flowCatalogue || getOversizedCatalogue() != null;
+	}
+
+	private FlowIndex getOversizedCatalogue() {
+		SoftReference<FlowIndex> ref = oversizedCatalogue;
+		return ref != null ? ref.get() : null;
 	}
 
 	public SDMXReference getDSDIdentifier(String dataflow) {
@@ -157,6 +251,36 @@ public class Provider {
 		this.dsdNameToStructureCache.put(dsdID, dsd);
 	}
 
+	public MetadataCache<String, Dataflow> getFlowCache() {
+		return flows;
+	}
+
+	public MetadataCache<String, DataFlowStructure> getDSDCache() {
+		return dsdNameToStructureCache;
+	}
+
+	public MetadataCache<String, Codelist> getCodelistCache() {
+		return codelists;
+	}
+
+	public AvailabilityCache getAvailabilityCache() {
+		return availabilityCache;
+	}
+
+	// weight of a structure: the number of codes it retains
+	private static long weigh(DataFlowStructure dsd) {
+		long weight = 1;
+		for (Dimension dim: dsd.getDimensions()) {
+			Codelist cl = dim.getCodeList();
+			weight += cl != null ? cl.estimatedSize() : 0;
+		}
+		for (SdmxAttribute attr: dsd.getAttributes()) {
+			Codelist cl = attr.getCodeList();
+			weight += cl != null ? cl.estimatedSize() : 0;
+		}
+		return weight;
+	}
+
 	public String getDescription() {
 		return description;
 	}
@@ -210,4 +334,19 @@ public class Provider {
 		this.sdmxVersion = sdmxVersion;
 	}
 
+	/**
+	 * @return the preferred data format, {@link Configuration#DATA_FORMAT_XML} or {@link Configuration#DATA_FORMAT_CSV}
+	 */
+	public String getDataFormat() {
+		return dataFormat;
+	}
+
+	/**
+	 * @param dataFormat the preferred data format, {@link Configuration#DATA_FORMAT_XML} or
+	 *            {@link Configuration#DATA_FORMAT_CSV}. Clients already created are not affected.
+	 */
+	public void setDataFormat(String dataFormat) {
+		this.dataFormat = dataFormat;
+	}
+
 }
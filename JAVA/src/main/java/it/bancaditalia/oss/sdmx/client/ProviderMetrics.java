@@ -0,0 +1,387 @@
+/* Copyright 2010,2014 Bank Of Italy
+*
+* Licensed under the EUPL, Version 1.1 or - as soon they
+* will be approved by the European Commission - subsequent
+* versions of the EUPL (the "Licence");
+* You may not use this work except in compliance with the
+* Licence.
+* You may obtain a copy of the Licence at:
+*
+*
+* http://ec.europa.eu/idabc/eupl
+*
+* Unless required by applicable law or agreed to in
+* writing, software distributed under the Licence is
+* distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied.
+* See the Licence for the specific language governing
+* permissions and limitations under the Licence.
+*/
+package it.bancaditalia.oss.sdmx.client;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import it.bancaditalia.oss.sdmx.util.Configuration;
+import it.bancaditalia.oss.sdmx.util.LatencyHistogram;
+
+/**
+ * <p>
+ * Latency, throughput and cache metrics of a provider, collected by {@link RestSdmxClient#runQuery} and published in
+ * the platform MBean server as <code>it.bancaditalia.oss.sdmx:type=Provider,name=&lt;provider&gt;</code>.
+ *
+ * <p>
+ * Recording only touches striped counters and lock-free histograms. Cache statistics are read from the caches of the
+ * {@link Provider} when the MBean is queried; lookups in the shared {@link TimeSeriesCache} and in the clients cache
+ * of a session are counted as they happen. Registration can be disabled with the <code>jmx.enabled</code>
+ * configuration property; metrics are collected anyway.
+ */
+public class ProviderMetrics implements ProviderMetricsMXBean
+{
+	private static final Logger							LOGGER		= Configuration.getSdmxLogger();
+	private static final String							DOMAIN		= "it.bancaditalia.oss.sdmx";
+
+	/** The cache of the downloaded time series, see {@link TimeSeriesCache} */
+	public static final String							TIMESERIES_CACHE	= "timeseries";
+	/** The cache of the clients of a session, see {@link SdmxSession} */
+	public static final String							CLIENTS_CACHE		= "clients";
+
+	// key: provider name --> metrics
+	private static final Map<String, ProviderMetrics>	METRICS		= new ConcurrentHashMap<>();
+
+	private final String								provider;
+	private final LongAdder								requests	= new LongAdder();
+	private final Map<String, LongAdder>				errors		= new ConcurrentHashMap<>();
+	private final LatencyHistogram						connect		= new LatencyHistogram();
+	private final LatencyHistogram						firstByte	= new LatencyHistogram();
+	private final LatencyHistogram						transfer	= new LatencyHistogram();
+	private final LatencyHistogram						parse		= new LatencyHistogram();
+	private final LongAdder								wireBytes	= new LongAdder();
+	private final LongAdder								bytes		= new LongAdder();
+	private final LongAdder								observations	= new LongAdder();
+	private final LongAdder								transferNanos	= new LongAdder();
+	private final LongAdder								parseNanos	= new LongAdder();
+	// lookups in the caches not owned by the provider: cache name --> hits and misses
+	private final Map<String, LongAdder[]>				lookups		= new ConcurrentHashMap<>();
+
+	/**
+	 * An input stream that counts the bytes read and the time spent waiting for them.
+	 */
+	public static class MeteredInputStream extends FilterInputStream
+	{
+		private long	count	= 0;
+		private long	nanos	= 0;
+
+		public MeteredInputStream(InputStream in)
+		{
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			long start = System.nanoTime();
+			int b = super.read();
+			nanos += System.nanoTime() - start;
+			if (b >= 0)
+				count++;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException
+		{
+			long start = System.nanoTime();
+			int n = super.read(b, off, len);
+			nanos += System.nanoTime() - start;
+			if (n > 0)
+				count += n;
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException
+		{
+			long skipped = super.skip(n);
+			count += skipped;
+			return skipped;
+		}
+
+		public long getCount()
+		{
+			return count;
+		}
+
+		public long getNanos()
+		{
+			return nanos;
+		}
+	}
+
+	private ProviderMetrics(String provider)
+	{
+		this.provider = provider;
+	}
+
+	/**
+	 * Returns the metrics of a provider, creating and registering them the first time.
+	 * 
+	 * @param provider the provider name
+	 * @return the metrics of the provider
+	 */
+	public static ProviderMetrics get(String provider)
+	{
+		ProviderMetrics metrics = METRICS.get(provider);
+		if (metrics == null)
+		{
+			ProviderMetrics created = new ProviderMetrics(provider);
+			metrics = METRICS.putIfAbsent(provider, created);
+			if (metrics == null)
+			{
+				metrics = created;
+				if (Configuration.isJmxEnabled())
+					register(created);
+			}
+		}
+		return metrics;
+	}
+
+	/**
+	 * Counts a lookup in a cache that is not owned by the {@link Provider}, such as {@link #TIMESERIES_CACHE} or
+	 * {@link #CLIENTS_CACHE}.
+	 * 
+	 * @param cache the name of the cache
+	 * @param hit true if the entry was found
+	 */
+	public void recordCacheLookup(String cache, boolean hit)
+	{
+		lookups.computeIfAbsent(cache, c -> new LongAdder[] { new LongAdder(), new LongAdder() })[hit ? 0 : 1].increment();
+	}
+
+	public void recordRequest()
+	{
+		requests.increment();
+	}
+
+	/**
+	 * @param status the http status code, or the name of the exception for connection and parsing errors
+	 */
+	public void recordError(String status)
+	{
+		errors.computeIfAbsent(status, s -> new LongAdder()).increment();
+	}
+
+	public void recordConnect(long connectNanos, long firstByteNanos)
+	{
+		connect.record(connectNanos);
+		firstByte.record(firstByteNanos);
+	}
+
+	/**
+	 * @param wire the bytes received on the wire
+	 * @param decompressed the bytes received after decompression
+	 * @param transferNanos the time spent reading from the network
+	 * @param parseNanos the time spent parsing, excluding the network reads
+	 * @param parsed the number of observations parsed, or 0 for structural metadata
+	 */
+	public void recordResponse(long wire, long decompressed, long transferNanos, long parseNanos, long parsed)
+	{
+		wireBytes.add(wire);
+		bytes.add(decompressed);
+		transfer.record(transferNanos);
+		parse.record(parseNanos);
+		this.transferNanos.add(transferNanos);
+		this.parseNanos.add(parseNanos);
+		observations.add(parsed);
+	}
+
+	@Override
+	public String getProvider()
+	{
+		return provider;
+	}
+
+	@Override
+	public long getRequestCount()
+	{
+		return requests.sum();
+	}
+
+	@Override
+	public long getErrorCount()
+	{
+		long count = 0;
+		for (LongAdder adder : errors.values())
+			count += adder.sum();
+		return count;
+	}
+
+	@Override
+	public Map<String, Long> getErrorsByStatus()
+	{
+		Map<String, Long> result = new TreeMap<>();
+		for (Map.Entry<String, LongAdder> entry : errors.entrySet())
+			result.put(entry.getKey(), entry.getValue().sum());
+		return result;
+	}
+
+	@Override
+	public LatencyHistogram.Snapshot getConnectTime()
+	{
+		return connect.getSnapshot();
+	}
+
+	@Override
+	public LatencyHistogram.Snapshot getTimeToFirstByte()
+	{
+		return firstByte.getSnapshot();
+	}
+
+	@Override
+	public LatencyHistogram.Snapshot getTransferTime()
+	{
+		return transfer.getSnapshot();
+	}
+
+	@Override
+	public LatencyHistogram.Snapshot getParseTime()
+	{
+		return parse.getSnapshot();
+	}
+
+	@Override
+	public long getBytesOnWire()
+	{
+		return wireBytes.sum();
+	}
+
+	@Override
+	public long getBytesDecompressed()
+	{
+		return bytes.sum();
+	}
+
+	@Override
+	public long getObservationsParsed()
+	{
+		return observations.sum();
+	}
+
+	@Override
+	public double getObservationsPerSecond()
+	{
+		long nanos = parseNanos.sum();
+		return nanos > 0 ? observations.sum() * 1e9 / nanos : 0;
+	}
+
+	@Override
+	public double getBytesPerSecond()
+	{
+		long nanos = transferNanos.sum();
+		return nanos > 0 ? wireBytes.sum() * 1e9 / nanos : 0;
+	}
+
+	@Override
+	public Map<String, Double> getCacheHitRatios()
+	{
+		Map<String, Long> hits = getCacheHits();
+		Map<String, Long> misses = getCacheMisses();
+		Map<String, Double> result = new TreeMap<>();
+		for (Map.Entry<String, Long> entry : hits.entrySet())
+		{
+			long total = entry.getValue() + misses.get(entry.getKey());
+			result.put(entry.getKey(), total > 0 ? entry.getValue() / (double) total : 0.0);
+		}
+		return result;
+	}
+
+	@Override
+	public Map<String, Long> getCacheHits()
+	{
+		Map<String, Long> result = new TreeMap<>();
+		Provider p = SDMXClientFactory.getProviders().get(provider);
+		if (p != null)
+		{
+			result.put("dataflows", p.getFlowCache().getHitCount());
+			result.put("structures", p.getDSDCache().getHitCount());
+			result.put("codelists", p.getCodelistCache().getHitCount());
+			result.put("availability", p.getAvailabilityCache().getHitCount());
+		}
+		result.put(TIMESERIES_CACHE, 0L);
+		result.put(CLIENTS_CACHE, 0L);
+		for (Map.Entry<String, LongAdder[]> entry : lookups.entrySet())
+			result.put(entry.getKey(), entry.getValue()[0].sum());
+		return result;
+	}
+
+	@Override
+	public Map<String, Long> getCacheMisses()
+	{
+		Map<String, Long> result = new TreeMap<>();
+		Provider p = SDMXClientFactory.getProviders().get(provider);
+		if (p != null)
+		{
+			result.put("dataflows", p.getFlowCache().getMissCount());
+			result.put("structures", p.getDSDCache().getMissCount());
+			result.put("codelists", p.getCodelistCache().getMissCount());
+			result.put("availability", p.getAvailabilityCache().getMissCount());
+		}
+		result.put(TIMESERIES_CACHE, 0L);
+		result.put(CLIENTS_CACHE, 0L);
+		for (Map.Entry<String, LongAdder[]> entry : lookups.entrySet())
+			result.put(entry.getKey(), entry.getValue()[1].sum());
+		return result;
+	}
+
+	@Override
+	public void reset()
+	{
+		requests.reset();
+		errors.clear();
+		connect.reset();
+		firstByte.reset();
+		transfer.reset();
+		parse.reset();
+		wireBytes.reset();
+		bytes.reset();
+		observations.reset();
+		transferNanos.reset();
+		parseNanos.reset();
+		lookups.clear();
+	}
+
+	@Override
+	public String toString()
+	{
+		return provider + " [requests=" + getRequestCount() + ", errors=" + getErrorsByStatus() + ", connect=(" + connect
+				+ "), ttfb=(" + firstByte + "), transfer=(" + transfer + "), parse=(" + parse + "), wire="
+				+ getBytesOnWire() + "B, decompressed=" + getBytesDecompressed() + "B, observations="
+				+ getObservationsParsed() + "]";
+	}
+
+	private static void register(ProviderMetrics metrics)
+	{
+		try
+		{
+			ObjectName name = new ObjectName(DOMAIN + ":type=Provider,name=" + ObjectName.quote(metrics.provider));
+			if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name))
+				ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, name);
+		}
+		catch (JMException | SecurityException e)
+		{
+			LOGGER.log(Level.WARNING, "Could not register the metrics of provider " + metrics.provider, e);
+		}
+	}
+}
@@ -0,0 +1,105 @@
+/* Copyright 2010,2014 Bank Of Italy
+*
+* Licensed under the EUPL, Version 1.1 or - as soon they
+* will be approved by the European Commission - subsequent
+* versions of the EUPL (the "Licence");
+* You may not use this work except in compliance with the
+* Licence.
+* You may obtain a copy of the Licence at:
+*
+*
+* http://ec.europa.eu/idabc/eupl
+*
+* Unless required by applicable law or agreed to in
+* writing, software distributed under the Licence is
+* distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied.
+* See the Licence for the specific language governing
+* permissions and limitations under the Licence.
+*/
+package it.bancaditalia.oss.sdmx.client;
+
+import java.util.Map;
+
+import it.bancaditalia.oss.sdmx.util.LatencyHistogram;
+
+/**
+ * Management interface of the metrics collected for a provider. See {@link ProviderMetrics}.
+ */
+public interface ProviderMetricsMXBean
+{
+	public String getProvider();
+
+	/**
+	 * @return the number of queries sent to the provider, including the failed ones
+	 */
+	public long getRequestCount();
+
+	/**
+	 * @return the number of failed queries
+	 */
+	public long getErrorCount();
+
+	/**
+	 * @return the number of failed queries by http status code, or by exception name for connection and parsing
+	 *         errors
+	 */
+	public Map<String, Long> getErrorsByStatus();
+
+	/**
+	 * @return the time taken to open the connections
+	 */
+	public LatencyHistogram.Snapshot getConnectTime();
+
+	/**
+	 * @return the time between the connection and the response headers
+	 */
+	public LatencyHistogram.Snapshot getTimeToFirstByte();
+
+	/**
+	 * @return the time spent reading response bodies from the network
+	 */
+	public LatencyHistogram.Snapshot getTransferTime();
+
+	/**
+	 * @return the time spent parsing the responses, excluding the time waiting for the network
+	 */
+	public LatencyHistogram.Snapshot getParseTime();
+
+	/**
+	 * @return the number of bytes received, as sent by the provider (possibly compressed)
+	 */
+	public long getBytesOnWire();
+
+	/**
+	 * @return the number of bytes received, after decompression
+	 */
+	public long getBytesDecompressed();
+
+	public long getObservationsParsed();
+
+	/**
+	 * @return the number of observations parsed per second of parse time
+	 */
+	public double getObservationsPerSecond();
+
+	/**
+	 * @return the number of bytes on the wire received per second of transfer time
+	 */
+	public double getBytesPerSecond();
+
+	/**
+	 * @return the hit ratio of each metadata cache of the provider, between 0 and 1
+	 */
+	public Map<String, Double> getCacheHitRatios();
+
+	public Map<String, Long> getCacheHits();
+
+	public Map<String, Long> getCacheMisses();
+
+	/**
+	 * Clears all the collected metrics.
+	 */
+	public void reset();
+}
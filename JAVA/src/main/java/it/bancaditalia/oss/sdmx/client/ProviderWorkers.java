@@ -0,0 +1,157 @@
+/* Copyright 2010,2014 Bank Of Italy
+*
+* Licensed under the EUPL, Version 1.1 or - as soon they
+* will be approved by the European Commission - subsequent
+* versions of the EUPL (the "Licence");
+* You may not use this work except in compliance with the
+* Licence.
+* You may obtain a copy of the Licence at:
+*
+*
+* http://ec.europa.eu/idabc/eupl
+*
+* Unless required by applicable law or agreed to in
+* writing, software distributed under the Licence is
+* distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied.
+* See the Licence for the specific language governing
+* permissions and limitations under the Licence.
+*/
+package it.bancaditalia.oss.sdmx.client;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Worker threads shared by all the queries to a provider, so that the provider never receives more parallel calls
+ * of a kind than its concurrency budget, however many queries run at the same time. Idle workers terminate after a
+ * minute.
+ * 
+ * <p>
+ * Tasks of different kinds (batch queries, availability chunks, codelists) run in different pools, as a task may wait
+ * for tasks of another kind. The calls they make are limited all together by the permits of the provider.
+ */
+final class ProviderWorkers
+{
+	/**
+	 * A permit to call a provider, released when closed.
+	 */
+	interface Permit extends AutoCloseable
+	{
+		@Override
+		public void close();
+	}
+
+	// a semaphore whose number of permits can be changed while they are in use
+	private static class Permits extends Semaphore
+	{
+		private static final long	serialVersionUID	= 1L;
+
+		private int					size;
+
+		private Permits(int size)
+		{
+			super(size, true);
+			this.size = size;
+		}
+
+		private synchronized void resize(int newSize)
+		{
+			if (newSize > size)
+				release(newSize - size);
+			else if (newSize < size)
+				reducePermits(size - newSize);
+			size = newSize;
+		}
+	}
+
+	// key: provider name + task --> workers
+	private static final Map<String, ThreadPoolExecutor>	WORKERS	= new ConcurrentHashMap<>();
+	// key: provider name --> permits for its calls
+	private static final Map<String, Permits>				PERMITS	= new ConcurrentHashMap<>();
+	// providers that the current thread is already calling, e.g. from an event listener
+	private static final ThreadLocal<Set<String>>			CALLING	= ThreadLocal.withInitial(HashSet::new);
+
+	private ProviderWorkers()
+	{
+	}
+
+	/**
+	 * @param provider the provider name
+	 * @param task the kind of calls, used to name the threads
+	 * @param threads the maximum number of calls running at the same time. The pool follows changes of this value.
+	 * @return the workers of the provider
+	 */
+	static ExecutorService get(String provider, String task, int threads)
+	{
+		int size = Math.max(1, threads);
+		ThreadPoolExecutor workers = WORKERS.computeIfAbsent(provider + "-" + task, name -> {
+			AtomicInteger counter = new AtomicInteger();
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<>(), r -> {
+						Thread t = new Thread(r, "sdmx-" + name + "-" + counter.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					});
+			executor.allowCoreThreadTimeOut(true);
+			return executor;
+		});
+
+		synchronized (workers)
+		{
+			// the core size can never exceed the maximum size
+			if (size > workers.getMaximumPoolSize())
+			{
+				workers.setMaximumPoolSize(size);
+				workers.setCorePoolSize(size);
+			}
+			else if (size < workers.getMaximumPoolSize())
+			{
+				workers.setCorePoolSize(size);
+				workers.setMaximumPoolSize(size);
+			}
+		}
+		return workers;
+	}
+
+	/**
+	 * Waits until a call to a provider can start without exceeding its concurrency budget. A thread already calling
+	 * the provider gets a permit immediately.
+	 * 
+	 * @param provider the provider name
+	 * @param calls the maximum number of calls running at the same time. The permits follow changes of this value.
+	 * @return the permit, to close when the call ends
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	static Permit acquire(String provider, int calls) throws InterruptedException
+	{
+		Set<String> calling = CALLING.get();
+		if (!calling.add(provider))
+			return () -> {};
+
+		Permits permits = PERMITS.computeIfAbsent(provider, name -> new Permits(Math.max(1, calls)));
+		permits.resize(Math.max(1, calls));
+		try
+		{
+			permits.acquire();
+		}
+		catch (InterruptedException e)
+		{
+			calling.remove(provider);
+			throw e;
+		}
+		return () -> {
+			calling.remove(provider);
+			permits.release();
+		};
+	}
+}
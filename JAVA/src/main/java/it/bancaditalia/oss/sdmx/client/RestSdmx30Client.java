@@ -37,7 +37,6 @@ import it.bancaditalia.oss.sdmx.event.DataFooterMessageEvent;
 import it.bancaditalia.oss.sdmx.event.RestSdmxEvent;
 import it.bancaditalia.oss.sdmx.exceptions.SdmxException;
 import it.bancaditalia.oss.sdmx.exceptions.SdmxInvalidParameterException;
-import it.bancaditalia.oss.sdmx.parser.v21.CompactDataParser;
 import it.bancaditalia.oss.sdmx.parser.v21.DataParsingResult;
 import it.bancaditalia.oss.sdmx.parser.v30.AvailabilityParser;
 import it.bancaditalia.oss.sdmx.parser.v30.Sdmx30Queries;
@@ -93,29 +92,69 @@ public class RestSdmx30Client extends RestSdmxClient
 		return runQuery(new SeriesCountParser(), query, null, null);
 	}
 
-	protected DataParsingResult getData(Dataflow dataflow, DataFlowStructure dsd, String tsKey, String filter, String startTime, String endTime, 
-			boolean serieskeysonly, String updatedAfter, boolean includeHistory) throws SdmxException
-	{
-		if(tsKey != null && !tsKey.isEmpty()){ 
+	/**
+	 * Gets the number of time series selected by a key and a filter, written as in
+	 * {@link #getTimeSeries(Dataflow, DataFlowStructure, String, String, String, String, boolean, String, boolean)}.
+	 * 
+	 * @param dataflow the dataflow
+	 * @param dsd the structure of the dataflow
+	 * @param tsKey the series key, possibly with '+' (may be null)
+	 * @param filter the filter (may be null)
+	 * @return the number of series, or null if the provider did not report it
+	 * @throws SdmxException
+	 */
+	public Integer getAvailableTimeSeriesNumber(Dataflow dataflow, DataFlowStructure dsd, String tsKey, String filter) throws SdmxException {
+		return runQuery(new SeriesCountParser(), buildAvailabilityQuery(dataflow, dsd, tsKey, filter, "exact"), null, null);
+	}
+
+	/**
+	 * Gets the codes available for each dimension within the series selected by a key and a filter, written as in
+	 * {@link #getTimeSeries(Dataflow, DataFlowStructure, String, String, String, String, boolean, String, boolean)}.
+	 * 
+	 * @param dataflow the dataflow
+	 * @param dsd the structure of the dataflow
+	 * @param tsKey the series key, possibly with '+' (may be null)
+	 * @param filter the filter (may be null)
+	 * @param mode exact or available
+	 * @return key: dimension id --&gt; available codes
+	 * @throws SdmxException
+	 */
+	public Map<String, List<String>> getAvailableCubeRegion(Dataflow dataflow, DataFlowStructure dsd, String tsKey, String filter, String mode) throws SdmxException {
+		return runQuery(new AvailabilityParser(), buildAvailabilityQuery(dataflow, dsd, tsKey, filter, mode), null, null);
+	}
+
+	private URL buildAvailabilityQuery(Dataflow dataflow, DataFlowStructure dsd, String tsKey, String filter, String mode) throws SdmxException {
+		String[] selection = toSelection(tsKey, filter, dsd);
+		return Sdmx30Queries.createAvailabilityQueryByKey(endpoint, dataflow.getFullIdentifier(), 
+				selection[0] != null ? selection[0] : "*", selection[1], mode).buildQuery();
+	}
+
+	// the key path (null for all the series) and filter of the SDMX 3 query matching an SDMX 2 style key and a filter
+	private String[] toSelection(String tsKey, String filter, DataFlowStructure dsd) throws SdmxInvalidParameterException {
+		String key = null;
+		if(tsKey != null && !tsKey.isEmpty()){
 			if(tsKey.contains("+")){
 				//if the key contains a plus it is an old sdmx2 query and the only way to map it is with a filter
 				String mappedFilter = mapSDMX2KeytoSDMX3FIlter(tsKey, dsd);
-				if(filter != null && !filter.isEmpty())
-					filter += "&" + mappedFilter;
-				else
-					filter = mappedFilter;
-				tsKey = null;
+				filter = filter != null && !filter.isEmpty() ? filter + "&" + mappedFilter : mappedFilter;
 			}
-			else{
+			else
 				//just make sure wildcard character is ip to date  
-				tsKey = tsKey.replace("..", ".*.").replace("..", ".*."); //twice for three dots
-			}
+				key = tsKey.replace("..", ".*.").replace("..", ".*."); //twice for three dots
 		}
+		return new String[] { key, filter };
+	}
+
+	protected DataParsingResult getData(Dataflow dataflow, DataFlowStructure dsd, String tsKey, String filter, String startTime, String endTime, 
+			boolean serieskeysonly, String updatedAfter, boolean includeHistory) throws SdmxException
+	{
+		String[] selection = toSelection(tsKey, filter, dsd);
+		tsKey = selection[0];
+		filter = selection[1];
 
 		URL query = buildDataQuery(dataflow, tsKey, filter, startTime, endTime, serieskeysonly, updatedAfter, includeHistory);
 		String dumpName = "data_" + dataflow.getId() + "_" + filter; //.replaceAll("\\p{Punct}", "_");
-		DataParsingResult ts = runQuery(new CompactDataParser(dsd, dataflow, !serieskeysonly), query,
-				"application/vnd.sdmx.structurespecificdata+xml;version=2.1", dumpName);
+		DataParsingResult ts = runDataQuery(dsd, dataflow, serieskeysonly, query, dumpName);
 		Message msg = ts.getMessage();
 		if (msg != null)
 		{
@@ -128,7 +167,7 @@ public class RestSdmx30Client extends RestSdmxClient
 	
 	private String mapSDMX2KeytoSDMX3FIlter(String tsKey, DataFlowStructure dsd) throws SdmxInvalidParameterException {
 		String filter = "";
-		Dimension[] dims = (Dimension[]) dsd.getDimensions().toArray();
+		Dimension[] dims = dsd.getDimensions().toArray(new Dimension[0]);
 		String delims = "[.]";
 		String[] tokens = tsKey.split(delims);
 		if(tokens.length > dims.length)
@@ -169,6 +208,18 @@ public class RestSdmx30Client extends RestSdmxClient
 	{
 		return Sdmx30Queries.createCodelistQuery(endpoint, codeList, agency, version).buildQuery();
 	}
+
+	@Override
+	protected String joinCodelistIds(List<String> ids)
+	{
+		return String.join(",", ids);
+	}
+
+	@Override
+	protected String getCsvAcceptHeader()
+	{
+		return "application/vnd.sdmx.data+csv;version=2.0.0";
+	}
 	
 	protected URL buildAvailabilityQuery(Dataflow dataflow, String filter, String mode) throws SdmxException
 	{
@@ -23,11 +23,13 @@ package it.bancaditalia.oss.sdmx.client;
 import static it.bancaditalia.oss.sdmx.util.Configuration.getLanguages;
 import static java.lang.String.format;
 import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FilterInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -42,7 +44,10 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -64,16 +69,24 @@ import it.bancaditalia.oss.sdmx.api.GenericSDMXClient;
 import it.bancaditalia.oss.sdmx.api.SDMXReference;
 import it.bancaditalia.oss.sdmx.api.Message;
 import it.bancaditalia.oss.sdmx.api.PortableTimeSeries;
+import it.bancaditalia.oss.sdmx.event.CompletionEvent;
+import it.bancaditalia.oss.sdmx.event.ConnectionEvent;
 import it.bancaditalia.oss.sdmx.event.DataFooterMessageEvent;
+import it.bancaditalia.oss.sdmx.event.DecompressionEvent;
+import it.bancaditalia.oss.sdmx.event.FirstByteEvent;
 import it.bancaditalia.oss.sdmx.event.OpenEvent;
+import it.bancaditalia.oss.sdmx.event.ParseStartEvent;
+import it.bancaditalia.oss.sdmx.event.ProgressEvent;
 import it.bancaditalia.oss.sdmx.event.RedirectionEvent;
 import it.bancaditalia.oss.sdmx.event.RestSdmxEvent;
 import it.bancaditalia.oss.sdmx.event.RestSdmxEventListener;
+import it.bancaditalia.oss.sdmx.event.SeriesParsedEvent;
 import it.bancaditalia.oss.sdmx.exceptions.SdmxException;
 import it.bancaditalia.oss.sdmx.exceptions.SdmxExceptionFactory;
 import it.bancaditalia.oss.sdmx.exceptions.SdmxIOException;
 import it.bancaditalia.oss.sdmx.exceptions.SdmxInvalidParameterException;
 import it.bancaditalia.oss.sdmx.exceptions.SdmxRedirectionException;
+import it.bancaditalia.oss.sdmx.exceptions.SdmxResponseException;
 import it.bancaditalia.oss.sdmx.exceptions.SdmxXmlContentException;
 import it.bancaditalia.oss.sdmx.parser.v21.CodelistParser;
 import it.bancaditalia.oss.sdmx.parser.v21.CompactDataParser;
@@ -81,7 +94,9 @@ import it.bancaditalia.oss.sdmx.parser.v21.DataParsingResult;
 import it.bancaditalia.oss.sdmx.parser.v21.DataStructureParser;
 import it.bancaditalia.oss.sdmx.parser.v21.DataflowParser;
 import it.bancaditalia.oss.sdmx.parser.v21.Sdmx21Queries;
+import it.bancaditalia.oss.sdmx.parser.v21.SdmxCsvDataParser;
 import it.bancaditalia.oss.sdmx.util.Configuration;
+import it.bancaditalia.oss.sdmx.util.FlightEvents;
 
 /**
  * @author Attilio Mattiocco
@@ -112,7 +127,11 @@ public class RestSdmxClient implements GenericSDMXClient
 	protected RestSdmxEventListener	dataFooterMessageEventListener	= RestSdmxEventListener.NO_OP_LISTENER;
 	protected RestSdmxEventListener	redirectionEventListener		= RestSdmxEventListener.NO_OP_LISTENER;
 	protected RestSdmxEventListener	openEventListener				= RestSdmxEventListener.NO_OP_LISTENER;
+	protected RestSdmxEventListener	lifecycleEventListener			= RestSdmxEventListener.NO_OP_LISTENER;
 	protected int maxRedirects = 20;
+	protected volatile String		dataFormat						= Configuration.DATA_FORMAT_XML;
+
+	protected static final String	XML_DATA_ACCEPT					= "application/vnd.sdmx.structurespecificdata+xml;version=2.1";
 	
 	protected final String LATEST_VERSION	= "latest";
 	protected final String ALL_AGENCIES	= "all";
@@ -183,6 +202,35 @@ public class RestSdmxClient implements GenericSDMXClient
 		this.openEventListener = eventListener;
 	}
 
+	/**
+	 * Sets a listener for the timed lifecycle events of every query: {@link ConnectionEvent}, {@link FirstByteEvent},
+	 * {@link ProgressEvent}, {@link DecompressionEvent}, {@link ParseStartEvent}, {@link SeriesParsedEvent} and
+	 * {@link CompletionEvent}. The listener is called on the querying thread. Its exceptions are logged and do not
+	 * affect the query.
+	 * 
+	 * @param eventListener the listener
+	 */
+	public void setLifecycleEventListener(RestSdmxEventListener eventListener)
+	{
+		this.lifecycleEventListener = eventListener != null ? eventListener : RestSdmxEventListener.NO_OP_LISTENER;
+	}
+
+	/**
+	 * Sets the preferred format of data messages. If it is {@link Configuration#DATA_FORMAT_CSV}, data queries ask for
+	 * SDMX-CSV, accepting XML as a fallback; if the provider rejects the request, XML is used from then on.
+	 * 
+	 * @param dataFormat {@link Configuration#DATA_FORMAT_XML} or {@link Configuration#DATA_FORMAT_CSV}
+	 */
+	public void setDataFormat(String dataFormat)
+	{
+		this.dataFormat = dataFormat != null ? dataFormat : Configuration.DATA_FORMAT_XML;
+	}
+
+	public String getDataFormat()
+	{
+		return dataFormat;
+	}
+
 	public void setMaxRedirects(int maxRedirects)
 	{
 		this.maxRedirects = maxRedirects;
@@ -237,7 +285,7 @@ public class RestSdmxClient implements GenericSDMXClient
 		else
 		{
 			URL query = buildDSDQuery(dsd.getId(), dsd.getAgency(), dsd.getVersion(), full);
-			return runQuery(new DataStructureParser(), query, null, "datastructure_" + dsd.getId()).get(0);
+			return runQuery(new DataStructureParser(Configuration.isCodelistsLazy(name)), query, null, "datastructure_" + dsd.getId()).get(0);
 		}
 	}
 
@@ -248,6 +296,42 @@ public class RestSdmxClient implements GenericSDMXClient
 		return runQuery(new CodelistParser(), query, null, "codelist_" + codeList);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * If the provider is configured to accept many codelist ids in a structure query, codelists sharing agency and
+	 * version are retrieved with a single query.
+	 */
+	@Override
+	public Map<String, Codelist> getCodes(Collection<? extends SDMXReference> codelists) throws SdmxException
+	{
+		if (codelists.size() < 2 || !Configuration.isCodelistsBatchQuery(name))
+			return GenericSDMXClient.super.getCodes(codelists);
+
+		// key: agency and version --> requested codelists
+		Map<String, List<SDMXReference>> groups = new LinkedHashMap<>();
+		for (SDMXReference cl : codelists)
+			groups.computeIfAbsent(cl.getAgency() + "," + cl.getVersion(), k -> new ArrayList<>()).add(cl);
+
+		Map<String, Codelist> result = new LinkedHashMap<>();
+		for (List<SDMXReference> group : groups.values())
+		{
+			SDMXReference first = group.get(0);
+			String ids = joinCodelistIds(group.stream().map(SDMXReference::getId).collect(toList()));
+			URL query = buildCodelistQuery(ids, first.getAgency(), first.getVersion());
+			Map<String, Codelist> found = runQuery(CodelistParser::getCodelists, query, null, "codelist_" + first.getId());
+
+			// the response has the actual versions: match by id
+			Map<String, Codelist> byId = new HashMap<>();
+			for (Codelist codes : found.values())
+				byId.put(codes.getId(), codes);
+			for (SDMXReference cl : group)
+				if (byId.containsKey(cl.getId()))
+					result.put(cl.getFullIdentifier(), byId.get(cl.getId()));
+		}
+		return result;
+	}
+
 	@Override
 	public List<PortableTimeSeries<Double>> getTimeSeries(Dataflow dataflow, DataFlowStructure dsd, String resource, 
 			String startTime, String endTime,
@@ -281,8 +365,7 @@ public class RestSdmxClient implements GenericSDMXClient
 	{
 		URL query = buildDataQuery(dataflow, resource, startTime, endTime, serieskeysonly, updatedAfter, includeHistory);
 		String dumpName = "data_" + dataflow.getId() + "_" + resource; //.replaceAll("\\p{Punct}", "_");
-		DataParsingResult ts = runQuery(new CompactDataParser(dsd, dataflow, !serieskeysonly), query,
-				"application/vnd.sdmx.structurespecificdata+xml;version=2.1", dumpName);
+		DataParsingResult ts = runDataQuery(dsd, dataflow, serieskeysonly, query, dumpName);
 		Message msg = ts.getMessage();
 		if (msg != null)
 		{
@@ -293,6 +376,46 @@ public class RestSdmxClient implements GenericSDMXClient
 		return ts;
 	}
 
+	/**
+	 * Runs a data query in the preferred data format of this client. Series keys are always requested as XML.
+	 * 
+	 * @param dsd the structure of the data
+	 * @param dataflow the dataflow
+	 * @param serieskeysonly true if only the series keys are requested
+	 * @param query the query
+	 * @param dumpName the name of the dump file
+	 * @return the parsed data
+	 * @throws SdmxException if the query fails
+	 */
+	protected DataParsingResult runDataQuery(DataFlowStructure dsd, Dataflow dataflow, boolean serieskeysonly, URL query, String dumpName)
+			throws SdmxException
+	{
+		Parser<DataParsingResult> parser = new CompactDataParser(dsd, dataflow, !serieskeysonly);
+		if (serieskeysonly || !Configuration.DATA_FORMAT_CSV.equals(dataFormat))
+			return runQuery(parser, query, XML_DATA_ACCEPT, dumpName);
+
+		try
+		{
+			return runQuery(new SdmxCsvDataParser(dsd, dataflow, parser), query, getCsvAcceptHeader() + ", " + XML_DATA_ACCEPT + ";q=0.5", dumpName);
+		}
+		catch (SdmxResponseException e)
+		{
+			if (e.getResponseCode() != SdmxResponseException.SDMX_NOT_ACCEPTABLE)
+				throw e;
+			LOGGER.info("The provider " + name + " does not support SDMX-CSV. Using XML.");
+			dataFormat = Configuration.DATA_FORMAT_XML;
+			return runQuery(parser, query, XML_DATA_ACCEPT, dumpName);
+		}
+	}
+
+	/**
+	 * @return the media type of SDMX-CSV data messages supported by this client
+	 */
+	protected String getCsvAcceptHeader()
+	{
+		return "application/vnd.sdmx.data+csv;version=1.0.0";
+	}
+
 	@Override
 	public boolean needsCredentials()
 	{
@@ -348,7 +471,8 @@ public class RestSdmxClient implements GenericSDMXClient
 	}
 
 	/**
-	 * Returns a reader over the result of an http query.
+	 * Returns a reader over the result of an http query. The query waits while the provider is already receiving as
+	 * many calls as its concurrency budget, from any thread.
 	 *
 	 * @param query a non-null query
 	 * @param acceptHeader a nullable accept header
@@ -357,12 +481,32 @@ public class RestSdmxClient implements GenericSDMXClient
 	 * @throws SdmxException
 	 */
 	protected final <T> T runQuery(Parser<T> parser, URL query, String acceptHeader, String dumpName) throws SdmxException
+	{
+		try (ProviderWorkers.Permit permit = ProviderWorkers.acquire(name, Configuration.getMaxConcurrency(name)))
+		{
+			return exchange(parser, query, acceptHeader, dumpName);
+		}
+		catch (InterruptedException e)
+		{
+			throw SdmxExceptionFactory.interrupted(e);
+		}
+	}
+
+	private <T> T exchange(Parser<T> parser, URL query, String acceptHeader, String dumpName) throws SdmxException
 	{
 		final String sourceMethod = "runQuery";
 		LOGGER.entering(SOURCE_CLASS, sourceMethod);
 
 		URLConnection conn = null;
 		URL url = null;
+		ProviderMetrics metrics = ProviderMetrics.get(name);
+		metrics.recordRequest();
+		FlightEvents.Exchange exchangeEvent = FlightEvents.exchange(name, query.toString());
+		long connectNanos = 0, firstByteNanos = 0, transferNanos = 0;
+		long startTime = System.nanoTime();
+		int status = 0;
+		long received = 0;
+		Throwable failure = null;
 		LOGGER.log(Level.INFO, "Contacting web service with query: {0}", query);
 		LOGGER.log(Level.FINE, "Supports compression: {0}", this.supportsCompression);
 		try
@@ -372,60 +516,80 @@ public class RestSdmxClient implements GenericSDMXClient
 			URL originalURL = url;
 
 			Proxy proxy = (proxySelector != null ? proxySelector : ProxySelector.getDefault()).select(url.toURI()).get(0);
-			LOGGER.fine("Using proxy: " + proxy);
+			LOGGER.fine(() -> "Using proxy: " + proxy);
 			
 			openEventListener.onSdmxEvent(new OpenEvent(url, acceptHeader, getLanguages(), proxy));
 
+			HttpArchive archive = HttpArchive.getInstance();
 			int redirects = 0;
 			do
 			{
-				conn = url.openConnection(proxy);
-
-				if (conn instanceof HttpsURLConnection && sslSocketFactory != null)
+				if (archive.isReplaying())
 				{
-					LOGGER.fine("Using custom SSLSocketFactory for provider " + name);
-					((HttpsURLConnection) conn).setSSLSocketFactory(sslSocketFactory);
+					conn = archive.replay(url, acceptHeader, getAcceptLanguage());
+					code = ((HttpURLConnection) conn).getResponseCode();
 				}
-
-				if (conn instanceof HttpsURLConnection && hostnameVerifier != null)
+				else
 				{
-					LOGGER.fine("Using custom HostnameVerifier for provider " + name);
-					((HttpsURLConnection) conn).setHostnameVerifier(hostnameVerifier);
-				}
+					conn = url.openConnection(proxy);
 
-				conn.setReadTimeout(readTimeout);
-				conn.setConnectTimeout(connectTimeout);
+					if (conn instanceof HttpsURLConnection && sslSocketFactory != null)
+					{
+						LOGGER.fine(() -> "Using custom SSLSocketFactory for provider " + name);
+						((HttpsURLConnection) conn).setSSLSocketFactory(sslSocketFactory);
+					}
 
-				if (conn instanceof HttpURLConnection)
-				{
-					((HttpURLConnection) conn).setRequestMethod("GET");
-					((HttpURLConnection) conn).setInstanceFollowRedirects(false);
-					handleHttpHeaders((HttpURLConnection) conn, acceptHeader);
-				}
+					if (conn instanceof HttpsURLConnection && hostnameVerifier != null)
+					{
+						LOGGER.fine(() -> "Using custom HostnameVerifier for provider " + name);
+						((HttpsURLConnection) conn).setHostnameVerifier(hostnameVerifier);
+					}
 
-				code = conn instanceof HttpURLConnection ? ((HttpURLConnection) conn).getResponseCode() : HttpURLConnection.HTTP_OK;
-				if (code == HttpURLConnection.HTTP_PROXY_AUTH)
-				{
-					LOGGER.fine("Error with proxy. Second attempt after forcing acces to http website in first place.");
-					URI uritest= new URI("http://google.com");
-					URL urltest = uritest.toURL();
-					conn = urltest.openConnection(proxy);
-					((HttpURLConnection) conn).setRequestMethod("GET");
-					code = conn instanceof HttpURLConnection ? ((HttpURLConnection) conn).getResponseCode() : HttpURLConnection.HTTP_OK;
-					conn = url.openConnection(proxy);
-					((HttpURLConnection) conn).setRequestMethod("GET");
-					((HttpURLConnection) conn).setInstanceFollowRedirects(false);
-					handleHttpHeaders((HttpURLConnection) conn, acceptHeader);
-					code = conn instanceof HttpURLConnection ? ((HttpURLConnection) conn).getResponseCode() : HttpURLConnection.HTTP_OK;
+					conn.setReadTimeout(readTimeout);
+					conn.setConnectTimeout(connectTimeout);
 
-				}
-				if (code == HttpURLConnection.HTTP_INTERNAL_ERROR)
-				{
-					LOGGER.log(Level.SEVERE, "Error on the provider side. Second attempt...");
-					conn = url.openConnection(proxy);
-					((HttpURLConnection) conn).setRequestMethod("GET");
+					if (conn instanceof HttpURLConnection)
+					{
+						((HttpURLConnection) conn).setRequestMethod("GET");
+						((HttpURLConnection) conn).setInstanceFollowRedirects(false);
+						handleHttpHeaders((HttpURLConnection) conn, acceptHeader);
+					}
+
+					long connectStart = System.nanoTime();
+					conn.connect();
+					long connected = System.nanoTime();
 					code = conn instanceof HttpURLConnection ? ((HttpURLConnection) conn).getResponseCode() : HttpURLConnection.HTTP_OK;
+					long firstByte = System.nanoTime() - connected;
+					metrics.recordConnect(connected - connectStart, firstByte);
+					connectNanos += connected - connectStart;
+					firstByteNanos += firstByte;
+					fireLifecycleEvent(new ConnectionEvent(query, startTime, url, connected - connectStart));
+					if (code == HttpURLConnection.HTTP_PROXY_AUTH)
+					{
+						LOGGER.fine("Error with proxy. Second attempt after forcing acces to http website in first place.");
+						URI uritest= new URI("http://google.com");
+						URL urltest = uritest.toURL();
+						conn = urltest.openConnection(proxy);
+						((HttpURLConnection) conn).setRequestMethod("GET");
+						code = conn instanceof HttpURLConnection ? ((HttpURLConnection) conn).getResponseCode() : HttpURLConnection.HTTP_OK;
+						conn = url.openConnection(proxy);
+						((HttpURLConnection) conn).setRequestMethod("GET");
+						((HttpURLConnection) conn).setInstanceFollowRedirects(false);
+						handleHttpHeaders((HttpURLConnection) conn, acceptHeader);
+						code = conn instanceof HttpURLConnection ? ((HttpURLConnection) conn).getResponseCode() : HttpURLConnection.HTTP_OK;
+
+					}
+					if (code == HttpURLConnection.HTTP_INTERNAL_ERROR)
+					{
+						LOGGER.log(Level.SEVERE, "Error on the provider side. Second attempt...");
+						conn = url.openConnection(proxy);
+						((HttpURLConnection) conn).setRequestMethod("GET");
+						code = conn instanceof HttpURLConnection ? ((HttpURLConnection) conn).getResponseCode() : HttpURLConnection.HTTP_OK;
+
+					}
 
+					if (archive.isRecording() && conn instanceof HttpURLConnection)
+						conn = archive.record(url, acceptHeader, getAcceptLanguage(), (HttpURLConnection) conn);
 				}
 				
 				if (isRedirection(code))
@@ -444,21 +608,28 @@ public class RestSdmxClient implements GenericSDMXClient
 				}
 			} while (isRedirection(code) && !(isMaxRedirectionReached(redirects)));
 			
+			exchangeEvent.setStatus(code);
+			status = code;
+			fireLifecycleEvent(new FirstByteEvent(query, startTime, code, conn.getContentLengthLong(), conn.getContentEncoding()));
 			if (isMaxRedirectionReached(redirects)) {
 				throw new SdmxRedirectionException("Max redirection reached");
 			}
 			
 			if (code == HttpURLConnection.HTTP_OK)
 			{
-				LOGGER.fine("Connection opened. Code: " + code);
-				InputStream stream = conn.getInputStream();
+				LOGGER.log(Level.FINE, "Connection opened. Code: {0}", code);
+				ProviderMetrics.MeteredInputStream wire = new ProviderMetrics.MeteredInputStream(conn.getInputStream());
+				InputStream stream = wire;
+				if (lifecycleEventListener != RestSdmxEventListener.NO_OP_LISTENER)
+					stream = new ProgressInputStream(stream, query, startTime, conn.getContentLengthLong());
 				String encoding = conn.getContentEncoding() == null ? "" : conn.getContentEncoding();
-				if (encoding.equalsIgnoreCase("gzip"))
+				boolean compressed = encoding.equalsIgnoreCase("gzip");
+				if (compressed)
 					stream = new GZIPInputStream(stream);
 				else if(this.supportsCompression)
 				{
 					String disposition = conn.getHeaderField("Content-Disposition") == null ? "" : conn.getHeaderField("Content-Disposition");
-					LOGGER.fine("Content-Disposition: " + disposition );
+					LOGGER.fine(() -> "Content-Disposition: " + disposition );
 					if(disposition.contains(".gz"))
 					{
 						if(this.RaisedWarning == false)
@@ -467,6 +638,7 @@ public class RestSdmxClient implements GenericSDMXClient
 							setRaisedWarning(true);
 							}
 						stream = new GZIPInputStream(stream);
+						compressed = true;
 					}
 				}
 					/*else if (encoding.equalsIgnoreCase("deflate"))
@@ -499,6 +671,8 @@ public class RestSdmxClient implements GenericSDMXClient
 						dumpfile.close();
 						stream = new ByteArrayInputStream(baos.toByteArray());
 					}
+					if (compressed)
+						fireLifecycleEvent(new DecompressionEvent(query, startTime, wire.getCount(), baos.size()));
 				}
 				else if (this.supportsCompression)
 				{
@@ -509,17 +683,46 @@ public class RestSdmxClient implements GenericSDMXClient
 						baos.write(buf, 0, i);
 					baos.close();
 					stream = new ByteArrayInputStream(baos.toByteArray());
+					if (compressed)
+						fireLifecycleEvent(new DecompressionEvent(query, startTime, wire.getCount(), baos.size()));
 				}
 
-				try (Reader reader = new InputStreamReader(stream, StandardCharsets.UTF_8))
+				ProviderMetrics.MeteredInputStream decompressed = new ProviderMetrics.MeteredInputStream(stream);
+				try (Reader reader = new InputStreamReader(decompressed, StandardCharsets.UTF_8))
 				{
-					XMLInputFactory inputFactory = XMLInputFactory.newFactory();
-					preventXXE(inputFactory);
 					BufferedReader br = skipBOM(reader);
-					// InputStream in = new ByteArrayInputStream(xmlBuffer);
-					XMLEventReader eventReader = inputFactory.createXMLEventReader(br);
-
-					return parser.parse(eventReader, getLanguages());
+					boolean text = parser.isTextFormat(conn.getContentType());
+
+					// the parser pulls from the network: the time spent waiting for it is transfer, not parsing
+					FlightEvents.Parse parseEvent = FlightEvents.parse(name, parser.getClass().getName());
+					fireLifecycleEvent(new ParseStartEvent(query, startTime, parser.getClass().getName()));
+					long parseStart = System.nanoTime();
+					long transferBefore = wire.getNanos();
+					T result;
+					if (text)
+						result = parser.parse(br, getLanguages());
+					else
+					{
+						XMLInputFactory inputFactory = XMLInputFactory.newFactory();
+						preventXXE(inputFactory);
+						XMLEventReader eventReader = inputFactory.createXMLEventReader(br);
+						result = parser.parse(eventReader, getLanguages());
+					}
+					long parseNanos = System.nanoTime() - parseStart - (wire.getNanos() - transferBefore);
+					long observations = 0;
+					if (result instanceof DataParsingResult)
+						for (PortableTimeSeries<Double> ts : (DataParsingResult) result)
+							observations += ts.size();
+					int series = result instanceof Collection ? ((Collection<?>) result).size() : 0;
+					parseEvent.setCounts(series, observations);
+					parseEvent.commit();
+					fireLifecycleEvent(new SeriesParsedEvent(query, startTime, series, observations, parseNanos));
+
+					transferNanos = wire.getNanos();
+					received = wire.getCount();
+					metrics.recordResponse(wire.getCount(), decompressed.getCount(), transferNanos, parseNanos, observations);
+					exchangeEvent.setBytes(wire.getCount(), decompressed.getCount());
+					return result;
 				}
 			}
 			else
@@ -529,26 +732,37 @@ public class RestSdmxClient implements GenericSDMXClient
 					String msg = new BufferedReader(new InputStreamReader(is)).readLine();
 					LOGGER.severe(msg);
 				}
+				metrics.recordError(String.valueOf(code));
 				SdmxException ex = SdmxExceptionFactory.createRestException(code, null, null);
 				if (conn instanceof HttpURLConnection)
 					((HttpURLConnection) conn).disconnect();
 				throw ex;
 			}
 		}
+		catch (SdmxException | RuntimeException e)
+		{
+			failure = e;
+			throw e;
+		}
 		catch (IOException e)
 		{
+			failure = e;
+			metrics.recordError(e.getClass().getSimpleName());
 			LOGGER.severe("Exception. Class: " + e.getClass().getName() + " - Message: " + e.getMessage());
 			LOGGER.log(Level.FINER, "Exception: ", e);
 			throw SdmxExceptionFactory.wrap(e);
 		}
 		catch (XMLStreamException e)
 		{
+			failure = e;
+			metrics.recordError(e.getClass().getSimpleName());
 			LOGGER.severe("Exception caught parsing results from call to provider " + name);
 			LOGGER.log(Level.FINER, "Exception: ", e);
 			throw SdmxExceptionFactory.wrap(e);
 		}
 		catch (URISyntaxException e)
 		{
+			failure = e;
 			LOGGER.severe("Exception caught parsing results from call to provider " + name);
 			LOGGER.log(Level.FINER, "Exception: ", e);
 			throw SdmxExceptionFactory.wrap(e);
@@ -557,15 +771,28 @@ public class RestSdmxClient implements GenericSDMXClient
 		{
 			if (conn != null && conn instanceof HttpURLConnection)
 				((HttpURLConnection) conn).disconnect();
+			exchangeEvent.setPhases(connectNanos, firstByteNanos, transferNanos);
+			exchangeEvent.commit();
+			fireLifecycleEvent(new CompletionEvent(query, startTime, status, received, failure));
+		}
+	}
+
+	// a failing listener must not change the outcome of the query
+	private void fireLifecycleEvent(RestSdmxEvent event)
+	{
+		try
+		{
+			lifecycleEventListener.onSdmxEvent(event);
+		}
+		catch (RuntimeException e)
+		{
+			LOGGER.log(Level.WARNING, "Lifecycle event listener failed on " + event.getClass().getSimpleName(), e);
 		}
 	}
 
 	protected void handleHttpHeaders(HttpURLConnection conn, String acceptHeader)
 	{
-		String lList = Configuration.getLanguages().stream()
-			.map(lr -> format(Locale.US, "%s;q=%.1f", lr.getRange(), lr.getWeight()))
-			.collect(joining(","));
-		conn.addRequestProperty("Accept-Language", lList);
+		conn.addRequestProperty("Accept-Language", getAcceptLanguage());
 		if (containsCredentials)
 		{
 			LOGGER.fine("Setting http authorization");
@@ -587,6 +814,13 @@ public class RestSdmxClient implements GenericSDMXClient
 			conn.setRequestProperty("Accept", "*/*");
 	}
 
+	protected static String getAcceptLanguage()
+	{
+		return Configuration.getLanguages().stream()
+			.map(lr -> format(Locale.US, "%s;q=%.1f", lr.getRange(), lr.getWeight()))
+			.collect(joining(","));
+	}
+
 	protected URL buildDataQuery(Dataflow dataflow, String resource, String startTime, String endTime, boolean serieskeysonly, String updatedAfter, boolean includeHistory) throws SdmxException
 	{
 		if (endpoint != null && dataflow != null && resource != null && !resource.isEmpty())
@@ -615,6 +849,12 @@ public class RestSdmxClient implements GenericSDMXClient
 		return Sdmx21Queries.createCodelistQuery(endpoint, codeList, agency, version).buildSdmx21Query();
 	}
 
+	// many resource ids in the path of a structure query
+	protected String joinCodelistIds(List<String> ids)
+	{
+		return String.join("+", ids);
+	}
+
 	private static boolean isRedirection(int code)
 	{
 		return (code >= HttpURLConnection.HTTP_MULT_CHOICE && code <= HttpURLConnection.HTTP_SEE_OTHER) 
@@ -714,4 +954,54 @@ public class RestSdmxClient implements GenericSDMXClient
 		return "https".equalsIgnoreCase(oldUrl.getProtocol())
 			&& !"https".equalsIgnoreCase(newUrl.getProtocol());
 	}
+
+	// sends a progress event every PROGRESS_STEP bytes, and at the end of the stream
+	private class ProgressInputStream extends FilterInputStream
+	{
+		private static final long	PROGRESS_STEP	= 65536;
+
+		private final URL			query;
+		private final long			startTime;
+		private final long			contentLength;
+		private final long			firstByteTime	= System.nanoTime();
+		private long				bytes			= 0;
+		private long				next			= PROGRESS_STEP;
+		private boolean				ended			= false;
+
+		private ProgressInputStream(InputStream in, URL query, long startTime, long contentLength)
+		{
+			super(in);
+			this.query = query;
+			this.startTime = startTime;
+			this.contentLength = contentLength;
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			int b = super.read();
+			progress(b < 0 ? -1 : 1);
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException
+		{
+			int n = super.read(b, off, len);
+			progress(n);
+			return n;
+		}
+
+		private void progress(int n)
+		{
+			if (n > 0)
+				bytes += n;
+			if (n < 0 && !ended || bytes >= next)
+			{
+				ended |= n < 0;
+				next = bytes + PROGRESS_STEP;
+				fireLifecycleEvent(new ProgressEvent(query, startTime, bytes, contentLength, firstByteTime));
+			}
+		}
+	}
 }
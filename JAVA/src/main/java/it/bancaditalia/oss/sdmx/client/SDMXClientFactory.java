@@ -32,7 +32,7 @@ import java.net.URISyntaxException;
 import java.security.GeneralSecurityException;
 import java.security.KeyStore;
 import java.util.NavigableMap;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -69,7 +69,8 @@ public class SDMXClientFactory {
 
 	//read the configuration file
 	static {
-		providers = new TreeMap<>();
+		// providers may be added while other threads are querying
+		providers = new ConcurrentSkipListMap<>();
 		logger = Configuration.getSdmxLogger();
 		try {
 			initBuiltInProviders();
@@ -319,6 +320,7 @@ public class SDMXClientFactory {
 				else{
 					throw new SdmxInvalidParameterException("The sdmx version '" + provider.getSdmxVersion() + "' is not supported.");
 				}
+				((RestSdmxClient) client).setDataFormat(provider.getDataFormat());
 			}
 			else 
 			{
@@ -0,0 +1,1003 @@
+/* Copyright 2010,2014 Bank Of Italy
+*
+* Licensed under the EUPL, Version 1.1 or - as soon they
+* will be approved by the European Commission - subsequent
+* versions of the EUPL (the "Licence");
+* You may not use this work except in compliance with the
+* Licence.
+* You may obtain a copy of the Licence at:
+*
+*
+* http://ec.europa.eu/idabc/eupl
+*
+* Unless required by applicable law or agreed to in
+* writing, software distributed under the Licence is
+* distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied.
+* See the Licence for the specific language governing
+* permissions and limitations under the Licence.
+*/
+package it.bancaditalia.oss.sdmx.client;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.swing.JFrame;
+
+import it.bancaditalia.oss.sdmx.api.Codelist;
+import it.bancaditalia.oss.sdmx.api.DataFlowStructure;
+import it.bancaditalia.oss.sdmx.api.Dataflow;
+import it.bancaditalia.oss.sdmx.api.Dimension;
+import it.bancaditalia.oss.sdmx.api.GenericSDMXClient;
+import it.bancaditalia.oss.sdmx.api.SDMXReference;
+import it.bancaditalia.oss.sdmx.api.PortableDataSet;
+import it.bancaditalia.oss.sdmx.api.PortableTimeSeries;
+import it.bancaditalia.oss.sdmx.api.SdmxAttribute;
+import it.bancaditalia.oss.sdmx.client.custom.RestSdmx20Client;
+import it.bancaditalia.oss.sdmx.event.RestSdmxEventListener;
+import it.bancaditalia.oss.sdmx.exceptions.DataStructureException;
+import it.bancaditalia.oss.sdmx.exceptions.SdmxException;
+import it.bancaditalia.oss.sdmx.exceptions.SdmxInvalidParameterException;
+import it.bancaditalia.oss.sdmx.exceptions.SdmxUnknownProviderException;
+import it.bancaditalia.oss.sdmx.exceptions.SdmxXmlContentException;
+import it.bancaditalia.oss.sdmx.util.Configuration;
+import it.bancaditalia.oss.sdmx.util.LoginDialog;
+import it.bancaditalia.oss.sdmx.util.MetadataCache;
+
+/**
+ * <p>
+ * A thread-safe 'session' over the SDMX providers: it stores the clients that are created and reuses them, and caches
+ * the dataflows and structures retrieved. A single instance can be shared by many threads; concurrent requests for
+ * the same missing client, dataflow or structure result in a single call to the provider.
+ * 
+ * <p>
+ * Cached structures are published complete and are never modified afterwards: when a codelist has to be retrieved
+ * later, a new copy of the structure replaces the cached one. Callers get copies of them, which they are free to
+ * modify; the codelists, which cannot be modified, are shared.
+ * 
+ * <p>
+ * {@link SdmxClientHandler} exposes the default session through static methods.
+ * 
+ * @author Attilio Mattiocco
+ *
+ */
+public class SdmxSession
+{
+
+	protected static final Logger					LOGGER			= Configuration.getSdmxLogger();
+	private static final String						sourceClass		= SdmxSession.class.getSimpleName();
+
+	private static final SdmxSession				DEFAULT			= new SdmxSession();
+
+	// key: provider name --> client
+	private final MetadataCache<String, GenericSDMXClient>	clients	= new MetadataCache<>("clients", 
+			Configuration.getClientsCachePolicy(), Configuration.getClientsCacheMaxSize());
+	// key: provider name --> user and password, given again to the client if it is evicted and created again
+	private final Map<String, String[]>						credentials	= new ConcurrentHashMap<>();
+	// receivers of the lifecycle events of the clients of this session
+	private final List<RestSdmxEventListener>				listeners	= new CopyOnWriteArrayList<>();
+	private final RestSdmxEventListener						dispatcher	= event -> {
+		for (RestSdmxEventListener listener : listeners)
+			try
+			{
+				listener.onSdmxEvent(event);
+			}
+			catch (RuntimeException e)
+			{
+				// the other listeners and the query go on
+				LOGGER.log(Level.WARNING, "Event listener failed on " + event.getClass().getSimpleName(), e);
+			}
+	};
+
+	/**
+	 * @return the session shared by the static methods of {@link SdmxClientHandler}.
+	 */
+	public static SdmxSession getDefault()
+	{
+		return DEFAULT;
+	}
+
+	/**
+	 * Adds a listener for the lifecycle events of all the queries of this session (see
+	 * {@link RestSdmxClient#setLifecycleEventListener(RestSdmxEventListener)}). Listeners are called on the querying
+	 * threads and should return quickly. Their exceptions are logged and do not affect the query or the other listeners.
+	 * 
+	 * @param listener the listener to add
+	 */
+	public void addEventListener(RestSdmxEventListener listener)
+	{
+		listeners.add(listener);
+	}
+
+	public void removeEventListener(RestSdmxEventListener listener)
+	{
+		listeners.remove(listener);
+	}
+
+	public boolean needsCredentials(String provider) throws SdmxException
+	{
+		return getClient(provider).needsCredentials();
+	}
+
+	public void setCredentials(String provider, String user, String pw) throws SdmxException
+	{
+		getClient(provider, user, pw);
+	}
+
+	/**
+	 * Returns a description of the state of the metadata caches of a provider (size, weight, hits, misses and
+	 * evictions).
+	 * 
+	 * @param provider the provider name
+	 * @return the cache statistics, one cache per line
+	 * @throws SdmxException
+	 */
+	public String getCacheStatistics(String provider) throws SdmxException
+	{
+		Provider p = getProvider(provider);
+		return p.getFlowCache() + "\n" + p.getDSDCache() + "\n" + p.getCodelistCache() + "\n" + p.getAvailabilityCache() + "\n" + clients;
+	}
+
+	/**
+	 * @param provider the provider name
+	 * @param dataflow the dataflow id
+	 * @return a copy of the cached structure of the dataflow, that the caller is free to modify. Its codelists are
+	 *         already decoded.
+	 * @throws SdmxException
+	 */
+	public DataFlowStructure getDataFlowStructure(String provider, String dataflow) throws SdmxException
+	{
+		DataFlowStructure result = new DataFlowStructure(getCachedDataFlowStructure(provider, dataflow));
+		// a failure must surface here rather than from the map methods of a deferred codelist
+		for (Dimension dim: result.getDimensions())
+			if (dim.getCodeList() != null)
+				dim.getCodeList().decode();
+		for (SdmxAttribute attr: result.getAttributes())
+			if (attr.getCodeList() != null)
+				attr.getCodeList().decode();
+		return result;
+	}
+
+	// the cached structure: it is shared and must not be modified
+	private DataFlowStructure getCachedDataFlowStructure(String provider, String dataflow) throws SdmxException
+	{
+		if (provider == null || provider.trim().isEmpty())
+		{
+			LOGGER.severe("The name of the provider cannot be null");
+			throw new SdmxInvalidParameterException("The name of the provider cannot be null");
+		}
+		if (dataflow == null || dataflow.trim().isEmpty())
+		{
+			LOGGER.severe("The name of the dataflow cannot be null");
+			throw new SdmxInvalidParameterException("The name of the provider cannot be null");
+		}
+		SDMXReference keyF = getDSDIdentifier(provider, dataflow);
+		return getProvider(provider).getDSDCache().get(keyF.getFullIdentifier(), key -> {
+			LOGGER.finer("DSD for " + key + " not cached. Calling Provider.");
+			GenericSDMXClient client = getClient(provider);
+			DataFlowStructure result = client.getDataFlowStructure(keyF, true);
+			
+			if (result != null)
+			{
+				if (!(client instanceof RestSdmx20Client))
+				{
+					// workaround only for V2.1+ : some providers do not set in the dsd response all the referenced codelists
+					// and this is a problem, especially for dimensions.
+					// we try to fill them with direct codelist calls, all at once
+					List<SDMXReference> missing = new ArrayList<>();
+					for (Dimension dim: result.getDimensions())
+						if (isStub(dim.getCodeList()))
+							missing.add(dim.getCodeList());
+					for (SdmxAttribute attr: result.getAttributes())
+						if (isStub(attr.getCodeList()))
+							missing.add(attr.getCodeList());
+					Map<String, Codelist> found = missing.isEmpty() ? Collections.emptyMap() 
+							: new CodelistResolver(getProvider(provider), client).resolve(missing);
+
+					for (Dimension dim: result.getDimensions())
+					{
+						Codelist cl = dim.getCodeList();
+						if (isStub(cl))
+						{
+							// we do not allow uncoded dimensions
+							Codelist codes = found.get(cl.getFullIdentifier());
+							if(codes == null || codes.isEmpty()){
+								throw new SdmxXmlContentException(
+										"Could not find codelist  for '" + cl + "' in provider: '" + provider + "'");
+
+							}
+							dim.setCodeList(codes);
+						}
+					}
+					
+					for (SdmxAttribute attr: result.getAttributes())
+					{
+						Codelist cl = attr.getCodeList();
+						if (isStub(cl))
+						{
+							//for attributes we let it go even if we don't fine the codes
+							attr.setCodeList(found.get(cl.getFullIdentifier()));
+						}
+					}
+				}
+				// the structure is not shared until it is returned from here
+				return result;
+			}
+			else
+				throw new SdmxXmlContentException(
+						"Could not find dataflow structure for '" + dataflow + "' in provider: '" + provider + "'");
+		});
+	}
+
+	// a codelist referenced by a structure without its codes. Deferred codelists are not decoded here.
+	private static boolean isStub(Codelist cl)
+	{
+		return cl != null && cl.estimatedSize() == 0;
+	}
+
+	public SDMXReference getDSDIdentifier(String providerName, String dataflow) throws SdmxException
+	{
+		if (providerName == null || providerName.trim().isEmpty())
+		{
+			LOGGER.severe("The name of the provider cannot be null");
+			throw new SdmxInvalidParameterException("The name of the provider cannot be null");
+		}
+		if (dataflow == null || dataflow.trim().isEmpty())
+		{
+			LOGGER.severe("The name of the dataflow cannot be null");
+			throw new SdmxInvalidParameterException("The name of the provider cannot be null");
+		}
+		Provider provider = getProvider(providerName);
+		SDMXReference result = null;
+		result = provider.getDSDIdentifier(dataflow);
+		if (result == null)
+		{
+			LOGGER.finer("DSD identifier for dataflow " + dataflow + " not cached. Calling Provider.");
+			result = provider.getFlow(dataflow);
+			Dataflow df = getClient(providerName).getDataflow(result.getId(), result.getAgency(), result.getVersion());
+			if (df != null)
+			{
+				provider.setFlow(df);
+				result = df.getDsdIdentifier();
+				if (result == null)
+					throw new SdmxXmlContentException("Could not get DSD identifier for dataflow '" + dataflow
+							+ "' in provider: '" + provider.getName() + "'");
+			}
+			else
+				throw new SdmxXmlContentException(
+						"Could not get dataflow '" + dataflow + "' in provider: '" + providerName + "'");
+		}
+		return result;
+	}
+
+	public List<Dimension> getDimensions(String provider, String dataflow) throws SdmxException
+	{
+		if (provider == null || provider.trim().isEmpty())
+		{
+			LOGGER.severe("The name of the provider cannot be null");
+			throw new SdmxInvalidParameterException("The name of the provider cannot be null");
+		}
+		if (dataflow == null || dataflow.trim().isEmpty())
+		{
+			LOGGER.severe("The name of the dataflow cannot be null");
+			throw new SdmxInvalidParameterException("The name of the provider cannot be null");
+		}
+		return getDataFlowStructure(provider, dataflow).getDimensions();
+	}
+
+	/**
+	 * Returns, for each dimension of a dataflow, the codes available in the series selected by a filter, ignoring the
+	 * constraint of the filter on that same dimension. Responses are cached by the provider (see
+	 * {@link AvailabilityCache}).
+	 * 
+	 * @param provider the provider name
+	 * @param dataflow the dataflow
+	 * @param filter a filter in the form {@code c[DIM]=A,B&c[DIM2]=C}
+	 * @return key: dimension id --&gt; (code --&gt; description), ordered as the dimensions of the dataflow
+	 * @throws SdmxException
+	 */
+	public Map<String, Map<String, String>> filterCodes(String provider, String dataflow, String filter) throws SdmxException
+	{
+		if (provider == null || provider.trim().isEmpty())
+		{
+			LOGGER.severe("The name of the provider cannot be null");
+			throw new SdmxInvalidParameterException("The name of the provider cannot be null");
+		}
+		if (dataflow == null || dataflow.trim().isEmpty())
+		{
+			LOGGER.severe("The name of the dataflow cannot be null");
+			throw new SdmxInvalidParameterException("The name of the provider cannot be null");
+		}
+		return availableCodes(provider, dataflow, filter, null);
+	}
+
+	/**
+	 * Returns the codes of a dimension available in the series selected by a filter, ignoring the constraint of the
+	 * filter on that same dimension. When the codes of a dimension are being selected, this can often be answered
+	 * without calling the provider.
+	 * 
+	 * @param provider the provider name
+	 * @param dataflow the dataflow
+	 * @param filter a filter in the form {@code c[DIM]=A,B&c[DIM2]=C}
+	 * @param dimension the dimension
+	 * @return key: code --&gt; description
+	 * @throws SdmxException
+	 */
+	public Map<String, String> filterCodes(String provider, String dataflow, String filter, String dimension) throws SdmxException
+	{
+		if (provider == null || provider.trim().isEmpty())
+		{
+			LOGGER.severe("The name of the provider cannot be null");
+			throw new SdmxInvalidParameterException("The name of the provider cannot be null");
+		}
+		if (dataflow == null || dataflow.trim().isEmpty())
+		{
+			LOGGER.severe("The name of the dataflow cannot be null");
+			throw new SdmxInvalidParameterException("The name of the provider cannot be null");
+		}
+		if (dimension == null || dimension.trim().isEmpty())
+		{
+			LOGGER.severe("The name of the dimension cannot be null");
+			throw new SdmxInvalidParameterException("The name of the dimension cannot be null");
+		}
+		return availableCodes(provider, dataflow, filter, dimension).get(dimension);
+	}
+
+	// the available codes of one dimension, or all of them if dimension is null
+	private Map<String, Map<String, String>> availableCodes(String provider, String dataflow, String filter, String dimension) throws SdmxException
+	{
+		Dataflow df = getFlow(provider, dataflow);
+		Map<String, Codelist> codelists = new LinkedHashMap<>();
+		for (Dimension dim : getCachedDataFlowStructure(provider, dataflow).getDimensions())
+			codelists.put(dim.getId(), getCodelist(provider, dataflow, dim.getId()));
+		if (dimension != null && !codelists.containsKey(dimension))
+			throw new SdmxXmlContentException(
+					"The dimension: '" + dimension + "' does not exist in dataflow: '" + dataflow + "'");
+		Collection<String> requested = dimension == null ? codelists.keySet() : Collections.singleton(dimension);
+
+		AvailabilityCache cache = getProvider(provider).getAvailabilityCache();
+		Map<String, BitSet> constraints = cache.isEnabled() ? AvailabilityCache.parseFilter(filter, codelists) : null;
+		Map<String, BitSet> available = constraints != null ? cache.getAvailable(df.getFullIdentifier(), constraints, codelists, requested) : null;
+		if (available == null)
+		{
+			Map<String, List<String>> region = getClient(provider).getAvailableCubeRegion(df, filter, "available");
+			if (region.size() != codelists.size())
+				throw new SdmxInvalidParameterException("The filter returned and empty cube region");
+
+			available = new LinkedHashMap<>();
+			Map<String, BitSet> complete = new HashMap<>();
+			for (Entry<String, Codelist> codelist : codelists.entrySet())
+			{
+				List<String> regionCodes = region.get(codelist.getKey());
+				if (regionCodes == null)
+					throw new SdmxInvalidParameterException("The filter returned and empty cube region");
+				BitSet codes = AvailabilityCache.toBitSet(regionCodes, codelist.getValue());
+				available.put(codelist.getKey(), codes);
+				// codes missing from the codelist would be lost
+				if (codes.cardinality() == regionCodes.size())
+					complete.put(codelist.getKey(), codes);
+			}
+			if (constraints != null)
+				cache.putAvailable(df.getFullIdentifier(), constraints, codelists, complete);
+		}
+
+		Map<String, Map<String, String>> codes = new LinkedHashMap<>();
+		for (String dim : requested)
+		{
+			// a dimension without available codes gets an empty map
+			BitSet positions = available.get(dim);
+			Codelist codelist = codelists.get(dim);
+			Map<String, String> dimCodes = new LinkedHashMap<>();
+			for (int i = positions != null ? positions.nextSetBit(0) : -1; i >= 0; i = positions.nextSetBit(i + 1))
+			{
+				String code = codelist.getCode(i);
+				dimCodes.put(code, codelist.get(code));
+			}
+			codes.put(dim, dimCodes);
+		}
+		return codes;
+	}
+	
+	public Integer getSeriesCount(String provider, String dataflow, String filter) throws SdmxException
+	{
+		if (provider == null || provider.trim().isEmpty())
+		{
+			LOGGER.severe("The name of the provider cannot be null");
+			throw new SdmxInvalidParameterException("The name of the provider cannot be null");
+		}
+		if (dataflow == null || dataflow.trim().isEmpty())
+		{
+			LOGGER.severe("The name of the dataflow cannot be null");
+			throw new SdmxInvalidParameterException("The name of the provider cannot be null");
+		}
+		Dataflow df = getFlow(provider, dataflow);
+		return getClient(provider).getAvailableTimeSeriesNumber(df, filter);
+		 
+	}
+	
+	public Map<String, String> getCodes(String provider, String dataflow, String dimension) throws SdmxException
+	{
+		if (provider == null || provider.trim().isEmpty())
+		{
+			LOGGER.severe("The name of the provider cannot be null");
+			throw new SdmxInvalidParameterException("The name of the provider cannot be null");
+		}
+		if (dataflow == null || dataflow.trim().isEmpty())
+		{
+			LOGGER.severe("The name of the dataflow cannot be null");
+			throw new SdmxInvalidParameterException("The name of the provider cannot be null");
+		}
+		if (dimension == null || dimension.trim().isEmpty())
+		{
+			LOGGER.severe("The name of the dimension cannot be null");
+			throw new SdmxInvalidParameterException("The name of the dimension cannot be null");
+		}
+		return getCodelist(provider, dataflow, dimension);
+	}
+
+	/**
+	 * Expands a code of a dimension into the codes below it in the hierarchy of the codelist, in the OR syntax of the
+	 * series keys (e.g. "EU27" into "EU27+AT+BE+...").
+	 * 
+	 * @param provider the provider name
+	 * @param dataflow the dataflow
+	 * @param dimension the dimension
+	 * @param code the code to expand
+	 * @param leavesOnly true to keep only the codes without children
+	 * @return the codes joined with '+'
+	 * @throws SdmxException
+	 */
+	public String expandCode(String provider, String dataflow, String dimension, String code, boolean leavesOnly) throws SdmxException
+	{
+		Codelist codes = (Codelist) getCodes(provider, dataflow, dimension);
+		String key = codes.getHierarchy().toKey(code, leavesOnly);
+		if (key == null)
+			throw new SdmxInvalidParameterException("The code '" + code + "' does not exist in dimension: '" + dimension + "'");
+		return key;
+	}
+
+	private Codelist getCodelist(String provider, String dataflow, String dimension) throws SdmxException
+	{
+		DataFlowStructure dsd = getCachedDataFlowStructure(provider, dataflow);
+		Dimension dim = dsd.getDimension(dimension);
+		Codelist codes = null;
+		if (dim != null)
+		{
+			codes = dim.getCodeList();
+			if (codes != null && codes.estimatedSize() > 0)
+			{
+				codes.decode();
+				return codes;
+			}
+			else
+			{
+				// this is a 2.1 provider
+				LOGGER.finer("Codelist for " + provider + ", " + dataflow + ", " + dimension + " not cached.");
+				Codelist stub = dim.getCodeList();
+				GenericSDMXClient client = getClient(provider);
+				codes = getProvider(provider).getCodelistCache().get(stub.getFullIdentifier(), key -> client.getCodes(stub));
+				if (codes != null)
+				{
+					// never modify a published structure: publish an updated copy instead
+					DataFlowStructure updated = new DataFlowStructure(dsd);
+					Dimension filled = new Dimension(dim.getId(), dim.getPosition(), codes);
+					filled.setName(dim.getName());
+					updated.setDimension(filled);
+					getProvider(provider).getDSDCache().put(updated.getFullIdentifier(), updated);
+				}
+				else
+					throw new SdmxXmlContentException(
+							"Could not get codes for '" + dataflow + "' in provider: '" + provider + "'");
+			}
+		}
+		else
+			throw new SdmxXmlContentException(
+					"The dimension: '" + dimension + "' does not exist in dataflow: '" + dataflow + "'");
+
+		return codes;
+	}
+
+	public Dataflow getFlow(String provider, String dataflow) throws SdmxException
+	{
+		if (provider == null || provider.trim().isEmpty())
+		{
+			LOGGER.severe("The name of the provider cannot be null");
+			throw new SdmxInvalidParameterException("The name of the provider cannot be null");
+		}
+		if (dataflow == null || dataflow.trim().isEmpty())
+		{
+			LOGGER.severe("The name of the dataflow cannot be null");
+			throw new SdmxInvalidParameterException("The name of the dataflow cannot be null");
+		}
+		Provider p = getProvider(provider);
+		Dataflow flow = p.getFlow(dataflow);
+		if (flow == null)
+		{
+			flow = p.getFlowCache().get(dataflow, id -> {
+				LOGGER.fine("Dataflow " + id + " not cached. Calling Provider.");
+				//we get the latest version and all agencies. Hopefully we have only one
+				Dataflow loaded = getClient(provider).getDataflow(id, null, null);
+				if (loaded == null)
+					throw new SdmxXmlContentException(
+							"Could not get dataflow '" + id + "' in provider: '" + provider + "'");
+				return loaded;
+			});
+			// the flow was loaded by id only: store it under its full identifier
+			p.getFlowCache().remove(dataflow);
+			p.setFlow(flow);
+		}
+		return flow;
+	}
+
+	public Map<String, String> getFlows(String provider, String pattern) throws SdmxException
+	{
+		Map<String, Dataflow> flows = getFlowObjects(provider, pattern);
+		Map<String, String> result = new HashMap<>();
+		for (Entry<String, Dataflow> entry : flows.entrySet())
+			result.put(entry.getKey(), entry.getValue().getDescription());
+		return result;
+	}
+
+	public Map<String, Dataflow> getFlowObjects(String provider, String pattern) throws SdmxException
+	{
+		final String sourceMethod = "getFlowObjects";
+		LOGGER.entering(sourceClass, sourceMethod);
+		Map<String, Dataflow> result = getFlowIndex(provider).glob(pattern);
+		LOGGER.exiting(sourceClass, sourceMethod);
+		return result;
+	}
+
+	/**
+	 * Searches the dataflows of a provider by keywords, matched against the words of their ids and descriptions.
+	 * 
+	 * @param provider the provider name
+	 * @param keywords the words to search
+	 * @param maxResults the maximum number of flows returned, or a value less than or equal to zero for no limit
+	 * @return the matching flows, most relevant first
+	 * @throws SdmxException
+	 */
+	public List<Dataflow> searchFlows(String provider, String keywords, int maxResults) throws SdmxException
+	{
+		return getFlowIndex(provider).search(keywords, maxResults);
+	}
+
+	/**
+	 * Returns a search index over the dataflow catalogue of a provider, downloading the catalogue if it is not
+	 * cached.
+	 * 
+	 * @param provider the provider name
+	 * @return the index
+	 * @throws SdmxException
+	 */
+	public FlowIndex getFlowIndex(String provider) throws SdmxException
+	{
+		if (provider == null || provider.trim().isEmpty())
+		{
+			LOGGER.severe("The name of the provider cannot be null");
+			throw new SdmxInvalidParameterException("The name of the provider cannot be null");
+		}
+
+		Provider p = getProvider(provider);
+		if (!p.hasFlowCatalogue())
+			synchronized (p)
+			{
+				// only one thread downloads the catalogue
+				if (!p.hasFlowCatalogue())
+				{
+					LOGGER.fine("Flows for " + provider + " not cached. Calling Provider.");
+					Map<String, Dataflow> flows = getClient(provider).getDataflows();
+					if (flows != null && flows.size() != 0)
+					{
+						p.setFlows(flows);
+						// the catalogue may not fit the cache
+						return p.hasFlowCatalogue() ? p.getFlowIndex() : new FlowIndex(flows);
+					}
+					else
+						throw new SdmxXmlContentException("Could not get dataflows from provider: '" + provider + "'");
+				}
+			}
+		return p.getFlowIndex();
+	}
+
+	public PortableDataSet<Double> getTimeSeriesTable(String provider, String dataflow, String tsKey, String filter, 
+			String startTime, String endTime, 
+			boolean serieskeysonly, String updatedAfter, boolean includeHistory)
+			throws SdmxException, DataStructureException
+	{
+		return new PortableDataSet<>(getTimeSeries(provider, dataflow, tsKey, filter, startTime, endTime, serieskeysonly, updatedAfter, includeHistory));
+	}
+
+	//shortcut for v2 API
+	public List<PortableTimeSeries<Double>> getTimeSeries(String provider, String tsKey, String startTime, String endTime) throws SdmxException
+	{
+		return getTimeSeries(provider, null, tsKey, null, startTime, endTime, false, null, false);
+	}
+
+	//full featured, valid for v2 and v3
+	public List<PortableTimeSeries<Double>> getTimeSeries(String provider, String dataflow, String tsKey, String filter, 
+			String startTime, String endTime, 
+			boolean serieskeysonly, String updatedAfter, boolean includeHistory) throws SdmxException
+	{
+		if (provider == null || provider.trim().isEmpty())
+		{
+			LOGGER.severe("The name of the provider cannot be null");
+			throw new SdmxInvalidParameterException("The name of the provider cannot be null");
+		}
+		if ((tsKey == null || tsKey.trim().isEmpty()) && (dataflow == null || dataflow.trim().isEmpty()))
+		{
+			LOGGER.severe("Either the ts key or the dataflow must have valid values");
+			throw new SdmxInvalidParameterException("Either the ts key or the dataflow must have valid values");
+		}
+
+		List<PortableTimeSeries<Double>> result = new ArrayList<>(); //SDMX 2.0 did not provide a way to specify multiple series keys
+		if(tsKey != null && !tsKey.isEmpty()){
+			String[] keyIds = tsKey.trim().split("\\s*;\\s*");
+			int maxKeyLength = Configuration.getMaxMergedKeyLength(provider);
+			if (keyIds.length > 1 && maxKeyLength > 0)
+				return getMergedTimeSeries(provider, dataflow, keyIds, filter, startTime, endTime, 
+						serieskeysonly, updatedAfter, includeHistory, maxKeyLength);
+			for (String keyId : keyIds)
+				result.addAll(getSingleTimeSeries(provider, dataflow, keyId, filter, startTime, endTime, 
+						serieskeysonly, updatedAfter, includeHistory));
+		}
+		else{
+			result = getSingleTimeSeries(provider, dataflow, null, filter, startTime, endTime, 
+					serieskeysonly, updatedAfter, includeHistory);
+		}
+		return (result);
+	}
+
+	/**
+	 * Downloads a merged key and assigns the series found to the requested keys it includes.
+	 * 
+	 * @param provider the provider name
+	 * @param dataflow the dataflow id
+	 * @param mergedKey the key to download
+	 * @param filter the v3 filter (may be null)
+	 * @param startTime the start period
+	 * @param endTime the end period
+	 * @param serieskeysonly true to download only the series keys
+	 * @param updatedAfter only download changes after this time (may be null)
+	 * @param includeHistory true to download the history of revisions
+	 * @return for each requested key, the series that match it. The list is empty if none matches.
+	 * @throws SdmxException if the download fails, or if no series matches any of the requested keys
+	 */
+	public Map<String, List<PortableTimeSeries<Double>>> getTimeSeries(String provider, String dataflow, 
+			KeyMerger.MergedKey mergedKey, String filter, String startTime, String endTime, 
+			boolean serieskeysonly, String updatedAfter, boolean includeHistory) throws SdmxException
+	{
+		List<PortableTimeSeries<Double>> series = getSingleTimeSeries(provider, dataflow, mergedKey.getKey(), filter, 
+				startTime, endTime, serieskeysonly, updatedAfter, includeHistory);
+		if (mergedKey.getRequestedKeys().size() == 1)
+			return Collections.singletonMap(mergedKey.getRequestedKeys().get(0), series);
+		
+		List<String> dimensions = new ArrayList<>();
+		for (Dimension dim: getCachedDataFlowStructure(provider, dataflow).getDimensions())
+			dimensions.add(dim.getId());
+		return KeyMerger.split(mergedKey.getRequestedKeys(), series, dimensions);
+	}
+
+	// download many keys with as few queries as possible, keeping the semantics of one query per key
+	private List<PortableTimeSeries<Double>> getMergedTimeSeries(String provider, String dataflow, String[] keyIds, 
+			String filter, String startTime, String endTime, 
+			boolean serieskeysonly, String updatedAfter, boolean includeHistory, int maxKeyLength) throws SdmxException
+	{
+		// key: dataflow --> keys requested for it
+		Map<String, List<String>> flowKeys = new LinkedHashMap<>();
+		String[][] requested = new String[keyIds.length][];
+		for (int i = 0; i < keyIds.length; i++)
+		{
+			requested[i] = dataflow == null || dataflow.isEmpty() ? extractFlowAndResource(keyIds[i]) : new String[] { dataflow, keyIds[i] };
+			flowKeys.computeIfAbsent(requested[i][0], k -> new ArrayList<>()).add(requested[i][1]);
+		}
+		
+		// key: dataflow --> requested key --> series
+		Map<String, Map<String, List<PortableTimeSeries<Double>>>> found = new HashMap<>();
+		KeyMerger merger = new KeyMerger(maxKeyLength);
+		for (Entry<String, List<String>> flow: flowKeys.entrySet())
+		{
+			Map<String, List<PortableTimeSeries<Double>>> byKey = new HashMap<>();
+			List<KeyMerger.MergedKey> merged = merger.merge(flow.getValue());
+			LOGGER.fine("Downloading " + flow.getValue().size() + " keys of " + flow.getKey() + " with " + merged.size() + " queries");
+			for (KeyMerger.MergedKey mergedKey: merged)
+				byKey.putAll(getTimeSeries(provider, flow.getKey(), mergedKey, filter, startTime, endTime, 
+						serieskeysonly, updatedAfter, includeHistory));
+			found.put(flow.getKey(), byKey);
+		}
+
+		List<PortableTimeSeries<Double>> result = new ArrayList<>();
+		for (String[] key: requested)
+		{
+			List<PortableTimeSeries<Double>> series = found.get(key[0]).get(key[1]);
+			if (series.isEmpty())
+				throw new SdmxXmlContentException(
+						"The query: key=" + key[1] + " and filter="+ filter + " did not match any time series on the provider for dataflow: " + key[0]);
+			result.addAll(series);
+		}
+		return result;
+	}
+
+	private List<PortableTimeSeries<Double>> getSingleTimeSeries(String provider, String dataflow, String tsKey, String filter, 
+			String startTime, String endTime, 
+			boolean serieskeysonly, String updatedAfter, boolean includeHistory) throws SdmxException
+	{
+		if (provider == null || provider.trim().isEmpty())
+		{
+			LOGGER.severe("The name of the provider cannot be null");
+			throw new SdmxInvalidParameterException("The name of the provider cannot be null");
+		}
+		if ((tsKey == null || tsKey.trim().isEmpty()) && (dataflow == null || dataflow.trim().isEmpty()))
+		{
+			LOGGER.severe("Either the ts key or the dataflow must have valid values");
+			throw new SdmxInvalidParameterException("Either the ts key or the dataflow must have valid values");
+		}
+	
+		List<PortableTimeSeries<Double>> result = null;
+	
+		if(dataflow == null || dataflow.isEmpty()){
+			String[] tokens = extractFlowAndResource(tsKey);
+			dataflow = tokens[0];
+			tsKey = tokens[1];
+		}
+		
+		Dataflow df = getFlow(provider, dataflow);
+		DataFlowStructure dsd = getCachedDataFlowStructure(provider, dataflow);
+		GenericSDMXClient client = getClient(provider);
+		if (Configuration.isTimeSeriesCache() && updatedAfter == null && !serieskeysonly && !includeHistory)
+		{
+			final String key = tsKey;
+			result = TimeSeriesCache.getInstance().getTimeSeries(provider, df, dsd, key, filter, startTime, endTime, 
+					lastSync -> download(provider, client, df, dsd, key, filter, startTime, endTime, false, lastSync, false));
+		}
+		else
+			result = download(provider, client, df, dsd, tsKey, filter, startTime, endTime, serieskeysonly, updatedAfter, includeHistory);
+		if (result == null || result.size() == 0)
+			throw new SdmxXmlContentException(
+					"The query: key=" +tsKey + " and filter="+ filter + " did not match any time series on the provider for dataflow: " + dataflow);
+		return result;
+	}
+
+	private List<PortableTimeSeries<Double>> download(String provider, GenericSDMXClient client, Dataflow df, DataFlowStructure dsd, 
+			String tsKey, String filter, String startTime, String endTime, 
+			boolean serieskeysonly, String updatedAfter, boolean includeHistory) throws SdmxException
+	{
+		// plan only full downloads: deltas and series keys are small by nature
+		if (client instanceof RestSdmx30Client && Configuration.isAvailabilityPlanning(provider) 
+				&& updatedAfter == null && !serieskeysonly && !includeHistory)
+			return new AvailabilityPlanner(provider).getTimeSeries((RestSdmx30Client) client, df, dsd, tsKey, filter, startTime, endTime);
+		
+		return client.getTimeSeries(df, dsd, tsKey, filter, startTime, endTime, serieskeysonly, updatedAfter, includeHistory);
+	}
+
+	public String getDataURL(String provider, String tsKey, String start, String end, boolean seriesKeysOnly,
+			String updatedAfter, boolean includeHistory) throws SdmxException
+	{
+		if (provider == null || provider.trim().isEmpty())
+		{
+			LOGGER.severe("The name of the provider cannot be null");
+			throw new SdmxInvalidParameterException("The name of the provider cannot be null");
+		}
+		if (tsKey == null || tsKey.trim().isEmpty())
+		{
+			LOGGER.severe("The tsKey cannot be null");
+			throw new SdmxInvalidParameterException("The tsKey cannot be null");
+		}
+
+		String[] tokens = extractFlowAndResource(tsKey);
+		String dataflow = tokens[0];
+		String resource = tokens[1];
+		Dataflow df = getFlow(provider, dataflow);
+
+		String result = getClient(provider).buildDataURL(df, resource, start, end, seriesKeysOnly, updatedAfter,
+				includeHistory);
+		return (result);
+	}
+
+	public static String dumpTimeSeriesList(List<PortableTimeSeries<Double>> ts)
+	{
+		StringBuffer result = new StringBuffer("");
+		int maxSize = 0;
+		boolean first = true;
+		for (PortableTimeSeries<?> series : ts)
+		{
+			if (!first)
+				result.append(";");
+			first = false;
+			result.append(";").append(series.getName());
+			int size = series.size();
+			if (size > maxSize)
+				maxSize = size;
+			if (Configuration.isReverse())
+			{
+				// reverse the time series for user friendliness
+				series.reverse();
+			}
+		}
+		result.append("\n");
+		for (int i = 0; i < maxSize; i++)
+		{
+			for (int j = 0; j < ts.size(); j++)
+			{
+				if (i < ts.get(j).size())
+				{
+					result.append(ts.get(j).get(i).getTimeslot()).append(";");
+					result.append(ts.get(j).get(i).getValue());
+				}
+				else
+				{
+					result.append(";");
+				}
+				if (j + 1 < ts.size())
+				{
+					result.append(";");
+				}
+			}
+			result.append("\n");
+		}
+		return result.toString();
+	}
+
+	public String dumpTimeSeries(String provider, String dataflow, String id, String filter, String startTime, String endTime)
+			throws SdmxException, DataStructureException
+	{
+		if (provider == null || provider.trim().isEmpty())
+		{
+			LOGGER.severe("The name of the provider cannot be null");
+			throw new SdmxInvalidParameterException("The name of the provider cannot be null");
+		}
+		if (id == null || id.trim().isEmpty())
+		{
+			LOGGER.severe("The id cannot be null");
+			throw new SdmxInvalidParameterException("The id cannot be null");
+		}
+		if (!SDMXClientFactory.getProviders().containsKey(provider))
+		{
+			throw new SdmxInvalidParameterException("The provider : " + id + " does not exist.");
+		}
+		String result = "";
+		if (!Configuration.isTable())
+		{
+			// Do it as a list of time series
+			List<PortableTimeSeries<Double>> ts = getTimeSeries(provider, dataflow, id, filter, startTime, endTime, false, null, false);
+			result = dumpTimeSeriesList(ts);
+		}
+		else
+		{
+			// do it as a table
+			result = getTimeSeriesTable(provider, dataflow, id, filter, startTime, endTime, false, null, false).toString();
+		}
+		return result;
+	}
+
+	private Provider getProvider(String providerName) throws SdmxException
+	{
+		if (providerName == null || providerName.trim().isEmpty())
+		{
+			LOGGER.severe("The name of the provider cannot be null");
+			throw new SdmxInvalidParameterException("The name of the provider cannot be null");
+		}
+		Provider provider = SDMXClientFactory.getProviders().get(providerName);
+
+		// TODO: move this check to SDMXClientFactory
+		if (provider == null)
+			throw new SdmxUnknownProviderException(providerName);
+
+		return provider;
+	}
+
+	private GenericSDMXClient getClient(String provider, String user, String password) throws SdmxException
+	{
+		final String sourceMethod = "getClient";
+		LOGGER.entering(sourceClass, sourceMethod);
+		if (provider == null || provider.trim().isEmpty())
+		{
+			LOGGER.severe("The name of the provider cannot be null");
+			throw new SdmxInvalidParameterException("The name of the provider cannot be null");
+		}
+		boolean[] hit = { true };
+		GenericSDMXClient client = clients.get(provider, name -> {
+			hit[0] = false;
+			LOGGER.finer("Client for " + name + " does not exist. I will create it.");
+			GenericSDMXClient created = (GenericSDMXClient) SDMXClientFactory.createClient(name);
+			if (created instanceof RestSdmxClient)
+				((RestSdmxClient) created).setLifecycleEventListener(dispatcher);
+			if (created.needsCredentials())
+			{
+				String[] known = user == null || password == null ? credentials.get(name) : null;
+				if (known != null)
+					created.setCredentials(known[0], known[1]);
+				else
+					handlePassword(name, created, user, password);
+			}
+			return created;
+		});
+		ProviderMetrics.get(provider).recordCacheLookup(ProviderMetrics.CLIENTS_CACHE, hit[0]);
+		LOGGER.exiting(sourceClass, sourceMethod);
+		return client;
+
+	}
+
+	private GenericSDMXClient getClient(String provider) throws SdmxException
+	{
+		if (provider == null || provider.trim().isEmpty())
+		{
+			LOGGER.severe("The name of the provider cannot be null");
+			throw new SdmxInvalidParameterException("The name of the provider cannot be null");
+		}
+
+		return getClient(provider, null, null);
+
+	}
+
+	private void handlePassword(String provider, GenericSDMXClient client, String user, String pw) throws SdmxException
+	{
+		if (client == null)
+		{
+			LOGGER.severe("The client cannot be null");
+			throw new SdmxInvalidParameterException("The client cannot be null");
+		}
+		if (client.needsCredentials())
+		{
+			if (user == null || pw == null)
+			{
+				final JFrame frame = new JFrame("Authentication");
+				frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+				LoginDialog loginDlg = new LoginDialog(frame, client.getName() + " Authentication");
+				loginDlg.setVisible(true);
+				user = loginDlg.getUsername();
+				pw = loginDlg.getPassword();
+				frame.dispose();
+			}
+			client.setCredentials(user, pw);
+			credentials.put(provider, new String[] { user, pw });
+		}
+	}
+
+	private static String[] translateLegacyTSQuery(String tsKey)
+	{
+		String[] newKey = new String[2];
+		String delims = "[.]";
+		String[] tokens = tsKey.split(delims, 2);
+		if (tokens.length == 2)
+		{
+			newKey[0] = tokens[0];
+			String resource = tokens[1];
+			resource = resource.replace("*", "");
+			resource = resource.replace('|', '+');
+			newKey[1] = resource;
+		}
+		else
+		{
+			LOGGER.severe("Error in query string format: '" + tsKey + "'. Could not get dataflow id.");
+		}
+		return newKey;
+	}
+
+	public static String[] extractFlowAndResource(String tsKey) throws SdmxException
+	{
+		tsKey = tsKey.trim();
+		String delims = "[ /]";
+		String[] tokens = tsKey.split(delims, 2);
+		if (tokens.length != 2)
+		{
+			// legacy mode: flow.tskey
+			tokens = translateLegacyTSQuery(tsKey);
+			if (tokens.length != 2)
+				throw new SdmxXmlContentException("Malformed time series key: " + tsKey);
+		}
+		return tokens;
+	}
+
+}
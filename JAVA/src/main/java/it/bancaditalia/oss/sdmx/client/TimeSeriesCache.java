@@ -0,0 +1,527 @@
+/* Copyright 2010,2014 Bank Of Italy
+*
+* Licensed under the EUPL, Version 1.1 or - as soon they
+* will be approved by the European Commission - subsequent
+* versions of the EUPL (the "Licence");
+* You may not use this work except in compliance with the
+* Licence.
+* You may obtain a copy of the Licence at:
+*
+*
+* http://ec.europa.eu/idabc/eupl
+*
+* Unless required by applicable law or agreed to in
+* writing, software distributed under the Licence is
+* distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied.
+* See the Licence for the specific language governing
+* permissions and limitations under the Licence.
+*/
+package it.bancaditalia.oss.sdmx.client;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.SimpleDateFormat;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import it.bancaditalia.oss.sdmx.api.BaseObservation;
+import it.bancaditalia.oss.sdmx.api.Codelist;
+import it.bancaditalia.oss.sdmx.api.DataFlowStructure;
+import it.bancaditalia.oss.sdmx.api.Dataflow;
+import it.bancaditalia.oss.sdmx.api.Dimension;
+import it.bancaditalia.oss.sdmx.api.DoubleObservation;
+import it.bancaditalia.oss.sdmx.api.PortableTimeSeries;
+import it.bancaditalia.oss.sdmx.exceptions.SdmxException;
+import it.bancaditalia.oss.sdmx.exceptions.SdmxExceptionFactory;
+import it.bancaditalia.oss.sdmx.exceptions.SdmxResponseException;
+import it.bancaditalia.oss.sdmx.util.Configuration;
+import it.bancaditalia.oss.sdmx.util.MetadataCache;
+
+/**
+ * <p>
+ * Local store of downloaded time series, keyed by provider, dataflow, key, filter and time range. The first time a
+ * query is seen the full series are downloaded; afterwards only the observations changed since the last
+ * synchronisation are requested (with the SDMX <code>updatedAfter</code> parameter) and merged into the stored
+ * series, honouring the <code>Delete</code> action of revision datasets.
+ *
+ * <p>
+ * The cache is enabled by setting the <code>timeseries.cache.dir</code> configuration property (or calling
+ * {@link Configuration#setTimeSeriesCacheDir(String)}). Each query is persisted in its own file in that directory:
+ * each synchronisation appends the series it changed, and the file is rewritten only when the superseded records
+ * outweigh the live ones. A record left incomplete by a crash is ignored when the file is read.
+ * Only the most recently used queries, up to <code>timeseries.cache.max.observations</code> observations, are also
+ * kept in memory.
+ *
+ * <p>
+ * The cached series are never modified: each update replaces them, and callers get copies sharing their
+ * observations, which are copied only if the caller modifies them.
+ */
+public class TimeSeriesCache
+{
+	private static final Logger						LOGGER			= Configuration.getSdmxLogger();
+	private static final String						sourceClass		= TimeSeriesCache.class.getSimpleName();
+
+	private static final int						FORMAT_VERSION	= 2;
+	private static final String						FILE_SUFFIX		= ".tsc";
+	private static final String						ACTION			= "action";
+	private static final String						ACTION_DELETE	= "Delete";
+
+	private static final TimeSeriesCache			INSTANCE		= new TimeSeriesCache();
+
+	// key: canonical query --> stored entry, weighed by its number of observations
+	private final MetadataCache<String, CacheEntry>	entries			= new MetadataCache<>("Time series cache",
+			MetadataCache.Policy.LRU, Configuration.getTimeSeriesCacheMaxObservations(), e -> e.observations);
+
+	/**
+	 * Downloads time series for a given query. Implementations receive the <code>updatedAfter</code> value to send,
+	 * or null when a full download is required.
+	 */
+	public interface Fetcher
+	{
+		public List<PortableTimeSeries<Double>> fetch(String updatedAfter) throws SdmxException;
+	}
+
+	private static class CacheEntry
+	{
+		private String									lastSync	= null;
+		private Map<String, PortableTimeSeries<Double>>	series		= null;
+		private long									observations	= 0;
+		// observations written to the file since it was last rewritten, and whether it must be rewritten
+		private long									stored		= 0;
+		private boolean									rewrite		= true;
+	}
+
+	private TimeSeriesCache()
+	{
+	}
+
+	public static TimeSeriesCache getInstance()
+	{
+		return INSTANCE;
+	}
+
+	/**
+	 * Returns the time series for a query, downloading only the changes since the last synchronisation when the
+	 * query has already been cached.
+	 *
+	 * @param provider the provider name
+	 * @param dataflow the dataflow of the series
+	 * @param dsd the structure of the dataflow
+	 * @param tsKey the series key (may be null for v3 filter queries)
+	 * @param filter the v3 filter (may be null)
+	 * @param startTime the start period
+	 * @param endTime the end period
+	 * @param fetcher the downloader used for both full and delta queries
+	 * @return a copy of the up-to-date cached series
+	 * @throws SdmxException
+	 */
+	public List<PortableTimeSeries<Double>> getTimeSeries(String provider, Dataflow dataflow, DataFlowStructure dsd,
+			String tsKey, String filter, String startTime, String endTime, Fetcher fetcher) throws SdmxException
+	{
+		final String sourceMethod = "getTimeSeries";
+		LOGGER.entering(sourceClass, sourceMethod);
+
+		String key = buildKey(provider, dataflow.getFullIdentifier(), tsKey, filter, startTime, endTime);
+		CacheEntry entry = entries.get(key, k -> load(k, dataflow, dsd));
+		List<PortableTimeSeries<Double>> result;
+		synchronized (entry)
+		{
+			// take the timestamp before the call, so that changes published during the download are not lost, and
+			// move it back by a margin, as the provider compares it with its own clock
+			String syncTime = now(Configuration.getTimeSeriesCacheSyncMargin());
+			Set<String> changed = Collections.emptySet();
+			ProviderMetrics.get(provider).recordCacheLookup(ProviderMetrics.TIMESERIES_CACHE, entry.series != null);
+			if (entry.series == null)
+			{
+				LOGGER.fine("Query " + key + " not cached. Downloading full history.");
+				entry.series = new LinkedHashMap<>();
+				merge(entry.series, fetcher.fetch(null));
+				entry.rewrite = true;
+			}
+			else
+			{
+				LOGGER.fine("Query " + key + " cached. Downloading changes after " + entry.lastSync);
+				try
+				{
+					changed = merge(entry.series, fetcher.fetch(entry.lastSync));
+				}
+				catch (SdmxResponseException e)
+				{
+					if (e.getResponseCode() != SdmxResponseException.SDMX_NO_RESULTS_FOUND)
+						throw e;
+					LOGGER.fine("No changes after " + entry.lastSync);
+				}
+			}
+			entry.lastSync = syncTime;
+			entry.observations = 0;
+			for (PortableTimeSeries<Double> ts : entry.series.values())
+				entry.observations += ts.size();
+			store(key, entry, changed);
+			// weigh the entry again
+			entries.put(key, entry);
+			result = copy(entry.series.values());
+		}
+
+		LOGGER.exiting(sourceClass, sourceMethod);
+		return result;
+	}
+
+	/**
+	 * Removes the cached queries from memory. They are read again from the cache directory when needed.
+	 */
+	public void clearMemory()
+	{
+		entries.clear();
+	}
+
+	/**
+	 * Removes all the cached queries, both in memory and on disk.
+	 */
+	public void clear()
+	{
+		entries.clear();
+		File dir = getDirectory();
+		if (dir != null)
+		{
+			File[] files = dir.listFiles((d, name) -> name.endsWith(FILE_SUFFIX));
+			if (files != null)
+				for (File file : files)
+					if (!file.delete())
+						LOGGER.warning("Could not delete cache file " + file);
+		}
+	}
+
+	// returns the ids of the series that have been replaced or added
+	private static Set<String> merge(Map<String, PortableTimeSeries<Double>> cached, List<PortableTimeSeries<Double>> delta)
+	{
+		Set<String> changed = new LinkedHashSet<>();
+		if (delta == null)
+			return changed;
+
+		for (PortableTimeSeries<Double> update : delta)
+		{
+			// the cached series may be shared with the copies handed out, so it is replaced rather than modified
+			String id = seriesId(update);
+			PortableTimeSeries<Double> old = cached.get(id);
+			PortableTimeSeries<Double> target = new PortableTimeSeries<>(old != null ? old : update);
+			target.getAttributesMap().putAll(update.getAttributesMap());
+
+			Map<String, BaseObservation<? extends Double>> byTime = new LinkedHashMap<>();
+			if (old != null)
+				for (BaseObservation<? extends Double> obs : old)
+					byTime.put(obs.getTimeslot(), obs);
+			for (BaseObservation<? extends Double> obs : update)
+				if (ACTION_DELETE.equalsIgnoreCase(obs.getAttributeValue(ACTION)))
+					byTime.remove(obs.getTimeslot());
+				else
+					byTime.put(obs.getTimeslot(), obs);
+
+			List<BaseObservation<? extends Double>> merged = new ArrayList<>(byTime.values());
+			Collections.sort(merged);
+			target.setObservationStore(Collections.unmodifiableList(merged));
+			cached.put(id, target);
+			changed.add(id);
+		}
+		return changed;
+	}
+
+	private static List<PortableTimeSeries<Double>> copy(Iterable<PortableTimeSeries<Double>> series)
+	{
+		// callers are free to modify what they get (e.g. reverse it): the observations are copied on the first change
+		List<PortableTimeSeries<Double>> result = new ArrayList<>();
+		for (PortableTimeSeries<Double> ts : series)
+		{
+			PortableTimeSeries<Double> clone = new PortableTimeSeries<>(ts);
+			clone.setObservationStore(ts);
+			result.add(clone);
+		}
+		return result;
+	}
+
+	private static String seriesId(PortableTimeSeries<?> ts)
+	{
+		StringBuilder id = new StringBuilder();
+		for (String dim : ts.getDimensionNamesArray())
+			id.append(ts.getDimension(dim)).append('.');
+		return id.toString();
+	}
+
+	private static String buildKey(String provider, String dataflow, String tsKey, String filter, String startTime,
+			String endTime)
+	{
+		return provider + "|" + dataflow + "|" + (tsKey != null ? tsKey : "") + "|" + (filter != null ? filter : "")
+				+ "|" + (startTime != null ? startTime : "") + "|" + (endTime != null ? endTime : "");
+	}
+
+	private static String now(long marginSeconds)
+	{
+		// no offset sign in the value: query parameters are not url-encoded by the query builders
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+		return format.format(new Date(System.currentTimeMillis() - Math.max(0, marginSeconds) * 1000));
+	}
+
+	private static File getDirectory()
+	{
+		return Configuration.isTimeSeriesCache() ? new File(Configuration.getTimeSeriesCacheDir()) : null;
+	}
+
+	private static File getFile(String key) throws SdmxException
+	{
+		File dir = getDirectory();
+		if (dir == null)
+			return null;
+		try
+		{
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8));
+			StringBuilder name = new StringBuilder();
+			for (byte b : digest)
+				name.append(String.format("%02x", b));
+			return new File(dir, name.append(FILE_SUFFIX).toString());
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			// SHA-1 is mandatory on every Java platform
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static CacheEntry load(String key, Dataflow dataflow, DataFlowStructure dsd) throws SdmxException
+	{
+		CacheEntry entry = new CacheEntry();
+		File file = getFile(key);
+		if (file == null || !file.exists())
+			return entry;
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file))))
+		{
+			if (in.readInt() != FORMAT_VERSION || !key.equals(in.readUTF()))
+			{
+				LOGGER.warning("Ignoring incompatible time series cache file " + file);
+				return entry;
+			}
+
+			// replay the records: each one replaces the series it contains
+			Map<String, PortableTimeSeries<Double>> series = new LinkedHashMap<>();
+			String lastSync = null;
+			boolean complete = true;
+			while (true)
+			{
+				byte[] record;
+				try
+				{
+					record = new byte[in.readInt()];
+				}
+				catch (EOFException e)
+				{
+					break;
+				}
+				try
+				{
+					in.readFully(record);
+				}
+				catch (EOFException e)
+				{
+					LOGGER.warning("Ignoring an incomplete record at the end of time series cache file " + file);
+					complete = false;
+					break;
+				}
+
+				DataInputStream recordIn = new DataInputStream(new ByteArrayInputStream(record));
+				lastSync = recordIn.readUTF();
+				for (int i = recordIn.readInt(); i > 0; i--)
+				{
+					PortableTimeSeries<Double> ts = readSeries(recordIn, dataflow, dsd);
+					series.put(seriesId(ts), ts);
+					entry.stored += ts.size();
+				}
+			}
+
+			if (lastSync != null)
+			{
+				entry.series = series;
+				entry.lastSync = lastSync;
+				entry.rewrite = !complete;
+				for (PortableTimeSeries<Double> ts : series.values())
+					entry.observations += ts.size();
+				LOGGER.fine("Loaded " + series.size() + " cached time series from " + file);
+			}
+		}
+		catch (IOException e)
+		{
+			LOGGER.log(Level.WARNING, "Could not read time series cache file " + file + ". Full download needed.", e);
+		}
+		return entry;
+	}
+
+	private static void store(String key, CacheEntry entry, Set<String> changed) throws SdmxException
+	{
+		File file = getFile(key);
+		if (file == null)
+			return;
+
+		List<PortableTimeSeries<Double>> series = new ArrayList<>(changed.size());
+		long appended = 0;
+		for (String id : changed)
+		{
+			series.add(entry.series.get(id));
+			appended += entry.series.get(id).size();
+		}
+
+		try
+		{
+			if (entry.rewrite || !file.exists() || entry.stored + appended > 2 * entry.observations)
+			{
+				// the whole cache in a new file, which replaces the old one only once complete
+				File tmp = new File(file.getPath() + ".tmp");
+				try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp))))
+				{
+					out.writeInt(FORMAT_VERSION);
+					out.writeUTF(key);
+					writeRecord(out, entry.lastSync, entry.series.values());
+				}
+				try
+				{
+					Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				}
+				catch (AtomicMoveNotSupportedException e)
+				{
+					Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				}
+				entry.stored = entry.observations;
+				entry.rewrite = false;
+			}
+			else
+			{
+				// only the changed series, at the end of the file
+				try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true))))
+				{
+					writeRecord(out, entry.lastSync, series);
+				}
+				entry.stored += appended;
+			}
+		}
+		catch (IOException e)
+		{
+			// the file may be inconsistent with the entry now
+			entry.rewrite = true;
+			throw SdmxExceptionFactory.wrap(e);
+		}
+	}
+
+	/*
+	 * Writes a record, prefixed by its length so that a record left incomplete by a crash can be detected.
+	 */
+	private static void writeRecord(DataOutputStream out, String lastSync, Collection<PortableTimeSeries<Double>> series)
+			throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream record = new DataOutputStream(bytes);
+		record.writeUTF(lastSync);
+		record.writeInt(series.size());
+		for (PortableTimeSeries<Double> ts : series)
+		{
+			String[] dims = ts.getDimensionNamesArray();
+			record.writeInt(dims.length);
+			for (String dim : dims)
+			{
+				record.writeUTF(dim);
+				record.writeUTF(ts.getDimension(dim));
+			}
+			Map<String, String> attributes = new HashMap<>(ts.getAttributesMap());
+			attributes.remove(PortableTimeSeries.GENERATEDNAME_ATTR_NAME);
+			writeMap(record, attributes);
+			record.writeInt(ts.size());
+			for (BaseObservation<? extends Double> obs : ts)
+			{
+				record.writeUTF(obs.getTimeslot());
+				record.writeDouble(obs.getValueAsDouble());
+				writeMap(record, obs.getAttributes());
+			}
+		}
+		record.flush();
+		out.writeInt(bytes.size());
+		bytes.writeTo(out);
+	}
+
+	private static PortableTimeSeries<Double> readSeries(DataInputStream in, Dataflow dataflow, DataFlowStructure dsd)
+			throws IOException
+	{
+		Map<String, Entry<String, String>> dimensions = new LinkedHashMap<>();
+		for (int j = in.readInt(); j > 0; j--)
+		{
+			String dim = in.readUTF();
+			String code = in.readUTF();
+			dimensions.put(dim, new SimpleEntry<>(code, describe(dsd, dim, code)));
+		}
+		Map<String, String> attributes = readMap(in);
+		List<DoubleObservation> obs = new ArrayList<>();
+		for (int j = in.readInt(); j > 0; j--)
+		{
+			String timeslot = in.readUTF();
+			double value = in.readDouble();
+			obs.add(new DoubleObservation(timeslot, value, readMap(in)));
+		}
+		return new PortableTimeSeries<>(dataflow, dimensions, attributes, obs);
+	}
+
+	private static String describe(DataFlowStructure dsd, String dimension, String code)
+	{
+		Dimension dim = dsd != null ? dsd.getDimension(dimension) : null;
+		Codelist cl = dim != null ? dim.getCodeList() : null;
+		return cl != null && cl.containsKey(code) ? cl.get(code) : null;
+	}
+
+	private static Map<String, String> readMap(DataInputStream in) throws IOException
+	{
+		Map<String, String> result = new HashMap<>();
+		for (int i = in.readInt(); i > 0; i--)
+			result.put(in.readUTF(), in.readUTF());
+		return result;
+	}
+
+	private static void writeMap(DataOutputStream out, Map<String, String> map) throws IOException
+	{
+		Map<String, String> values = new TreeMap<>();
+		for (Entry<String, String> e : map.entrySet())
+			if (e.getKey() != null && e.getValue() != null)
+				values.put(e.getKey(), e.getValue());
+		out.writeInt(values.size());
+		for (Entry<String, String> e : values.entrySet())
+		{
+			out.writeUTF(e.getKey());
+			out.writeUTF(e.getValue());
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package it.bancaditalia.oss.sdmx.event;
+
+import java.net.URL;
+
+/**
+ * Sent when a query ends, successfully or not.
+ */
+public class CompletionEvent extends TimedEvent
+{
+	private final int status;
+	private final long bytes;
+	private final Throwable error;
+
+	public CompletionEvent(URL url, long startTime, int status, long bytes, Throwable error)
+	{
+		super(url, startTime);
+		this.status = status;
+		this.bytes = bytes;
+		this.error = error;
+	}
+
+	/**
+	 * @return the http status of the final response, or 0 if none was received
+	 */
+	public int getStatus()
+	{
+		return status;
+	}
+
+	/**
+	 * @return the bytes received on the wire
+	 */
+	public long getBytes()
+	{
+		return bytes;
+	}
+
+	/**
+	 * @return the cause of the failure, or null if the query succeeded
+	 */
+	public Throwable getError()
+	{
+		return error;
+	}
+
+	public boolean isSuccessful()
+	{
+		return error == null;
+	}
+}
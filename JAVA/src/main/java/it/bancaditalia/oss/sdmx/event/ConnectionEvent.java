@@ -0,0 +1,32 @@
+package it.bancaditalia.oss.sdmx.event;
+
+import java.net.URL;
+
+/**
+ * Sent when a connection to the provider has been established, once for each redirection.
+ */
+public class ConnectionEvent extends TimedEvent
+{
+	private final URL connected;
+	private final long connectTime;
+
+	public ConnectionEvent(URL url, long startTime, URL connected, long connectTime)
+	{
+		super(url, startTime);
+		this.connected = connected;
+		this.connectTime = connectTime;
+	}
+
+	public URL getConnected()
+	{
+		return connected;
+	}
+
+	/**
+	 * @return the nanoseconds taken to open the connection
+	 */
+	public long getConnectTime()
+	{
+		return connectTime;
+	}
+}
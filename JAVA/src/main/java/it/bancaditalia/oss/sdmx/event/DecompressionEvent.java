@@ -0,0 +1,29 @@
+package it.bancaditalia.oss.sdmx.event;
+
+import java.net.URL;
+
+/**
+ * Sent when a compressed body has been fully received and inflated.
+ */
+public class DecompressionEvent extends TimedEvent
+{
+	private final long compressedBytes;
+	private final long bytes;
+
+	public DecompressionEvent(URL url, long startTime, long compressedBytes, long bytes)
+	{
+		super(url, startTime);
+		this.compressedBytes = compressedBytes;
+		this.bytes = bytes;
+	}
+
+	public long getCompressedBytes()
+	{
+		return compressedBytes;
+	}
+
+	public long getBytes()
+	{
+		return bytes;
+	}
+}
@@ -0,0 +1,39 @@
+package it.bancaditalia.oss.sdmx.event;
+
+import java.net.URL;
+
+/**
+ * Sent when the headers of the final response have been received.
+ */
+public class FirstByteEvent extends TimedEvent
+{
+	private final int status;
+	private final long contentLength;
+	private final String contentEncoding;
+
+	public FirstByteEvent(URL url, long startTime, int status, long contentLength, String contentEncoding)
+	{
+		super(url, startTime);
+		this.status = status;
+		this.contentLength = contentLength;
+		this.contentEncoding = contentEncoding;
+	}
+
+	public int getStatus()
+	{
+		return status;
+	}
+
+	/**
+	 * @return the length of the body on the wire, or -1 if the provider did not declare it
+	 */
+	public long getContentLength()
+	{
+		return contentLength;
+	}
+
+	public String getContentEncoding()
+	{
+		return contentEncoding;
+	}
+}
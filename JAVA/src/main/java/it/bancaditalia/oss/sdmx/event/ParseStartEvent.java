@@ -0,0 +1,25 @@
+package it.bancaditalia.oss.sdmx.event;
+
+import java.net.URL;
+
+/**
+ * Sent when the parsing of a response starts. The body may still be downloading.
+ */
+public class ParseStartEvent extends TimedEvent
+{
+	private final String parser;
+
+	public ParseStartEvent(URL url, long startTime, String parser)
+	{
+		super(url, startTime);
+		this.parser = parser;
+	}
+
+	/**
+	 * @return the class name of the parser
+	 */
+	public String getParser()
+	{
+		return parser;
+	}
+}
@@ -0,0 +1,46 @@
+package it.bancaditalia.oss.sdmx.event;
+
+import java.net.URL;
+
+/**
+ * Sent periodically while the body of a response is downloaded, and once at its end.
+ */
+public class ProgressEvent extends TimedEvent
+{
+	private final long bytes;
+	private final long contentLength;
+	private final long firstByteTime;
+
+	public ProgressEvent(URL url, long startTime, long bytes, long contentLength, long firstByteTime)
+	{
+		super(url, startTime);
+		this.bytes = bytes;
+		this.contentLength = contentLength;
+		this.firstByteTime = firstByteTime;
+	}
+
+	/**
+	 * @return the bytes received so far, as sent on the wire
+	 */
+	public long getBytes()
+	{
+		return bytes;
+	}
+
+	/**
+	 * @return the length of the body on the wire, or -1 if the provider did not declare it
+	 */
+	public long getContentLength()
+	{
+		return contentLength;
+	}
+
+	/**
+	 * @return the download rate since the first byte, in bytes per second
+	 */
+	public double getThroughput()
+	{
+		long nanos = getTime() - firstByteTime;
+		return nanos > 0 ? bytes * 1e9 / nanos : 0;
+	}
+}
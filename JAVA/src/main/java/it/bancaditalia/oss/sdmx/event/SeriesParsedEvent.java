@@ -0,0 +1,42 @@
+package it.bancaditalia.oss.sdmx.event;
+
+import java.net.URL;
+
+/**
+ * Sent when a response has been parsed.
+ */
+public class SeriesParsedEvent extends TimedEvent
+{
+	private final int series;
+	private final long observations;
+	private final long parseTime;
+
+	public SeriesParsedEvent(URL url, long startTime, int series, long observations, long parseTime)
+	{
+		super(url, startTime);
+		this.series = series;
+		this.observations = observations;
+		this.parseTime = parseTime;
+	}
+
+	/**
+	 * @return the number of time series, or of structural objects for metadata queries
+	 */
+	public int getSeries()
+	{
+		return series;
+	}
+
+	public long getObservations()
+	{
+		return observations;
+	}
+
+	/**
+	 * @return the nanoseconds spent parsing, excluding the time waiting for the network
+	 */
+	public long getParseTime()
+	{
+		return parseTime;
+	}
+}
@@ -0,0 +1,53 @@
+package it.bancaditalia.oss.sdmx.event;
+
+import java.net.URL;
+
+/**
+ * Base class of the events sent during the lifecycle of a query. Timestamps are taken with
+ * {@link System#nanoTime()}: they can only be compared with each other.
+ */
+public abstract class TimedEvent implements RestSdmxEvent
+{
+	private final URL url;
+	private final long startTime;
+	private final long time;
+
+	protected TimedEvent(URL url, long startTime)
+	{
+		this.url = url;
+		this.startTime = startTime;
+		this.time = System.nanoTime();
+	}
+
+	/**
+	 * @return the query, as originally requested (before any redirection)
+	 */
+	public URL getUrl()
+	{
+		return url;
+	}
+
+	/**
+	 * @return the nanoTime at which the query started
+	 */
+	public long getStartTime()
+	{
+		return startTime;
+	}
+
+	/**
+	 * @return the nanoTime at which this event was created
+	 */
+	public long getTime()
+	{
+		return time;
+	}
+
+	/**
+	 * @return the nanoseconds elapsed since the query started
+	 */
+	public long getElapsed()
+	{
+		return time - startTime;
+	}
+}
@@ -21,8 +21,10 @@
 package it.bancaditalia.oss.sdmx.exceptions;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
 
 import javax.xml.stream.XMLStreamException;
 
@@ -45,7 +47,7 @@ public final class SdmxExceptionFactory
 		sdmxMessages.put(SdmxResponseException.SDMX_SYNTAX_ERROR, "There is a problem with the syntax of the query.");
 		sdmxMessages.put(SdmxResponseException.SDMX_SEMANTIC_ERROR, "The syntax of the query is OK but it has no meaning.");
 		// sdmxMessages.put(304, "No change since the timestamp supplied in the If-Modified-Since header.");
-		// sdmxMessages.put(406, "Not a supported format.");
+		sdmxMessages.put(SdmxResponseException.SDMX_NOT_ACCEPTABLE, "Not a supported format.");
 		sdmxMessages.put(SdmxResponseException.SDMX_INTERNAL_SERVER_ERROR, "Error on the provider side.");
 		sdmxMessages.put(SdmxResponseException.SDMX_NOT_IMPLEMENTED, "Feature not supported.");
 		sdmxMessages.put(SdmxResponseException.SDMX_SERVICE_UNAVAILABLE, "Service temporarily unavailable. Please try again later.");
@@ -129,4 +131,54 @@ public final class SdmxExceptionFactory
 			throw new IllegalStateException("Exception " + cause.getClass().getSimpleName() + " was not recognized.", cause);
 	}
 
+	/**
+	 * Converts any exception into a {@link SdmxException}, without throwing it. Used where errors are reported to a
+	 * listener rather than thrown to the caller.
+	 * 
+	 * @param cause The exception to convert.
+	 * @return The cause itself if it is a {@link SdmxException}, a wrapped {@link XMLStreamException} or
+	 *         {@link IOException}, or a {@link SdmxUnexpectedException} for any other exception.
+	 */
+	public static SdmxException toSdmxException(Exception cause) 
+	{
+		if (cause instanceof SdmxException)
+			return (SdmxException) cause;
+		else if (cause instanceof XMLStreamException || cause instanceof IOException)
+			return wrap(cause);
+		else
+			return new SdmxUnexpectedException(cause);
+	}
+
+	/**
+	 * Unwraps the failure of a task run on another thread.
+	 * 
+	 * @param e The exception thrown by {@link java.util.concurrent.Future#get()}.
+	 * @return The cause, converted as in {@link #toSdmxException(Exception)}.
+	 * @throws RuntimeException the cause, if unchecked, as if the task had run on the calling thread.
+	 */
+	public static SdmxException unwrap(ExecutionException e) 
+	{
+		Throwable cause = e.getCause();
+		if (cause instanceof RuntimeException)
+			throw (RuntimeException) cause;
+		else if (cause instanceof Error)
+			throw (Error) cause;
+		else
+			return cause instanceof Exception ? toSdmxException((Exception) cause) : new SdmxUnexpectedException(e);
+	}
+
+	/**
+	 * Restores the interrupt status of the current thread, and converts the interruption into a {@link SdmxException}.
+	 * 
+	 * @param e The interruption.
+	 * @return The exception to throw.
+	 */
+	public static SdmxException interrupted(InterruptedException e) 
+	{
+		Thread.currentThread().interrupt();
+		InterruptedIOException cause = new InterruptedIOException("The download was interrupted");
+		cause.initCause(e);
+		return new SdmxIOException(cause.getMessage(), cause);
+	}
+
 }
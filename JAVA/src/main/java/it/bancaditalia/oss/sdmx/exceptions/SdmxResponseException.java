@@ -49,6 +49,7 @@ public final class SdmxResponseException extends SdmxException {
 	public static final int SDMX_RESPONSE_SIZE_CLIENT = 130;
 	public static final int SDMX_SYNTAX_ERROR = 140;
 	public static final int SDMX_SEMANTIC_ERROR = 150;
+	public static final int SDMX_NOT_ACCEPTABLE = 406;
 	public static final int SDMX_INTERNAL_SERVER_ERROR = 500;
 	public static final int SDMX_NOT_IMPLEMENTED = 501;
 	public static final int SDMX_SERVICE_UNAVAILABLE = 503;
@@ -1,37 +1,90 @@
 package it.bancaditalia.oss.sdmx.helper;
 
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Logger;
 
-import javax.swing.table.AbstractTableModel;
+import javax.swing.SwingUtilities;
 
-public final class CheckboxListTableModel<T> extends AbstractTableModel
+public final class CheckboxListTableModel<T> extends PagedTableModel<Entry<String, String>>
 {
 	private static final long serialVersionUID = 1L;
 	@SuppressWarnings("unused")
 	private static final Logger LOGGER = Logger.getLogger(CheckboxListTableModel.class.getName());
 	
-	private Object items[][] = new Object[0][]; 
+	// search index over the current items, built on first use
+	private volatile CodeIndex index = null;
+	private CompletableFuture<CodeIndex> indexing = null;
 
 	public void setItems(Map<String, String> itemMap)
 	{
-		Object[][] items = new Object[itemMap.size()][];
-		int i = 0;
+		List<Entry<String, String>> items = new ArrayList<>(itemMap.size());
 		for (Entry<String, String> item : itemMap.entrySet())
-			items[i++] = new Object[] { false, item.getKey(), item.getValue() };
+			items.add(new SimpleImmutableEntry<>(item));
 		
-		this.items = items;
-		fireTableStructureChanged();
+		resetIndex();
+		setItems(items);
+	}
+
+	@Override
+	protected Object[] toRow(Entry<String, String> item)
+	{
+		return new Object[] { false, item.getKey(), item.getValue() };
+	}
+
+	/**
+	 * Returns the search index over the codes and descriptions of this model. The first call starts building it in
+	 * the background and returns null: when the index is ready, onReady is run on the event dispatch thread. Must be
+	 * called on the event dispatch thread.
+	 * 
+	 * @param onReady called when an index that was not ready becomes available
+	 * @return the index, or null if it is not ready yet
+	 */
+	public CodeIndex getIndex(Runnable onReady)
+	{
+		if (index == null && indexing == null)
+		{
+			final List<Entry<String, String>> indexed = getItems();
+			final List<String> codes = new ArrayList<>(indexed.size());
+			final List<String> descriptions = new ArrayList<>(indexed.size());
+			for (Entry<String, String> item : indexed)
+			{
+				codes.add(item.getKey());
+				descriptions.add(item.getValue());
+			}
+			
+			CompletableFuture<CodeIndex> task = CompletableFuture.supplyAsync(() -> new CodeIndex(codes, descriptions));
+			indexing = task;
+			task.thenAccept(built -> SwingUtilities.invokeLater(() -> {
+					// discard the index if the items changed meanwhile
+					if (indexing == task)
+					{
+						index = built;
+						onReady.run();
+					}
+				}));
+		}
+		
+		return index;
+	}
+
+	private void resetIndex()
+	{
+		index = null;
+		indexing = null;
 	}
 
 	@Override
 	public boolean isCellEditable(int row, int column)
 	{
-		return column == 0;
+		return column == 0 && isLoaded(row);
 	}
 
 	@Override
@@ -44,11 +97,11 @@ public final class CheckboxListTableModel<T> extends AbstractTableModel
 	{
 		List<String> codes = new LinkedList<>();
 
-		for (int i = 0; i < items.length; i++)
+		for (int i = 0; i < getRowCount(); i++)
 			// 0 => checkbox column
-			if ((Boolean) items[i][0])
+			if ((Boolean) getValueAt(i, 0))
 				// 1 => key column
-				codes.add((String) items[i][1]);
+				codes.add((String) getValueAt(i, 1));
 		
 		return codes;
 	}
@@ -57,9 +110,9 @@ public final class CheckboxListTableModel<T> extends AbstractTableModel
 	{
 		int c = 0;
 
-		for (int i = 0; i < items.length; i++)
+		for (int i = 0; i < getRowCount(); i++)
 			// 0 => checkbox column
-			if ((Boolean) items[i][0])
+			if ((Boolean) getValueAt(i, 0))
 				c++;
 		
 		return c;
@@ -77,33 +130,6 @@ public final class CheckboxListTableModel<T> extends AbstractTableModel
 		return 3;
 	}
 
-	@Override
-	public int getRowCount()
-	{
-		return items.length;
-	}
-
-	@Override
-	public Object getValueAt(int rowIndex, int columnIndex)
-	{
-		try
-		{
-			return items[rowIndex][columnIndex];
-		}
-		catch (ArrayIndexOutOfBoundsException e)
-		{
-			return columnIndex == 0 ? Boolean.FALSE : "";
-		}
-	}
-	
-	@Override
-	public void setValueAt(Object aValue, int rowIndex, int columnIndex)
-	{
-		items[rowIndex][columnIndex] = aValue;
-		
-		fireTableCellUpdated(rowIndex, columnIndex);
-	}
-
 	/**
 	 * clear() will uncheck then remove all items from the CheckBoxListTableModel.
 	 * it's intended purpose is to set the CheckBoxListTableModel Object to an empty state.
@@ -111,7 +137,7 @@ public final class CheckboxListTableModel<T> extends AbstractTableModel
 	public void clear() 
 	{
 		uncheckAll();
-		this.items = new Object[0][];
-		fireTableStructureChanged();
+		resetIndex();
+		setItems(Collections.<Entry<String, String>>emptyList());
 	}
 }
@@ -0,0 +1,190 @@
+/* Copyright 2010,2014 Bank Of Italy
+*
+* Licensed under the EUPL, Version 1.1 or - as soon they
+* will be approved by the European Commission - subsequent
+* versions of the EUPL (the "Licence");
+* You may not use this work except in compliance with the
+* Licence.
+* You may obtain a copy of the Licence at:
+*
+*
+* http://ec.europa.eu/idabc/eupl
+*
+* Unless required by applicable law or agreed to in
+* writing, software distributed under the Licence is
+* distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied.
+* See the Licence for the specific language governing
+* permissions and limitations under the Licence.
+*/
+package it.bancaditalia.oss.sdmx.helper;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * <p>
+ * A search index over the rows of a codelist table: an inverted index of the trigrams (sequences of three characters)
+ * of the codes and of the descriptions.
+ * 
+ * <p>
+ * A row matches a text if its code or its description contains the text, as in the regular expression filter of the
+ * table. Lookups are case insensitive unless requested otherwise. The rows containing all the trigrams of the text are
+ * the only candidates, and shorter texts are checked row by row. Since a longer text can only match fewer rows, a
+ * search can be restricted to the rows matched by a text it contains, which is how the filter answers while the user
+ * is typing.
+ * 
+ * <p>
+ * The index is immutable and can be built outside the event dispatch thread.
+ */
+public class CodeIndex
+{
+	private static final int				GRAM	= 3;
+
+	private final String[]					codes;
+	private final String[]					lowerCodes;
+	private final String[]					descriptions;
+	private final String[]					lowerDescriptions;
+	// key: lowercase trigram --> rows whose code or description contains it
+	private final Map<String, int[]>		codeGrams;
+	private final Map<String, int[]>		descriptionGrams;
+
+	/**
+	 * Indexes the rows of a table.
+	 * 
+	 * @param codes the code of each row
+	 * @param descriptions the description of each row
+	 */
+	public CodeIndex(List<String> codes, List<String> descriptions)
+	{
+		int size = codes.size();
+		this.codes = new String[size];
+		lowerCodes = new String[size];
+		this.descriptions = new String[size];
+		lowerDescriptions = new String[size];
+
+		Map<String, List<Integer>> codeLists = new HashMap<>();
+		Map<String, List<Integer>> descriptionLists = new HashMap<>();
+		for (int row = 0; row < size; row++)
+		{
+			this.codes[row] = codes.get(row) != null ? codes.get(row) : "";
+			lowerCodes[row] = this.codes[row].toLowerCase(Locale.ROOT);
+			this.descriptions[row] = descriptions.get(row) != null ? descriptions.get(row) : "";
+			lowerDescriptions[row] = this.descriptions[row].toLowerCase(Locale.ROOT);
+			addGrams(codeLists, lowerCodes[row], row);
+			addGrams(descriptionLists, lowerDescriptions[row], row);
+		}
+
+		codeGrams = toPostings(codeLists);
+		descriptionGrams = toPostings(descriptionLists);
+	}
+
+	/**
+	 * @return the number of indexed rows
+	 */
+	public int size()
+	{
+		return codes.length;
+	}
+
+	/**
+	 * Finds the rows matching a text.
+	 * 
+	 * @param text the text. An empty text matches all rows.
+	 * @param caseSensitive true if the case of the text must match
+	 * @param inCodes true to match the text against the codes
+	 * @param inDescriptions true to match the text against the descriptions
+	 * @param within if not null, only these rows are considered, e.g. the ones matched by a part of the text
+	 * @return the matching rows
+	 */
+	public BitSet find(String text, boolean caseSensitive, boolean inCodes, boolean inDescriptions, BitSet within)
+	{
+		BitSet result = new BitSet(codes.length);
+		if (text == null || text.isEmpty())
+		{
+			result.set(0, codes.length);
+			if (within != null)
+				result.and(within);
+			return result;
+		}
+
+		String lowerText = text.toLowerCase(Locale.ROOT);
+		BitSet candidates = within;
+		if (candidates == null && lowerText.length() >= GRAM)
+		{
+			candidates = new BitSet(codes.length);
+			if (inCodes)
+				candidates.or(candidates(codeGrams, lowerText));
+			if (inDescriptions)
+				candidates.or(candidates(descriptionGrams, lowerText));
+		}
+
+		if (candidates == null)
+		{
+			// the text is too short to use the index: check each row
+			for (int row = 0; row < codes.length; row++)
+				if (matches(row, text, lowerText, caseSensitive, inCodes, inDescriptions))
+					result.set(row);
+		}
+		else
+			for (int row = candidates.nextSetBit(0); row >= 0; row = candidates.nextSetBit(row + 1))
+				if (matches(row, text, lowerText, caseSensitive, inCodes, inDescriptions))
+					result.set(row);
+
+		return result;
+	}
+
+	private boolean matches(int row, String text, String lowerText, boolean caseSensitive, boolean inCodes,
+			boolean inDescriptions)
+	{
+		if (caseSensitive)
+			return (inCodes && codes[row].contains(text)) || (inDescriptions && descriptions[row].contains(text));
+		else
+			return (inCodes && lowerCodes[row].contains(lowerText))
+					|| (inDescriptions && lowerDescriptions[row].contains(lowerText));
+	}
+
+	// the rows containing all the trigrams of the text
+	private BitSet candidates(Map<String, int[]> grams, String lowerText)
+	{
+		BitSet result = null;
+		for (int i = 0; i + GRAM <= lowerText.length() && (result == null || !result.isEmpty()); i++)
+		{
+			BitSet rows = new BitSet(codes.length);
+			int[] list = grams.get(lowerText.substring(i, i + GRAM));
+			if (list != null)
+				for (int row : list)
+					rows.set(row);
+			if (result == null)
+				result = rows;
+			else
+				result.and(rows);
+		}
+		return result;
+	}
+
+	private static void addGrams(Map<String, List<Integer>> lists, String text, int row)
+	{
+		for (int i = 0; i + GRAM <= text.length(); i++)
+		{
+			List<Integer> list = lists.computeIfAbsent(text.substring(i, i + GRAM), k -> new ArrayList<>());
+			// a trigram may be repeated in the same text
+			if (list.isEmpty() || list.get(list.size() - 1) != row)
+				list.add(row);
+		}
+	}
+
+	private static Map<String, int[]> toPostings(Map<String, List<Integer>> lists)
+	{
+		Map<String, int[]> postings = new HashMap<>(lists.size() * 4 / 3 + 1);
+		for (Entry<String, List<Integer>> entry : lists.entrySet())
+			postings.put(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+		return postings;
+	}
+}
@@ -1,14 +1,12 @@
 package it.bancaditalia.oss.sdmx.helper;
 
 import java.util.ArrayList;
-import java.util.List;
 import java.util.Map;
-
-import javax.swing.table.DefaultTableModel;
+import java.util.Map.Entry;
 
 import it.bancaditalia.oss.sdmx.api.Dataflow;
 
-public class DataflowsModel extends DefaultTableModel {
+public class DataflowsModel extends PagedTableModel<Entry<String, Dataflow>> {
 
 	private static final long serialVersionUID = 3265022631397431923L;
 	
@@ -17,28 +15,48 @@ public class DataflowsModel extends DefaultTableModel {
 	
 	public DataflowsModel() {
 		super();
-
-		//setColumnCount(6);
-		setColumnCount(4);
-		setRowCount(0);
 	}
 	
 	public void setItems(Map<String, Dataflow> flows)
 	{
-		List<String[]> dataVector = new ArrayList<>(flows.size());
-		
-		if (flows != null)
-			for (Dataflow flow: flows.values())
-				dataVector.add(new String[] { 
-						flow.getFullIdentifier().split(",")[1],  //$NON-NLS-1$
-						flow.getFullIdentifier().split(",").length >= 3 ? flow.getFullIdentifier().split(",")[2] : "N/D", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
-						//flow.getDsdIdentifier().getId(),
-						//flow.getDsdIdentifier().getVersion(),
-						flow.getAgency(),
-						flow.getDescription()
-					});
-
-		setDataVector(dataVector.toArray(new Object[0][]), colHeaders);
+		setItems(flows != null ? flows.entrySet() : new ArrayList<Entry<String, Dataflow>>());
+	}
+
+	@Override
+	protected Object[] toRow(Entry<String, Dataflow> entry)
+	{
+		Dataflow flow = entry.getValue();
+		String[] id = flow.getFullIdentifier().split(","); //$NON-NLS-1$
+		return new String[] { 
+				id[1],
+				id.length >= 3 ? id[2] : "N/D", //$NON-NLS-1$
+				//flow.getDsdIdentifier().getId(),
+				//flow.getDsdIdentifier().getVersion(),
+				flow.getAgency(),
+				flow.getDescription()
+			};
+	}
+
+	/**
+	 * @param row a row of this model
+	 * @return the key of the flow shown in that row, as in the map given to {@link #setItems(Map)}
+	 */
+	public String getKey(int row)
+	{
+		return getItem(row).getKey();
+	}
+
+	@Override
+	public int getColumnCount()
+	{
+		//return 6;
+		return 4;
+	}
+
+	@Override
+	public String getColumnName(int column)
+	{
+		return colHeaders[column] != null ? colHeaders[column] : super.getColumnName(column);
 	}
 
 	@Override
@@ -50,6 +68,6 @@ public class DataflowsModel extends DefaultTableModel {
 	{
 		//System.arraycopy(colHeaders, 0, newHeaders, 0, 6);
 		System.arraycopy(colHeaders, 0, newHeaders, 0, 4);
-		setColumnIdentifiers(colHeaders);
+		fireTableStructureChanged();
 	}
 }
@@ -0,0 +1,178 @@
+/* Copyright 2010,2014 Bank Of Italy
+*
+* Licensed under the EUPL, Version 1.1 or - as soon they
+* will be approved by the European Commission - subsequent
+* versions of the EUPL (the "Licence");
+* You may not use this work except in compliance with the
+* Licence.
+* You may obtain a copy of the Licence at:
+*
+*
+* http://ec.europa.eu/idabc/eupl
+*
+* Unless required by applicable law or agreed to in
+* writing, software distributed under the Licence is
+* distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied.
+* See the Licence for the specific language governing
+* permissions and limitations under the Licence.
+*/
+package it.bancaditalia.oss.sdmx.helper;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import javax.swing.SwingWorker;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * <p>
+ * A table model whose rows are computed from a list of items by a background worker, one page at a time. The table
+ * shows all the rows at once: the ones not computed yet hold placeholders, and each page is repainted as soon as it
+ * is ready. Sorters and filters see the final values when the last page is done.
+ * 
+ * <p>
+ * Short lists are computed at once. All methods must be called on the event dispatch thread.
+ *
+ * @param <T> the type of the items
+ */
+public abstract class PagedTableModel<T> extends AbstractTableModel
+{
+	private static final long	serialVersionUID	= 1L;
+
+	/**
+	 * The number of rows computed in each page.
+	 */
+	public static final int		PAGE_SIZE			= 1000;
+	/**
+	 * The text shown in the cells of the rows not computed yet.
+	 */
+	public static final String	PLACEHOLDER			= "...";					//$NON-NLS-1$
+
+	private List<T>				items				= Collections.emptyList();
+	private Object[][]			rows				= new Object[0][];
+	private int					loaded				= 0;
+	private transient SwingWorker<Void, Integer>	loader	= null;
+
+	/**
+	 * Computes the row of an item. It is called outside the event dispatch thread.
+	 * 
+	 * @param item the item
+	 * @return the values of the row
+	 */
+	protected abstract Object[] toRow(T item);
+
+	/**
+	 * Replaces the items of this model. The rows are computed in the background if there are more than a page of them.
+	 * 
+	 * @param items the new items
+	 */
+	public void setItems(Collection<? extends T> items)
+	{
+		if (loader != null)
+			loader.cancel(false);
+		loader = null;
+
+		final List<T> source = new ArrayList<>(items);
+		final Object[][] target = new Object[source.size()][];
+		this.items = source;
+		this.rows = target;
+		
+		if (source.size() <= PAGE_SIZE)
+		{
+			for (int i = 0; i < source.size(); i++)
+				target[i] = toRow(source.get(i));
+			loaded = source.size();
+			fireTableStructureChanged();
+			return;
+		}
+		
+		loaded = 0;
+		fireTableStructureChanged();
+		loader = new SwingWorker<Void, Integer>() {
+				@Override
+				protected Void doInBackground()
+				{
+					for (int i = 0; i < target.length && !isCancelled(); i++)
+					{
+						target[i] = toRow(source.get(i));
+						if ((i + 1) % PAGE_SIZE == 0 || i + 1 == target.length)
+							publish(i + 1);
+					}
+					return null;
+				}
+
+				@Override
+				protected void process(List<Integer> pages)
+				{
+					if (rows != target)
+						return;
+
+					int first = loaded;
+					loaded = pages.get(pages.size() - 1);
+					fireTableRowsUpdated(first, loaded - 1);
+				}
+
+				@Override
+				protected void done()
+				{
+					// let sorters and filters see the real values
+					if (rows == target && !isCancelled())
+						fireTableDataChanged();
+				}
+			};
+		loader.execute();
+	}
+
+	/**
+	 * @param row a row index
+	 * @return the item shown in the row. It is available even if the row is not computed yet.
+	 */
+	public T getItem(int row)
+	{
+		return items.get(row);
+	}
+
+	/**
+	 * @return the items of this model
+	 */
+	public List<T> getItems()
+	{
+		return Collections.unmodifiableList(items);
+	}
+
+	/**
+	 * @param row a row index
+	 * @return true if the row holds its real values
+	 */
+	public boolean isLoaded(int row)
+	{
+		return row < loaded;
+	}
+
+	@Override
+	public int getRowCount()
+	{
+		return rows.length;
+	}
+
+	@Override
+	public Object getValueAt(int rowIndex, int columnIndex)
+	{
+		if (!isLoaded(rowIndex))
+			return getColumnClass(columnIndex) == Boolean.class ? Boolean.FALSE : PLACEHOLDER;
+		return rows[rowIndex][columnIndex];
+	}
+
+	@Override
+	public void setValueAt(Object aValue, int rowIndex, int columnIndex)
+	{
+		if (!isLoaded(rowIndex))
+			return;
+		rows[rowIndex][columnIndex] = aValue;
+		fireTableCellUpdated(rowIndex, columnIndex);
+	}
+}
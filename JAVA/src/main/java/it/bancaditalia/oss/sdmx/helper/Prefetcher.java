@@ -0,0 +1,148 @@
+/* Copyright 2010,2014 Bank Of Italy
+*
+* Licensed under the EUPL, Version 1.1 or - as soon they
+* will be approved by the European Commission - subsequent
+* versions of the EUPL (the "Licence");
+* You may not use this work except in compliance with the
+* Licence.
+* You may obtain a copy of the Licence at:
+*
+*
+* http://ec.europa.eu/idabc/eupl
+*
+* Unless required by applicable law or agreed to in
+* writing, software distributed under the Licence is
+* distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied.
+* See the Licence for the specific language governing
+* permissions and limitations under the Licence.
+*/
+package it.bancaditalia.oss.sdmx.helper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import it.bancaditalia.oss.sdmx.client.SDMXClientFactory;
+import it.bancaditalia.oss.sdmx.client.SdmxClientHandler;
+import it.bancaditalia.oss.sdmx.exceptions.SdmxException;
+import it.bancaditalia.oss.sdmx.util.Configuration;
+
+/**
+ * <p>
+ * Downloads in the background the structure and the codes of the dataflow selected in the helper, so that the
+ * dimensions clicked next are served from the caches of the session instead of costing a round trip each.
+ * 
+ * <p>
+ * The structure is requested first, which also retrieves the codelists of its dimensions. For SDMX 3 providers the
+ * codes available without any filter are requested next. The requests run on low priority daemon threads, at most
+ * max.concurrency of the provider at a time.
+ * 
+ * <p>
+ * Selecting another dataflow cancels the prefetch of the previous one: queued requests are dropped, and the results
+ * of the running ones are not followed up. Running downloads are not interrupted, because the session may be sharing
+ * them with a request of the user for the same metadata.
+ */
+class Prefetcher
+{
+	private static final Logger		LOGGER		= Configuration.getSdmxLogger();
+
+	private interface Task
+	{
+		public void run() throws SdmxException;
+	}
+
+	private final ThreadPoolExecutor	executor;
+	private final List<Future<?>>		queued		= new ArrayList<>();
+	private long						generation	= 0;
+
+	public Prefetcher()
+	{
+		executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+				Thread thread = new Thread(r, "SDMXHelper prefetch"); //$NON-NLS-1$
+				thread.setDaemon(true);
+				thread.setPriority(Thread.MIN_PRIORITY);
+				return thread;
+			});
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Starts prefetching the metadata of a dataflow, cancelling any previous prefetch.
+	 * 
+	 * @param provider the provider name
+	 * @param dataflow the dataflow id
+	 */
+	public synchronized void prefetch(final String provider, final String dataflow)
+	{
+		cancel();
+		setThreads(Math.max(1, Configuration.getMaxConcurrency(provider)));
+		final long current = generation;
+		submit(current, () -> {
+			LOGGER.fine("Prefetching the codes of " + dataflow + " from " + provider); //$NON-NLS-1$ //$NON-NLS-2$
+			// the session resolves the codelists of the dimensions along with the structure
+			SdmxClientHandler.getDimensions(provider, dataflow);
+			if (SDMXClientFactory.SDMX_V3.equals(SDMXClientFactory.getProviders().get(provider).getSdmxVersion()))
+				submit(current, () -> SdmxClientHandler.filterCodes(provider, dataflow, "")); //$NON-NLS-1$
+		});
+	}
+
+	/**
+	 * Cancels the current prefetch, if any.
+	 */
+	public synchronized void cancel()
+	{
+		generation++;
+		for (Future<?> future : queued)
+			future.cancel(false);
+		queued.clear();
+	}
+
+	private void setThreads(int threads)
+	{
+		// the core size can never exceed the maximum size
+		if (threads > executor.getMaximumPoolSize())
+		{
+			executor.setMaximumPoolSize(threads);
+			executor.setCorePoolSize(threads);
+		}
+		else if (threads < executor.getMaximumPoolSize())
+		{
+			executor.setCorePoolSize(threads);
+			executor.setMaximumPoolSize(threads);
+		}
+	}
+
+	private synchronized void submit(final long taskGeneration, final Task task)
+	{
+		if (taskGeneration != generation)
+			return;
+
+		queued.removeIf(Future::isDone);
+		queued.add(executor.submit(() -> {
+				if (!isCurrent(taskGeneration))
+					return;
+				try
+				{
+					task.run();
+				}
+				catch (SdmxException | RuntimeException e)
+				{
+					// the user will get the error when asking for the same metadata
+					LOGGER.fine("Prefetch failed: " + e.getMessage()); //$NON-NLS-1$
+					LOGGER.log(Level.FINER, "", e); //$NON-NLS-1$
+				}
+			}));
+	}
+
+	private synchronized boolean isCurrent(long taskGeneration)
+	{
+		return taskGeneration == generation;
+	}
+}
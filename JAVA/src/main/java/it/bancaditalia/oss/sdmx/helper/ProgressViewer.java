@@ -35,17 +35,26 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
 import javax.swing.Box;
 import javax.swing.JButton;
 import javax.swing.JDialog;
+import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JProgressBar;
 import javax.swing.SwingUtilities;
 import javax.swing.SwingWorker;
 import javax.swing.border.EmptyBorder;
 
+import it.bancaditalia.oss.sdmx.client.SdmxClientHandler;
+import it.bancaditalia.oss.sdmx.event.ConnectionEvent;
+import it.bancaditalia.oss.sdmx.event.ProgressEvent;
+import it.bancaditalia.oss.sdmx.event.RestSdmxEvent;
+import it.bancaditalia.oss.sdmx.event.RestSdmxEventListener;
+import it.bancaditalia.oss.sdmx.event.SeriesParsedEvent;
+
 /**
  * @author Attilio Mattiocco
  *
@@ -74,6 +83,10 @@ public class ProgressViewer<T> implements Serializable
         panel.add(progressBar);
         progressBar.setIndeterminate(true);
         
+        JLabel lblStatus = new JLabel(" ");
+        lblStatus.setBorder(new EmptyBorder(5, 0, 0, 0));
+        panel.add(lblStatus, BorderLayout.NORTH);
+        
         Box horizontalBox = Box.createHorizontalBox();
         horizontalBox.setBorder(new EmptyBorder(10, 0, 0, 0));
         panel.add(horizontalBox, BorderLayout.SOUTH);
@@ -83,13 +96,31 @@ public class ProgressViewer<T> implements Serializable
         horizontalBox.add(btnCancel);
         
         dialog.setDefaultCloseOperation(JDialog.DISPOSE_ON_CLOSE);
-        dialog.setSize(300, 103);
+        dialog.setSize(300, 125);
         dialog.setLocationRelativeTo(parent);
         dialog.setModal(true);
         dialog.setResizable(false);
         dialog.setTitle("Executing query...");
     	
-        Future<T> result = EXECUTOR_SERVICE.submit(() -> task.call());
+        // show the progress of the queries run by the task: the listener receives the events of the whole session,
+        // and the events of a query are fired on the thread running it
+        AtomicReference<Thread> taskThread = new AtomicReference<>();
+        RestSdmxEventListener listener = event -> {
+        	if (Thread.currentThread() == taskThread.get())
+        		showProgress(event, progressBar, lblStatus);
+        };
+        SdmxClientHandler.addEventListener(listener);
+        Future<T> result = EXECUTOR_SERVICE.submit(() -> {
+        	taskThread.set(Thread.currentThread());
+        	try
+        	{
+        		return task.call();
+        	}
+        	finally
+        	{
+        		taskThread.set(null);
+        	}
+        });
         final ActionListener cancelListener = e -> {
         	result.cancel(true);
         	isCancelled.set(true);
@@ -107,6 +138,7 @@ public class ProgressViewer<T> implements Serializable
 				{
 					while (result == null || (!isCancelled.get() && !result.isDone()))
 						Thread.sleep(100);
+					SdmxClientHandler.removeEventListener(listener);
 
 					T value = result.get();
 					SwingUtilities.invokeLater(() -> dialog.dispose());
@@ -117,6 +149,7 @@ public class ProgressViewer<T> implements Serializable
 				catch (ExecutionException | InterruptedException e)
 				{
 					Throwable t = e instanceof ExecutionException ? e.getCause() : e;
+					SdmxClientHandler.removeEventListener(listener);
 					isCancelled.set(true);
 					SwingUtilities.invokeLater(() -> dialog.dispose());
 					SwingUtilities.invokeLater(() -> onError.accept(t));
@@ -126,6 +159,49 @@ public class ProgressViewer<T> implements Serializable
 		};
     }
     
+    private static void showProgress(RestSdmxEvent event, JProgressBar progressBar, JLabel lblStatus)
+    {
+    	final String text;
+    	final int percent;
+    	if (event instanceof ConnectionEvent)
+    	{
+    		text = "Connected to " + ((ConnectionEvent) event).getConnected().getHost();
+    		percent = -1;
+    	}
+    	else if (event instanceof ProgressEvent)
+    	{
+    		ProgressEvent progress = (ProgressEvent) event;
+    		text = formatBytes(progress.getBytes()) + " received (" + formatBytes((long) progress.getThroughput()) + "/s)";
+    		percent = progress.getContentLength() > 0 ? (int) Math.min(100, 100 * progress.getBytes() / progress.getContentLength()) : -1;
+    	}
+    	else if (event instanceof SeriesParsedEvent)
+    	{
+    		SeriesParsedEvent parsed = (SeriesParsedEvent) event;
+    		text = parsed.getObservations() > 0 ? String.format("%,d series, %,d observations", parsed.getSeries(), parsed.getObservations())
+    				: String.format("%,d items", parsed.getSeries());
+    		percent = -1;
+    	}
+    	else
+    		return;
+    	
+    	SwingUtilities.invokeLater(() -> {
+    		lblStatus.setText(text);
+    		progressBar.setIndeterminate(percent < 0);
+    		if (percent >= 0)
+    			progressBar.setValue(percent);
+    	});
+    }
+    
+    private static String formatBytes(long bytes)
+    {
+    	if (bytes < 1024)
+    		return bytes + " B";
+    	else if (bytes < 1024 * 1024)
+    		return String.format("%.1f KB", bytes / 1024.0);
+    	else
+    		return String.format("%.1f MB", bytes / 1024.0 / 1024.0);
+    }
+    
     public void start()
     {
     	worker.execute();
@@ -23,7 +23,6 @@ import javax.swing.SwingUtilities;
 import javax.swing.text.DefaultEditorKit;
 
 import it.bancaditalia.oss.sdmx.api.PortableTimeSeries;
-import it.bancaditalia.oss.sdmx.exceptions.SdmxException;
 import it.bancaditalia.oss.sdmx.util.Configuration;
 
 class ResultsFrame extends JFrame 
@@ -83,7 +82,7 @@ class ResultsFrame extends JFrame
 						else if (column == 0 && SwingUtilities.isLeftMouseButton(event) && event.getClickCount() >= 2)
 								new SeriesViewer(provider, tsTable.getValueAt(row, 0).toString()).setVisible(true);
 					}
-					catch (SdmxException e)
+					catch (RuntimeException e)
 					{
 						LOGGER.severe("Exception. Class: " + e.getClass().getName() + " .Message: " + e.getMessage());
 						LOGGER.log(Level.FINER, "", e);
@@ -152,7 +151,7 @@ class ResultsFrame extends JFrame
 							{
 								new SeriesViewer(provider, name).setVisible(true);
 							}
-							catch (SdmxException e1)
+							catch (RuntimeException e1)
 							{
 								LOGGER.severe("Exception. Class: " + e1.getClass().getName() + " .Message: " + e1.getMessage());
 								LOGGER.log(Level.FINER, "", e1);
@@ -32,6 +32,7 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.AbstractMap.SimpleEntry;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -41,6 +42,7 @@ import java.util.Locale;
 import java.util.Locale.LanguageRange;
 import java.util.Map.Entry;
 import java.util.ResourceBundle;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -97,6 +99,8 @@ import javax.swing.text.DefaultEditorKit;
 import it.bancaditalia.oss.sdmx.api.Dataflow;
 import it.bancaditalia.oss.sdmx.api.Dimension;
 import it.bancaditalia.oss.sdmx.api.PortableTimeSeries;
+import it.bancaditalia.oss.sdmx.client.FlowIndex;
+import it.bancaditalia.oss.sdmx.client.FlowIndex.Field;
 import it.bancaditalia.oss.sdmx.client.Provider;
 import it.bancaditalia.oss.sdmx.client.SDMXClientFactory;
 import it.bancaditalia.oss.sdmx.client.SdmxClientHandler;
@@ -172,6 +176,13 @@ public class SDMXHelper extends JFrame
 	private final JButton btnPrintQuery = new JButton();
 	private final ButtonGroup selectedProviderGroup = new ButtonGroup();
 	private final DataflowsModel dataflowsTableModel = new DataflowsModel();
+	private volatile FlowIndex flowIndex = null;
+	private final Prefetcher prefetcher = new Prefetcher();
+	// last plain text search in the codes table, refined while the user types
+	private CodeIndex lastCodeIndex = null;
+	private String lastCodeOptions = null;
+	private String lastCodeText = null;
+	private BitSet lastCodeMatches = null;
 	private final EnumedListTableModel<Dimension> dimsTableModel = new EnumedListTableModel<>();
 	private final HashMap<String, TableRowSorter<CheckboxListTableModel<String>>> codelistSortersMap = new HashMap<>();
 	private final JCheckBox cbRegexSearchCL = new JCheckBox();
@@ -460,6 +471,30 @@ public class SDMXHelper extends JFrame
 		tfDataflowFilter.setForeground(Color.RED);
 			
 		final DoFilterListener flowListener = new DoFilterListener(tfDataflowFilter, text -> {
+				if (flowIndex != null && !cbRegexSearchFlow.isSelected() && !cbWholeWordFlow.isSelected())
+				{
+					// plain text: look it up in the index instead of scanning every row
+					final Field fields[];
+					if (rdSearchCodeFlow.isSelected())
+						fields = new Field[] { Field.ID };
+					else if (rdSearchDescFlow.isSelected())
+						fields = new Field[] { Field.DESCRIPTION };
+					else
+						fields = Field.values();
+					final Set<String> matching = flowIndex.substring(text, cbCaseSearchFlow.isSelected(), fields).keySet();
+					
+					@SuppressWarnings("unchecked")
+					TableRowSorter<DataflowsModel> sorter = (TableRowSorter<DataflowsModel>) tblDataflows.getRowSorter();
+					sorter.setRowFilter(new RowFilter<DataflowsModel, Integer>() {
+							@Override
+							public boolean include(RowFilter.Entry<? extends DataflowsModel, ? extends Integer> entry)
+							{
+								return matching.contains(entry.getModel().getKey(entry.getIdentifier()));
+							}
+						});
+					return;
+				}
+
 				String searchPattern = cbCaseSearchFlow.isSelected() ? "": "(?i)"; //$NON-NLS-1$ //$NON-NLS-2$
 				searchPattern += cbRegexSearchFlow.isSelected() ? text : Pattern.quote(text);
 				searchPattern = cbWholeWordFlow.isSelected() ? "^" + searchPattern + "$" : searchPattern;   //$NON-NLS-1$ //$NON-NLS-2$
@@ -550,35 +585,7 @@ public class SDMXHelper extends JFrame
 		codeOptionsPane.setMaximumSize(new java.awt.Dimension(32768, 25));
 		codesPanel.add(codeOptionsPane);
 
-		final DoFilterListener codeFilterListener = new DoFilterListener(tfCodesFilter, text -> {
-				String searchPattern = cbCaseSearchCL.isSelected() ? "": "(?i)"; //$NON-NLS-1$ //$NON-NLS-2$
-				searchPattern += cbRegexSearchCL.isSelected() ? text : Pattern.quote(text);
-				searchPattern = cbWholeWordCL.isSelected() ? "^" + searchPattern + "$" : searchPattern;   //$NON-NLS-1$ //$NON-NLS-2$
-				
-				try 
-				{
-			        Pattern.compile(searchPattern);
-
-					final int indices[];
-					int indicesCode[] = { 1 };
-					int indicesDesc[] = { 2 };
-					int indicesCodeDesc[] = { 1, 2 };
-					
-					if (rdSearchCodeCL.isSelected())
-						indices = indicesCode;
-					else if (rdSearchDescCL.isSelected())
-						indices = indicesDesc;
-					else
-						indices = indicesCodeDesc;
-
-					((TableRowSorter<?>) tblCodes.getRowSorter()).setRowFilter(RowFilter.regexFilter(searchPattern, indices));
-					updateCodelistCount();
-				} 
-				catch (PatternSyntaxException e) 
-				{
-			        // don't do anything if the pattern is invalid
-			    }
-			});
+		final DoFilterListener codeFilterListener = new DoFilterListener(tfCodesFilter, this::filterCodes);
 
 		cbRegexSearchCL.addActionListener(e -> {
 				cbWholeWordCL.setSelected(false);
@@ -946,6 +953,7 @@ public class SDMXHelper extends JFrame
 		String dataflowID = getSelectedDataflow();
 		if (!e.getValueIsAdjusting() && dataflowID != null)
 		{
+			prefetcher.prefetch(getCurrentProvider(), dataflowID);
 			updateDataflow(dataflowID);
 			tfDimensionFilter.setText(""); //$NON-NLS-1$
 			dimTableSorter.setRowFilter(null);
@@ -969,7 +977,7 @@ public class SDMXHelper extends JFrame
 		
 		new ProgressViewer<>(this, interrupted, () -> 
 			SDMXClientFactory.getProviders().get(provider).getSdmxVersion().equals(SDMXClientFactory.SDMX_V3) ?
-				SdmxClientHandler.filterCodes(provider, selectedDataflow, createAvailabilityFilter()).get(selectedDimension) 
+				SdmxClientHandler.filterCodes(provider, selectedDataflow, createAvailabilityFilter(), selectedDimension) 
 				:
 				getCodes(provider, selectedDataflow, selectedDimension)	
 				,
@@ -1016,6 +1024,76 @@ public class SDMXHelper extends JFrame
 			});
 	}
 
+	/**
+	 * Filters the codes table. Plain text searches are answered by the search index of the codelist as soon as it is
+	 * built, narrowing the previous result while the user keeps typing; the other searches use a regular expression.
+	 * 
+	 * @param text the text in the filter field
+	 */
+	private void filterCodes(String text)
+	{
+		@SuppressWarnings("unchecked")
+		TableRowSorter<CheckboxListTableModel<String>> sorter = (TableRowSorter<CheckboxListTableModel<String>>) tblCodes.getRowSorter();
+		if (sorter != null && !cbRegexSearchCL.isSelected() && !cbWholeWordCL.isSelected())
+		{
+			CodeIndex index = sorter.getModel().getIndex(() -> filterCodes(tfCodesFilter.getText()));
+			if (index != null)
+			{
+				boolean inCodes = !rdSearchDescCL.isSelected();
+				boolean inDescriptions = !rdSearchCodeCL.isSelected();
+				String options = cbCaseSearchCL.isSelected() + "," + inCodes + "," + inDescriptions; //$NON-NLS-1$ //$NON-NLS-2$
+				BitSet within = index == lastCodeIndex && options.equals(lastCodeOptions) && text.contains(lastCodeText) 
+						? lastCodeMatches : null;
+				final BitSet matches = index.find(text, cbCaseSearchCL.isSelected(), inCodes, inDescriptions, within);
+				lastCodeIndex = index;
+				lastCodeOptions = options;
+				lastCodeText = text;
+				lastCodeMatches = matches;
+
+				if (within == null || matches.cardinality() != within.cardinality())
+					sorter.setRowFilter(text.isEmpty() ? null : new RowFilter<CheckboxListTableModel<String>, Integer>() {
+							@Override
+							public boolean include(RowFilter.Entry<? extends CheckboxListTableModel<String>, ? extends Integer> entry)
+							{
+								return matches.get(entry.getIdentifier());
+							}
+						});
+				updateCodelistCount();
+				return;
+			}
+		}
+		lastCodeIndex = null;
+
+		// case insensitive for all letters, as in CodeIndex
+		String searchPattern = cbCaseSearchCL.isSelected() ? "": "(?iu)"; //$NON-NLS-1$ //$NON-NLS-2$
+		searchPattern += cbRegexSearchCL.isSelected() ? text : Pattern.quote(text);
+		searchPattern = cbWholeWordCL.isSelected() ? "^" + searchPattern + "$" : searchPattern;   //$NON-NLS-1$ //$NON-NLS-2$
+		
+		try 
+		{
+			Pattern.compile(searchPattern);
+
+			final int indices[];
+			int indicesCode[] = { 1 };
+			int indicesDesc[] = { 2 };
+			int indicesCodeDesc[] = { 1, 2 };
+			
+			if (rdSearchCodeCL.isSelected())
+				indices = indicesCode;
+			else if (rdSearchDescCL.isSelected())
+				indices = indicesDesc;
+			else
+				indices = indicesCodeDesc;
+
+			((TableRowSorter<?>) tblCodes.getRowSorter()).setRowFilter(RowFilter.regexFilter(searchPattern, indices));
+			updateCodelistCount();
+		} 
+		catch (PatternSyntaxException e) 
+		{
+			// don't do anything if the pattern is invalid
+		}
+	}
+
 	private void updateCodelistCount()
 	{
 		int selected = 0;
@@ -1134,14 +1212,16 @@ public class SDMXHelper extends JFrame
 	private void updateSource(final String provider)
 	{
 		final AtomicBoolean isCancelled = new AtomicBoolean(false);
-		new ProgressViewer<>(this, isCancelled, () -> SdmxClientHandler.getFlowObjects(provider, null),
-			flows -> {
+		prefetcher.cancel();
+		new ProgressViewer<>(this, isCancelled, () -> SdmxClientHandler.getFlowIndex(provider),
+			index -> {
 				if (!isCancelled.get())
 				{
 					codelistSortersMap.clear();
 					tblCodes.setModel(new CheckboxListTableModel<String>()); //$NON-NLS-1$ //$NON-NLS-2$
 					dimsTableModel.clear();
-					dataflowsTableModel.setItems(flows);
+					flowIndex = index;
+					dataflowsTableModel.setItems(index.glob(null));
 					TableRowSorter<DataflowsModel> rowSorter = new TableRowSorter<>(dataflowsTableModel);
 					rowSorter.setSortKeys(singletonList(new RowSorter.SortKey(0, SortOrder.ASCENDING)));
 					tblDataflows.setRowSorter(rowSorter);										
@@ -1194,8 +1274,9 @@ public class SDMXHelper extends JFrame
 	private String getSelectedDataflow()
 	{
 		int rowSelected = tblDataflows.getSelectedRow();
+		// the row may still show placeholders: read the id from the flow itself
 		return rowSelected != -1
-				? tblDataflows.getValueAt(rowSelected, tblDataflows.convertColumnIndexToView(0)).toString()
+				? dataflowsTableModel.getItem(tblDataflows.convertRowIndexToModel(rowSelected)).getValue().getFullIdentifier().split(",")[1] //$NON-NLS-1$
 				: null;
 	}
 	
@@ -12,8 +12,8 @@ import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.event.FocusAdapter;
 import java.awt.event.FocusEvent;
-import java.io.IOException;
 import java.io.Serializable;
+import java.time.Year;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -24,8 +24,14 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+import javax.swing.Box;
 import javax.swing.ImageIcon;
+import javax.swing.JButton;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JMenu;
@@ -34,6 +40,8 @@ import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JSlider;
 import javax.swing.JTable;
+import javax.swing.SwingWorker;
+import javax.swing.border.EmptyBorder;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 import javax.swing.table.DefaultTableCellRenderer;
@@ -44,14 +52,28 @@ import it.bancaditalia.oss.sdmx.api.BaseObservation;
 import it.bancaditalia.oss.sdmx.api.PortableTimeSeries;
 import it.bancaditalia.oss.sdmx.client.SdmxClientHandler;
 import it.bancaditalia.oss.sdmx.exceptions.SdmxException;
+import it.bancaditalia.oss.sdmx.exceptions.SdmxResponseException;
+import it.bancaditalia.oss.sdmx.exceptions.SdmxXmlContentException;
+import it.bancaditalia.oss.sdmx.util.Configuration;
 
 public class SeriesViewer extends JFrame
 {
 	private static final long serialVersionUID = 1L;
 
+	private static final Logger LOGGER = Configuration.getSdmxLogger();
+	// years of observations downloaded to preview the series
+	private static final int PREVIEW_YEARS = 5;
+
 	private final JTable table = new JTable();
 	private final JSlider precisionSlider = new JSlider();
-	private final DefaultTableModel model;
+	private final JLabel status = new JLabel();
+	private final JButton btnFullHistory = new JButton("Load full history");
+
+	// downloads the series observed since startTime, or their full history if it is null
+	private interface Query
+	{
+		public List<PortableTimeSeries<Double>> run(String startTime) throws SdmxException;
+	}
 
 	private class IconRenderer implements TableCellRenderer, Serializable
 	{
@@ -123,7 +145,7 @@ public class SeriesViewer extends JFrame
 	/**
 	 * @wbp.parser.constructor
 	 */
-	public SeriesViewer(String provider, String[] nameArray) throws SdmxException, IOException
+	public SeriesViewer(String provider, String[] nameArray)
 	{
 		super("Tabulate series");
 		setDefaultCloseOperation(DISPOSE_ON_CLOSE);
@@ -154,15 +176,35 @@ public class SeriesViewer extends JFrame
 		precisionSlider.setValue(6);
 		precisionMenu.add(precisionSlider);
 		
-		Set<String> names = new HashSet<>(Arrays.asList(nameArray)); 
-		List<PortableTimeSeries<Double>> series = new ArrayList<>();
-		for (String name: names)
-			series.addAll(SdmxClientHandler.getTimeSeries(provider, null, name, null, null, null, false, null, false));
-		
-		if (series.size() < names.size())
-			throw new IllegalStateException("Couldn't download all series");
+		final Set<String> names = new HashSet<>(Arrays.asList(nameArray)); 
+		initialize(startTime -> {
+				List<PortableTimeSeries<Double>> series = new ArrayList<>();
+				for (String name: names)
+					series.addAll(SdmxClientHandler.getTimeSeries(provider, null, name, null, startTime, null, false, null, false));
+				
+				if (series.size() < names.size())
+					throw new SdmxXmlContentException("Couldn't download all series");
+				return series;
+			}, 
+			series -> tabulate(names, series));
+	}
+
+	public SeriesViewer(String provider, String singleSeriesName)
+	{
+		super(singleSeriesName);
 		
-		model = new ComparatorModel(names);
+		initialize(startTime -> {
+				List<PortableTimeSeries<Double>> list = SdmxClientHandler.getTimeSeries(provider, null, singleSeriesName, null, startTime, null, false, null, false);
+				if (list.size() != 1)
+					throw new IllegalStateException("Query must return exactly one time series");
+				return list;
+			}, 
+			series -> show(series.get(0)));
+	}
+
+	private void tabulate(Set<String> names, List<PortableTimeSeries<Double>> series)
+	{
+		DefaultTableModel model = new ComparatorModel(names);
 
 		final Map<String, List<Object>> values = new TreeMap<>();
 		final Map<String, Double> maxes = new HashMap<>();
@@ -201,7 +243,7 @@ public class SeriesViewer extends JFrame
 			model.addRow(row.toArray());
 		}
 
-		initialize();
+		table.setModel(model);
 
 		TableCellRenderer minMaxCellRenderer = new IconRenderer(maxes, mins);
 
@@ -209,17 +251,10 @@ public class SeriesViewer extends JFrame
 			table.getColumnModel().getColumn(table.convertColumnIndexToView(col)).setCellRenderer(minMaxCellRenderer);
 	}
 
-	public SeriesViewer(String provider, String singleSeriesName) throws SdmxException
+	private void show(PortableTimeSeries<Double> series)
 	{
-		super(singleSeriesName);
-		
-		List<PortableTimeSeries<Double>> list = SdmxClientHandler.getTimeSeries(provider, null, singleSeriesName, null, null, null, false, null, false);
-		if (list.size() != 1)
-			throw new IllegalStateException("Query must return exactly one time series");
-		
-		PortableTimeSeries<Double> series = list.iterator().next();
 		Set<String> attrNames = series.getObsLevelAttributesNames();
-		model = new SeriesModel(attrNames);
+		DefaultTableModel model = new SeriesModel(attrNames);
 
 		for(BaseObservation<? extends Double> obs: series)
 		{
@@ -231,19 +266,92 @@ public class SeriesViewer extends JFrame
 			model.addRow(row);
 		}
 		
-		initialize();
+		table.setModel(model);
 	}
 
-	private void initialize()
+	/*
+	 * Lays out the frame and starts downloading a preview of the series: only the observations of the last
+	 * PREVIEW_YEARS years, unless the preview turns out to be empty. The full history is downloaded on demand.
+	 */
+	private void initialize(Query query, Consumer<List<PortableTimeSeries<Double>>> onLoad)
 	{
 		JScrollPane scrollPane = new JScrollPane();
 		getContentPane().add(scrollPane, BorderLayout.CENTER);
 
-		table.setModel(model);
 		scrollPane.setViewportView(table);
 
+		Box statusBar = Box.createHorizontalBox();
+		statusBar.setBorder(new EmptyBorder(2, 5, 2, 5));
+		statusBar.add(status);
+		statusBar.add(Box.createHorizontalGlue());
+		statusBar.add(btnFullHistory);
+		getContentPane().add(statusBar, BorderLayout.SOUTH);
+		btnFullHistory.setEnabled(false);
+		btnFullHistory.addActionListener(e -> load(query, onLoad, null));
+
 		setSize(450, 300);
 		setLocationRelativeTo(null);
 		setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+
+		load(query, onLoad, String.valueOf(Year.now().minusYears(PREVIEW_YEARS).getValue()));
+	}
+
+	private void load(Query query, Consumer<List<PortableTimeSeries<Double>>> onLoad, String startTime)
+	{
+		status.setText("Loading...");
+		btnFullHistory.setEnabled(false);
+		new SwingWorker<List<PortableTimeSeries<Double>>, Void>() {
+				private boolean preview = startTime != null;
+
+				@Override
+				protected List<PortableTimeSeries<Double>> doInBackground() throws Exception
+				{
+					List<PortableTimeSeries<Double>> series;
+					try
+					{
+						series = query.run(startTime);
+					}
+					catch (SdmxXmlContentException e)
+					{
+						// the series, or some of them, have no observations since startTime
+						if (startTime == null)
+							throw e;
+						series = new ArrayList<>();
+					}
+					catch (SdmxResponseException e)
+					{
+						if (startTime == null || e.getResponseCode() != SdmxResponseException.SDMX_NO_RESULTS_FOUND)
+							throw e;
+						series = new ArrayList<>();
+					}
+
+					for (PortableTimeSeries<Double> ts: series)
+						if (!ts.isEmpty())
+							return series;
+					
+					// nothing recent, e.g. a discontinued series: show the whole history instead
+					preview = false;
+					return startTime == null ? series : query.run(null);
+				}
+
+				@Override
+				protected void done()
+				{
+					try
+					{
+						onLoad.accept(get());
+						status.setText(preview ? "Observations since " + startTime : "Full history");
+						btnFullHistory.setEnabled(preview);
+					}
+					catch (InterruptedException | ExecutionException e)
+					{
+						Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+						LOGGER.severe("Exception. Class: " + cause.getClass().getName() + " .Message: " + cause.getMessage());
+						LOGGER.log(Level.FINER, "", cause);
+						status.setText("Error: " + cause.getMessage());
+						btnFullHistory.setEnabled(startTime != null);
+					}
+				}
+			}.execute();
 	}
 }
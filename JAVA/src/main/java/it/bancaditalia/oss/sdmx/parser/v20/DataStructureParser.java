@@ -26,6 +26,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Locale.LanguageRange;
 import java.util.Map;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.xml.stream.XMLEventReader;
@@ -99,7 +100,7 @@ public class DataStructureParser implements Parser<List<DataFlowStructure>>
 		while (eventReader.hasNext())
 		{
 			XMLEvent event = eventReader.nextEvent();
-			logger.finest(event.toString());
+			logger.finest(event::toString);
 
 			if (event.isStartElement())
 			{
@@ -151,7 +152,7 @@ public class DataStructureParser implements Parser<List<DataFlowStructure>>
 			{
 				if (event.asEndElement().getName().getLocalPart().equals(DATASTRUCTURE))
 				{
-					logger.finer("Adding data structure. " + currentStructure);
+					logger.log(Level.FINER, "Adding data structure. {0}", currentStructure);
 					currentStructure.setName(currentName.getText());
 					result.add(currentStructure);
 				}
@@ -175,7 +176,7 @@ public class DataStructureParser implements Parser<List<DataFlowStructure>>
 		while (eventReader.hasNext())
 		{
 			XMLEvent event = eventReader.nextEvent();
-			logger.finest(event.toString());
+			logger.finest(event::toString);
 			if (event.isStartElement())
 			{
 				StartElement startElement = event.asStartElement();
@@ -243,7 +244,7 @@ public class DataStructureParser implements Parser<List<DataFlowStructure>>
 					{
 						if (currentStructure != null)
 						{
-							logger.finer("Adding time dimension: " + id);
+							logger.log(Level.FINER, "Adding time dimension: {0}", id);
 							currentStructure.setTimeDimension(id);
 						}
 						else
@@ -275,7 +276,7 @@ public class DataStructureParser implements Parser<List<DataFlowStructure>>
 					{
 						if (currentStructure != null)
 						{
-							logger.finer("Adding primary measure: " + id);
+							logger.log(Level.FINER, "Adding primary measure: {0}", id);
 							currentStructure.setMeasure(id);
 						}
 						else
@@ -298,7 +299,7 @@ public class DataStructureParser implements Parser<List<DataFlowStructure>>
 				{
 					if (currentStructure != null && currentElement != null)
 					{
-						logger.finer("Adding dimension: " + currentElement);
+						logger.log(Level.FINER, "Adding dimension: {0}", currentElement);
 						currentStructure.setDimension((Dimension) currentElement);
 					}
 					else
@@ -311,7 +312,7 @@ public class DataStructureParser implements Parser<List<DataFlowStructure>>
 				{
 					if (currentStructure != null && currentElement != null)
 					{
-						logger.finer("Adding attribute: " + currentElement);
+						logger.log(Level.FINER, "Adding attribute: {0}", currentElement);
 						currentStructure.setAttribute((SdmxAttribute) currentElement);
 					}
 					else
@@ -337,7 +338,7 @@ public class DataStructureParser implements Parser<List<DataFlowStructure>>
 		while (eventReader.hasNext())
 		{
 			XMLEvent event = eventReader.nextEvent();
-			logger.finest(event.toString());
+			logger.finest(event::toString);
 			if (event.isStartElement())
 			{
 				StartElement startElement = event.asStartElement();
@@ -357,7 +358,7 @@ public class DataStructureParser implements Parser<List<DataFlowStructure>>
 							agency = attr.getValue();
 					}
 
-					logger.finer("Got codelist: " + id);
+					logger.log(Level.FINER, "Got codelist: {0}", id);
 					Codelist codes = CodelistParser.getCodes(new SDMXReference(id, agency, null), eventReader, languages, 
 							CODE_ID, CODE_DESCRIPTION);
 					codelists.put(codes.getFullIdentifier(), codes);
@@ -378,7 +379,7 @@ public class DataStructureParser implements Parser<List<DataFlowStructure>>
 		while (eventReader.hasNext())
 		{
 			XMLEvent event = eventReader.nextEvent();
-			logger.finest(event.toString());
+			logger.finest(event::toString);
 			if (event.isStartElement())
 			{
 				StartElement startElement = event.asStartElement();
@@ -394,7 +395,7 @@ public class DataStructureParser implements Parser<List<DataFlowStructure>>
 						if (attr.getName().toString().equals(AGENCYID))
 							conceptSchemeAgency = attr.getValue();
 					}
-					logger.finer("Got conceptSchemeAgency: " + conceptSchemeAgency);
+					logger.log(Level.FINER, "Got conceptSchemeAgency: {0}", conceptSchemeAgency);
 				}
 				else if (startElement.getName().getLocalPart().equals(CONCEPT))
 				{
@@ -416,7 +417,7 @@ public class DataStructureParser implements Parser<List<DataFlowStructure>>
 						agency = conceptSchemeAgency;
 
 					conceptName = agency + "/" + id;
-					logger.finer("Got concept: " + conceptName);
+					logger.log(Level.FINER, "Got concept: {0}", conceptName);
 					concepts.put(conceptName, getConceptName(eventReader, languages));
 				}
 			}
@@ -434,7 +435,7 @@ public class DataStructureParser implements Parser<List<DataFlowStructure>>
 		while (eventReader.hasNext())
 		{
 			XMLEvent event = eventReader.nextEvent();
-			logger.finest(event.toString());
+			logger.finest(event::toString);
 			if (event.isStartElement())
 			{
 				StartElement startElement = event.asStartElement();
@@ -66,7 +66,7 @@ public class DataflowParser implements Parser<List<Dataflow>> {
 		while (eventReader.hasNext()) 
 		{
 			XMLEvent event = eventReader.nextEvent();
-			logger.finest(event.toString());
+			logger.finest(event::toString);
 
 			if (event.isStartElement()) 
 			{
@@ -103,7 +103,7 @@ public class DataflowParser implements Parser<List<Dataflow>> {
 		while (eventReader.hasNext()) 
 		{
 			XMLEvent event = eventReader.nextEvent();
-			logger.finest(event.toString());
+			logger.finest(event::toString);
 			if (event.isStartElement())
 				switch (event.asStartElement().getName().getLocalPart())
 				{
@@ -20,15 +20,26 @@
 */
 package it.bancaditalia.oss.sdmx.parser.v21;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale.LanguageRange;
 import java.util.Map;
+import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
 import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.events.Attribute;
 import javax.xml.stream.events.StartElement;
@@ -38,6 +49,7 @@ import it.bancaditalia.oss.sdmx.api.Codelist;
 import it.bancaditalia.oss.sdmx.api.SDMXReference;
 import it.bancaditalia.oss.sdmx.client.Parser;
 import it.bancaditalia.oss.sdmx.exceptions.SdmxException;
+import it.bancaditalia.oss.sdmx.exceptions.SdmxExceptionFactory;
 import it.bancaditalia.oss.sdmx.exceptions.SdmxXmlContentException;
 import it.bancaditalia.oss.sdmx.util.Configuration;
 import it.bancaditalia.oss.sdmx.util.LocalizedText;
@@ -52,6 +64,7 @@ public class CodelistParser implements Parser<Codelist>
 	protected static Logger		logger		= Configuration.getSdmxLogger();
 
 	// valid in V.2.1
+	static final String			CODELISTS	= "Codelists";
 	static final String			CODELIST	= "Codelist";
 	static final String			CODE_ID		= "Code";
 	static final String			ID			= "id";
@@ -78,7 +91,7 @@ public class CodelistParser implements Parser<Codelist>
 		while (eventReader.hasNext())
 		{
 			XMLEvent event = eventReader.nextEvent();
-			logger.finest(event.toString());
+			logger.finest(event::toString);
 			if (event.isStartElement())
 			{
 				StartElement startElement = event.asStartElement();
@@ -102,7 +115,7 @@ public class CodelistParser implements Parser<Codelist>
 							version = attr.getValue();
 						}
 					}
-					logger.finest("Got codelist: " + cl_id);
+					logger.log(Level.FINEST, "Got codelist: {0}", cl_id);
 					break;
 				}
 			}
@@ -110,6 +123,153 @@ public class CodelistParser implements Parser<Codelist>
 		return getCodes(new SDMXReference(cl_id, agency, version), eventReader, languages);
 	}
 
+	/**
+	 * Parses all the codelists up to the end of the enclosing Codelists element.
+	 * 
+	 * @param eventReader the reader
+	 * @param languages the preferred languages
+	 * @return key: codelist full id --&gt; codelist
+	 * @throws XMLStreamException
+	 * @throws SdmxException
+	 */
+	public static Map<String, Codelist> getCodelists(XMLEventReader eventReader, List<LanguageRange> languages)
+			throws XMLStreamException, SdmxException
+	{
+		Map<String, Codelist> codelists = new HashMap<>();
+		while (eventReader.hasNext())
+		{
+			XMLEvent event = eventReader.nextEvent();
+			logger.finest(event::toString);
+			if (event.isStartElement())
+			{
+				StartElement startElement = event.asStartElement();
+
+				if (startElement.getName().getLocalPart().equals(CODELIST))
+				{
+					@SuppressWarnings("unchecked")
+					Iterator<Attribute> attributes = startElement.getAttributes();
+					String id = null;
+					String agency = null;
+					String version = null;
+					while (attributes.hasNext())
+					{
+						Attribute attr = attributes.next();
+						if (attr.getName().toString().equals(ID))
+						{
+							id = attr.getValue();
+						}
+						else if (attr.getName().toString().equals(AGENCY))
+						{
+							agency = attr.getValue();
+						}
+						else if (attr.getName().toString().equals(VERSION))
+						{
+							version = attr.getValue();
+						}
+					}
+					logger.log(Level.FINER, "Got codelist: {0}", id);
+					Codelist codes = getCodes(new SDMXReference(id, agency, version), eventReader, languages);
+					codelists.put(codes.getFullIdentifier(), codes);
+				}
+			}
+			if (event.isEndElement())
+			{
+				if (event.asEndElement().getName().getLocalPart().equals(CODELISTS))
+				{
+					break;
+				}
+			}
+		}
+
+		return codelists;
+	}
+
+	/**
+	 * Reads all the codelists up to the end of the enclosing Codelists element, without decoding their codes. The
+	 * XML of each codelist is kept compressed and decoded on first access (see {@link Codelist#isDeferred()}).
+	 * 
+	 * @param eventReader the reader
+	 * @param languages the preferred languages
+	 * @return key: codelist full id --&gt; codelist
+	 * @throws XMLStreamException
+	 */
+	public static Map<String, Codelist> getDeferredCodelists(XMLEventReader eventReader, List<LanguageRange> languages)
+			throws XMLStreamException
+	{
+		XMLOutputFactory outputFactory = XMLOutputFactory.newFactory();
+		// the prefixes are declared on the root element of the message
+		outputFactory.setProperty(XMLOutputFactory.IS_REPAIRING_NAMESPACES, true);
+
+		Map<String, Codelist> codelists = new HashMap<>();
+		while (eventReader.hasNext())
+		{
+			XMLEvent event = eventReader.nextEvent();
+			if (event.isStartElement() && CODELIST.equals(event.asStartElement().getName().getLocalPart()))
+			{
+				StartElement startElement = event.asStartElement();
+				String id = null, agency = null, version = null;
+				for (Attribute attr: (Iterable<Attribute>) startElement::getAttributes)
+					switch (attr.getName().toString())
+					{
+						case ID: id = attr.getValue(); break;
+						case AGENCY: agency = attr.getValue(); break;
+						case VERSION: version = attr.getValue(); break;
+					}
+				SDMXReference coordinates = new SDMXReference(id, agency, version);
+				logger.finer(() -> "Got codelist: " + coordinates.getFullIdentifier() + ", decoding deferred");
+
+				ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+				int size = 0;
+				try (DeflaterOutputStream deflater = new DeflaterOutputStream(buffer))
+				{
+					XMLEventWriter writer = outputFactory.createXMLEventWriter(deflater, StandardCharsets.UTF_8.name());
+					writer.add(event);
+					for (int depth = 1; depth > 0 && eventReader.hasNext();)
+					{
+						event = eventReader.nextEvent();
+						if (event.isStartElement())
+						{
+							depth++;
+							if (CODE_ID.equals(event.asStartElement().getName().getLocalPart()))
+								size++;
+						}
+						else if (event.isEndElement())
+							depth--;
+						writer.add(event);
+					}
+					writer.close();
+				}
+				catch (IOException e)
+				{
+					throw new XMLStreamException(e);
+				}
+
+				byte[] contents = buffer.toByteArray();
+				codelists.put(coordinates.getFullIdentifier(), new Codelist(coordinates, () -> decode(coordinates, contents, languages), size));
+			}
+			else if (event.isEndElement() && CODELISTS.equals(event.asEndElement().getName().getLocalPart()))
+				break;
+		}
+
+		return codelists;
+	}
+
+	private static Codelist decode(SDMXReference coordinates, byte[] contents, List<LanguageRange> languages) throws SdmxException
+	{
+		logger.finer(() -> "Decoding codelist " + coordinates.getFullIdentifier());
+		XMLInputFactory inputFactory = XMLInputFactory.newFactory();
+		inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		try (InputStream stream = new InflaterInputStream(new ByteArrayInputStream(contents)))
+		{
+			XMLEventReader eventReader = inputFactory.createXMLEventReader(stream, StandardCharsets.UTF_8.name());
+			return getCodes(coordinates, eventReader, languages);
+		}
+		catch (XMLStreamException | IOException e)
+		{
+			throw SdmxExceptionFactory.wrap(e);
+		}
+	}
+
 	public static Codelist getCodes(SDMXReference coordinates, XMLEventReader eventReader, List<LanguageRange> languages) throws XMLStreamException, SdmxException
 	{
 		return getCodes(coordinates, eventReader, languages, ID, CODE_DESCRIPTION);
@@ -128,7 +288,7 @@ public class CodelistParser implements Parser<Codelist>
 		while (eventReader.hasNext())
 		{
 			XMLEvent event = eventReader.nextEvent();
-			logger.finest(event.toString());
+			logger.finest(event::toString);
 			if (event.isStartElement())
 			{
 				StartElement startElement = event.asStartElement();
@@ -160,7 +320,8 @@ public class CodelistParser implements Parser<Codelist>
 						if (valueID.equals(attr.getName().getLocalPart()))
 						{
 							parents.put(key, attr.getValue());
-							logger.finest("PARENT: " + key + " = " + attr.getValue());
+							if (logger.isLoggable(Level.FINEST))
+								logger.finest("PARENT: " + key + " = " + attr.getValue());
 						}
 					}
 				}
@@ -172,7 +333,8 @@ public class CodelistParser implements Parser<Codelist>
 				if (CODE_ID.equals(eventName))
 					if (key != null)
 					{
-						logger.finest("Got code " + key + ", " + value.getText());
+						if (logger.isLoggable(Level.FINEST))
+							logger.finest("Got code " + key + ", " + value.getText());
 						codes.put(key, value);
 					}
 					else
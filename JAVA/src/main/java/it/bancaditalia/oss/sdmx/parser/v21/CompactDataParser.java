@@ -34,6 +34,7 @@ import java.util.List;
 import java.util.Locale.LanguageRange;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.xml.stream.XMLEventReader;
@@ -104,45 +105,49 @@ public class CompactDataParser implements Parser<DataParsingResult>
 		List<DoubleObservation> obs = new ArrayList<>();
 		Message message = null;
 		
-		while (eventReader.hasNext())
+		try (ResultSizeGuard guard = new ResultSizeGuard())
 		{
-			XMLEvent event = eventReader.nextEvent();
-			logger.finest(event.toString());
-
-			if (event.isStartElement())
+			while (eventReader.hasNext())
 			{
-				StartElement startElement = event.asStartElement();
+				XMLEvent event = eventReader.nextEvent();
+				logger.finest(event::toString);
 
-				if (startElement.getName().getLocalPart() == (DATASET))
+				if (event.isStartElement())
 				{
-					logger.finer("Got new dataset");
-					for (Attribute attribute: (Iterable<Attribute>) startElement::getAttributes)
+					StartElement startElement = event.asStartElement();
+
+					if (startElement.getName().getLocalPart() == (DATASET))
 					{
-						String id = attribute.getName().getLocalPart().toString();
+						logger.finer("Got new dataset");
+						for (Attribute attribute: (Iterable<Attribute>) startElement::getAttributes)
+						{
+							String id = attribute.getName().getLocalPart().toString();
 						
-						if (ACTION.equalsIgnoreCase(id))
-							currentAction = attribute.getValue();
-						else if (VALID_FROM.equalsIgnoreCase(id))
-							currentValidFromDate = attribute.getValue();
-						else if (VALID_TO.equalsIgnoreCase(id))
-							currentValidToDate = attribute.getValue();
+							if (ACTION.equalsIgnoreCase(id))
+								currentAction = attribute.getValue();
+							else if (VALID_FROM.equalsIgnoreCase(id))
+								currentValidFromDate = attribute.getValue();
+							else if (VALID_TO.equalsIgnoreCase(id))
+								currentValidToDate = attribute.getValue();
+						}
+					}
+					else if (startElement.getName().getLocalPart() == (SERIES))
+					{
+						logger.finer("Got new time series");
+						metadata = getMetadata(startElement::getAttributes);
 					}
+					else if (startElement.getName().getLocalPart() == (FOOTER))
+						message = getMessage(eventReader, languages);
+					else if (startElement.getName().getLocalPart().equals(OBS) && data)
+						obs.add(getObservation(eventReader, currentAction, currentValidFromDate, currentValidToDate, startElement::getAttributes));
 				}
-				else if (startElement.getName().getLocalPart() == (SERIES))
+				else if (event.isEndElement() && event.asEndElement().getName().getLocalPart() == (SERIES))
 				{
-					logger.finer("Got new time series");
-					metadata = getMetadata(startElement::getAttributes);
+					PortableTimeSeries<Double> ts = new PortableTimeSeries<>(dataflow, metadata.getKey(), metadata.getValue(), obs);
+					if (tsList.putIfAbsent(ts.getName(), ts) == null)
+						guard.completed(ts);
+					obs = new ArrayList<>();
 				}
-				else if (startElement.getName().getLocalPart() == (FOOTER))
-					message = getMessage(eventReader, languages);
-				else if (startElement.getName().getLocalPart().equals(OBS) && data)
-					obs.add(getObservation(eventReader, currentAction, currentValidFromDate, currentValidToDate, startElement::getAttributes));
-			}
-			else if (event.isEndElement() && event.asEndElement().getName().getLocalPart() == (SERIES))
-			{
-				PortableTimeSeries<Double> ts = new PortableTimeSeries<>(dataflow, metadata.getKey(), metadata.getValue(), obs);
-				tsList.putIfAbsent(ts.getName(), ts);
-				obs = new ArrayList<>();
 			}
 		}
 
@@ -161,7 +166,7 @@ public class CompactDataParser implements Parser<DataParsingResult>
 			String currentAction, String currentValidFromDate, String currentValidToDate, Iterable<Attribute> attributes) throws XMLStreamException
 	{
 		XMLEvent event = eventReader.nextEvent();
-		logger.finest(event.toString());
+		logger.finest(event::toString);
 
 		String time = null;
 		String obs_val = null;
@@ -216,7 +221,8 @@ public class CompactDataParser implements Parser<DataParsingResult>
 		}
 		catch (NumberFormatException e)
 		{
-			logger.fine("The date: " + time + "has an obs value that is not parseable to a numer: " + obs_val + ". A NaN will be set.");
+			if (logger.isLoggable(Level.FINE))
+				logger.fine("The date: " + time + "has an obs value that is not parseable to a numer: " + obs_val + ". A NaN will be set.");
 			return new DoubleObservation(time, Double.NaN, obs_attr);
 		}
 	}
@@ -296,7 +302,7 @@ public class CompactDataParser implements Parser<DataParsingResult>
 		while (eventReader.hasNext())
 		{
 			XMLEvent event = eventReader.nextEvent();
-			logger.finest(event.toString());
+			logger.finest(event::toString);
 
 			if (event.isStartElement())
 			{
@@ -26,6 +26,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Locale.LanguageRange;
 import java.util.Map;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.xml.stream.XMLEventReader;
@@ -39,6 +40,7 @@ import it.bancaditalia.oss.sdmx.api.DataFlowStructure;
 import it.bancaditalia.oss.sdmx.api.Dimension;
 import it.bancaditalia.oss.sdmx.api.SDMXReference;
 import it.bancaditalia.oss.sdmx.api.SdmxAttribute;
+import it.bancaditalia.oss.sdmx.api.SdmxAttribute.AttachmentLevel;
 import it.bancaditalia.oss.sdmx.client.Parser;
 import it.bancaditalia.oss.sdmx.exceptions.SdmxException;
 import it.bancaditalia.oss.sdmx.exceptions.SdmxXmlContentException;
@@ -74,6 +76,7 @@ public class DataStructureParser implements Parser<List<DataFlowStructure>>
 	static final String			ATTRIBUTE				= "Attribute";
 	static final String			TIMEDIMENSION			= "TimeDimension";
 	static final String			PRIMARYMEASURE			= "PrimaryMeasure";
+	static final String			NONE					= "None";
 
 	static final String			POSITION				= "position";
 	static final String			ID						= "id";
@@ -82,7 +85,26 @@ public class DataStructureParser implements Parser<List<DataFlowStructure>>
 
 	static final String			LOCAL_REPRESENTATION	= "LocalRepresentation";
 	static final String			REF						= "Ref";
-	
+
+	private final boolean		deferCodelists;
+
+	/**
+	 * Creates a parser that decodes all the codelists in the message.
+	 */
+	public DataStructureParser()
+	{
+		this(false);
+	}
+
+	/**
+	 * @param deferCodelists if true, the codes of the codelists in the message are decoded only when they are first
+	 *            accessed. The rest of the structure is parsed as usual.
+	 */
+	public DataStructureParser(boolean deferCodelists)
+	{
+		this.deferCodelists = deferCodelists;
+	}
+
 	@Override
 	public List<DataFlowStructure> parse(XMLEventReader eventReader, List<LanguageRange> languages)
 			throws XMLStreamException, SdmxException
@@ -99,7 +121,7 @@ public class DataStructureParser implements Parser<List<DataFlowStructure>>
 		while (eventReader.hasNext())
 		{	
 			XMLEvent event = eventReader.nextEvent();
-			logger.finest(event.toString());
+			logger.finest(event::toString);
 
 			if (event.isStartElement())
 			{
@@ -124,7 +146,8 @@ public class DataStructureParser implements Parser<List<DataFlowStructure>>
 					switch (startElement.getName().getLocalPart())
 					{
 						case NAME: currentName.setText(startElement, eventReader); break;
-						case CODELISTS: codelists = getCodelists(eventReader, languages); break;
+						case CODELISTS: codelists = deferCodelists ? CodelistParser.getDeferredCodelists(eventReader, languages)
+								: CodelistParser.getCodelists(eventReader, languages); break;
 						case CONCEPTS: concepts = getConcepts(eventReader, languages); break; 
 						case DIMENSIONLIST: setStructureDimensions(currentStructure, eventReader, codelists, concepts); break;
 						case GROUP: setStructureGroups(currentStructure, eventReader); break;
@@ -135,7 +158,7 @@ public class DataStructureParser implements Parser<List<DataFlowStructure>>
 
 			if (event.isEndElement() && event.asEndElement().getName().getLocalPart().equals(DATASTRUCTURE))
 			{
-				logger.finer("Adding data structure. " + currentStructure);
+				logger.log(Level.FINER, "Adding data structure. {0}", currentStructure);
 				currentStructure.setName(currentName.getText());
 				result.add(currentStructure);
 			}
@@ -154,7 +177,7 @@ public class DataStructureParser implements Parser<List<DataFlowStructure>>
 		while (eventReader.hasNext())
 		{
 			XMLEvent event = eventReader.nextEvent();
-			logger.finest(event.toString());
+			logger.finest(event::toString);
 			if (event.isStartElement())
 			{
 				StartElement startElement = event.asStartElement();
@@ -194,6 +217,14 @@ public class DataStructureParser implements Parser<List<DataFlowStructure>>
 					if (concepts != null && currentAttribute != null)
 						currentAttribute.setName(getConceptName(concepts, eventReader));
 				}
+				// attribute relationship
+				else if (currentAttribute != null && startElement.getName().getLocalPart().equals(PRIMARYMEASURE))
+					currentAttribute.setAttachmentLevel(AttachmentLevel.OBSERVATION);
+				else if (currentAttribute != null && startElement.getName().getLocalPart().equals(NONE))
+					currentAttribute.setAttachmentLevel(AttachmentLevel.DATASET);
+				else if (currentAttribute != null && currentAttribute.getAttachmentLevel() == null
+						&& (startElement.getName().getLocalPart().equals(DIMENSION) || startElement.getName().getLocalPart().equals(GROUP)))
+					currentAttribute.setAttachmentLevel(AttachmentLevel.SERIES);
 			}
 			if (event.isEndElement())
 			{
@@ -201,7 +232,7 @@ public class DataStructureParser implements Parser<List<DataFlowStructure>>
 				{
 					if (currentStructure != null && currentAttribute != null)
 					{
-						logger.finer("Adding attribute: " + currentAttribute);
+						logger.log(Level.FINER, "Adding attribute: {0}", currentAttribute);
 						currentStructure.setAttribute(currentAttribute);
 					}
 					else
@@ -232,7 +263,7 @@ public class DataStructureParser implements Parser<List<DataFlowStructure>>
 		while (eventReader.hasNext())
 		{
 			XMLEvent event = eventReader.nextEvent();
-			logger.finest(event.toString());
+			logger.finest(event::toString);
 			if (event.isStartElement())
 			{
 				StartElement startElement = event.asStartElement();
@@ -288,7 +319,7 @@ public class DataStructureParser implements Parser<List<DataFlowStructure>>
 					{
 						if (currentStructure != null)
 						{
-							logger.finer("Adding time dimension: " + id);
+							logger.log(Level.FINER, "Adding time dimension: {0}", id);
 							currentStructure.setTimeDimension(id);
 						}
 						else
@@ -325,7 +356,7 @@ public class DataStructureParser implements Parser<List<DataFlowStructure>>
 				{
 					if (currentStructure != null && currentDimension != null)
 					{
-						logger.finer("Adding dimension: " + currentDimension);
+						logger.log(Level.FINER, "Adding dimension: {0}", currentDimension);
 						currentStructure.setDimension(currentDimension);
 					}
 					else
@@ -351,7 +382,7 @@ public class DataStructureParser implements Parser<List<DataFlowStructure>>
 		while (eventReader.hasNext())
 		{
 			XMLEvent event = eventReader.nextEvent();
-			logger.finest(event.toString());
+			logger.finest(event::toString);
 			if (event.isStartElement())
 			{
 				StartElement startElement = event.asStartElement();
@@ -370,7 +401,7 @@ public class DataStructureParser implements Parser<List<DataFlowStructure>>
 					if (id != null && !id.isEmpty())
 					{
 						coords = new SDMXReference(id, agency, version);
-						logger.finer("Found coordinates: " + coords.getFullIdentifier());
+						logger.log(Level.FINER, "Found coordinates: {0}", coords.getFullIdentifier());
 					}
 					else
 					{
@@ -396,7 +427,7 @@ public class DataStructureParser implements Parser<List<DataFlowStructure>>
 			// TODO skip for now
 
 			XMLEvent event = eventReader.nextEvent();
-			logger.finest(event.toString());
+			logger.finest(event::toString);
 			if (event.isEndElement())
 			{
 				if (event.asEndElement().getName().getLocalPart().equals(GROUP))
@@ -416,7 +447,7 @@ public class DataStructureParser implements Parser<List<DataFlowStructure>>
 		while (eventReader.hasNext())
 		{
 			XMLEvent event = eventReader.nextEvent();
-			logger.finest(event.toString());
+			logger.finest(event::toString);
 
 			if (event.isStartElement())
 			{
@@ -439,7 +470,7 @@ public class DataStructureParser implements Parser<List<DataFlowStructure>>
 					{
 						if (currentStructure != null)
 						{
-							logger.finer("Adding primary measure: " + id);
+							logger.log(Level.FINER, "Adding primary measure: {0}", id);
 							currentStructure.setMeasure(id);
 						}
 						else
@@ -466,58 +497,6 @@ public class DataStructureParser implements Parser<List<DataFlowStructure>>
 		logger.exiting(sourceClass, sourceMethod);
 	}
 
-	private static Map<String, Codelist> getCodelists(XMLEventReader eventReader, List<LanguageRange> languages)
-			throws XMLStreamException, SdmxException
-	{
-		Map<String, Codelist> codelists = new HashMap<>();
-		while (eventReader.hasNext())
-		{
-			XMLEvent event = eventReader.nextEvent();
-			logger.finest(event.toString());
-			if (event.isStartElement())
-			{
-				StartElement startElement = event.asStartElement();
-
-				if (startElement.getName().getLocalPart().equals(CODELIST))
-				{
-					@SuppressWarnings("unchecked")
-					Iterator<Attribute> attributes = startElement.getAttributes();
-					String id = null;
-					String agency = null;
-					String version = null;
-					while (attributes.hasNext())
-					{
-						Attribute attr = attributes.next();
-						if (attr.getName().toString().equals(ID))
-						{
-							id = attr.getValue();
-						}
-						else if (attr.getName().toString().equals(AGENCYID))
-						{
-							agency = attr.getValue();
-						}
-						else if (attr.getName().toString().equals(VERSION))
-						{
-							version = attr.getValue();
-						}
-					}
-					logger.finer("Got codelist: " + id);
-					Codelist codes = CodelistParser.getCodes(new SDMXReference(id, agency, version), eventReader, languages);
-					codelists.put(codes.getFullIdentifier(), codes);
-				}
-			}
-			if (event.isEndElement())
-			{
-				if (event.asEndElement().getName().getLocalPart().equals(CODELISTS))
-				{
-					break;
-				}
-			}
-		}
-
-		return codelists;
-	}
-
 	private static Map<String, String> getConcepts(XMLEventReader eventReader, List<LanguageRange> languages)
 			throws XMLStreamException, SdmxException
 	{
@@ -527,7 +506,7 @@ public class DataStructureParser implements Parser<List<DataFlowStructure>>
 		while (eventReader.hasNext())
 		{
 			XMLEvent event = eventReader.nextEvent();
-			logger.finest(event.toString());
+			logger.finest(event::toString);
 			if (event.isStartElement())
 			{
 				StartElement startElement = event.asStartElement();
@@ -564,7 +543,7 @@ public class DataStructureParser implements Parser<List<DataFlowStructure>>
 						}
 					}
 					conceptName = agency + "/" + id + "/" + version;
-					logger.finer("Got concept: " + conceptName);
+					logger.log(Level.FINER, "Got concept: {0}", conceptName);
 					concepts.put(conceptName, getConceptName(eventReader, languages));
 				}
 			}
@@ -586,7 +565,7 @@ public class DataStructureParser implements Parser<List<DataFlowStructure>>
 		while (eventReader.hasNext())
 		{
 			XMLEvent event = eventReader.nextEvent();
-			logger.finest(event.toString());
+			logger.finest(event::toString);
 			if (event.isStartElement())
 			{
 				StartElement startElement = event.asStartElement();
@@ -616,7 +595,7 @@ public class DataStructureParser implements Parser<List<DataFlowStructure>>
 		while (eventReader.hasNext())
 		{
 			XMLEvent event = eventReader.nextEvent();
-			logger.finest(event.toString());
+			logger.finest(event::toString);
 			if (event.isStartElement())
 			{
 				StartElement startElement = event.asStartElement();
@@ -61,7 +61,7 @@ public class DataflowParser implements Parser<List<Dataflow>> {
 		LocalizedText currentName = new LocalizedText(languages);
 		while (eventReader.hasNext()) {
 			XMLEvent event = eventReader.nextEvent();
-			logger.finest(event.toString());
+			logger.finest(event::toString);
 			
 			if (event.isStartElement()) {
 				StartElement startElement = event.asStartElement();
@@ -22,12 +22,14 @@ package it.bancaditalia.oss.sdmx.parser.v21;
 
 import java.util.AbstractMap.SimpleEntry;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale.LanguageRange;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.xml.namespace.QName;
@@ -78,27 +80,37 @@ public class GenericDataParser implements Parser<DataParsingResult>{
 		DataParsingResult result = new DataParsingResult();
 		List<PortableTimeSeries<Double>> tsList = new ArrayList<>();
 		Map<String, Entry<String, String>> dimKeys = null;
-		Map<String, String> attrValues = null;
+		// series without attributes have none
+		Map<String, String> attrValues = Collections.emptyMap();
 		List<DoubleObservation> obs = new ArrayList<>();
 		
-		while (eventReader.hasNext())
+		try (ResultSizeGuard guard = new ResultSizeGuard())
 		{
-			XMLEvent event = eventReader.nextEvent();
-			logger.finest(event.toString());
-	
-			if (event.isStartElement())
+			while (eventReader.hasNext())
 			{
-				StartElement startElement = event.asStartElement();
+				XMLEvent event = eventReader.nextEvent();
+				logger.finest(event::toString);
+	
+				if (event.isStartElement())
+				{
+					StartElement startElement = event.asStartElement();
 
-				switch (startElement.getName().getLocalPart())
+					switch (startElement.getName().getLocalPart())
+					{
+						case SERIES_KEY: dimKeys = getSeriesKey(eventReader, dsd); break;
+						case ATTRIBUTES: attrValues = getSeriesAttributes(eventReader); break;
+						case OBS: if (data) obs.add(getObservation(eventReader)); break;
+					}
+				}
+				else if (event.isEndElement() && event.asEndElement().getName().getLocalPart() == (SERIES))
 				{
-					case SERIES_KEY: dimKeys = getSeriesKey(eventReader, dsd); break;
-					case ATTRIBUTES: attrValues = getSeriesAttributes(eventReader); break;
-					case OBS: if (data) obs.add(getObservation(eventReader)); break;
+					PortableTimeSeries<Double> ts = new PortableTimeSeries<>(dataflow, dimKeys, attrValues, obs);
+					tsList.add(ts);
+					guard.completed(ts);
+					attrValues = Collections.emptyMap();
+					obs = new ArrayList<>();
 				}
 			}
-			else if (event.isEndElement() && event.asEndElement().getName().getLocalPart() == (SERIES))
-				tsList.add(new PortableTimeSeries<>(dataflow, dimKeys, attrValues, obs));
 		}
 		
 		result.setData(tsList);
@@ -117,7 +129,7 @@ public class GenericDataParser implements Parser<DataParsingResult>{
 		while (eventReader.hasNext())
 		{
 			XMLEvent event = eventReader.nextEvent();
-			logger.finest(event.toString());
+			logger.finest(event::toString);
 			
 			if (event.isStartElement())
 			{
@@ -151,7 +163,7 @@ public class GenericDataParser implements Parser<DataParsingResult>{
 		while (eventReader.hasNext())
 		{
 			XMLEvent event = eventReader.nextEvent();
-			logger.finest(event.toString());
+			logger.finest(event::toString);
 			
 			if (event.isStartElement())
 			{
@@ -186,7 +198,7 @@ public class GenericDataParser implements Parser<DataParsingResult>{
 		while (eventReader.hasNext())
 		{
 			XMLEvent event = eventReader.nextEvent();
-			logger.finest(event.toString());
+			logger.finest(event::toString);
 			
 			if (event.isStartElement()) {
 				StartElement startElement = event.asStartElement();
@@ -216,7 +228,7 @@ public class GenericDataParser implements Parser<DataParsingResult>{
 				}
 				catch (NumberFormatException e)
 				{
-					logger.fine("Non-numeric value for observation at date " + time + ". Using NaN instead.");
+					logger.log(Level.FINE, "Non-numeric value for observation at date {0}. Using NaN instead.", time);
 					return new DoubleObservation(time, Double.NaN, obs_attr);
 				}
 		}
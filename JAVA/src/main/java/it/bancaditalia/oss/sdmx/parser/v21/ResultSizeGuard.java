@@ -0,0 +1,207 @@
+/* Copyright 2010,2014 Bank Of Italy
+*
+* Licensed under the EUPL, Version 1.1 or - as soon they
+* will be approved by the European Commission - subsequent
+* versions of the EUPL (the "Licence");
+* You may not use this work except in compliance with the
+* Licence.
+* You may obtain a copy of the Licence at:
+*
+*
+* http://ec.europa.eu/idabc/eupl
+*
+* Unless required by applicable law or agreed to in
+* writing, software distributed under the Licence is
+* distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied.
+* See the Licence for the specific language governing
+* permissions and limitations under the Licence.
+*/
+package it.bancaditalia.oss.sdmx.parser.v21;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import it.bancaditalia.oss.sdmx.api.PortableTimeSeries;
+import it.bancaditalia.oss.sdmx.exceptions.SdmxException;
+import it.bancaditalia.oss.sdmx.exceptions.SdmxExceptionFactory;
+import it.bancaditalia.oss.sdmx.util.Configuration;
+import it.bancaditalia.oss.sdmx.util.SpillFile;
+
+/**
+ * <p>
+ * Keeps the estimated heap size of a query result within a memory budget. The parsers pass every completed time
+ * series to {@link #completed(PortableTimeSeries)}; when the estimated size of the result exceeds the budget, the
+ * observations of the series kept so far and of all the following ones are moved to a {@link SpillFile}, and the
+ * series read them lazily from there.
+ *
+ * <p>
+ * The size of a series is estimated from the number of its observations and the configured number of bytes per
+ * observation.
+ */
+public class ResultSizeGuard implements Closeable
+{
+	protected static final Logger						LOGGER				= Configuration.getSdmxLogger();
+
+	// dimensions, attributes and name of a series
+	private static final long							BYTES_PER_SERIES	= 512;
+
+	private final long									maxBytes;
+	private final long									bytesPerObservation;
+	private final File									directory;
+	private final List<PortableTimeSeries<Double>>		resident			= new ArrayList<>();
+	private long										estimate			= 0;
+	private SpillFile									spill				= null;
+	private int											spilled				= 0;
+
+	/**
+	 * Creates a guard with the budget set in the configuration.
+	 */
+	public ResultSizeGuard()
+	{
+		this(Configuration.getResultMaxMemory(), Configuration.getResultBytesPerObservation(),
+				Configuration.getResultSpillDir() != null ? new File(Configuration.getResultSpillDir()) : null);
+	}
+
+	/**
+	 * Creates a guard.
+	 * 
+	 * @param maxBytes the memory budget of a result, or a value less than or equal to zero for no limit
+	 * @param bytesPerObservation the estimated heap size of an observation
+	 * @param directory the directory of the spill file, or null for the default temporary directory
+	 */
+	public ResultSizeGuard(long maxBytes, long bytesPerObservation, File directory)
+	{
+		this.maxBytes = maxBytes;
+		this.bytesPerObservation = bytesPerObservation;
+		this.directory = directory;
+	}
+
+	/**
+	 * Accounts for a completed series, spilling it to disk if the result is over budget.
+	 * 
+	 * @param series the series
+	 * @throws SdmxException if the observations cannot be written to disk
+	 */
+	public void completed(PortableTimeSeries<Double> series) throws SdmxException
+	{
+		if (maxBytes <= 0)
+			return;
+
+		if (spill == null)
+		{
+			resident.add(series);
+			account(BYTES_PER_SERIES + series.size() * bytesPerObservation);
+		}
+		else
+		{
+			spill(series);
+			estimate += BYTES_PER_SERIES;
+		}
+	}
+
+	/**
+	 * Accounts for observations added to a series already passed to {@link #completed(PortableTimeSeries)}, as when
+	 * the rows of a series are not contiguous in a message. A series already moved to disk is written again.
+	 * 
+	 * @param series the series
+	 * @param added the number of observations added
+	 * @throws SdmxException if the observations cannot be written to disk
+	 */
+	public void extended(PortableTimeSeries<Double> series, int added) throws SdmxException
+	{
+		if (maxBytes <= 0)
+			return;
+
+		if (spill == null)
+			account(added * bytesPerObservation);
+		else if (series.size() == added)
+			// it was empty, and never written
+			spill(series);
+		else
+			write(series);
+	}
+
+	// adds to the estimate, and moves the resident series to disk if it exceeds the budget
+	private void account(long bytes) throws SdmxException
+	{
+		estimate += bytes;
+		if (estimate <= maxBytes)
+			return;
+
+		LOGGER.info("The result exceeds the memory budget of " + maxBytes + " bytes. Moving the observations to disk.");
+		try
+		{
+			spill = new SpillFile(directory);
+		}
+		catch (IOException e)
+		{
+			throw SdmxExceptionFactory.wrap(e);
+		}
+		for (PortableTimeSeries<Double> ts : resident)
+			spill(ts);
+		estimate = resident.size() * BYTES_PER_SERIES;
+		resident.clear();
+	}
+
+	/**
+	 * @return the number of series whose observations were moved to disk
+	 */
+	public int getSpilledCount()
+	{
+		return spilled;
+	}
+
+	/**
+	 * @return the estimated heap size of the result
+	 */
+	public long getEstimate()
+	{
+		return estimate;
+	}
+
+	/**
+	 * Releases the spill file, if any. The series already spilled remain readable.
+	 */
+	@Override
+	public void close()
+	{
+		if (spill != null)
+			try
+			{
+				LOGGER.fine(() -> spilled + " time series were moved to disk (" + spill.getSize() + " bytes).");
+				spill.close();
+			}
+			catch (IOException e)
+			{
+				LOGGER.warning("Error closing the spill file: " + e.getMessage());
+			}
+		resident.clear();
+	}
+
+	private void spill(PortableTimeSeries<Double> series) throws SdmxException
+	{
+		if (series.isEmpty())
+			return;
+
+		write(series);
+		spilled++;
+	}
+
+	private void write(PortableTimeSeries<Double> series) throws SdmxException
+	{
+		try
+		{
+			series.setObservationStore(spill.spill(series));
+		}
+		catch (IOException e)
+		{
+			throw SdmxExceptionFactory.wrap(e);
+		}
+	}
+}
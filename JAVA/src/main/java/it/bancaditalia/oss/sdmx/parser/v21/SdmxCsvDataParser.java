@@ -0,0 +1,408 @@
+/* Copyright 2010,2014 Bank Of Italy
+*
+* Licensed under the EUPL, Version 1.1 or - as soon they
+* will be approved by the European Commission - subsequent
+* versions of the EUPL (the "Licence");
+* You may not use this work except in compliance with the
+* Licence.
+* You may obtain a copy of the Licence at:
+*
+*
+* http://ec.europa.eu/idabc/eupl
+*
+* Unless required by applicable law or agreed to in
+* writing, software distributed under the Licence is
+* distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied.
+* See the Licence for the specific language governing
+* permissions and limitations under the Licence.
+*/
+package it.bancaditalia.oss.sdmx.parser.v21;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Locale.LanguageRange;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.logging.Logger;
+
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLStreamException;
+
+import it.bancaditalia.oss.sdmx.api.BaseObservation;
+import it.bancaditalia.oss.sdmx.api.Codelist;
+import it.bancaditalia.oss.sdmx.api.DataFlowStructure;
+import it.bancaditalia.oss.sdmx.api.Dataflow;
+import it.bancaditalia.oss.sdmx.api.Dimension;
+import it.bancaditalia.oss.sdmx.api.DoubleObservation;
+import it.bancaditalia.oss.sdmx.api.PortableTimeSeries;
+import it.bancaditalia.oss.sdmx.api.SdmxAttribute;
+import it.bancaditalia.oss.sdmx.api.SdmxAttribute.AttachmentLevel;
+import it.bancaditalia.oss.sdmx.client.Parser;
+import it.bancaditalia.oss.sdmx.exceptions.SdmxException;
+import it.bancaditalia.oss.sdmx.exceptions.SdmxInvalidParameterException;
+import it.bancaditalia.oss.sdmx.util.Configuration;
+
+/**
+ * <p>
+ * Parses data messages in the SDMX-CSV format, versions 1.0 (SDMX 2.1) and 2.0 (SDMX 3.0). Each row is an
+ * observation; the columns are classified using the data structure: dimensions, time dimension, primary measure and
+ * attributes. Other columns (DATAFLOW, STRUCTURE, STRUCTURE_ID, ACTION) are ignored. Header columns with labels (e.g.
+ * "FREQ: Frequency") are matched by their id. A series is completed when the key changes, so that a large result
+ * can be moved to disk while it is read. The rows of a series need not be contiguous: later rows are merged into
+ * the series already completed for their key.
+ *
+ * <p>
+ * An attribute is reported at series level if the data structure declares so. If the data structure does not
+ * declare the attachment level, an attribute is reported at series level when it has the same value in all the
+ * observations of a series.
+ *
+ * <p>
+ * XML responses, returned by providers that do not support SDMX-CSV, are passed to another parser.
+ */
+public class SdmxCsvDataParser implements Parser<DataParsingResult>
+{
+	protected static final Logger					logger			= Configuration.getSdmxLogger();
+
+	private static final String						TIME_PERIOD		= "TIME_PERIOD";
+	private static final String						OBS_VALUE		= "OBS_VALUE";
+
+	private static final int						IGNORED			= -1;
+	private static final int						TIME			= -2;
+	private static final int						VALUE			= -3;
+	private static final int						ATTRIBUTE		= -4;
+
+	private final DataFlowStructure					dsd;
+	private final Dataflow							dataflow;
+	private final Parser<DataParsingResult>			xmlParser;
+
+	// a series and the observations read for it since it was last completed
+	private static class SeriesRows
+	{
+		private final PortableTimeSeries<Double>	series;
+		private List<String>						times			= new ArrayList<>();
+		private List<Double>						values			= new ArrayList<>();
+		private List<Map<String, String>>			obsAttributes	= new ArrayList<>();
+		private boolean								completed		= false;
+
+		private SeriesRows(PortableTimeSeries<Double> series)
+		{
+			this.series = series;
+		}
+	}
+
+	/**
+	 * @param dsd the structure of the data
+	 * @param dataflow the dataflow
+	 * @param xmlParser the parser of XML responses
+	 */
+	public SdmxCsvDataParser(DataFlowStructure dsd, Dataflow dataflow, Parser<DataParsingResult> xmlParser)
+	{
+		this.dsd = dsd;
+		this.dataflow = dataflow;
+		this.xmlParser = xmlParser;
+	}
+
+	@Override
+	public boolean isTextFormat(String contentType)
+	{
+		return contentType != null && contentType.toLowerCase(Locale.ROOT).contains("csv");
+	}
+
+	@Override
+	public DataParsingResult parse(XMLEventReader eventReader, List<LanguageRange> languages) throws XMLStreamException, SdmxException
+	{
+		return xmlParser.parse(eventReader, languages);
+	}
+
+	@Override
+	public DataParsingResult parse(BufferedReader reader, List<LanguageRange> languages) throws IOException, SdmxException
+	{
+		DataParsingResult result = new DataParsingResult();
+		Map<String, SeriesRows> tsList = new LinkedHashMap<>();
+
+		String line = reader.readLine();
+		if (line == null)
+			return result;
+
+		char separator = line.indexOf(',') < 0 && line.indexOf(';') >= 0 ? ';' : ',';
+		List<String> fields = new ArrayList<>();
+		split(reader, line, separator, fields);
+
+		// classify the columns
+		int size = dsd.getDimensions().size();
+		String timeDimension = dsd.getTimeDimension() != null ? dsd.getTimeDimension() : TIME_PERIOD;
+		String measure = dsd.getMeasure() != null ? dsd.getMeasure() : OBS_VALUE;
+		String[] columns = new String[fields.size()];
+		int[] roles = new int[fields.size()];
+		for (int i = 0; i < columns.length; i++)
+		{
+			String column = fields.get(i).trim();
+			if (!isKnown(column, timeDimension, measure) && column.contains(":"))
+				column = column.substring(0, column.indexOf(':')).trim();
+			columns[i] = column;
+
+			if (dsd.isDimension(column))
+				roles[i] = dsd.getDimensionPosition(column) - 1;
+			else if (column.equals(timeDimension) || column.equals(TIME_PERIOD) && dsd.getTimeDimension() == null)
+				roles[i] = TIME;
+			else if (column.equals(measure))
+				roles[i] = VALUE;
+			else if (dsd.getAttribute(column) != null)
+				roles[i] = ATTRIBUTE;
+			else
+				roles[i] = IGNORED;
+		}
+
+		String[] key = new String[size];
+		StringBuilder keyBuilder = new StringBuilder();
+		String currentKey = null;
+		SeriesRows current = null;
+		try (ResultSizeGuard guard = new ResultSizeGuard())
+		{
+			while ((line = reader.readLine()) != null)
+			{
+				if (line.isEmpty())
+					continue;
+				split(reader, line, separator, fields);
+				if (fields.size() < columns.length)
+					throw new SdmxInvalidParameterException("Invalid SDMX-CSV row: " + line);
+
+				keyBuilder.setLength(0);
+				for (int i = 0; i < columns.length; i++)
+					if (roles[i] >= 0)
+					{
+						key[roles[i]] = fields.get(i);
+						keyBuilder.append(fields.get(i)).append('.');
+					}
+
+				if (current == null || !keyBuilder.toString().equals(currentKey))
+				{
+					if (current != null)
+						completed(current, guard);
+					currentKey = keyBuilder.toString();
+					current = tsList.get(currentKey);
+					if (current == null)
+					{
+						current = new SeriesRows(new PortableTimeSeries<>(dataflow, getDimensions(key), new HashMap<String, String>(),
+								new ArrayList<DoubleObservation>()));
+						tsList.put(currentKey, current);
+					}
+				}
+
+				String time = null;
+				String value = null;
+				Map<String, String> attributes = new HashMap<>();
+				for (int i = 0; i < columns.length; i++)
+				{
+					String field = fields.get(i);
+					if (roles[i] == TIME)
+						time = field;
+					else if (roles[i] == VALUE)
+						value = field;
+					else if (roles[i] == ATTRIBUTE && !field.isEmpty())
+					{
+						SdmxAttribute attribute = dsd.getAttribute(columns[i]);
+						AttachmentLevel level = attribute.getAttachmentLevel();
+						if (level == AttachmentLevel.SERIES || level == AttachmentLevel.DATASET)
+						{
+							if (current.series.getAttribute(columns[i]) == null)
+								current.series.getAttributesMap().put(columns[i], decode(attribute, field, " "));
+						}
+						else
+							attributes.put(columns[i], decode(attribute, field, ""));
+					}
+				}
+
+				current.times.add(time);
+				current.values.add(parseValue(value));
+				current.obsAttributes.add(attributes);
+			}
+			if (current != null)
+				completed(current, guard);
+		}
+
+		List<PortableTimeSeries<Double>> data = new ArrayList<>(tsList.size());
+		for (SeriesRows rows : tsList.values())
+			data.add(rows.series);
+
+		result.setData(data);
+		return result;
+	}
+
+	/*
+	 * Adds the buffered observations to their series, moving the attributes with an unknown attachment level and a
+	 * constant value to the series. When late rows are merged into a completed series, an attribute already moved
+	 * to the series is moved back to the observations if the late rows do not all share its value.
+	 */
+	private void completed(SeriesRows rows, ResultSizeGuard guard) throws SdmxException
+	{
+		PortableTimeSeries<Double> series = rows.series;
+		List<Map<String, String>> obsAttributes = rows.obsAttributes;
+		if (rows.completed)
+		{
+			for (String name : new ArrayList<>(series.getAttributesMap().keySet()))
+			{
+				// the attributes declared at series level, and the generated name, are not moved
+				SdmxAttribute attribute = dsd.getAttribute(name);
+				if (attribute == null || attribute.getAttachmentLevel() != null)
+					continue;
+
+				String value = series.getAttribute(name);
+				boolean constant = true;
+				for (int i = 0; constant && i < obsAttributes.size(); i++)
+					constant = value.equals(obsAttributes.get(i).get(name));
+				if (constant)
+					for (Map<String, String> attributes : obsAttributes)
+						attributes.remove(name);
+				else
+					moveToObservations(series, name);
+			}
+		}
+		else if (!obsAttributes.isEmpty())
+			for (String name : new ArrayList<>(obsAttributes.get(0).keySet()))
+			{
+				if (dsd.getAttribute(name).getAttachmentLevel() != null)
+					continue;
+
+				String value = obsAttributes.get(0).get(name);
+				boolean constant = series.getAttribute(name) == null || series.getAttribute(name).equals(value);
+				for (int i = 1; constant && i < obsAttributes.size(); i++)
+					constant = value.equals(obsAttributes.get(i).get(name));
+				if (constant)
+				{
+					series.getAttributesMap().put(name, value);
+					for (Map<String, String> attributes : obsAttributes)
+						attributes.remove(name);
+				}
+			}
+
+		List<DoubleObservation> observations = new ArrayList<>(rows.times.size());
+		for (int i = 0; i < rows.times.size(); i++)
+			observations.add(new DoubleObservation(rows.times.get(i), rows.values.get(i), obsAttributes.get(i)));
+		// new lists, as the buffers of a completed series are rarely used again
+		rows.times = new ArrayList<>();
+		rows.values = new ArrayList<>();
+		rows.obsAttributes = new ArrayList<>();
+		series.addAll(observations);
+
+		if (rows.completed)
+			guard.extended(series, observations.size());
+		else
+			guard.completed(series);
+		rows.completed = true;
+	}
+
+	// moves a series attribute back to each observation of the series
+	private static void moveToObservations(PortableTimeSeries<Double> series, String name)
+	{
+		String value = series.getAttributesMap().remove(name);
+		List<DoubleObservation> observations = new ArrayList<>(series.size());
+		for (BaseObservation<? extends Double> obs : series)
+		{
+			Map<String, String> attributes = new HashMap<>(obs.getAttributes());
+			attributes.put(name, value);
+			observations.add(new DoubleObservation(obs.getTimeslot(), obs.getValueAsDouble(), attributes));
+		}
+		series.setObservationStore(observations);
+	}
+
+	private Map<String, Entry<String, String>> getDimensions(String[] key)
+	{
+		Map<String, Entry<String, String>> dimensions = new LinkedHashMap<>();
+		for (Dimension dimension : dsd.getDimensions())
+		{
+			String value = key[dimension.getPosition() - 1];
+			Codelist cl = dimension.getCodeList();
+			dimensions.put(dimension.getId(), new SimpleEntry<>(value, cl != null ? cl.get(value) : null));
+		}
+		return dimensions;
+	}
+
+	/*
+	 * Applies the codes policy to an attribute value, as the XML parsers do.
+	 */
+	private static String decode(SdmxAttribute attribute, String value, String separator)
+	{
+		if (Configuration.getCodesPolicy().equalsIgnoreCase(Configuration.SDMX_CODES_POLICY_ID) || attribute.getCodeList() == null)
+			return value;
+
+		String desc = attribute.getCodeList().get(value);
+		if (desc == null)
+			return value;
+		return Configuration.getCodesPolicy().equalsIgnoreCase(Configuration.SDMX_CODES_POLICY_DESC) ? desc : value + separator + "(" + desc + ")";
+	}
+
+	private static double parseValue(String value)
+	{
+		try
+		{
+			return value != null && !value.isEmpty() ? Double.parseDouble(value) : Double.NaN;
+		}
+		catch (NumberFormatException e)
+		{
+			logger.fine(() -> "Non-numeric observation value: " + value + ". Using NaN instead.");
+			return Double.NaN;
+		}
+	}
+
+	private boolean isKnown(String column, String timeDimension, String measure)
+	{
+		return dsd.isDimension(column) || column.equals(timeDimension) || column.equals(measure) || dsd.getAttribute(column) != null;
+	}
+
+	/*
+	 * Splits a record into fields. Quoted fields may contain separators, doubled quotes and line breaks, in which case
+	 * the following lines are read.
+	 */
+	private static void split(BufferedReader reader, String line, char separator, List<String> fields) throws IOException
+	{
+		fields.clear();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0;; i++)
+		{
+			if (i == line.length())
+			{
+				if (!quoted)
+					break;
+				String next = reader.readLine();
+				if (next == null)
+					throw new IOException("Unterminated quoted field in SDMX-CSV data.");
+				field.append('\n');
+				line = next;
+				i = -1;
+				continue;
+			}
+
+			char c = line.charAt(i);
+			if (quoted)
+				if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"')
+				{
+					field.append('"');
+					i++;
+				}
+				else if (c == '"')
+					quoted = false;
+				else
+					field.append(c);
+			else if (c == '"')
+				quoted = true;
+			else if (c == separator)
+			{
+				fields.add(field.toString());
+				field.setLength(0);
+			}
+			else
+				field.append(c);
+		}
+		fields.add(field.toString());
+	}
+}
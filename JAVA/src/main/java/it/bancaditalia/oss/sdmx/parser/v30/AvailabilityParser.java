@@ -26,6 +26,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale.LanguageRange;
 import java.util.Map;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.xml.stream.XMLEventReader;
@@ -73,7 +74,7 @@ public class AvailabilityParser implements Parser<Map<String, List<String>>>
 		while (eventReader.hasNext())
 		{
 			XMLEvent event = eventReader.nextEvent();
-			logger.finest(event.toString());
+			logger.finest(event::toString);
 			if (event.isStartElement())
 			{
 				StartElement startElement = event.asStartElement();
@@ -102,7 +103,7 @@ public class AvailabilityParser implements Parser<Map<String, List<String>>>
 					if (dimension != null)
 					{
 						if(codes.size() > 0){
-							logger.finer("Got dimension " + dimension);
+							logger.log(Level.FINER, "Got dimension {0}", dimension);
 							dimensions.put(dimension, codes);
 						}
 						else{
@@ -64,8 +64,13 @@ public class Sdmx30Queries extends RestQueryBuilder {
 	
 	public static Sdmx30Queries createAvailabilityQueryByKey(URI endpoint, String dataflow, String key,
 			String mode)  throws SdmxInvalidParameterException {
+		return createAvailabilityQueryByKey(endpoint, dataflow, key, null, mode);
+	}
+
+	public static Sdmx30Queries createAvailabilityQueryByKey(URI endpoint, String dataflow, String key, String filter,
+			String mode)  throws SdmxInvalidParameterException {
 		if (endpoint != null && dataflow != null && !dataflow.isEmpty())
-			return (Sdmx30Queries) new Sdmx30Queries(endpoint).addParams(null, null, null, false, null, false, mode).addPath("availability")
+			return (Sdmx30Queries) new Sdmx30Queries(endpoint).addParams(filter, null, null, false, null, false, mode).addPath("availability")
 					.addPath("dataflow").addPath(dataflow.replace(",", "/")).addPath(key);
 		else
 			throw new SdmxInvalidParameterException("Invalid query parameters: dataflow=" + dataflow + " filter=" + key + " endpoint=" + endpoint);
@@ -61,7 +61,7 @@ public class SeriesCountParser implements Parser<Integer>
 		while (eventReader.hasNext())
 		{
 			XMLEvent event = eventReader.nextEvent();
-			logger.finest(event.toString());
+			logger.finest(event::toString);
 			if (event.isStartElement())
 			{
 				StartElement startElement = event.asStartElement();
@@ -0,0 +1,249 @@
+/* Copyright 2010,2014 Bank Of Italy
+*
+* Licensed under the EUPL, Version 1.1 or - as soon they
+* will be approved by the European Commission - subsequent
+* versions of the EUPL (the "Licence");
+* You may not use this work except in compliance with the
+* Licence.
+* You may obtain a copy of the Licence at:
+*
+*
+* http://ec.europa.eu/idabc/eupl
+*
+* Unless required by applicable law or agreed to in
+* writing, software distributed under the Licence is
+* distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied.
+* See the Licence for the specific language governing
+* permissions and limitations under the Licence.
+*/
+package it.bancaditalia.oss.sdmx.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.ErrorManager;
+import java.util.logging.Filter;
+import java.util.logging.Formatter;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.LogRecord;
+
+/**
+ * <p>
+ * A {@link Handler} that hands log records to a background thread through a bounded ring buffer, so that the
+ * logging thread never waits for the console or a file. The records are published to a target handler, by default
+ * a {@link SdmxLogHandler}.
+ *
+ * <p>
+ * When the buffer is full the record is dropped rather than blocking the caller. The number of dropped records is
+ * reported by {@link #getDroppedCount()} and logged by the target handler as soon as there is room again.
+ * {@link #flush()} and {@link #close()} wait until the buffer has been drained.
+ *
+ * <p>
+ * When created by the {@link LogManager}, e.g. with <code>SDMX.handlers=it.bancaditalia.oss.sdmx.util.AsyncLogHandler</code>,
+ * the capacity and the level are read from the <code>it.bancaditalia.oss.sdmx.util.AsyncLogHandler.capacity</code>
+ * (default 8192) and <code>it.bancaditalia.oss.sdmx.util.AsyncLogHandler.level</code> (default INFO) properties.
+ */
+public class AsyncLogHandler extends Handler
+{
+	public static final int					DEFAULT_CAPACITY	= 8192;
+
+	private final Handler					target;
+	private final BlockingQueue<LogRecord>	buffer;
+	private final AtomicLong				dropped				= new AtomicLong();
+	private final Thread					worker;
+	// records accepted but not yet published
+	private final AtomicInteger				pending				= new AtomicInteger();
+	private volatile boolean				closed				= false;
+
+	/**
+	 * Creates an asynchronous handler publishing to a {@link SdmxLogHandler}, configured through the
+	 * {@link LogManager} properties.
+	 */
+	public AsyncLogHandler()
+	{
+		this(new SdmxLogHandler(), getCapacity());
+		setLevel(getLevel(Level.INFO));
+	}
+
+	/**
+	 * Creates an asynchronous handler.
+	 * 
+	 * @param target the handler that publishes the records
+	 * @param capacity the maximum number of records waiting to be published
+	 */
+	public AsyncLogHandler(Handler target, int capacity)
+	{
+		this.target = target;
+		this.buffer = new ArrayBlockingQueue<>(capacity > 0 ? capacity : DEFAULT_CAPACITY);
+		super.setLevel(target.getLevel());
+
+		worker = new Thread(this::drain, "SDMX log writer");
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	/**
+	 * @return the handler that publishes the records
+	 */
+	public Handler getTarget()
+	{
+		return target;
+	}
+
+	/**
+	 * @return the number of records dropped because the buffer was full
+	 */
+	public long getDroppedCount()
+	{
+		return dropped.get();
+	}
+
+	@Override
+	public void publish(LogRecord record)
+	{
+		if (closed || !isLoggable(record))
+			return;
+
+		// the source is inferred from the stack trace of the calling thread: do it before leaving it
+		record.getSourceClassName();
+		pending.incrementAndGet();
+		if (!buffer.offer(record))
+		{
+			pending.decrementAndGet();
+			dropped.incrementAndGet();
+		}
+	}
+
+	@Override
+	public void flush()
+	{
+		while (worker.isAlive() && pending.get() > 0)
+			try
+			{
+				Thread.sleep(1);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				break;
+			}
+		target.flush();
+	}
+
+	@Override
+	public void close() throws SecurityException
+	{
+		if (closed)
+			return;
+
+		flush();
+		closed = true;
+		worker.interrupt();
+		try
+		{
+			worker.join(1000);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		target.close();
+	}
+
+	@Override
+	public void setLevel(Level newLevel) throws SecurityException
+	{
+		target.setLevel(newLevel);
+		super.setLevel(newLevel);
+	}
+
+	@Override
+	public void setFormatter(Formatter newFormatter) throws SecurityException
+	{
+		target.setFormatter(newFormatter);
+		super.setFormatter(newFormatter);
+	}
+
+	@Override
+	public void setFilter(Filter newFilter) throws SecurityException
+	{
+		target.setFilter(newFilter);
+		super.setFilter(newFilter);
+	}
+
+	@Override
+	public void setErrorManager(ErrorManager em)
+	{
+		target.setErrorManager(em);
+		super.setErrorManager(em);
+	}
+
+	private void drain()
+	{
+		long reported = 0;
+		while (!closed)
+			try
+			{
+				LogRecord record = buffer.poll(100, TimeUnit.MILLISECONDS);
+				if (record == null)
+					continue;
+
+				try
+				{
+					long lost = dropped.get();
+					if (lost > reported)
+					{
+						LogRecord warning = new LogRecord(Level.WARNING, (lost - reported) + " log records were dropped because the buffer was full.");
+						warning.setLoggerName(record.getLoggerName());
+						target.publish(warning);
+						reported = lost;
+					}
+					target.publish(record);
+				}
+				catch (RuntimeException e)
+				{
+					reportError(null, e, ErrorManager.WRITE_FAILURE);
+				}
+				finally
+				{
+					pending.decrementAndGet();
+				}
+			}
+			catch (InterruptedException e)
+			{
+				// closing
+			}
+	}
+
+	private static Level getLevel(Level defaultLevel)
+	{
+		String level = LogManager.getLogManager().getProperty(AsyncLogHandler.class.getName() + ".level");
+		try
+		{
+			return level != null ? Level.parse(level.trim()) : defaultLevel;
+		}
+		catch (IllegalArgumentException e)
+		{
+			return defaultLevel;
+		}
+	}
+
+	private static int getCapacity()
+	{
+		String capacity = LogManager.getLogManager().getProperty(AsyncLogHandler.class.getName() + ".capacity");
+		try
+		{
+			return capacity != null ? Integer.parseInt(capacity.trim()) : DEFAULT_CAPACITY;
+		}
+		catch (NumberFormatException e)
+		{
+			return DEFAULT_CAPACITY;
+		}
+	}
+}
@@ -85,6 +85,8 @@ public class Configuration
 	protected static final String PROXY_AUTH_PW_PROP = "http.auth.pw";
 	protected static final String REVERSE_DUMP_PROP = "reverse.dump";
 	protected static final String SDMX_LANG_PROP = "sdmx.lang";
+	protected static final String SDMX_LANG_FALLBACK_PROP = "sdmx.lang.fallback";
+	protected static final String SDMX_LANG_KEEP_ALL_PROP = "sdmx.lang.keep.all";
 	protected static final String LATE_RESP_RETRIES_PROP = "late.response.retries";
 	protected static final String TABLE_DUMP_PROP = "table.dump";
 	protected static final String READ_TIMEOUT_PROP = "read.timeout";
@@ -100,6 +102,43 @@ public class Configuration
 	private static final String SDMX_DEFAULT_LANG = "en";
 	private static final String SDMX_DEFAULT_TIMEOUT = "0";
 	private static final String DUMP_XML_PREFIX = "xml.dump.prefix";
+	private static final String TIMESERIES_CACHE_DIR = "timeseries.cache.dir";
+	private static final String TIMESERIES_CACHE_MAX_OBSERVATIONS = "timeseries.cache.max.observations";
+	private static final String TIMESERIES_CACHE_MAX_OBSERVATIONS_DEFAULT = "1000000";
+	private static final String TIMESERIES_CACHE_SYNC_MARGIN = "timeseries.cache.sync.margin";
+	private static final String TIMESERIES_CACHE_SYNC_MARGIN_DEFAULT = "3600";
+	private static final String JMX_ENABLED = "jmx.enabled";
+	private static final String DATA_FORMAT = "data.format";
+	public static final String DATA_FORMAT_XML = "xml";
+	public static final String DATA_FORMAT_CSV = "csv";
+	private static final String RESULT_MAX_MEMORY = "result.max.memory";
+	private static final String RESULT_BYTES_PER_OBSERVATION = "result.bytes.per.observation";
+	private static final String RESULT_BYTES_PER_OBSERVATION_DEFAULT = "160";
+	private static final String RESULT_SPILL_DIR = "result.spill.dir";
+	private static final String HTTP_ARCHIVE_DIR = "http.archive.dir";
+	private static final String HTTP_ARCHIVE_MODE = "http.archive.mode";
+	public static final String HTTP_ARCHIVE_RECORD = "record";
+	public static final String HTTP_ARCHIVE_REPLAY = "replay";
+	private static final String CACHE_POLICY = "cache.policy";
+	private static final String CACHE_DSD_MAX_WEIGHT = "cache.dsd.max.weight";
+	private static final String CACHE_FLOWS_MAX_SIZE = "cache.flows.max.size";
+	private static final String CACHE_CLIENTS_MAX_SIZE = "cache.clients.max.size";
+	private static final String CACHE_CLIENTS_POLICY = "cache.clients.policy";
+	private static final String CACHE_CODELISTS_MAX_WEIGHT = "cache.codelists.max.weight";
+	private static final String CODELISTS_BATCH_QUERY = "codelists.batch.query";
+	private static final String CODELISTS_LAZY = "codelists.lazy";
+	private static final String CACHE_DSD_MAX_WEIGHT_DEFAULT = "500000";
+	private static final String CACHE_UNBOUNDED = "0";
+	private static final String MAX_CONCURRENCY = "max.concurrency";
+	private static final String MAX_CONCURRENCY_DEFAULT = "4";
+	private static final String QUERY_MERGE_MAX_KEY_LENGTH = "query.merge.max.key.length";
+	private static final String QUERY_MERGE_MAX_KEY_LENGTH_DEFAULT = "0";
+	private static final String AVAILABILITY_PLANNING = "availability.planning";
+	private static final String AVAILABILITY_MAX_SERIES_PER_QUERY = "availability.max.series.per.query";
+	private static final String AVAILABILITY_MAX_SERIES_PER_QUERY_DEFAULT = "1000";
+	private static final String AVAILABILITY_MAX_SERIES = "availability.max.series";
+	private static final String AVAILABILITY_CACHE_TTL = "availability.cache.ttl";
+	private static final String AVAILABILITY_CACHE_TTL_DEFAULT = "300";
 	private static final String sourceClass = Configuration.class.getSimpleName();
 
 	private static final String CONFIGURATION_FILE_NAME = "configuration.properties";
@@ -197,6 +236,199 @@ public class Configuration
 		return Integer.parseInt(timeout);
 	}
 
+	public static int getMaxConcurrency(String provider)
+	{
+		return (int) getLong(provider + "." + MAX_CONCURRENCY, props.getProperty(MAX_CONCURRENCY, MAX_CONCURRENCY_DEFAULT));
+	}
+
+	/**
+	 * @param provider the provider name
+	 * @param maxConcurrency the maximum number of parallel calls to the provider
+	 */
+	public static void setMaxConcurrency(String provider, int maxConcurrency)
+	{
+		props.setProperty(provider + "." + MAX_CONCURRENCY, Integer.toString(maxConcurrency));
+	}
+
+	/**
+	 * @param provider the provider name
+	 * @return the maximum length of a key merging many requested keys with the OR syntax, or 0 (the default) if keys
+	 *         are not merged
+	 */
+	public static int getMaxMergedKeyLength(String provider)
+	{
+		return (int) getLong(provider + "." + QUERY_MERGE_MAX_KEY_LENGTH, props.getProperty(QUERY_MERGE_MAX_KEY_LENGTH, QUERY_MERGE_MAX_KEY_LENGTH_DEFAULT));
+	}
+
+	/**
+	 * @param provider the provider name
+	 * @param maxKeyLength the maximum length of a merged key, or 0 to disable merging for the provider
+	 */
+	public static void setMaxMergedKeyLength(String provider, int maxKeyLength)
+	{
+		props.setProperty(provider + "." + QUERY_MERGE_MAX_KEY_LENGTH, Integer.toString(maxKeyLength));
+	}
+
+	public static boolean isAvailabilityPlanning(String provider)
+	{
+		return Boolean.parseBoolean(props.getProperty(provider + "." + AVAILABILITY_PLANNING, props.getProperty(AVAILABILITY_PLANNING, "false")));
+	}
+
+	public static int getMaxSeriesPerQuery(String provider)
+	{
+		return (int) getLong(provider + "." + AVAILABILITY_MAX_SERIES_PER_QUERY, props.getProperty(AVAILABILITY_MAX_SERIES_PER_QUERY, AVAILABILITY_MAX_SERIES_PER_QUERY_DEFAULT));
+	}
+
+	public static long getMaxSeries(String provider)
+	{
+		return getLong(provider + "." + AVAILABILITY_MAX_SERIES, props.getProperty(AVAILABILITY_MAX_SERIES, CACHE_UNBOUNDED));
+	}
+
+	/**
+	 * @param provider the provider name
+	 * @return the number of seconds an availability response is reused, or 0 if availability is never cached
+	 */
+	public static long getAvailabilityCacheTtl(String provider)
+	{
+		return getLong(provider + "." + AVAILABILITY_CACHE_TTL, props.getProperty(AVAILABILITY_CACHE_TTL, AVAILABILITY_CACHE_TTL_DEFAULT));
+	}
+
+	/**
+	 * @return true if the metrics of the providers are published as MBeans
+	 */
+	public static boolean isJmxEnabled()
+	{
+		return Boolean.parseBoolean(props.getProperty(JMX_ENABLED, "true"));
+	}
+
+	/**
+	 * @param provider a provider name
+	 * @return the preferred format of the data returned by the provider: {@link #DATA_FORMAT_XML} (the default) or
+	 *         {@link #DATA_FORMAT_CSV}
+	 */
+	public static String getDataFormat(String provider)
+	{
+		String format = props.getProperty(provider + "." + DATA_FORMAT, props.getProperty(DATA_FORMAT, DATA_FORMAT_XML)).trim().toLowerCase();
+		if (DATA_FORMAT_XML.equals(format) || DATA_FORMAT_CSV.equals(format))
+			return format;
+		SDMX_LOGGER.warning("The value " + format + " for the key " + DATA_FORMAT + " is not valid. Using default.");
+		return DATA_FORMAT_XML;
+	}
+
+	/**
+	 * @return the memory budget of a query result in bytes (by default, a quarter of the maximum heap size). Larger
+	 *         results are moved to disk. A value less than or equal to zero means no limit.
+	 */
+	public static long getResultMaxMemory()
+	{
+		return getLong(RESULT_MAX_MEMORY, Long.toString(Runtime.getRuntime().maxMemory() / 4));
+	}
+
+	/**
+	 * @param bytes the memory budget of a query result in bytes, or a value less than or equal to zero for no limit
+	 */
+	public static void setResultMaxMemory(long bytes)
+	{
+		props.setProperty(RESULT_MAX_MEMORY, Long.toString(bytes));
+	}
+
+	/**
+	 * @return the estimated heap size of an observation, used to check a result against its memory budget
+	 */
+	public static long getResultBytesPerObservation()
+	{
+		return getLong(RESULT_BYTES_PER_OBSERVATION, RESULT_BYTES_PER_OBSERVATION_DEFAULT);
+	}
+
+	/**
+	 * @return the directory where results exceeding their memory budget are stored, or null for the default temporary
+	 *         directory
+	 */
+	public static String getResultSpillDir()
+	{
+		return props.getProperty(RESULT_SPILL_DIR);
+	}
+
+	public static MetadataCache.Policy getCachePolicy(String provider)
+	{
+		String policy = props.getProperty(provider + "." + CACHE_POLICY, props.getProperty(CACHE_POLICY, MetadataCache.Policy.LRU.name()));
+		return toCachePolicy(CACHE_POLICY, policy);
+	}
+
+	/**
+	 * @return the eviction policy of the clients cache, shared by all the providers
+	 */
+	public static MetadataCache.Policy getClientsCachePolicy()
+	{
+		String policy = props.getProperty(CACHE_CLIENTS_POLICY, props.getProperty(CACHE_POLICY, MetadataCache.Policy.LRU.name()));
+		return toCachePolicy(CACHE_CLIENTS_POLICY, policy);
+	}
+
+	private static MetadataCache.Policy toCachePolicy(String key, String policy)
+	{
+		try
+		{
+			return MetadataCache.Policy.valueOf(policy.trim().toUpperCase());
+		}
+		catch (IllegalArgumentException e)
+		{
+			SDMX_LOGGER.warning("The value " + policy + " for the key " + key + " is not valid. Using default.");
+			return MetadataCache.Policy.LRU;
+		}
+	}
+
+	public static long getDsdCacheMaxWeight(String provider)
+	{
+		return getLong(provider + "." + CACHE_DSD_MAX_WEIGHT, props.getProperty(CACHE_DSD_MAX_WEIGHT, CACHE_DSD_MAX_WEIGHT_DEFAULT));
+	}
+
+	public static long getCodelistsCacheMaxWeight(String provider)
+	{
+		return getLong(provider + "." + CACHE_CODELISTS_MAX_WEIGHT, props.getProperty(CACHE_CODELISTS_MAX_WEIGHT, CACHE_DSD_MAX_WEIGHT_DEFAULT));
+	}
+
+	/**
+	 * @param provider the provider name
+	 * @return true if the provider accepts many codelist ids in a single structure query
+	 */
+	public static boolean isCodelistsBatchQuery(String provider)
+	{
+		return Boolean.parseBoolean(props.getProperty(provider + "." + CODELISTS_BATCH_QUERY, props.getProperty(CODELISTS_BATCH_QUERY, "false")));
+	}
+
+	/**
+	 * @param provider the provider name
+	 * @return true if the codes of the codelists in a structure are decoded only when they are needed
+	 */
+	public static boolean isCodelistsLazy(String provider)
+	{
+		return Boolean.parseBoolean(props.getProperty(provider + "." + CODELISTS_LAZY, props.getProperty(CODELISTS_LAZY, "false")));
+	}
+
+	public static long getFlowsCacheMaxSize(String provider)
+	{
+		return getLong(provider + "." + CACHE_FLOWS_MAX_SIZE, props.getProperty(CACHE_FLOWS_MAX_SIZE, CACHE_UNBOUNDED));
+	}
+
+	public static long getClientsCacheMaxSize()
+	{
+		return getLong(CACHE_CLIENTS_MAX_SIZE, CACHE_UNBOUNDED);
+	}
+
+	private static long getLong(String key, String defaultValue)
+	{
+		String value = props.getProperty(key, defaultValue);
+		try
+		{
+			return Long.parseLong(value.trim());
+		}
+		catch (NumberFormatException e)
+		{
+			SDMX_LOGGER.warning("The value " + value + " for the key " + key + " is not valid. Using default.");
+			return Long.parseLong(defaultValue.trim());
+		}
+	}
+
 	public static String getCodesPolicy()
 	{
 		String policy = props.getProperty(SDMX_CODES_POLICY, SDMX_CODES_POLICY_ID);
@@ -219,6 +451,47 @@ public class Configuration
 		return props.getProperty(Configuration.LATE_RESP_RETRIES_PROP, Integer.toString(defaultRetries));
 	}
 
+	/**
+	 * @return the language of the texts kept as a fallback when no text matches the preferred languages, or null
+	 */
+	public static String getLanguageFallback()
+	{
+		init();
+		String fallback = props.getProperty(SDMX_LANG_FALLBACK_PROP);
+		return fallback != null && !fallback.trim().isEmpty() ? fallback.trim() : null;
+	}
+
+	/**
+	 * @return true if all the language variants of the parsed texts are kept, instead of only the best match
+	 */
+	public static boolean isKeepAllLanguages()
+	{
+		init();
+		return Boolean.parseBoolean(props.getProperty(SDMX_LANG_KEEP_ALL_PROP, "false"));
+	}
+
+	/**
+	 * @param language the language of the texts kept as a fallback, or null to keep none. It applies to the texts
+	 *            parsed from now on.
+	 */
+	public static void setLanguageFallback(String language)
+	{
+		init();
+		if (language == null || language.trim().isEmpty())
+			props.remove(SDMX_LANG_FALLBACK_PROP);
+		else
+			props.setProperty(SDMX_LANG_FALLBACK_PROP, language.trim());
+	}
+
+	/**
+	 * @param keepAll true to keep all the language variants of the texts parsed from now on
+	 */
+	public static void setKeepAllLanguages(boolean keepAll)
+	{
+		init();
+		props.setProperty(SDMX_LANG_KEEP_ALL_PROP, Boolean.toString(keepAll));
+	}
+
 	public static void setLanguages(String languages)
 	{
 		SDMX_LANG = LanguageRange.parse(languages);
@@ -597,6 +870,93 @@ public class Configuration
 		return (props.getProperty(DUMP_XML_PREFIX) != null) && (!props.getProperty(DUMP_XML_PREFIX).isEmpty());
 	}
 
+	public static String getTimeSeriesCacheDir()
+	{
+		return props.getProperty(TIMESERIES_CACHE_DIR);
+	}
+
+	public static void setTimeSeriesCacheDir(String path)
+	{
+		if (path == null || path.isEmpty())
+			props.remove(TIMESERIES_CACHE_DIR);
+		else
+		{
+			File f = new File(path);
+			if (f.exists() && f.isDirectory())
+				props.put(TIMESERIES_CACHE_DIR, path);
+			else
+				SDMX_LOGGER.warning("The directory for the time series cache must already exist");
+		}
+	}
+
+	public static boolean isTimeSeriesCache()
+	{
+		return (props.getProperty(TIMESERIES_CACHE_DIR) != null) && (!props.getProperty(TIMESERIES_CACHE_DIR).isEmpty());
+	}
+
+	/**
+	 * @return the maximum number of observations of the cached time series kept in memory, or a value less than or
+	 *         equal to zero for no limit. The queries evicted from memory are read again from the cache directory.
+	 */
+	public static long getTimeSeriesCacheMaxObservations()
+	{
+		return getLong(TIMESERIES_CACHE_MAX_OBSERVATIONS, TIMESERIES_CACHE_MAX_OBSERVATIONS_DEFAULT);
+	}
+
+	/**
+	 * @return the number of seconds subtracted from the time of the last synchronisation of a cached query, to cover
+	 *         the difference between the local clock and the clock of the provider
+	 */
+	public static long getTimeSeriesCacheSyncMargin()
+	{
+		return getLong(TIMESERIES_CACHE_SYNC_MARGIN, TIMESERIES_CACHE_SYNC_MARGIN_DEFAULT);
+	}
+
+	public static String getHttpArchiveDir()
+	{
+		return props.getProperty(HTTP_ARCHIVE_DIR);
+	}
+
+	/**
+	 * @return {@link #HTTP_ARCHIVE_RECORD}, {@link #HTTP_ARCHIVE_REPLAY}, or null if no http archive is configured
+	 */
+	public static String getHttpArchiveMode()
+	{
+		String dir = props.getProperty(HTTP_ARCHIVE_DIR);
+		if (dir == null || dir.isEmpty())
+			return null;
+		String mode = props.getProperty(HTTP_ARCHIVE_MODE, HTTP_ARCHIVE_REPLAY).trim().toLowerCase();
+		return HTTP_ARCHIVE_RECORD.equals(mode) || HTTP_ARCHIVE_REPLAY.equals(mode) ? mode : null;
+	}
+
+	/**
+	 * Records all the http exchanges into a directory, or replays them from it instead of contacting the providers.
+	 * 
+	 * @param path an existing directory, or null to go back to the network
+	 * @param mode {@link #HTTP_ARCHIVE_RECORD} or {@link #HTTP_ARCHIVE_REPLAY}
+	 */
+	public static void setHttpArchive(String path, String mode)
+	{
+		if (path == null || path.isEmpty())
+		{
+			props.remove(HTTP_ARCHIVE_DIR);
+			props.remove(HTTP_ARCHIVE_MODE);
+		}
+		else if (!HTTP_ARCHIVE_RECORD.equalsIgnoreCase(mode) && !HTTP_ARCHIVE_REPLAY.equalsIgnoreCase(mode))
+			SDMX_LOGGER.warning("The http archive mode must be either " + HTTP_ARCHIVE_RECORD + " or " + HTTP_ARCHIVE_REPLAY);
+		else
+		{
+			File f = new File(path);
+			if (f.exists() && f.isDirectory())
+			{
+				props.put(HTTP_ARCHIVE_DIR, path);
+				props.put(HTTP_ARCHIVE_MODE, mode.toLowerCase());
+			}
+			else
+				SDMX_LOGGER.warning("The directory of the http archive must already exist");
+		}
+	}
+
 	public static void setSubject(Subject subject)
 	{
 		Configuration.subject = subject;
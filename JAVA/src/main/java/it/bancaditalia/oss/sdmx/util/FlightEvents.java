@@ -0,0 +1,187 @@
+/* Copyright 2010,2014 Bank Of Italy
+*
+* Licensed under the EUPL, Version 1.1 or - as soon they
+* will be approved by the European Commission - subsequent
+* versions of the EUPL (the "Licence");
+* You may not use this work except in compliance with the
+* Licence.
+* You may obtain a copy of the Licence at:
+*
+*
+* http://ec.europa.eu/idabc/eupl
+*
+* Unless required by applicable law or agreed to in
+* writing, software distributed under the Licence is
+* distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied.
+* See the Licence for the specific language governing
+* permissions and limitations under the Licence.
+*/
+package it.bancaditalia.oss.sdmx.util;
+
+import java.util.logging.Logger;
+
+/**
+ * <p>
+ * Java Flight Recorder events of the SDMX clients: http exchanges, parsing of the responses and loads of the metadata
+ * caches. In a recording they show which SDMX call caused a given allocation or GC spike.
+ *
+ * <p>
+ * The events are defined in <code>JfrFlightEvents</code>, which is compiled from <code>src/jfr/java</code> only when
+ * the build runs on JDK 11 or later, and is only loaded when the JVM provides <code>jdk.jfr</code>. When the class or
+ * the JVM support is missing, and whenever an event type is disabled in the running recordings, the methods of this
+ * class return shared no-op instances.
+ */
+public final class FlightEvents
+{
+	private static final Logger	LOGGER	= Configuration.getSdmxLogger();
+
+	/**
+	 * An http exchange of {@code RestSdmxClient.runQuery}. Phases are in nanoseconds.
+	 */
+	public interface Exchange
+	{
+		public void setStatus(int status);
+
+		public void setBytes(long wire, long decompressed);
+
+		public void setPhases(long connect, long firstByte, long transfer);
+
+		public void commit();
+	}
+
+	/**
+	 * The parsing of a response.
+	 */
+	public interface Parse
+	{
+		public void setCounts(long series, long observations);
+
+		public void commit();
+	}
+
+	/**
+	 * A load of a missing entry of a metadata cache.
+	 */
+	public interface CacheLoad
+	{
+		public void setFound(boolean found);
+
+		public void commit();
+	}
+
+	interface Factory
+	{
+		public Exchange exchange(String provider, String url);
+
+		public Parse parse(String provider, String parser);
+
+		public CacheLoad cacheLoad(String cache, String key);
+	}
+
+	private static final Exchange	NO_EXCHANGE		= new Exchange() {
+		@Override
+		public void setStatus(int status)
+		{
+		}
+
+		@Override
+		public void setBytes(long wire, long decompressed)
+		{
+		}
+
+		@Override
+		public void setPhases(long connect, long firstByte, long transfer)
+		{
+		}
+
+		@Override
+		public void commit()
+		{
+		}
+	};
+
+	private static final Parse		NO_PARSE		= new Parse() {
+		@Override
+		public void setCounts(long series, long observations)
+		{
+		}
+
+		@Override
+		public void commit()
+		{
+		}
+	};
+
+	private static final CacheLoad	NO_CACHE_LOAD	= new CacheLoad() {
+		@Override
+		public void setFound(boolean found)
+		{
+		}
+
+		@Override
+		public void commit()
+		{
+		}
+	};
+
+	private static final Factory	FACTORY			= createFactory();
+
+	private FlightEvents()
+	{
+	}
+
+	/**
+	 * Starts timing an http exchange.
+	 * 
+	 * @param provider the provider name
+	 * @param url the requested url
+	 * @return the started event
+	 */
+	public static Exchange exchange(String provider, String url)
+	{
+		Exchange event = FACTORY != null ? FACTORY.exchange(provider, url) : null;
+		return event != null ? event : NO_EXCHANGE;
+	}
+
+	/**
+	 * Starts timing the parsing of a response.
+	 * 
+	 * @param provider the provider name
+	 * @param parser the class name of the parser
+	 * @return the started event
+	 */
+	public static Parse parse(String provider, String parser)
+	{
+		Parse event = FACTORY != null ? FACTORY.parse(provider, parser) : null;
+		return event != null ? event : NO_PARSE;
+	}
+
+	/**
+	 * Starts timing the load of a cache entry.
+	 * 
+	 * @param cache the cache name
+	 * @param key the missing key
+	 * @return the started event
+	 */
+	public static CacheLoad cacheLoad(String cache, String key)
+	{
+		CacheLoad event = FACTORY != null ? FACTORY.cacheLoad(cache, key) : null;
+		return event != null ? event : NO_CACHE_LOAD;
+	}
+
+	private static Factory createFactory()
+	{
+		try
+		{
+			Class.forName("jdk.jfr.Event");
+			return (Factory) Class.forName(FlightEvents.class.getPackage().getName() + ".JfrFlightEvents").getDeclaredConstructor().newInstance();
+		}
+		catch (ReflectiveOperationException | LinkageError e)
+		{
+			LOGGER.fine("Java Flight Recorder not available: " + e);
+			return null;
+		}
+	}
+}
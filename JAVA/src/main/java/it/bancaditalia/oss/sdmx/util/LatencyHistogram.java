@@ -0,0 +1,189 @@
+/* Copyright 2010,2014 Bank Of Italy
+*
+* Licensed under the EUPL, Version 1.1 or - as soon they
+* will be approved by the European Commission - subsequent
+* versions of the EUPL (the "Licence");
+* You may not use this work except in compliance with the
+* Licence.
+* You may obtain a copy of the Licence at:
+*
+*
+* http://ec.europa.eu/idabc/eupl
+*
+* Unless required by applicable law or agreed to in
+* writing, software distributed under the Licence is
+* distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied.
+* See the Licence for the specific language governing
+* permissions and limitations under the Licence.
+*/
+package it.bancaditalia.oss.sdmx.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.openmbean.CompositeData;
+
+/**
+ * <p>
+ * A lock-free histogram of durations, with microsecond resolution and a relative error of at most 12.5%. Each
+ * power of two is split in 8 linear buckets, so recording a value is a few shifts and an atomic increment.
+ *
+ * <p>
+ * Durations are recorded in nanoseconds and reported in milliseconds.
+ */
+public class LatencyHistogram
+{
+	// 2^40 microseconds, about 12 days
+	private static final int		MAX_EXPONENT	= 40;
+	private static final int		SUB_BUCKETS		= 8;
+	private static final int		SUB_BITS		= 3;
+
+	private final AtomicLongArray	buckets			= new AtomicLongArray((MAX_EXPONENT - SUB_BITS + 2) * SUB_BUCKETS);
+	private final LongAdder			count			= new LongAdder();
+	private final LongAdder			sum				= new LongAdder();
+	private final AtomicLong		max				= new AtomicLong();
+
+	/**
+	 * A point in time view of a histogram.
+	 */
+	public static class Snapshot
+	{
+		private final long		count;
+		private final double	mean;
+		private final double	p50;
+		private final double	p90;
+		private final double	p99;
+		private final double	max;
+
+		private Snapshot(long count, double mean, double p50, double p90, double p99, double max)
+		{
+			this.count = count;
+			this.mean = mean;
+			this.p50 = p50;
+			this.p90 = p90;
+			this.p99 = p99;
+			this.max = max;
+		}
+
+		/**
+		 * Rebuilds a snapshot read through JMX, e.g. by an MXBean proxy.
+		 * 
+		 * @param data the open data of a snapshot
+		 * @return the snapshot
+		 */
+		public static Snapshot from(CompositeData data)
+		{
+			return new Snapshot((Long) data.get("count"), (Double) data.get("meanMillis"), (Double) data.get("p50Millis"),
+					(Double) data.get("p90Millis"), (Double) data.get("p99Millis"), (Double) data.get("maxMillis"));
+		}
+
+		public long getCount()
+		{
+			return count;
+		}
+
+		public double getMeanMillis()
+		{
+			return mean;
+		}
+
+		public double getP50Millis()
+		{
+			return p50;
+		}
+
+		public double getP90Millis()
+		{
+			return p90;
+		}
+
+		public double getP99Millis()
+		{
+			return p99;
+		}
+
+		public double getMaxMillis()
+		{
+			return max;
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format("count=%d, mean=%.3fms, p50=%.3fms, p90=%.3fms, p99=%.3fms, max=%.3fms", count, mean, p50, p90, p99, max);
+		}
+	}
+
+	/**
+	 * @param nanos a duration in nanoseconds. Negative values are recorded as 0.
+	 */
+	public void record(long nanos)
+	{
+		long micros = Math.max(0, nanos / 1000);
+		buckets.incrementAndGet(bucket(micros));
+		count.increment();
+		sum.add(micros);
+		long current;
+		while (micros > (current = max.get()) && !max.compareAndSet(current, micros))
+			;
+	}
+
+	public Snapshot getSnapshot()
+	{
+		long[] counts = new long[buckets.length()];
+		long total = 0;
+		for (int i = 0; i < counts.length; i++)
+			total += counts[i] = buckets.get(i);
+		if (total == 0)
+			return new Snapshot(0, 0, 0, 0, 0, 0);
+
+		return new Snapshot(total, sum.sum() / 1000.0 / count.sum(), percentile(counts, total, 0.5),
+				percentile(counts, total, 0.9), percentile(counts, total, 0.99), max.get() / 1000.0);
+	}
+
+	public void reset()
+	{
+		for (int i = 0; i < buckets.length(); i++)
+			buckets.set(i, 0);
+		count.reset();
+		sum.reset();
+		max.set(0);
+	}
+
+	@Override
+	public String toString()
+	{
+		return getSnapshot().toString();
+	}
+
+	private double percentile(long[] counts, long total, double quantile)
+	{
+		long rank = (long) Math.ceil(total * quantile);
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++)
+			if ((seen += counts[i]) >= rank)
+				return Math.min(upperBound(i), max.get()) / 1000.0;
+		return max.get() / 1000.0;
+	}
+
+	// values below 8 have their own bucket, then 8 buckets for each power of two
+	private static int bucket(long micros)
+	{
+		if (micros < SUB_BUCKETS)
+			return (int) micros;
+		int exponent = Math.min(63 - Long.numberOfLeadingZeros(micros), MAX_EXPONENT);
+		int sub = (int) (micros >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return ((exponent - SUB_BITS + 1) << SUB_BITS) | sub;
+	}
+
+	private static long upperBound(int bucket)
+	{
+		if (bucket < SUB_BUCKETS)
+			return bucket + 1;
+		int exponent = (bucket >>> SUB_BITS) + SUB_BITS - 1;
+		return ((SUB_BUCKETS | (bucket & (SUB_BUCKETS - 1))) + 1L) << (exponent - SUB_BITS);
+	}
+}
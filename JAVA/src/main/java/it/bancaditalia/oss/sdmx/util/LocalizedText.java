@@ -20,6 +20,7 @@
 */
 package it.bancaditalia.oss.sdmx.util;
 
+import static java.util.Arrays.asList;
 import static java.util.Collections.singletonList;
 
 import java.util.Iterator;
@@ -35,12 +36,25 @@ import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.events.Attribute;
 import javax.xml.stream.events.StartElement;
 
+/**
+ * A text available in many languages. Unless sdmx.lang.keep.all is set in the configuration, only the text in the
+ * language best matching the preferred languages is kept, plus the text in the sdmx.lang.fallback language if one is
+ * configured. The best match is resolved as the texts are parsed. Changes of these settings apply to the texts
+ * created afterwards.
+ */
 public class LocalizedText
 {
 	private static final String LANG = "lang";
 	
 	private final List<LanguageRange> languages;
-	private final Map<String, String> data = new LinkedHashMap<>();
+	private final String fallback = Configuration.getLanguageFallback();
+	// all the texts, only if they are kept
+	private final Map<String, String> data = Configuration.isKeepAllLanguages() ? new LinkedHashMap<>() : null;
+	// the best matching text so far, or the first parsed text if none matches
+	private String bestLang = null;
+	private String bestText = null;
+	private boolean bestMatches = false;
+	private String fallbackText = null;
 
 	public LocalizedText(String universalName)
 	{
@@ -62,22 +76,41 @@ public class LocalizedText
 
 	private void put(String lang, String text)
 	{
-		if (text != null)
+		if (text == null)
+			return;
+		
+		if (data != null)
 			data.put(lang, text);
+		if (fallback != null && fallback.equalsIgnoreCase(lang))
+			fallbackText = text;
+
+		if (bestLang == null || lang.equals(bestLang))
+		{
+			bestLang = lang;
+			bestText = text;
+			bestMatches = Locale.lookupTag(languages, singletonList(lang)) != null;
+		}
+		else
+		{
+			// the best of the two is the best of all the texts parsed so far
+			String lookup = Locale.lookupTag(languages, bestMatches ? asList(bestLang, lang) : singletonList(lang));
+			if (lookup != null && lookup.equalsIgnoreCase(lang))
+			{
+				bestLang = lang;
+				bestText = text;
+				bestMatches = true;
+			}
+		}
 	}
 	
 	/**
 	 * Gets a localized text.
-	 * @return a text by using the best matching language if available
+	 * @return a text by using the best matching language if available, or the text in the fallback language, 
 	 * or the first parsed text otherwise or null if nothing is available
 	 */
 	public String getText()
 	{
-		if (data.isEmpty())
-			return null;
-
-		String lang = Locale.lookupTag(languages, data.keySet());
-		return lang != null ? data.get(lang) : data.values().iterator().next();
+		return bestMatches || fallbackText == null ? bestText : fallbackText;
 	}
 
 	/**
@@ -101,6 +134,8 @@ public class LocalizedText
 
 	@Override
 	public String toString() {
+		if (data == null)
+			return "LocalizedText [" + bestLang + " - " + bestText + (fallbackText != null ? ", " + fallback + " - " + fallbackText : "") + "]";
 		return "LocalizedText [" + data.entrySet()
         .stream()
         .map(entry -> entry.getKey() + " - " + entry.getValue())
@@ -0,0 +1,385 @@
+/* Copyright 2010,2014 Bank Of Italy
+*
+* Licensed under the EUPL, Version 1.1 or - as soon they
+* will be approved by the European Commission - subsequent
+* versions of the EUPL (the "Licence");
+* You may not use this work except in compliance with the
+* Licence.
+* You may obtain a copy of the Licence at:
+*
+*
+* http://ec.europa.eu/idabc/eupl
+*
+* Unless required by applicable law or agreed to in
+* writing, software distributed under the Licence is
+* distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied.
+* See the Licence for the specific language governing
+* permissions and limitations under the Licence.
+*/
+package it.bancaditalia.oss.sdmx.util;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.BiConsumer;
+import java.util.function.ToLongFunction;
+import java.util.logging.Logger;
+
+import it.bancaditalia.oss.sdmx.exceptions.SdmxException;
+import it.bancaditalia.oss.sdmx.exceptions.SdmxExceptionFactory;
+
+/**
+ * <p>
+ * A size-bounded cache for SDMX metadata (dataflows, structures, clients). Each entry has a weight computed by a
+ * weigher function (e.g. the number of codes referenced by a DSD). When the total weight exceeds the configured
+ * maximum, entries are evicted according to the chosen {@link Policy}.
+ *
+ * <p>
+ * A maximum weight less than or equal to zero means that the cache is unbounded. The entry that has just been
+ * inserted is never evicted, even if it alone exceeds the maximum weight.
+ *
+ * <p>
+ * All methods are synchronized on the cache instance, except {@link #get(Object, Loader)} which runs the loader
+ * outside the lock: concurrent requests for the same missing key wait for a single load.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class MetadataCache<K, V>
+{
+	protected static final Logger	LOGGER		= Configuration.getSdmxLogger();
+
+	/**
+	 * Eviction policy.
+	 */
+	public enum Policy
+	{
+		/**
+		 * Evict the least recently used entry.
+		 */
+		LRU,
+		/**
+		 * Evict the least frequently used entry. Ties are broken by recency.
+		 */
+		LFU
+	}
+
+	/**
+	 * Computes the value of a missing key.
+	 */
+	public interface Loader<K, V>
+	{
+		public V load(K key) throws SdmxException;
+	}
+
+	private static class Node<V>
+	{
+		private final V		value;
+		private final long	weight;
+		private long		frequency	= 1;
+
+		private Node(V value, long weight)
+		{
+			this.value = value;
+			this.weight = weight;
+		}
+	}
+
+	private final String				name;
+	private final Policy				policy;
+	private final long					maxWeight;
+	private final ToLongFunction<V>		weigher;
+	// access order: the first entry is always the least recently used
+	private final Map<K, Node<V>>		entries		= new LinkedHashMap<>(16, 0.75f, true);
+	// LFU only: frequency --> keys, in the order they reached that frequency (the least recently used first)
+	private final TreeMap<Long, LinkedHashSet<K>>	frequencies	= new TreeMap<>();
+	private BiConsumer<K, V>			evictionListener;
+	// key --> load in progress
+	private final Map<K, FutureTask<V>>	loading		= new ConcurrentHashMap<>();
+
+	private long						weight		= 0;
+	private long						hits		= 0;
+	private long						misses		= 0;
+	private long						evictions	= 0;
+
+	/**
+	 * Creates a cache where each entry weighs 1.
+	 *
+	 * @param name a name used in log messages
+	 * @param policy the eviction policy
+	 * @param maxWeight the maximum number of entries, or a value less than or equal to zero for no limit
+	 */
+	public MetadataCache(String name, Policy policy, long maxWeight)
+	{
+		this(name, policy, maxWeight, v -> 1);
+	}
+
+	/**
+	 * Creates a cache with a custom weigher.
+	 *
+	 * @param name a name used in log messages
+	 * @param policy the eviction policy
+	 * @param maxWeight the maximum total weight, or a value less than or equal to zero for no limit
+	 * @param weigher computes the weight of a value. Weights must be non negative.
+	 */
+	public MetadataCache(String name, Policy policy, long maxWeight, ToLongFunction<V> weigher)
+	{
+		this.name = name;
+		this.policy = policy != null ? policy : Policy.LRU;
+		this.maxWeight = maxWeight;
+		this.weigher = weigher;
+	}
+
+	/**
+	 * Sets a listener called for every entry removed to make room for new ones.
+	 *
+	 * @param evictionListener the listener, or null
+	 */
+	public synchronized void setEvictionListener(BiConsumer<K, V> evictionListener)
+	{
+		this.evictionListener = evictionListener;
+	}
+
+	public synchronized V get(K key)
+	{
+		Node<V> node = entries.get(key);
+		if (node == null)
+		{
+			misses++;
+			return null;
+		}
+
+		hits++;
+		setFrequency(key, node, node.frequency + 1);
+		return node.value;
+	}
+
+	/**
+	 * Returns the cached value, loading it if missing. If another thread is already loading the same key, waits
+	 * for its result instead of starting a second load. Null values are returned but not cached.
+	 *
+	 * @param key the key
+	 * @param loader computes the value if it is not cached
+	 * @return the value
+	 * @throws SdmxException if the loader fails, or the thread is interrupted while waiting
+	 */
+	public V get(K key, Loader<K, V> loader) throws SdmxException
+	{
+		V value = get(key);
+		if (value != null)
+			return value;
+
+		FutureTask<V> task = new FutureTask<>(() -> loader.load(key));
+		FutureTask<V> running = loading.putIfAbsent(key, task);
+		if (running == null)
+		{
+			running = task;
+			FlightEvents.CacheLoad event = FlightEvents.cacheLoad(name, String.valueOf(key));
+			try
+			{
+				task.run();
+				value = task.get();
+				if (value != null)
+					put(key, value);
+				event.setFound(value != null);
+			}
+			catch (ExecutionException | InterruptedException e)
+			{
+				// handled below
+			}
+			finally
+			{
+				loading.remove(key, task);
+				event.commit();
+			}
+		}
+
+		try
+		{
+			return running.get();
+		}
+		catch (InterruptedException e)
+		{
+			throw SdmxExceptionFactory.interrupted(e);
+		}
+		catch (ExecutionException e)
+		{
+			throw SdmxExceptionFactory.unwrap(e);
+		}
+	}
+
+	public synchronized boolean containsKey(K key)
+	{
+		return entries.containsKey(key);
+	}
+
+	public synchronized void put(K key, V value)
+	{
+		Node<V> node = new Node<>(value, Math.max(0, weigher.applyAsLong(value)));
+		Node<V> old = entries.put(key, node);
+		if (old != null)
+		{
+			weight -= old.weight;
+			unlink(key, old);
+			node.frequency = old.frequency + 1;
+		}
+		link(key, node);
+		weight += node.weight;
+		evict(key);
+	}
+
+	/**
+	 * Replaces all the entries with new ones in a single step: concurrent readers see either the old entries or the
+	 * new ones.
+	 *
+	 * @param values the new entries
+	 * @return the number of new entries evicted because they did not fit the cache
+	 */
+	public synchronized long replaceAll(Map<? extends K, ? extends V> values)
+	{
+		clear();
+		long before = evictions;
+		for (Entry<? extends K, ? extends V> entry : values.entrySet())
+			put(entry.getKey(), entry.getValue());
+		return evictions - before;
+	}
+
+	public synchronized V remove(K key)
+	{
+		Node<V> node = entries.remove(key);
+		if (node == null)
+			return null;
+		unlink(key, node);
+		weight -= node.weight;
+		return node.value;
+	}
+
+	public synchronized void clear()
+	{
+		entries.clear();
+		frequencies.clear();
+		weight = 0;
+	}
+
+	/**
+	 * @return a snapshot copy of the cached entries. It does not count as an access.
+	 */
+	public synchronized Map<K, V> asMap()
+	{
+		Map<K, V> result = new LinkedHashMap<>();
+		for (Entry<K, Node<V>> entry : entries.entrySet())
+			result.put(entry.getKey(), entry.getValue().value);
+		return result;
+	}
+
+	public synchronized int size()
+	{
+		return entries.size();
+	}
+
+	public synchronized long getWeight()
+	{
+		return weight;
+	}
+
+	public long getMaxWeight()
+	{
+		return maxWeight;
+	}
+
+	public Policy getPolicy()
+	{
+		return policy;
+	}
+
+	public synchronized long getHitCount()
+	{
+		return hits;
+	}
+
+	public synchronized long getMissCount()
+	{
+		return misses;
+	}
+
+	public synchronized long getEvictionCount()
+	{
+		return evictions;
+	}
+
+	public synchronized void resetStats()
+	{
+		hits = misses = evictions = 0;
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		return name + " [policy=" + policy + ", size=" + entries.size() + ", weight=" + weight + "/"
+				+ (maxWeight > 0 ? maxWeight : "unbounded") + ", hits=" + hits + ", misses=" + misses + ", evictions="
+				+ evictions + "]";
+	}
+
+	private void link(K key, Node<V> node)
+	{
+		if (policy == Policy.LFU)
+			frequencies.computeIfAbsent(node.frequency, f -> new LinkedHashSet<>()).add(key);
+	}
+
+	private void unlink(K key, Node<V> node)
+	{
+		if (policy == Policy.LFU)
+		{
+			LinkedHashSet<K> keys = frequencies.get(node.frequency);
+			keys.remove(key);
+			if (keys.isEmpty())
+				frequencies.remove(node.frequency);
+		}
+	}
+
+	private void setFrequency(K key, Node<V> node, long frequency)
+	{
+		unlink(key, node);
+		node.frequency = frequency;
+		link(key, node);
+	}
+
+	// the least recently used entry (LRU), or the least recently used among the least frequently used ones (LFU)
+	private K victim(K justInserted)
+	{
+		if (policy == Policy.LRU)
+		{
+			for (K candidate : entries.keySet())
+				if (!candidate.equals(justInserted))
+					return candidate;
+		}
+		else
+			for (LinkedHashSet<K> keys : frequencies.values())
+				for (K candidate : keys)
+					if (!candidate.equals(justInserted))
+						return candidate;
+		return null;
+	}
+
+	private void evict(K justInserted)
+	{
+		while (maxWeight > 0 && weight > maxWeight && entries.size() > 1)
+		{
+			K victim = victim(justInserted);
+			Node<V> victimNode = entries.remove(victim);
+			unlink(victim, victimNode);
+			weight -= victimNode.weight;
+			evictions++;
+			LOGGER.finer(name + ": evicted " + victim + " (weight " + victimNode.weight + ")");
+			if (evictionListener != null)
+				evictionListener.accept(victim, victimNode.value);
+		}
+	}
+}
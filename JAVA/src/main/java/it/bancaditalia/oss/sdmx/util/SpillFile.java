@@ -0,0 +1,332 @@
+/* Copyright 2010,2014 Bank Of Italy
+*
+* Licensed under the EUPL, Version 1.1 or - as soon they
+* will be approved by the European Commission - subsequent
+* versions of the EUPL (the "Licence");
+* You may not use this work except in compliance with the
+* Licence.
+* You may obtain a copy of the Licence at:
+*
+*
+* http://ec.europa.eu/idabc/eupl
+*
+* Unless required by applicable law or agreed to in
+* writing, software distributed under the Licence is
+* distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied.
+* See the Licence for the specific language governing
+* permissions and limitations under the Licence.
+*/
+package it.bancaditalia.oss.sdmx.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectStreamException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+import it.bancaditalia.oss.sdmx.api.BaseObservation;
+import it.bancaditalia.oss.sdmx.api.DoubleObservation;
+
+/**
+ * <p>
+ * A temporary, memory-mapped file where the observations of completed time series are moved when a query result
+ * is too large to be kept on the heap. Each series is stored as a block of columns: the values, the timeslots, and
+ * one column for each observation-level attribute. Strings are stored once per block.
+ *
+ * <p>
+ * {@link #spill(List)} returns a read-only list that decodes the observations from the mapped file on access. The
+ * file is deleted as soon as it is created; the mapped memory is released when all the lists returned by this file
+ * are garbage collected. Where an open or mapped file cannot be deleted (e.g. on Windows), the deletion is retried in
+ * the background once the file is closed and its lists are unreachable, and files left behind by a crashed process
+ * are removed when the first spill file is created in their directory.
+ *
+ * <p>
+ * This class is not thread safe, but the lists it returns can be read concurrently.
+ */
+public class SpillFile implements Closeable
+{
+	protected static final Logger	LOGGER		= Configuration.getSdmxLogger();
+
+	private static final int		CHUNK_SIZE	= 64 << 20;
+	private static final int		ABSENT		= -1;
+	private static final String		PREFIX		= "sdmx";
+	private static final String		SUFFIX		= ".spill";
+	private static final long		RETRY_MILLIS	= 10000;
+
+	// files that could not be deleted yet, and the directories already cleaned of stale files
+	private static final ReferenceQueue<Object>		UNREACHABLE	= new ReferenceQueue<>();
+	private static final Set<PendingDeletion>		PENDING		= ConcurrentHashMap.newKeySet();
+	private static final Set<File>					SWEPT		= ConcurrentHashMap.newKeySet();
+	private static Thread							deleter		= null;
+
+	private final RandomAccessFile	file;
+	private final FileChannel		channel;
+	// referenced by this file and by its lists, only if the file could not be deleted when created
+	private final Object			owner;
+	private MappedByteBuffer		chunk		= null;
+	private long					chunkStart	= 0;
+	private long					size		= 0;
+
+	// a file to delete once the owner of its mapped memory is unreachable
+	private static class PendingDeletion extends PhantomReference<Object>
+	{
+		private final File	path;
+		private boolean		unreachable	= false;
+
+		private PendingDeletion(Object owner, File path)
+		{
+			super(owner, UNREACHABLE);
+			this.path = path;
+		}
+	}
+
+	/**
+	 * Creates an empty spill file.
+	 * 
+	 * @param directory the directory of the file, or null for the default temporary directory
+	 * @throws IOException if the file cannot be created
+	 */
+	public SpillFile(File directory) throws IOException
+	{
+		sweep(directory);
+		File path = File.createTempFile(PREFIX, SUFFIX, directory);
+		file = new RandomAccessFile(path, "rw");
+		channel = file.getChannel();
+		if (path.delete())
+			owner = null;
+		else
+		{
+			owner = new Object();
+			PENDING.add(new PendingDeletion(owner, path));
+			startDeleter();
+		}
+		LOGGER.fine(() -> "Spilling time series to " + path);
+	}
+
+	// removes the files left behind by a process that could not delete them. The files in use cannot be deleted
+	// where deleting them was deferred, and are already gone everywhere else.
+	private static void sweep(File directory)
+	{
+		File dir = directory != null ? directory : new File(System.getProperty("java.io.tmpdir"));
+		if (!SWEPT.add(dir.getAbsoluteFile()))
+			return;
+		File[] stale = dir.listFiles((d, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+		if (stale != null)
+			for (File path : stale)
+				if (path.delete())
+					LOGGER.fine(() -> "Deleted stale spill file " + path);
+	}
+
+	private static synchronized void startDeleter()
+	{
+		if (deleter == null)
+		{
+			deleter = new Thread(SpillFile::deletePending, "SDMX spill file deleter");
+			deleter.setDaemon(true);
+			deleter.start();
+		}
+	}
+
+	// the mapped memory may be released some time after its owner becomes unreachable: retry until it is
+	private static void deletePending()
+	{
+		while (true)
+		{
+			try
+			{
+				for (Reference<?> ref = UNREACHABLE.remove(RETRY_MILLIS); ref != null; ref = UNREACHABLE.poll())
+					((PendingDeletion) ref).unreachable = true;
+			}
+			catch (InterruptedException e)
+			{
+				return;
+			}
+			for (PendingDeletion pending : PENDING)
+				if (pending.unreachable && (pending.path.delete() || !pending.path.exists()))
+				{
+					PENDING.remove(pending);
+					LOGGER.fine(() -> "Deleted spill file " + pending.path);
+				}
+		}
+	}
+
+	/**
+	 * @return the number of bytes written to this file
+	 */
+	public long getSize()
+	{
+		return size;
+	}
+
+	/**
+	 * Writes a list of observations to this file.
+	 * 
+	 * @param observations the observations
+	 * @return a read-only view of the written observations
+	 * @throws IOException if the observations cannot be written
+	 */
+	public List<DoubleObservation> spill(List<? extends BaseObservation<? extends Double>> observations) throws IOException
+	{
+		int n = observations.size();
+
+		// column layout and string dictionary
+		Set<String> names = new LinkedHashSet<>();
+		for (BaseObservation<? extends Double> obs : observations)
+			names.addAll(obs.getAttributes().keySet());
+		String[] attributes = names.toArray(new String[names.size()]);
+		Map<String, Integer> strings = new HashMap<>();
+		List<byte[]> encoded = new ArrayList<>();
+		int stringsLength = 0;
+		int[][] offsets = new int[attributes.length + 1][n];
+		for (int i = 0; i < n; i++)
+		{
+			BaseObservation<? extends Double> obs = observations.get(i);
+			for (int a = 0; a <= attributes.length; a++)
+			{
+				String value = a == 0 ? obs.getTimeslot() : obs.getAttributeValue(attributes[a - 1]);
+				if (value == null)
+				{
+					offsets[a][i] = ABSENT;
+					continue;
+				}
+
+				Integer offset = strings.get(value);
+				if (offset == null)
+				{
+					byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+					offset = stringsLength;
+					strings.put(value, offset);
+					encoded.add(bytes);
+					stringsLength += 4 + bytes.length;
+				}
+				offsets[a][i] = offset;
+			}
+		}
+
+		int length = 4 + 8 * n + 4 * n * offsets.length + stringsLength;
+		ByteBuffer block = allocate(length);
+		block.putInt(n);
+		for (BaseObservation<? extends Double> obs : observations)
+			block.putDouble(obs.getValueAsDouble());
+		for (int[] column : offsets)
+			for (int offset : column)
+				block.putInt(offset);
+		for (byte[] bytes : encoded)
+			block.putInt(bytes.length).put(bytes);
+
+		block.flip();
+		return new SpilledObservations(block, attributes, owner);
+	}
+
+	/**
+	 * Releases the file. The lists already returned remain valid.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		chunk = null;
+		file.close();
+	}
+
+	private ByteBuffer allocate(int length) throws IOException
+	{
+		if (chunk == null || chunk.remaining() < length)
+		{
+			chunkStart = size;
+			chunk = channel.map(MapMode.READ_WRITE, chunkStart, Math.max(CHUNK_SIZE, length));
+		}
+
+		ByteBuffer block = chunk.slice();
+		block.limit(length);
+		chunk.position(chunk.position() + length);
+		size += length;
+		return block;
+	}
+
+	/**
+	 * A read-only list of observations stored in a block of a spill file. It is serialized as an ordinary list.
+	 */
+	private static class SpilledObservations extends AbstractList<DoubleObservation> implements RandomAccess, Serializable
+	{
+		private static final long	serialVersionUID	= 1L;
+
+		private final ByteBuffer		block;
+		private final String[]			attributes;
+		private final int				size;
+		private final int				strings;
+		// keeps the file from being deleted while this list is reachable
+		private final transient Object	owner;
+
+		private SpilledObservations(ByteBuffer block, String[] attributes, Object owner)
+		{
+			this.block = block;
+			this.attributes = attributes;
+			this.owner = owner;
+			this.size = block.getInt(0);
+			this.strings = 4 + 8 * size + 4 * size * (attributes.length + 1);
+		}
+
+		@Override
+		public DoubleObservation get(int index)
+		{
+			if (index < 0 || index >= size)
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+
+			Map<String, String> obsAttributes = new LinkedHashMap<>();
+			for (int a = 0; a < attributes.length; a++)
+			{
+				String value = getString(a + 1, index);
+				if (value != null)
+					obsAttributes.put(attributes[a], value);
+			}
+
+			return new DoubleObservation(getString(0, index), block.getDouble(4 + 8 * index), obsAttributes);
+		}
+
+		@Override
+		public int size()
+		{
+			return size;
+		}
+
+		private String getString(int column, int index)
+		{
+			int offset = block.getInt(4 + 8 * size + 4 * (size * column + index));
+			if (offset == ABSENT)
+				return null;
+
+			int position = strings + offset;
+			byte[] bytes = new byte[block.getInt(position)];
+			for (int i = 0; i < bytes.length; i++)
+				bytes[i] = block.get(position + 4 + i);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		private Object writeReplace() throws ObjectStreamException
+		{
+			return new ArrayList<>(this);
+		}
+	}
+}
@@ -0,0 +1,630 @@
+/*
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * http://ec.europa.eu/idabc/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package it.bancaditalia.oss.sdmx.mock;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+import javax.xml.stream.XMLStreamException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * <p>
+ * An embeddable SDMX REST server for offline, deterministic end-to-end tests and benchmarks. It listens on the
+ * loopback interface and serves the dataflow, datastructure, codelist, data and availability endpoints of both the
+ * SDMX 2.1 API (under {@link #getEndpoint(String) /sdmx/2.1}) and the SDMX 3.0 API (under /sdmx/3.0). The responses
+ * are generated on the fly by a {@link SdmxGenerator}, restricted to the requested key, unless a recorded response
+ * has been registered for the request with {@link #addResponse(String, byte[])}.
+ * 
+ * <p>
+ * The server can simulate the behaviour of real providers: latency, limited bandwidth, gzip compression, redirects,
+ * 429 and 500 errors, and the asynchronous delivery used by Eurostat for large queries, where the data message only
+ * contains a footer with code 413 and the URL where the data will be available later.
+ */
+public class MockSdmxServer implements AutoCloseable
+{
+	public static final String		V21				= "2.1";
+	public static final String		V30				= "3.0";
+
+	private static final String		XML				= "application/xml";
+	private static final String		CSV				= "application/vnd.sdmx.data+csv;version=1.0.0";
+	private static final Pattern	HOP				= Pattern.compile("^/hop/(\\d+)(/.*)$");
+	private static final Pattern	FILTER			= Pattern.compile("^c\\[(.+)\\]$");
+
+	private interface Body
+	{
+		public void write(OutputStream out) throws IOException, XMLStreamException;
+	}
+
+	private static class AsyncJob
+	{
+		private final long			readyAt;
+		private final SdmxGenerator	generator;
+		private final boolean		generic;
+
+		private AsyncJob(long readyAt, SdmxGenerator generator, boolean generic)
+		{
+			this.readyAt = readyAt;
+			this.generator = generator;
+			this.generic = generic;
+		}
+	}
+
+	private final SdmxGenerator						generator;
+	private final List<String>						flows;
+	private final List<Entry<Pattern, Body>>		recorded	= new CopyOnWriteArrayList<>();
+	private final Map<String, AsyncJob>				jobs		= new ConcurrentHashMap<>();
+	private final AtomicInteger						jobIds		= new AtomicInteger();
+	private final AtomicLong						requests	= new AtomicLong();
+	private final AtomicInteger						failures	= new AtomicInteger();
+	private final AtomicInteger						waiting		= new AtomicInteger();
+	private final AtomicInteger						maxWaiting	= new AtomicInteger();
+
+	private volatile long							latency		= 0;
+	private volatile long							bandwidth	= 0;
+	private volatile boolean						gzip		= true;
+	private volatile int							redirects	= 0;
+	private volatile int							errorStatus	= 500;
+	private volatile double							errorRatio	= 0;
+	private volatile long							asyncDelay	= -1;
+	private volatile boolean						csv			= false;
+
+	private HttpServer								server;
+	private ExecutorService							executor;
+
+	/**
+	 * Creates a server for the messages of a generator. The catalogue contains {@code flows} dataflows, named
+	 * {@code FLOW0}, {@code FLOW1}..., all with the same structure and data.
+	 * 
+	 * @param generator the generator. Its parameters must not change while the server is running.
+	 * @param flows the number of dataflows
+	 */
+	public MockSdmxServer(SdmxGenerator generator, int flows)
+	{
+		this.generator = generator;
+		this.flows = new ArrayList<>();
+		for (int i = 0; i < flows; i++)
+			this.flows.add("FLOW" + i);
+	}
+
+	/**
+	 * Starts the server on a free port.
+	 * 
+	 * @return this server
+	 * @throws IOException
+	 */
+	public MockSdmxServer start() throws IOException
+	{
+		AtomicInteger threads = new AtomicInteger();
+		executor = Executors.newCachedThreadPool(r -> {
+			Thread thread = new Thread(r, "mock-sdmx-" + threads.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/", this::handle);
+		server.setExecutor(executor);
+		server.start();
+		return this;
+	}
+
+	@Override
+	public void close()
+	{
+		if (server != null)
+			server.stop(0);
+		if (executor != null)
+			executor.shutdownNow();
+	}
+
+	/**
+	 * @return the port the server is listening to
+	 */
+	public int getPort()
+	{
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * @param version {@link #V21} or {@link #V30}
+	 * @return the endpoint of the given version of the API, to be used as the endpoint of a provider
+	 */
+	public URI getEndpoint(String version)
+	{
+		return URI.create("http://" + server.getAddress().getHostString() + ":" + getPort() + "/sdmx/" + version);
+	}
+
+	/**
+	 * @return the ids of the dataflows in the catalogue
+	 */
+	public List<String> getFlows()
+	{
+		return flows;
+	}
+
+	/**
+	 * @return the number of requests received so far, including redirections and failures
+	 */
+	public long getRequestCount()
+	{
+		return requests.get();
+	}
+
+	/**
+	 * @return the highest number of requests that have been waiting for the latency at the same time, i.e. the highest
+	 *         number of parallel calls when a latency is set
+	 */
+	public int getMaxConcurrentRequests()
+	{
+		return maxWaiting.get();
+	}
+
+	/**
+	 * Serves a recorded response to all the requests whose path and query (e.g.
+	 * {@code /sdmx/2.1/data/FLOW0/C0...?startPeriod=2000}) match a regular expression. Recorded responses are checked
+	 * in registration order, before the generated ones.
+	 * 
+	 * @param regex the regular expression
+	 * @param body the response
+	 */
+	public void addResponse(String regex, byte[] body)
+	{
+		recorded.add(new SimpleImmutableEntry<>(Pattern.compile(regex), out -> out.write(body)));
+	}
+
+	/**
+	 * Serves the content of a file to all the requests matching a regular expression, as in
+	 * {@link #addResponse(String, byte[])}. The file is read at each request.
+	 * 
+	 * @param regex the regular expression
+	 * @param file the file
+	 */
+	public void addResponse(String regex, Path file)
+	{
+		recorded.add(new SimpleImmutableEntry<>(Pattern.compile(regex), out -> Files.copy(file, out)));
+	}
+
+	/**
+	 * @param latency the delay before each response, in milliseconds
+	 */
+	public void setLatency(long latency)
+	{
+		this.latency = latency;
+	}
+
+	/**
+	 * @param bandwidth the maximum transfer rate of each response, in bytes per second, or 0 for no limit
+	 */
+	public void setBandwidth(long bandwidth)
+	{
+		this.bandwidth = bandwidth;
+	}
+
+	/**
+	 * @param gzip true to compress the responses when the client accepts gzip (the default)
+	 */
+	public void setGzip(boolean gzip)
+	{
+		this.gzip = gzip;
+	}
+
+	/**
+	 * @param csv true if data queries may be answered in SDMX-CSV when the client accepts it. If false, a client
+	 *            that asks for SDMX-CSV gets a 406 error, whatever alternatives it accepts.
+	 */
+	public void setCsv(boolean csv)
+	{
+		this.csv = csv;
+	}
+
+	/**
+	 * @param redirects the number of redirections that each request goes through before being served
+	 */
+	public void setRedirects(int redirects)
+	{
+		this.redirects = redirects;
+	}
+
+	/**
+	 * Makes a random fraction of the requests fail.
+	 * 
+	 * @param status the http status of the failures, e.g. 429 or 500
+	 * @param ratio the fraction of failed requests
+	 */
+	public void setErrors(int status, double ratio)
+	{
+		this.errorStatus = status;
+		this.errorRatio = ratio;
+	}
+
+	/**
+	 * Makes the next requests fail, regardless of the error ratio.
+	 * 
+	 * @param status the http status of the failures, e.g. 429 or 500
+	 * @param count the number of failed requests
+	 */
+	public void failNext(int status, int count)
+	{
+		this.errorStatus = status;
+		failures.set(count);
+	}
+
+	/**
+	 * Enables the asynchronous delivery of data: each data query is answered with a footer message with code 413 and
+	 * an URL, which returns 404 until the data is ready.
+	 * 
+	 * @param delay the time before the data is ready, in milliseconds, or a negative value to disable asynchronous
+	 *            delivery
+	 */
+	public void setAsyncDelivery(long delay)
+	{
+		this.asyncDelay = delay;
+	}
+
+	private void handle(HttpExchange exchange) throws IOException
+	{
+		requests.incrementAndGet();
+		try
+		{
+			String path = exchange.getRequestURI().getRawPath();
+			String query = exchange.getRequestURI().getRawQuery();
+
+			int hop = 0;
+			Matcher matcher = HOP.matcher(path);
+			if (matcher.matches())
+			{
+				hop = Integer.parseInt(matcher.group(1));
+				path = matcher.group(2);
+			}
+			if (hop < redirects)
+			{
+				String location = "http://" + exchange.getRequestHeaders().getFirst("Host") + "/hop/" + (hop + 1) + path
+						+ (query != null ? "?" + query : "");
+				exchange.getResponseHeaders().set("Location", location);
+				exchange.sendResponseHeaders(302, -1);
+				return;
+			}
+
+			if (latency > 0)
+			{
+				maxWaiting.accumulateAndGet(waiting.incrementAndGet(), Math::max);
+				try
+				{
+					Thread.sleep(latency);
+				}
+				finally
+				{
+					waiting.decrementAndGet();
+				}
+			}
+
+			if (failures.getAndUpdate(n -> Math.max(0, n - 1)) > 0 || errorRatio > 0 && ThreadLocalRandom.current().nextDouble() < errorRatio)
+			{
+				if (errorStatus == 429)
+					exchange.getResponseHeaders().set("Retry-After", "1");
+				sendError(exchange, errorStatus, "Injected failure");
+				return;
+			}
+
+			// route on the decoded path
+			path = URI.create(path).getPath();
+			String resource = path + (query != null ? "?" + query : "");
+			for (Entry<Pattern, Body> response : recorded)
+				if (response.getKey().matcher(resource).matches())
+				{
+					send(exchange, XML, response.getValue());
+					return;
+				}
+
+			String[] segments = path.replaceFirst("^/", "").split("/");
+			if (segments.length >= 3 && "async".equals(segments[0]))
+				serveAsync(exchange, segments[1]);
+			else if (segments.length >= 3 && "sdmx".equals(segments[0]) && V21.equals(segments[1]))
+				serve21(exchange, Arrays.copyOfRange(segments, 2, segments.length), parseQuery(query));
+			else if (segments.length >= 3 && "sdmx".equals(segments[0]) && V30.equals(segments[1]))
+				serve30(exchange, Arrays.copyOfRange(segments, 2, segments.length), parseQuery(query));
+			else
+				sendError(exchange, 404, "No such resource: " + path);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		catch (IOException | RuntimeException e)
+		{
+			// the client may have gone away, or the response may already be committed
+			try
+			{
+				sendError(exchange, 500, e.toString());
+			}
+			catch (IOException | RuntimeException ignored)
+			{
+				// nothing else to do
+			}
+		}
+		finally
+		{
+			exchange.close();
+		}
+	}
+
+	// dataflow/{agency}/{id}/{version}, datastructure/..., codelist/..., data/{flow}/{key}, availableconstraint/{flow}/{key}
+	private void serve21(HttpExchange exchange, String[] path, Map<String, String> query) throws IOException
+	{
+		switch (path[0])
+		{
+			case "dataflow":
+			case "datastructure":
+			case "codelist":
+				serveStructure(exchange, path[0], path, 1);
+				break;
+			case "data":
+			case "availableconstraint":
+				// the flow may be written as id, as agency,id,version or as agency/id/version
+				int flow = 1;
+				while (flow < path.length && !flows.contains(flowId(path[flow])))
+					flow++;
+				if (flow == path.length)
+					sendError(exchange, 404, "No such dataflow");
+				else
+					serveData(exchange, path[flow], flow + 1 < path.length ? path[path.length - 1] : null, query, "availableconstraint".equals(path[0]));
+				break;
+			default:
+				sendError(exchange, 404, "No such resource: " + path[0]);
+		}
+	}
+
+	// structure/{type}/{agency}/{id}/{version}, data/dataflow/{agency}/{id}/{version}/{key}, availability/dataflow/...
+	private void serve30(HttpExchange exchange, String[] path, Map<String, String> query) throws IOException
+	{
+		if ("structure".equals(path[0]) && path.length > 1)
+			serveStructure(exchange, path[1], path, 2);
+		else if (("data".equals(path[0]) || "availability".equals(path[0])) && path.length > 3)
+			serveData(exchange, path[3], path.length > 5 ? path[5] : null, query, "availability".equals(path[0]));
+		else
+			sendError(exchange, 404, "No such resource: " + path[0]);
+	}
+
+	private void serveStructure(HttpExchange exchange, String type, String[] path, int start) throws IOException
+	{
+		String id = path.length > start + 1 ? path[start + 1] : "all";
+		switch (type)
+		{
+			case "dataflow":
+				List<String> selected = new ArrayList<>();
+				for (String flow : id.split("[+,]"))
+					if ("all".equals(flow))
+						selected.addAll(flows);
+					else if (flows.contains(flow))
+						selected.add(flow);
+				if (selected.isEmpty())
+					sendError(exchange, 404, "No such dataflow: " + id);
+				else
+					send(exchange, XML, out -> generator.writeDataflows(out, selected));
+				break;
+			case "datastructure":
+				if (!"all".equals(id) && !generator.getStructureId().equals(id))
+					sendError(exchange, 404, "No such structure: " + id);
+				else
+					send(exchange, XML, generator::writeDataStructure);
+				break;
+			case "codelist":
+				send(exchange, XML, out -> generator.writeCodelists(out, "all".equals(id) ? null : Arrays.asList(id.split("[+,]"))));
+				break;
+			default:
+				sendError(exchange, 404, "No such structure type: " + type);
+		}
+	}
+
+	private void serveData(HttpExchange exchange, String flowRef, String key, Map<String, String> query, boolean availability)
+			throws IOException
+	{
+		if (!flows.contains(flowId(flowRef)))
+		{
+			sendError(exchange, 404, "No such dataflow: " + flowRef);
+			return;
+		}
+
+		SdmxGenerator selection = new SdmxGenerator(generator).setKey(toKey(key, query));
+		if ("serieskeysonly".equals(query.get("detail")))
+			selection.setObservations(0);
+		if (availability)
+		{
+			send(exchange, XML, selection::writeAvailability);
+			return;
+		}
+
+		String accept = exchange.getRequestHeaders().getFirst("Accept");
+		boolean generic = accept != null && accept.contains("genericdata");
+		boolean acceptsCsv = accept != null && accept.contains("csv");
+		if (selection.getSeriesCount() == 0)
+			sendError(exchange, 404, "NoResultsFound");
+		else if (acceptsCsv && csv)
+			send(exchange, CSV, out -> selection.writeCsvData(out, flowId(flowRef)));
+		else if (acceptsCsv)
+			sendError(exchange, 406, "Not acceptable: " + accept);
+		else if (asyncDelay >= 0)
+		{
+			String job = Integer.toString(jobIds.incrementAndGet());
+			jobs.put(job, new AsyncJob(System.currentTimeMillis() + asyncDelay, selection, generic));
+			String url = "http://" + exchange.getRequestHeaders().getFirst("Host") + "/async/" + job + "/data";
+			send(exchange, XML, out -> selection.writeFooterMessage(out, "413", url));
+		}
+		else
+			send(exchange, XML, generic ? selection::writeGenericData : selection::writeStructureSpecificData);
+	}
+
+	private void serveAsync(HttpExchange exchange, String id) throws IOException
+	{
+		AsyncJob job = jobs.get(id);
+		if (job == null || System.currentTimeMillis() < job.readyAt)
+			sendError(exchange, 404, "Data not ready");
+		else
+			send(exchange, XML, job.generic ? job.generator::writeGenericData : job.generator::writeStructureSpecificData);
+	}
+
+	// the id in a flow reference, that may be agency,id,version
+	private static String flowId(String flowRef)
+	{
+		String[] flow = flowRef.split(",");
+		return flow.length > 1 ? flow[1] : flow[0];
+	}
+
+	// merges the SDMX 3 filters c[DIM]=A,B into the key
+	private String toKey(String key, Map<String, String> query)
+	{
+		String[] parts = new String[generator.getDimensions()];
+		String[] keyParts = key != null ? key.split("\\.", -1) : new String[0];
+		for (int d = 0; d < parts.length; d++)
+			parts[d] = d < keyParts.length ? keyParts[d] : "";
+		for (Entry<String, String> param : query.entrySet())
+		{
+			Matcher matcher = FILTER.matcher(param.getKey());
+			if (matcher.matches() && matcher.group(1).startsWith("DIM"))
+			{
+				int d = Integer.parseInt(matcher.group(1).substring(3)) - 1;
+				if (d >= 0 && d < parts.length)
+					parts[d] = param.getValue();
+			}
+		}
+		return String.join(".", parts);
+	}
+
+	private static Map<String, String> parseQuery(String query)
+	{
+		Map<String, String> params = new LinkedHashMap<>();
+		if (query != null)
+			for (String param : query.split("&"))
+			{
+				String[] pair = param.split("=", 2);
+				try
+				{
+					params.put(URLDecoder.decode(pair[0], "UTF-8"), pair.length > 1 ? URLDecoder.decode(pair[1], "UTF-8") : "");
+				}
+				catch (IOException e)
+				{
+					throw new IllegalStateException(e);
+				}
+			}
+		return params;
+	}
+
+	private void send(HttpExchange exchange, String contentType, Body body) throws IOException
+	{
+		String accepted = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+		boolean compress = gzip && accepted != null && accepted.contains("gzip");
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		if (compress)
+			exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+		exchange.sendResponseHeaders(200, 0);
+
+		OutputStream out = exchange.getResponseBody();
+		if (bandwidth > 0)
+			out = new BufferedOutputStream(new ThrottledOutputStream(out, bandwidth), 8192);
+		if (compress)
+			out = new GZIPOutputStream(out, 8192);
+		else
+			out = new BufferedOutputStream(out, 65536);
+		try (OutputStream response = out)
+		{
+			body.write(response);
+		}
+		catch (XMLStreamException e)
+		{
+			throw new IOException(e);
+		}
+	}
+
+	private static void sendError(HttpExchange exchange, int status, String message) throws IOException
+	{
+		byte[] body = message.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain");
+		exchange.sendResponseHeaders(status, body.length);
+		exchange.getResponseBody().write(body);
+	}
+
+	// a response that takes at least the time needed to transfer its bytes at the given rate
+	private static class ThrottledOutputStream extends FilterOutputStream
+	{
+		private final long	bandwidth;
+		private final long	start	= System.nanoTime();
+		private long		written	= 0;
+
+		private ThrottledOutputStream(OutputStream out, long bandwidth)
+		{
+			super(out);
+			this.bandwidth = bandwidth;
+		}
+
+		@Override
+		public void write(int b) throws IOException
+		{
+			out.write(b);
+			throttle(1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException
+		{
+			out.write(b, off, len);
+			throttle(len);
+		}
+
+		private void throttle(int bytes) throws IOException
+		{
+			written += bytes;
+			long ahead = written * 1000 / bandwidth - (System.nanoTime() - start) / 1000000;
+			if (ahead > 0)
+				try
+				{
+					Thread.sleep(ahead);
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException();
+				}
+		}
+	}
+}
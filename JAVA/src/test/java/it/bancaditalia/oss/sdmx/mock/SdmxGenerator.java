@@ -0,0 +1,970 @@
+/*
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * http://ec.europa.eu/idabc/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package it.bancaditalia.oss.sdmx.mock;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * <p>
+ * Generates synthetic SDMX 2.1 messages of controllable shape, for load and scale testing without hitting real
+ * providers. The messages are streamed, so their size is only limited by the destination.
+ * 
+ * <p>
+ * All the messages produced by a generator are consistent with each other and with what the parsers expect: the
+ * structure message defines a DSD with {@link #setDimensions(int) n} coded dimensions ({@code DIM1}...{@code DIMn},
+ * codes {@code C0}, {@code C1}...), a monthly {@value #TIME_DIMENSION} time dimension, the {@value #MEASURE} primary
+ * measure, a coded {@value #UNIT} series attribute, a coded {@value #OBS_STATUS} observation attribute and the free
+ * observation attributes {@code ATTR1}, {@code ATTR2}... The data messages contain series with distinct keys, in key
+ * order, and the same seed always produces the same messages.
+ * 
+ * <p>
+ * It can also be used from the command line:
+ * 
+ * <pre>
+ * SdmxGenerator structure|codelist|specific|generic|csv|revisions|availability file|host:port [parameter=value]...
+ * </pre>
+ * 
+ * where the parameters have the names of the setters (e.g. {@code series=1000 observations=120 missingRatio=0.1}).
+ */
+public class SdmxGenerator
+{
+	public static final String		MESSAGE_NS		= "http://www.sdmx.org/resources/sdmxml/schemas/v2_1/message";
+	public static final String		STRUCTURE_NS	= "http://www.sdmx.org/resources/sdmxml/schemas/v2_1/structure";
+	public static final String		COMMON_NS		= "http://www.sdmx.org/resources/sdmxml/schemas/v2_1/common";
+	public static final String		GENERIC_NS		= "http://www.sdmx.org/resources/sdmxml/schemas/v2_1/data/generic";
+	public static final String		SPECIFIC_NS		= "http://www.sdmx.org/resources/sdmxml/schemas/v2_1/data/structurespecific";
+	public static final String		FOOTER_NS		= "http://www.sdmx.org/resources/sdmxml/schemas/v2_1/message/footer";
+
+	public static final String		TIME_DIMENSION	= "TIME_PERIOD";
+	public static final String		MEASURE			= "OBS_VALUE";
+	public static final String		UNIT			= "UNIT";
+	public static final String		OBS_STATUS		= "OBS_STATUS";
+
+	private static final String[]	LANGUAGES		= { "en", "it", "fr", "de", "es", "pt", "nl", "fi", "sv", "el" };
+	private static final String[]	STATUSES		= { "A", "E", "P" };
+	private static final String		MISSING_STATUS	= "M";
+	private static final int		UNITS			= 10;
+
+	private String	agency				= "SYNTH";
+	private String	structureId			= "SYNTH_DSD";
+	private int		series				= 100;
+	private int		observations		= 120;
+	private int		dimensions			= 4;
+	private int		codesPerDimension	= 0;
+	private int		attributes			= 1;
+	private int		languages			= 1;
+	private int		hierarchy			= 0;
+	private double	missingRatio		= 0;
+	private int		startYear			= 2000;
+	private long	seed				= 1;
+	private String	key					= null;
+
+	// the codes selected for each dimension by the key, null for a wildcard
+	private Set<String>[]	selection	= null;
+
+	public SdmxGenerator()
+	{
+	}
+
+	/**
+	 * Creates a copy of another generator, with the same parameters.
+	 * 
+	 * @param other the generator to copy
+	 */
+	public SdmxGenerator(SdmxGenerator other)
+	{
+		agency = other.agency;
+		structureId = other.structureId;
+		series = other.series;
+		observations = other.observations;
+		dimensions = other.dimensions;
+		codesPerDimension = other.codesPerDimension;
+		attributes = other.attributes;
+		languages = other.languages;
+		hierarchy = other.hierarchy;
+		missingRatio = other.missingRatio;
+		startYear = other.startYear;
+		seed = other.seed;
+		setKey(other.key);
+	}
+
+	public String getAgency()
+	{
+		return agency;
+	}
+
+	/**
+	 * @param agency the agency of all the generated artefacts
+	 * @return this generator
+	 */
+	public SdmxGenerator setAgency(String agency)
+	{
+		this.agency = agency;
+		return this;
+	}
+
+	public String getStructureId()
+	{
+		return structureId;
+	}
+
+	/**
+	 * @param structureId the id of the generated DSD
+	 * @return this generator
+	 */
+	public SdmxGenerator setStructureId(String structureId)
+	{
+		this.structureId = structureId;
+		return this;
+	}
+
+	public int getSeries()
+	{
+		return series;
+	}
+
+	/**
+	 * @param series the number of series in each data set
+	 * @return this generator
+	 */
+	public SdmxGenerator setSeries(int series)
+	{
+		this.series = series;
+		return this;
+	}
+
+	public int getObservations()
+	{
+		return observations;
+	}
+
+	/**
+	 * @param observations the number of observations in each series
+	 * @return this generator
+	 */
+	public SdmxGenerator setObservations(int observations)
+	{
+		this.observations = observations;
+		return this;
+	}
+
+	public int getDimensions()
+	{
+		return dimensions;
+	}
+
+	/**
+	 * @param dimensions the number of coded dimensions, not counting the time dimension
+	 * @return this generator
+	 */
+	public SdmxGenerator setDimensions(int dimensions)
+	{
+		this.dimensions = dimensions;
+		return this;
+	}
+
+	/**
+	 * @return the size of each dimension codelist. Unless it has been set, it is the smallest size that gives every
+	 *         series a distinct key.
+	 */
+	public int getCodesPerDimension()
+	{
+		if (codesPerDimension > 0)
+			return codesPerDimension;
+
+		int codes = 2;
+		while (Math.pow(codes, dimensions) < series)
+			codes++;
+		return codes;
+	}
+
+	/**
+	 * @param codesPerDimension the size of each dimension codelist, or 0 to compute it from the number of series
+	 * @return this generator
+	 */
+	public SdmxGenerator setCodesPerDimension(int codesPerDimension)
+	{
+		this.codesPerDimension = codesPerDimension;
+		return this;
+	}
+
+	public int getAttributes()
+	{
+		return attributes;
+	}
+
+	/**
+	 * @param attributes the number of attributes of each observation: the first one is {@value #OBS_STATUS}, the
+	 *            others are free texts
+	 * @return this generator
+	 */
+	public SdmxGenerator setAttributes(int attributes)
+	{
+		this.attributes = attributes;
+		return this;
+	}
+
+	public int getLanguages()
+	{
+		return languages;
+	}
+
+	/**
+	 * @param languages the number of languages of each name in the structures
+	 * @return this generator
+	 */
+	public SdmxGenerator setLanguages(int languages)
+	{
+		this.languages = languages;
+		return this;
+	}
+
+	public int getHierarchy()
+	{
+		return hierarchy;
+	}
+
+	/**
+	 * @param hierarchy the number of children of each code in the codelists (code {@code Cn} has parent
+	 *            {@code C((n - 1) / hierarchy)}), or 0 for flat codelists
+	 * @return this generator
+	 */
+	public SdmxGenerator setHierarchy(int hierarchy)
+	{
+		this.hierarchy = hierarchy;
+		return this;
+	}
+
+	public double getMissingRatio()
+	{
+		return missingRatio;
+	}
+
+	/**
+	 * @param missingRatio the fraction of observations with a missing (NaN) value
+	 * @return this generator
+	 */
+	public SdmxGenerator setMissingRatio(double missingRatio)
+	{
+		this.missingRatio = missingRatio;
+		return this;
+	}
+
+	public int getStartYear()
+	{
+		return startYear;
+	}
+
+	/**
+	 * @param startYear the year of the first observation of each series
+	 * @return this generator
+	 */
+	public SdmxGenerator setStartYear(int startYear)
+	{
+		this.startYear = startYear;
+		return this;
+	}
+
+	public long getSeed()
+	{
+		return seed;
+	}
+
+	/**
+	 * @param seed the seed of the random values
+	 * @return this generator
+	 */
+	public SdmxGenerator setSeed(long seed)
+	{
+		this.seed = seed;
+		return this;
+	}
+
+	public String getKey()
+	{
+		return key;
+	}
+
+	/**
+	 * Restricts the data messages to the series matching a key. The key has a part for each dimension, separated by
+	 * dots; each part is empty or {@code *} for all the codes, or a list of codes separated by {@code +} or
+	 * {@code ,}.
+	 * 
+	 * @param key the key, or null for all the series
+	 * @return this generator
+	 */
+	@SuppressWarnings("unchecked")
+	public SdmxGenerator setKey(String key)
+	{
+		this.key = key;
+		selection = null;
+		if (key != null && !key.isEmpty())
+		{
+			String[] parts = key.split("\\.", -1);
+			selection = new Set[parts.length];
+			for (int d = 0; d < parts.length; d++)
+				if (!parts[d].isEmpty() && !parts[d].equals("*"))
+					selection[d] = new HashSet<>(Arrays.asList(parts[d].split("[+,]")));
+		}
+		return this;
+	}
+
+	/**
+	 * @return the number of series in each data set that match the key
+	 */
+	public int getSeriesCount()
+	{
+		if (selection == null)
+			return series;
+
+		int count = 0;
+		String[] key = new String[dimensions];
+		for (int s = 0; s < series; s++)
+			if (seriesKey(s, key))
+				count++;
+		return count;
+	}
+
+	/**
+	 * @return the number of observations in each data set
+	 */
+	public long getObservationCount()
+	{
+		return (long) getSeriesCount() * observations;
+	}
+
+	/**
+	 * Writes a structure message with the DSD and all the codelists it references.
+	 * 
+	 * @param out the destination. It is not closed.
+	 * @throws XMLStreamException
+	 */
+	public void writeDataStructure(OutputStream out) throws XMLStreamException
+	{
+		XMLStreamWriter xml = startStructure(out);
+		writeCodelists(xml, null);
+
+		xml.writeStartElement(STRUCTURE_NS, "DataStructures");
+		xml.writeStartElement(STRUCTURE_NS, "DataStructure");
+		writeIdentity(xml, structureId);
+		writeNames(xml, "Synthetic structure");
+		xml.writeStartElement(STRUCTURE_NS, "DataStructureComponents");
+		xml.writeStartElement(STRUCTURE_NS, "DimensionList");
+		xml.writeAttribute("id", "DimensionDescriptor");
+		for (int d = 1; d <= dimensions; d++)
+		{
+			xml.writeStartElement(STRUCTURE_NS, "Dimension");
+			xml.writeAttribute("id", "DIM" + d);
+			xml.writeAttribute("position", Integer.toString(d));
+			writeEnumeration(xml, "CL_DIM" + d);
+			xml.writeEndElement();
+		}
+		xml.writeEmptyElement(STRUCTURE_NS, "TimeDimension");
+		xml.writeAttribute("id", TIME_DIMENSION);
+		xml.writeAttribute("position", Integer.toString(dimensions + 1));
+		xml.writeEndElement();
+		xml.writeStartElement(STRUCTURE_NS, "AttributeList");
+		xml.writeAttribute("id", "AttributeDescriptor");
+		xml.writeStartElement(STRUCTURE_NS, "Attribute");
+		xml.writeAttribute("id", UNIT);
+		writeEnumeration(xml, "CL_" + UNIT);
+		xml.writeStartElement(STRUCTURE_NS, "AttributeRelationship");
+		for (int d = 1; d <= dimensions; d++)
+		{
+			xml.writeStartElement(STRUCTURE_NS, "Dimension");
+			xml.writeEmptyElement("Ref");
+			xml.writeAttribute("id", "DIM" + d);
+			xml.writeEndElement();
+		}
+		xml.writeEndElement();
+		xml.writeEndElement();
+		for (int a = 0; a < attributes; a++)
+		{
+			xml.writeStartElement(STRUCTURE_NS, "Attribute");
+			xml.writeAttribute("id", attributeId(a));
+			if (a == 0)
+				writeEnumeration(xml, "CL_" + OBS_STATUS);
+			xml.writeStartElement(STRUCTURE_NS, "AttributeRelationship");
+			xml.writeStartElement(STRUCTURE_NS, "PrimaryMeasure");
+			xml.writeEmptyElement("Ref");
+			xml.writeAttribute("id", MEASURE);
+			xml.writeEndElement();
+			xml.writeEndElement();
+			xml.writeEndElement();
+		}
+		xml.writeEndElement();
+		xml.writeStartElement(STRUCTURE_NS, "MeasureList");
+		xml.writeAttribute("id", "MeasureDescriptor");
+		xml.writeEmptyElement(STRUCTURE_NS, "PrimaryMeasure");
+		xml.writeAttribute("id", MEASURE);
+		xml.writeEndElement();
+		xml.writeEndElement();
+		xml.writeEndElement();
+		xml.writeEndElement();
+		endStructure(xml);
+	}
+
+	/**
+	 * Writes a structure message with some of the codelists referenced by the DSD.
+	 * 
+	 * @param out the destination. It is not closed.
+	 * @param ids the ids of the codelists. Unknown ids are ignored.
+	 * @throws XMLStreamException
+	 */
+	public void writeCodelists(OutputStream out, Collection<String> ids) throws XMLStreamException
+	{
+		XMLStreamWriter xml = startStructure(out);
+		writeCodelists(xml, ids);
+		endStructure(xml);
+	}
+
+	/**
+	 * Writes a structure message with some dataflows, all referencing the DSD.
+	 * 
+	 * @param out the destination. It is not closed.
+	 * @param ids the ids of the dataflows
+	 * @throws XMLStreamException
+	 */
+	public void writeDataflows(OutputStream out, List<String> ids) throws XMLStreamException
+	{
+		XMLStreamWriter xml = startStructure(out);
+		xml.writeStartElement(STRUCTURE_NS, "Dataflows");
+		for (String id : ids)
+		{
+			xml.writeStartElement(STRUCTURE_NS, "Dataflow");
+			writeIdentity(xml, id);
+			writeNames(xml, "Synthetic dataflow " + id);
+			xml.writeStartElement(STRUCTURE_NS, "Structure");
+			xml.writeEmptyElement("Ref");
+			writeIdentity(xml, structureId);
+			xml.writeEndElement();
+			xml.writeEndElement();
+		}
+		xml.writeEndElement();
+		endStructure(xml);
+	}
+
+	/**
+	 * Writes an SDMX 3.0 availability message: a content constraint with the codes of the series matching the key
+	 * and their count.
+	 * 
+	 * @param out the destination. It is not closed.
+	 * @throws XMLStreamException
+	 */
+	@SuppressWarnings("unchecked")
+	public void writeAvailability(OutputStream out) throws XMLStreamException
+	{
+		Set<String>[] available = new Set[dimensions];
+		for (int d = 0; d < dimensions; d++)
+			available[d] = new HashSet<>();
+		int count = 0;
+		String[] key = new String[dimensions];
+		for (int s = 0; s < series; s++)
+			if (seriesKey(s, key))
+			{
+				count++;
+				for (int d = 0; d < dimensions; d++)
+					available[d].add(key[d]);
+			}
+
+		XMLStreamWriter xml = startStructure(out);
+		xml.writeStartElement(STRUCTURE_NS, "Constraints");
+		xml.writeStartElement(STRUCTURE_NS, "ContentConstraint");
+		writeIdentity(xml, "CC_" + structureId);
+		xml.writeAttribute("type", "Actual");
+		xml.writeStartElement(COMMON_NS, "Annotations");
+		xml.writeStartElement(COMMON_NS, "Annotation");
+		xml.writeAttribute("id", "series_count");
+		xml.writeStartElement(COMMON_NS, "AnnotationTitle");
+		xml.writeCharacters(Integer.toString(count));
+		xml.writeEndElement();
+		xml.writeEndElement();
+		xml.writeEndElement();
+		writeNames(xml, "Availability");
+		xml.writeStartElement(STRUCTURE_NS, "CubeRegion");
+		xml.writeAttribute("include", "true");
+		for (int d = 0; d < dimensions; d++)
+			if (!available[d].isEmpty())
+			{
+				xml.writeStartElement(COMMON_NS, "KeyValue");
+				xml.writeAttribute("id", "DIM" + (d + 1));
+				for (int c = 0, codes = getCodesPerDimension(); c < codes; c++)
+					if (available[d].contains("C" + c))
+					{
+						xml.writeStartElement(COMMON_NS, "Value");
+						xml.writeCharacters("C" + c);
+						xml.writeEndElement();
+					}
+				xml.writeEndElement();
+			}
+		xml.writeEndElement();
+		xml.writeEndElement();
+		xml.writeEndElement();
+		endStructure(xml);
+	}
+
+	/**
+	 * Writes a structure specific data message without data, with a message in the footer. With code 413 and an URL
+	 * as text, it is the way Eurostat announces that the result of a large query will be available later at that
+	 * URL.
+	 * 
+	 * @param out the destination. It is not closed.
+	 * @param code the message code
+	 * @param text the message text
+	 * @throws XMLStreamException
+	 */
+	public void writeFooterMessage(OutputStream out, String code, String text) throws XMLStreamException
+	{
+		XMLStreamWriter xml = startMessage(out, "StructureSpecificData");
+		xml.writeNamespace("footer", FOOTER_NS);
+		xml.writeNamespace("com", COMMON_NS);
+		writeHeader(xml);
+		xml.writeStartElement(MESSAGE_NS, "Footer");
+		xml.writeStartElement(FOOTER_NS, "Message");
+		xml.writeAttribute("code", code);
+		xml.writeAttribute("severity", "Information");
+		xml.writeStartElement(COMMON_NS, "Text");
+		xml.writeAttribute("xml", "http://www.w3.org/XML/1998/namespace", "lang", "en");
+		xml.writeCharacters(text);
+		xml.writeEndElement();
+		xml.writeEndElement();
+		xml.writeEndElement();
+		endMessage(xml);
+	}
+
+	/**
+	 * Writes a structure message with a single codelist, hierarchical if {@link #setHierarchy(int)} is set.
+	 * 
+	 * @param out the destination. It is not closed.
+	 * @param id the codelist id
+	 * @param codes the number of codes
+	 * @throws XMLStreamException
+	 */
+	public void writeCodelist(OutputStream out, String id, int codes) throws XMLStreamException
+	{
+		XMLStreamWriter xml = startStructure(out);
+		xml.writeStartElement(STRUCTURE_NS, "Codelists");
+		writeCodelist(xml, id, "C", codes);
+		xml.writeEndElement();
+		endStructure(xml);
+	}
+
+	/**
+	 * Writes a structure specific data message (the format parsed by the CompactDataParser) with one data set.
+	 * 
+	 * @param out the destination. It is not closed.
+	 * @throws XMLStreamException
+	 */
+	public void writeStructureSpecificData(OutputStream out) throws XMLStreamException
+	{
+		writeStructureSpecificData(out, 1);
+	}
+
+	/**
+	 * Writes a structure specific data message with several revisions of the same series, one data set each. The
+	 * first data set is the original release, with action {@code Information}; each of the others replaces all the
+	 * values and is valid from the day after the previous one.
+	 * 
+	 * @param out the destination. It is not closed.
+	 * @param datasets the number of data sets
+	 * @throws XMLStreamException
+	 */
+	public void writeRevisions(OutputStream out, int datasets) throws XMLStreamException
+	{
+		writeStructureSpecificData(out, datasets);
+	}
+
+	/**
+	 * Writes a generic data message with one data set.
+	 * 
+	 * @param out the destination. It is not closed.
+	 * @throws XMLStreamException
+	 */
+	public void writeGenericData(OutputStream out) throws XMLStreamException
+	{
+		XMLStreamWriter xml = startMessage(out, "GenericData");
+		xml.writeNamespace("generic", GENERIC_NS);
+		writeHeader(xml);
+		xml.writeStartElement(MESSAGE_NS, "DataSet");
+		xml.writeAttribute("structureRef", structureId);
+		String[] key = new String[dimensions];
+		for (int s = 0; s < series; s++)
+		{
+			if (!seriesKey(s, key))
+				continue;
+			Random random = new Random(seriesSeed(s, 0));
+			xml.writeStartElement(GENERIC_NS, "Series");
+			xml.writeStartElement(GENERIC_NS, "SeriesKey");
+			for (int d = 0; d < dimensions; d++)
+				writeValue(xml, "DIM" + (d + 1), key[d]);
+			xml.writeEndElement();
+			xml.writeStartElement(GENERIC_NS, "Attributes");
+			writeValue(xml, UNIT, "U" + s % UNITS);
+			xml.writeEndElement();
+			for (int o = 0; o < observations; o++)
+			{
+				boolean missing = random.nextDouble() < missingRatio;
+				xml.writeStartElement(GENERIC_NS, "Obs");
+				xml.writeEmptyElement(GENERIC_NS, "ObsDimension");
+				xml.writeAttribute("value", period(o));
+				xml.writeEmptyElement(GENERIC_NS, "ObsValue");
+				xml.writeAttribute("value", value(random, missing));
+				if (attributes > 0)
+				{
+					xml.writeStartElement(GENERIC_NS, "Attributes");
+					for (int a = 0; a < attributes; a++)
+						writeValue(xml, attributeId(a), attributeValue(random, a, missing));
+					xml.writeEndElement();
+				}
+				xml.writeEndElement();
+			}
+			xml.writeEndElement();
+		}
+		xml.writeEndElement();
+		endMessage(xml);
+	}
+
+	/**
+	 * Writes a SDMX-CSV 1.0 data message, with the same content as the structure specific one.
+	 * 
+	 * @param out the destination. It is not closed.
+	 * @param dataflow the value of the DATAFLOW column
+	 */
+	public void writeCsvData(OutputStream out, String dataflow)
+	{
+		PrintWriter csv = new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+		csv.print("DATAFLOW");
+		for (int d = 0; d < dimensions; d++)
+			csv.print(",DIM" + (d + 1));
+		csv.print("," + TIME_DIMENSION + "," + MEASURE + "," + UNIT);
+		for (int a = 0; a < attributes; a++)
+			csv.print("," + attributeId(a));
+		csv.print("\r\n");
+
+		String[] key = new String[dimensions];
+		for (int s = 0; s < series; s++)
+		{
+			if (!seriesKey(s, key))
+				continue;
+			Random random = new Random(seriesSeed(s, 0));
+			String prefix = agency + ":" + dataflow + "(1.0)," + String.join(",", key) + ",";
+			for (int o = 0; o < observations; o++)
+			{
+				boolean missing = random.nextDouble() < missingRatio;
+				String value = value(random, missing);
+				csv.print(prefix + period(o) + "," + ("NaN".equals(value) ? "" : value) + ",U" + s % UNITS);
+				for (int a = 0; a < attributes; a++)
+				{
+					String attribute = attributeValue(random, a, missing);
+					csv.print("," + (attribute.contains(" ") ? "\"" + attribute + "\"" : attribute));
+				}
+				csv.print("\r\n");
+			}
+		}
+		csv.flush();
+	}
+
+	private void writeStructureSpecificData(OutputStream out, int datasets) throws XMLStreamException
+	{
+		XMLStreamWriter xml = startMessage(out, "StructureSpecificData");
+		xml.writeNamespace("ss", SPECIFIC_NS);
+		writeHeader(xml);
+		String[] key = new String[dimensions];
+		LocalDate validFrom = LocalDate.of(startYear, 1, 1);
+		for (int ds = 0; ds < datasets; ds++, validFrom = validFrom.plusDays(1))
+		{
+			xml.writeStartElement(MESSAGE_NS, "DataSet");
+			xml.writeAttribute("ss", SPECIFIC_NS, "structureRef", structureId);
+			if (datasets > 1)
+			{
+				xml.writeAttribute("action", ds == 0 ? "Information" : "Replace");
+				xml.writeAttribute("validFromDate", validFrom + "T00:00:00");
+			}
+			for (int s = 0; s < series; s++)
+			{
+				if (!seriesKey(s, key))
+					continue;
+				Random random = new Random(seriesSeed(s, ds));
+				xml.writeStartElement("Series");
+				for (int d = 0; d < dimensions; d++)
+					xml.writeAttribute("DIM" + (d + 1), key[d]);
+				xml.writeAttribute(UNIT, "U" + s % UNITS);
+				for (int o = 0; o < observations; o++)
+				{
+					boolean missing = random.nextDouble() < missingRatio;
+					xml.writeEmptyElement("Obs");
+					xml.writeAttribute(TIME_DIMENSION, period(o));
+					xml.writeAttribute(MEASURE, value(random, missing));
+					for (int a = 0; a < attributes; a++)
+						xml.writeAttribute(attributeId(a), attributeValue(random, a, missing));
+				}
+				xml.writeEndElement();
+			}
+			xml.writeEndElement();
+		}
+		endMessage(xml);
+	}
+
+	private XMLStreamWriter startMessage(OutputStream out, String root) throws XMLStreamException
+	{
+		XMLStreamWriter xml = XMLOutputFactory.newFactory().createXMLStreamWriter(out, "UTF-8");
+		xml.writeStartDocument("UTF-8", "1.0");
+		xml.setPrefix("mes", MESSAGE_NS);
+		xml.writeStartElement(MESSAGE_NS, root);
+		xml.writeNamespace("mes", MESSAGE_NS);
+		return xml;
+	}
+
+	private static void endMessage(XMLStreamWriter xml) throws XMLStreamException
+	{
+		xml.writeEndDocument();
+		xml.flush();
+		xml.close();
+	}
+
+	private XMLStreamWriter startStructure(OutputStream out) throws XMLStreamException
+	{
+		XMLStreamWriter xml = startMessage(out, "Structure");
+		xml.setPrefix("str", STRUCTURE_NS);
+		xml.setPrefix("com", COMMON_NS);
+		xml.writeNamespace("str", STRUCTURE_NS);
+		xml.writeNamespace("com", COMMON_NS);
+		writeHeader(xml);
+		xml.writeStartElement(MESSAGE_NS, "Structures");
+		return xml;
+	}
+
+	private static void endStructure(XMLStreamWriter xml) throws XMLStreamException
+	{
+		xml.writeEndElement();
+		endMessage(xml);
+	}
+
+	private static void writeHeader(XMLStreamWriter xml) throws XMLStreamException
+	{
+		xml.writeStartElement(MESSAGE_NS, "Header");
+		xml.writeStartElement(MESSAGE_NS, "ID");
+		xml.writeCharacters("SYNTHETIC");
+		xml.writeEndElement();
+		xml.writeStartElement(MESSAGE_NS, "Test");
+		xml.writeCharacters("true");
+		xml.writeEndElement();
+		xml.writeEndElement();
+	}
+
+	private void writeIdentity(XMLStreamWriter xml, String id) throws XMLStreamException
+	{
+		xml.writeAttribute("id", id);
+		xml.writeAttribute("agencyID", agency);
+		xml.writeAttribute("version", "1.0");
+	}
+
+	private void writeNames(XMLStreamWriter xml, String name) throws XMLStreamException
+	{
+		for (int l = 0; l < languages; l++)
+		{
+			String lang = l < LANGUAGES.length ? LANGUAGES[l] : "x-l" + l;
+			xml.writeStartElement(COMMON_NS, "Name");
+			xml.writeAttribute("xml", "http://www.w3.org/XML/1998/namespace", "lang", lang);
+			xml.writeCharacters(l == 0 ? name : name + " (" + lang + ")");
+			xml.writeEndElement();
+		}
+	}
+
+	private void writeCodelistStart(XMLStreamWriter xml, String id) throws XMLStreamException
+	{
+		xml.writeStartElement(STRUCTURE_NS, "Codelist");
+		writeIdentity(xml, id);
+		writeNames(xml, "Codelist " + id);
+	}
+
+	private void writeCodelist(XMLStreamWriter xml, String id, String prefix, int codes) throws XMLStreamException
+	{
+		writeCodelistStart(xml, id);
+		for (int c = 0; c < codes; c++)
+			writeCode(xml, prefix + c, "Code " + c + " of " + id, hierarchy > 0 && c > 0 ? prefix + (c - 1) / hierarchy : null);
+		xml.writeEndElement();
+	}
+
+	private void writeCode(XMLStreamWriter xml, String id, String name, String parent) throws XMLStreamException
+	{
+		xml.writeStartElement(STRUCTURE_NS, "Code");
+		xml.writeAttribute("id", id);
+		writeNames(xml, name);
+		if (parent != null)
+		{
+			xml.writeStartElement(STRUCTURE_NS, "Parent");
+			xml.writeEmptyElement("Ref");
+			xml.writeAttribute("id", parent);
+			xml.writeEndElement();
+		}
+		xml.writeEndElement();
+	}
+
+	private void writeEnumeration(XMLStreamWriter xml, String codelist) throws XMLStreamException
+	{
+		xml.writeStartElement(STRUCTURE_NS, "LocalRepresentation");
+		xml.writeStartElement(STRUCTURE_NS, "Enumeration");
+		xml.writeEmptyElement("Ref");
+		writeIdentity(xml, codelist);
+		xml.writeEndElement();
+		xml.writeEndElement();
+	}
+
+	private static void writeValue(XMLStreamWriter xml, String id, String value) throws XMLStreamException
+	{
+		xml.writeEmptyElement(GENERIC_NS, "Value");
+		xml.writeAttribute("id", id);
+		xml.writeAttribute("value", value);
+	}
+
+	private void writeCodelists(XMLStreamWriter xml, Collection<String> ids) throws XMLStreamException
+	{
+		xml.writeStartElement(STRUCTURE_NS, "Codelists");
+		int codes = getCodesPerDimension();
+		for (int d = 1; d <= dimensions; d++)
+			if (ids == null || ids.contains("CL_DIM" + d))
+				writeCodelist(xml, "CL_DIM" + d, "C", codes);
+		if (ids == null || ids.contains("CL_" + UNIT))
+			writeCodelist(xml, "CL_" + UNIT, "U", UNITS);
+		if (ids == null || ids.contains("CL_" + OBS_STATUS))
+		{
+			writeCodelistStart(xml, "CL_" + OBS_STATUS);
+			for (String status : STATUSES)
+				writeCode(xml, status, "Status " + status, null);
+			writeCode(xml, MISSING_STATUS, "Missing value", null);
+			xml.writeEndElement();
+		}
+		xml.writeEndElement();
+	}
+
+	// the digits of the series number in base codesPerDimension, the last dimension varying fastest.
+	// Returns true if the series matches the key.
+	private boolean seriesKey(int series, String[] key)
+	{
+		int codes = getCodesPerDimension();
+		for (int d = dimensions - 1; d >= 0; d--, series /= codes)
+			key[d] = "C" + series % codes;
+		if (series > 0)
+			throw new IllegalStateException(this.series + " series do not fit in " + dimensions + " dimensions of " + codes + " codes");
+
+		if (selection != null)
+			for (int d = 0; d < dimensions && d < selection.length; d++)
+				if (selection[d] != null && !selection[d].contains(key[d]))
+					return false;
+		return true;
+	}
+
+	// each series has its own random values, so that they do not depend on the key
+	private long seriesSeed(int series, int dataset)
+	{
+		return (seed * 1000003 + series) * 1009 + dataset;
+	}
+
+	private static String attributeId(int attribute)
+	{
+		return attribute == 0 ? OBS_STATUS : "ATTR" + attribute;
+	}
+
+	private static String attributeValue(Random random, int attribute, boolean missing)
+	{
+		if (attribute > 0)
+			return "Value " + attribute;
+		return missing ? MISSING_STATUS : STATUSES[random.nextInt(STATUSES.length)];
+	}
+
+	private String period(int observation)
+	{
+		int month = observation % 12 + 1;
+		return (startYear + observation / 12) + (month < 10 ? "-0" : "-") + month;
+	}
+
+	private static String value(Random random, boolean missing)
+	{
+		return missing ? "NaN" : Double.toString(Math.round(random.nextGaussian() * 100000) / 1000.0);
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		if (args.length < 2)
+		{
+			System.err.println("Usage: SdmxGenerator structure|codelist|specific|generic|csv|revisions|availability file|host:port [parameter=value]...");
+			System.exit(1);
+		}
+
+		SdmxGenerator generator = new SdmxGenerator();
+		int codes = 1000, datasets = 2;
+		for (int i = 2; i < args.length; i++)
+		{
+			String[] parameter = args[i].split("=", 2);
+			String value = parameter.length > 1 ? parameter[1] : "";
+			switch (parameter[0])
+			{
+				case "agency": generator.setAgency(value); break;
+				case "structureId": generator.setStructureId(value); break;
+				case "series": generator.setSeries(Integer.parseInt(value)); break;
+				case "observations": generator.setObservations(Integer.parseInt(value)); break;
+				case "dimensions": generator.setDimensions(Integer.parseInt(value)); break;
+				case "codesPerDimension": generator.setCodesPerDimension(Integer.parseInt(value)); break;
+				case "attributes": generator.setAttributes(Integer.parseInt(value)); break;
+				case "languages": generator.setLanguages(Integer.parseInt(value)); break;
+				case "hierarchy": generator.setHierarchy(Integer.parseInt(value)); break;
+				case "missingRatio": generator.setMissingRatio(Double.parseDouble(value)); break;
+				case "startYear": generator.setStartYear(Integer.parseInt(value)); break;
+				case "seed": generator.setSeed(Long.parseLong(value)); break;
+				case "key": generator.setKey(value); break;
+				case "codes": codes = Integer.parseInt(value); break;
+				case "datasets": datasets = Integer.parseInt(value); break;
+				default: throw new IllegalArgumentException("Unknown parameter: " + parameter[0]);
+			}
+		}
+
+		String destination = args[1];
+		int colon = destination.lastIndexOf(':');
+		boolean socket = colon > 0 && destination.substring(colon + 1).matches("\\d+");
+		try (Socket connection = socket ? new Socket(destination.substring(0, colon), Integer.parseInt(destination.substring(colon + 1))) : null;
+				OutputStream out = new BufferedOutputStream(socket ? connection.getOutputStream() : new FileOutputStream(destination), 1 << 16))
+		{
+			switch (args[0])
+			{
+				case "structure": generator.writeDataStructure(out); break;
+				case "codelist": generator.writeCodelist(out, "CL_SYNTH", codes); break;
+				case "specific": generator.writeStructureSpecificData(out); break;
+				case "generic": generator.writeGenericData(out); break;
+				case "csv": generator.writeCsvData(out, "FLOW0"); break;
+				case "revisions": generator.writeRevisions(out, datasets); break;
+				case "availability": generator.writeAvailability(out); break;
+				default: throw new IllegalArgumentException("Unknown message type: " + args[0]);
+			}
+		}
+	}
+}
@@ -33,6 +33,27 @@ import it.bancaditalia.oss.sdmx.it.TimeSeriesFromIDsIT;
 						SDMXReferenceIT.class,
 						ProxyTest.class,
 						RestQueryBuilderTest.class,
+						MetadataCacheTest.class,
+						KeyMergerTest.class,
+						AvailabilityCacheTest.class,
+						DataStructureParserTest.class,
+						GenericDataParserTest.class,
+						LocalizedTextTest.class,
+						CodeHierarchyTest.class,
+						FlowIndexTest.class,
+						CodeIndexTest.class,
+						SdmxGeneratorTest.class,
+						MockSdmxServerTest.class,
+						HttpArchiveTest.class,
+						ProviderMetricsTest.class,
+						LifecycleEventsTest.class,
+						AsyncLogHandlerTest.class,
+						ResultSizeGuardTest.class,
+						SdmxCsvDataParserTest.class,
+						TimeSeriesCacheTest.class,
+						BatchExecutorTest.class,
+						AvailabilityPlannerTest.class,
+						CodelistResolverTest.class,
 						DataflowsIT.class,
 						TimeSeriesFromIDsIT.class
 						})
@@ -0,0 +1,131 @@
+/*
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * http://ec.europa.eu/idabc/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package it.bancaditalia.oss.sdmx.ut;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import it.bancaditalia.oss.sdmx.util.AsyncLogHandler;
+
+public class AsyncLogHandlerTest
+{
+	private static class CollectingHandler extends Handler
+	{
+		private final List<LogRecord>	records	= new ArrayList<>();
+		private final CountDownLatch	started	= new CountDownLatch(1);
+		private final CountDownLatch	gate;
+
+		private CollectingHandler(CountDownLatch gate)
+		{
+			this.gate = gate;
+		}
+
+		@Override
+		public void publish(LogRecord record)
+		{
+			started.countDown();
+			try
+			{
+				gate.await();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			synchronized (records)
+			{
+				records.add(record);
+			}
+		}
+
+		@Override
+		public void flush()
+		{
+		}
+
+		@Override
+		public void close()
+		{
+		}
+	}
+
+	@Test
+	public void testPublish()
+	{
+		CollectingHandler target = new CollectingHandler(new CountDownLatch(0));
+		AsyncLogHandler handler = new AsyncLogHandler(target, 100);
+		Logger logger = Logger.getLogger("SDMX.test.async");
+		logger.setUseParentHandlers(false);
+		logger.addHandler(handler);
+		try
+		{
+			for (int i = 0; i < 50; i++)
+				logger.info("message " + i);
+			logger.finest(() -> "not logged");
+			handler.flush();
+
+			Assert.assertEquals(50, target.records.size());
+			for (int i = 0; i < 50; i++)
+				Assert.assertEquals("message " + i, target.records.get(i).getMessage());
+			Assert.assertEquals(AsyncLogHandlerTest.class.getName(), target.records.get(0).getSourceClassName());
+			Assert.assertEquals(0, handler.getDroppedCount());
+		}
+		finally
+		{
+			logger.removeHandler(handler);
+			handler.close();
+		}
+	}
+
+	@Test
+	public void testOverflow() throws InterruptedException
+	{
+		CountDownLatch gate = new CountDownLatch(1);
+		CollectingHandler target = new CollectingHandler(gate);
+		AsyncLogHandler handler = new AsyncLogHandler(target, 4);
+		try
+		{
+			// the writer is stuck on the first record: the buffer holds 4 more, the others are dropped
+			handler.publish(new LogRecord(Level.INFO, "message 0"));
+			target.started.await();
+			for (int i = 1; i < 20; i++)
+				handler.publish(new LogRecord(Level.INFO, "message " + i));
+			Assert.assertEquals(15, handler.getDroppedCount());
+
+			long dropped = handler.getDroppedCount();
+			gate.countDown();
+			handler.flush();
+			handler.publish(new LogRecord(Level.INFO, "last"));
+			handler.flush();
+
+			// the remaining messages, the warning about the dropped ones and the last one
+			Assert.assertEquals(20 - dropped + 2, target.records.size());
+			Assert.assertEquals(1, target.records.stream().filter(r -> r.getLevel() == Level.WARNING).count());
+			Assert.assertEquals("last", target.records.get(target.records.size() - 1).getMessage());
+		}
+		finally
+		{
+			handler.close();
+		}
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * http://ec.europa.eu/idabc/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package it.bancaditalia.oss.sdmx.ut;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import it.bancaditalia.oss.sdmx.api.Codelist;
+import it.bancaditalia.oss.sdmx.api.SDMXReference;
+import it.bancaditalia.oss.sdmx.client.AvailabilityCache;
+import it.bancaditalia.oss.sdmx.util.LocalizedText;
+
+public class AvailabilityCacheTest
+{
+	private static final String	FLOW	= "ECB,EXR,1.0";
+
+	private static Codelist codelist(String id, String... codes)
+	{
+		Map<String, LocalizedText> texts = new HashMap<>();
+		for (String code : codes)
+			texts.put(code, new LocalizedText(code));
+		return new Codelist(new SDMXReference(id, "ECB", "1.0"), texts, null);
+	}
+
+	private static Map<String, Codelist> codelists()
+	{
+		Map<String, Codelist> codelists = new LinkedHashMap<>();
+		codelists.put("FREQ", codelist("CL_FREQ", "A", "M", "Q"));
+		codelists.put("CURRENCY", codelist("CL_CURRENCY", "EUR", "GBP", "USD"));
+		return codelists;
+	}
+
+	// the region of the whole dataflow: FREQ=A,M and CURRENCY=EUR,USD
+	private static AvailabilityCache cache(Map<String, Codelist> codelists)
+	{
+		AvailabilityCache cache = new AvailabilityCache(60000);
+		Map<String, BitSet> available = new HashMap<>();
+		available.put("FREQ", AvailabilityCache.toBitSet(Arrays.asList("A", "M"), codelists.get("FREQ")));
+		available.put("CURRENCY", AvailabilityCache.toBitSet(Arrays.asList("EUR", "USD"), codelists.get("CURRENCY")));
+		cache.putAvailable(FLOW, AvailabilityCache.parseFilter(null, codelists), codelists, available);
+		return cache;
+	}
+
+	@Test
+	public void testParseFilter()
+	{
+		Map<String, Codelist> codelists = codelists();
+		Map<String, BitSet> filter = AvailabilityCache.parseFilter("c[FREQ]=M,Q&c[CURRENCY]=USD", codelists);
+		Assert.assertEquals(2, filter.size());
+		Assert.assertEquals(2, filter.get("FREQ").cardinality());
+		Assert.assertTrue(filter.get("CURRENCY").get(codelists.get("CURRENCY").indexOf("USD")));
+
+		Assert.assertNull("Unknown code", AvailabilityCache.parseFilter("c[FREQ]=W", codelists));
+		Assert.assertNull("Unknown dimension", AvailabilityCache.parseFilter("c[REF_AREA]=IT", codelists));
+		Assert.assertNull("Operator", AvailabilityCache.parseFilter("c[FREQ]=ne:A", codelists));
+	}
+
+	@Test
+	public void testNarrowing()
+	{
+		Map<String, Codelist> codelists = codelists();
+		AvailabilityCache cache = cache(codelists);
+
+		// all the available frequencies are kept: the same series are selected
+		Map<String, BitSet> same = cache.getAvailable(FLOW, AvailabilityCache.parseFilter("c[FREQ]=A,M", codelists), 
+				codelists, codelists.keySet());
+		Assert.assertNotNull(same);
+		Assert.assertEquals(2, same.get("FREQ").cardinality());
+		Assert.assertEquals(2, same.get("CURRENCY").cardinality());
+
+		// only a subset of the available frequencies: the codes of the constrained dimension are still known
+		Map<String, BitSet> narrower = AvailabilityCache.parseFilter("c[FREQ]=A", codelists);
+		Assert.assertNotNull(cache.getAvailable(FLOW, narrower, codelists, Arrays.asList("FREQ")));
+		Assert.assertNull(cache.getAvailable(FLOW, narrower, codelists, codelists.keySet()));
+
+		// no available frequency: nothing is selected
+		Map<String, BitSet> empty = cache.getAvailable(FLOW, AvailabilityCache.parseFilter("c[FREQ]=Q", codelists), 
+				codelists, Arrays.asList("CURRENCY"));
+		Assert.assertTrue(empty.get("CURRENCY").isEmpty());
+	}
+
+	@Test
+	public void testCodelistChange()
+	{
+		Map<String, Codelist> codelists = codelists();
+		AvailabilityCache cache = cache(codelists);
+
+		Map<String, Codelist> changed = new LinkedHashMap<>(codelists);
+		changed.put("CURRENCY", codelist("CL_CURRENCY", "EUR", "GBP", "JPY", "USD"));
+		Assert.assertNull(cache.getAvailable(FLOW, AvailabilityCache.parseFilter(null, changed), changed, changed.keySet()));
+	}
+}
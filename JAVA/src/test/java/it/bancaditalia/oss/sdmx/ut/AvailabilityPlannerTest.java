@@ -0,0 +1,192 @@
+/*
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * http://ec.europa.eu/idabc/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package it.bancaditalia.oss.sdmx.ut;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import it.bancaditalia.oss.sdmx.api.DataFlowStructure;
+import it.bancaditalia.oss.sdmx.api.Dataflow;
+import it.bancaditalia.oss.sdmx.api.PortableTimeSeries;
+import it.bancaditalia.oss.sdmx.client.AvailabilityPlanner;
+import it.bancaditalia.oss.sdmx.client.AvailabilityPlanner.Plan;
+import it.bancaditalia.oss.sdmx.client.AvailabilityPlanner.Strategy;
+import it.bancaditalia.oss.sdmx.client.RestSdmx30Client;
+import it.bancaditalia.oss.sdmx.exceptions.SdmxException;
+import it.bancaditalia.oss.sdmx.exceptions.SdmxInvalidParameterException;
+import it.bancaditalia.oss.sdmx.mock.MockSdmxServer;
+import it.bancaditalia.oss.sdmx.mock.SdmxGenerator;
+
+public class AvailabilityPlannerTest
+{
+	private static final SdmxGenerator GENERATOR = new SdmxGenerator().setSeries(40).setObservations(12).setDimensions(3);
+
+	// counts the chunk downloads running at the same time, and fails the chunks of code C1
+	private static class ChunkClient extends RestSdmx30Client
+	{
+		private final AtomicInteger	running		= new AtomicInteger();
+		private final AtomicInteger	maxRunning	= new AtomicInteger();
+		private final boolean		failing;
+
+		public ChunkClient(MockSdmxServer server, boolean failing)
+		{
+			super("PLANNER_" + server.getPort() + (failing ? "_FAIL" : ""), server.getEndpoint(MockSdmxServer.V30), false, false, false);
+			this.failing = failing;
+		}
+
+		@Override
+		public List<PortableTimeSeries<Double>> getTimeSeries(Dataflow dataflow, DataFlowStructure dsd, String tsKey,
+				String filter, String startTime, String endTime, boolean serieskeysonly, String updatedAfter,
+				boolean includeHistory) throws SdmxException
+		{
+			maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+			try
+			{
+				if (failing && filter != null && filter.matches(".*=(.*,)?C1(,.*)?"))
+					throw new IllegalStateException("Chunk " + filter);
+				return super.getTimeSeries(dataflow, dsd, tsKey, filter, startTime, endTime, serieskeysonly, updatedAfter, includeHistory);
+			}
+			finally
+			{
+				running.decrementAndGet();
+			}
+		}
+	}
+
+	@Test
+	public void testPlan() throws Exception
+	{
+		try (MockSdmxServer server = new MockSdmxServer(GENERATOR, 1).start())
+		{
+			RestSdmx30Client client = new ChunkClient(server, false);
+			Dataflow dataflow = client.getDataflow("FLOW0", GENERATOR.getAgency(), null);
+			DataFlowStructure dsd = client.getDataFlowStructure(dataflow.getDsdIdentifier(), true);
+
+			Plan plan = new AvailabilityPlanner(100, 0, 2).plan(client, dataflow, dsd, null, null);
+			Assert.assertEquals(Strategy.ONE_SHOT, plan.getStrategy());
+			Assert.assertEquals(Integer.valueOf(40), plan.getSeriesCount());
+
+			plan = new AvailabilityPlanner(10, 30, 2).plan(client, dataflow, dsd, null, null);
+			Assert.assertEquals(Strategy.REFUSE, plan.getStrategy());
+			try
+			{
+				new AvailabilityPlanner(10, 30, 2).getTimeSeries(client, dataflow, dsd, null, null, null, null);
+				Assert.fail("Expected a refusal");
+			}
+			catch (SdmxInvalidParameterException e)
+			{
+				// expected
+			}
+
+			plan = new AvailabilityPlanner(10, 0, 2).plan(client, dataflow, dsd, "C9.*.*", null);
+			Assert.assertEquals(Strategy.EMPTY, plan.getStrategy());
+			Assert.assertTrue(new AvailabilityPlanner(10, 0, 2).getTimeSeries(client, dataflow, dsd, "C9.*.*", null, null, null).isEmpty());
+
+			plan = new AvailabilityPlanner(10, 0, 2).plan(client, dataflow, dsd, null, null);
+			Assert.assertEquals(Strategy.SPLIT, plan.getStrategy());
+			Assert.assertEquals(Integer.valueOf(40), plan.getSeriesCount());
+			Assert.assertEquals(4, plan.getFilters().size());
+			for (String filter : plan.getFilters())
+				Assert.assertTrue(filter, filter.matches("c\\[" + plan.getDimension() + "\\]=C\\d"));
+
+			// the dimensions fixed by the key are not split
+			plan = new AvailabilityPlanner(5, 0, 2).plan(client, dataflow, dsd, "C0.*.*", null);
+			Assert.assertEquals(Strategy.SPLIT, plan.getStrategy());
+			Assert.assertNotEquals(dsd.getDimensions().get(0).getId(), plan.getDimension());
+		}
+	}
+
+	@Test
+	public void testChunks() throws Exception
+	{
+		try (MockSdmxServer server = new MockSdmxServer(GENERATOR, 1).start())
+		{
+			server.setLatency(50);
+			ChunkClient client = new ChunkClient(server, false);
+			Dataflow dataflow = client.getDataflow("FLOW0", GENERATOR.getAgency(), null);
+			DataFlowStructure dsd = client.getDataFlowStructure(dataflow.getDsdIdentifier(), true);
+			AvailabilityPlanner planner = new AvailabilityPlanner(10, 0, 2);
+
+			// the chunks of concurrent queries share the budget of the provider
+			ExecutorService queries = Executors.newFixedThreadPool(3);
+			try
+			{
+				List<Future<List<PortableTimeSeries<Double>>>> results = new ArrayList<>();
+				for (int i = 0; i < 3; i++)
+					results.add(queries.submit(() -> planner.getTimeSeries(client, dataflow, dsd, null, null, null, null)));
+				for (Future<List<PortableTimeSeries<Double>>> result : results)
+				{
+					Set<String> names = new HashSet<>();
+					for (PortableTimeSeries<Double> ts : result.get())
+						Assert.assertTrue(ts.getName(), names.add(ts.getName()));
+					Assert.assertEquals(40, names.size());
+				}
+			}
+			finally
+			{
+				queries.shutdown();
+			}
+			Assert.assertTrue("Parallel chunks: " + client.maxRunning.get(), client.maxRunning.get() <= 2);
+		}
+	}
+
+	@Test
+	public void testChunkFailures() throws Exception
+	{
+		try (MockSdmxServer server = new MockSdmxServer(GENERATOR, 1).start())
+		{
+			RestSdmx30Client client = new ChunkClient(server, true);
+			Dataflow dataflow = client.getDataflow("FLOW0", GENERATOR.getAgency(), null);
+			DataFlowStructure dsd = client.getDataFlowStructure(dataflow.getDsdIdentifier(), true);
+			AvailabilityPlanner planner = new AvailabilityPlanner(10, 0, 2);
+
+			// an unchecked failure of a chunk is thrown as if the chunk had run on the calling thread
+			try
+			{
+				planner.getTimeSeries(client, dataflow, dsd, null, null, null, null);
+				Assert.fail("Expected a failure");
+			}
+			catch (IllegalStateException e)
+			{
+				Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("Chunk "));
+			}
+
+			// an interrupted query keeps the interrupt status
+			Thread.currentThread().interrupt();
+			try
+			{
+				planner.getTimeSeries(new ChunkClient(server, false), dataflow, dsd, null, null, null, null);
+				Assert.fail("Expected an interruption");
+			}
+			catch (SdmxException e)
+			{
+				Assert.assertTrue(Thread.interrupted());
+			}
+			finally
+			{
+				Thread.interrupted();
+			}
+		}
+	}
+}
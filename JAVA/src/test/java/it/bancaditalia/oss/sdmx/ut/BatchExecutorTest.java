@@ -0,0 +1,352 @@
+/*
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * http://ec.europa.eu/idabc/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package it.bancaditalia.oss.sdmx.ut;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import it.bancaditalia.oss.sdmx.api.PortableTimeSeries;
+import it.bancaditalia.oss.sdmx.client.BatchExecutor;
+import it.bancaditalia.oss.sdmx.client.BatchListener;
+import it.bancaditalia.oss.sdmx.client.BatchRequest;
+import it.bancaditalia.oss.sdmx.client.KeyMerger;
+import it.bancaditalia.oss.sdmx.client.SDMXClientFactory;
+import it.bancaditalia.oss.sdmx.client.SdmxClientHandler;
+import it.bancaditalia.oss.sdmx.client.SdmxSession;
+import it.bancaditalia.oss.sdmx.exceptions.SdmxException;
+import it.bancaditalia.oss.sdmx.exceptions.SdmxInvalidParameterException;
+import it.bancaditalia.oss.sdmx.exceptions.SdmxUnexpectedException;
+import it.bancaditalia.oss.sdmx.exceptions.SdmxXmlContentException;
+import it.bancaditalia.oss.sdmx.mock.MockSdmxServer;
+import it.bancaditalia.oss.sdmx.mock.SdmxGenerator;
+import it.bancaditalia.oss.sdmx.util.Configuration;
+
+public class BatchExecutorTest
+{
+	// answers without contacting any provider: the key tells what to do
+	private static class FakeSession extends SdmxSession
+	{
+		private final CountDownLatch	gate		= new CountDownLatch(1);
+		private final AtomicInteger		running		= new AtomicInteger();
+		private final AtomicInteger		maxRunning	= new AtomicInteger();
+		private final List<String>		merged		= Collections.synchronizedList(new ArrayList<>());
+
+		@Override
+		public Map<String, List<PortableTimeSeries<Double>>> getTimeSeries(String provider, String dataflow,
+				KeyMerger.MergedKey mergedKey, String filter, String startTime, String endTime, boolean serieskeysonly,
+				String updatedAfter, boolean includeHistory) throws SdmxException
+		{
+			merged.add(mergedKey.getKey());
+			if (mergedKey.getKey().contains("BOOM"))
+				throw new IllegalStateException("Boom");
+
+			// keys containing NONE match no series
+			Map<String, List<PortableTimeSeries<Double>>> result = new LinkedHashMap<>();
+			for (String key : mergedKey.getRequestedKeys())
+				if (!key.contains("NONE"))
+				{
+					PortableTimeSeries<Double> ts = new PortableTimeSeries<>();
+					ts.setName(dataflow + "." + key);
+					result.put(key, Collections.singletonList(ts));
+				}
+			return result;
+		}
+
+		@Override
+		public List<PortableTimeSeries<Double>> getTimeSeries(String provider, String dataflow, String tsKey,
+				String filter, String startTime, String endTime, boolean serieskeysonly, String updatedAfter,
+				boolean includeHistory) throws SdmxException
+		{
+			maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+			try
+			{
+				switch (tsKey)
+				{
+					case "FAIL":
+						throw new SdmxXmlContentException("No series");
+					case "BOOM":
+						throw new IllegalStateException("Boom");
+					case "SLOW":
+						if (!gate.await(10, TimeUnit.SECONDS))
+							throw new IllegalStateException("Timeout");
+						break;
+					case "BUSY":
+						Thread.sleep(20);
+						break;
+					default:
+						break;
+				}
+				PortableTimeSeries<Double> ts = new PortableTimeSeries<>();
+				ts.setName(dataflow + "." + tsKey);
+				return Collections.singletonList(ts);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(e);
+			}
+			finally
+			{
+				running.decrementAndGet();
+			}
+		}
+	}
+
+	private static class Collector implements BatchListener
+	{
+		private final List<String>						completed	= Collections.synchronizedList(new ArrayList<>());
+		private final Map<BatchRequest, SdmxException>	errors		= new ConcurrentHashMap<>();
+
+		@Override
+		public void onResult(BatchRequest request, List<PortableTimeSeries<Double>> result)
+		{
+			completed.add(result.get(0).getName());
+		}
+
+		@Override
+		public void onError(BatchRequest request, SdmxException error)
+		{
+			completed.add(request.getTsKey());
+			errors.put(request, error);
+		}
+	}
+
+	private final FakeSession	session		= new FakeSession();
+	private final BatchExecutor	executor	= new BatchExecutor(session);
+
+	@After
+	public void tearDown()
+	{
+		executor.shutdown();
+	}
+
+	@Test(timeout = 20000)
+	public void testCompletionOrder() throws Exception
+	{
+		// each provider has its own workers: a blocked query does not delay the others
+		Collector collector = new Collector() {
+			@Override
+			public void onResult(BatchRequest request, List<PortableTimeSeries<Double>> result)
+			{
+				super.onResult(request, result);
+				session.gate.countDown();
+			}
+		};
+		executor.execute(Arrays.asList(new BatchRequest("SLOW_P", "FLOW", "SLOW", null, null, null),
+				new BatchRequest("FAST_P", "FLOW", "OK", null, null, null)), collector);
+
+		Assert.assertEquals(Arrays.asList("FLOW.OK", "FLOW.SLOW"), collector.completed);
+	}
+
+	@Test(timeout = 20000)
+	public void testErrors() throws Exception
+	{
+		Collector collector = new Collector();
+		BatchRequest fail = new BatchRequest("ERR_P", "F1", "FAIL", null, null, null);
+		BatchRequest boom = new BatchRequest("ERR_P", "F2", "BOOM", null, null, null);
+		BatchRequest invalid = new BatchRequest(null, "F3", "OK", null, null, null);
+		executor.execute(Arrays.asList(fail, boom, invalid, new BatchRequest("ERR_P", "F4", "OK", null, null, null)), collector);
+
+		Assert.assertEquals(4, collector.completed.size());
+		Assert.assertTrue(collector.completed.contains("F4.OK"));
+		Assert.assertTrue(collector.errors.get(fail) instanceof SdmxXmlContentException);
+		Assert.assertTrue(collector.errors.get(boom) instanceof SdmxUnexpectedException);
+		Assert.assertTrue(collector.errors.get(boom).getCause() instanceof IllegalStateException);
+		Assert.assertTrue(collector.errors.get(invalid) instanceof SdmxInvalidParameterException);
+	}
+
+	@Test(timeout = 20000)
+	public void testListenerFailure() throws Exception
+	{
+		AtomicInteger calls = new AtomicInteger();
+		BatchListener listener = new BatchListener() {
+			@Override
+			public void onResult(BatchRequest request, List<PortableTimeSeries<Double>> result)
+			{
+				calls.incrementAndGet();
+				throw new IllegalStateException("Listener failure");
+			}
+
+			@Override
+			public void onError(BatchRequest request, SdmxException error)
+			{
+				calls.incrementAndGet();
+				throw new IllegalStateException("Listener failure");
+			}
+		};
+
+		// the same request twice is downloaded once, and both are notified
+		BatchRequest twice = new BatchRequest("LST_P", "F1", "OK", null, null, null);
+		executor.execute(Arrays.asList(twice, new BatchRequest("LST_P", "F1", "OK", null, null, null),
+				new BatchRequest("LST_P", "F2", "FAIL", null, null, null),
+				new BatchRequest("LST_P", "F3", "BOOM", null, null, null)), listener);
+
+		Assert.assertEquals(4, calls.get());
+	}
+
+	@Test(timeout = 20000)
+	public void testWorkers() throws Exception
+	{
+		for (int workers = 0; workers <= 1; workers++)
+		{
+			String provider = "WORKERS" + workers + "_P";
+			Configuration.setMaxConcurrency(provider, workers);
+			List<BatchRequest> requests = new ArrayList<>();
+			for (int i = 0; i < 5; i++)
+				requests.add(new BatchRequest(provider, "F" + i, "BUSY", null, null, null));
+
+			Collector collector = new Collector();
+			executor.execute(requests, collector);
+
+			Assert.assertEquals(5, collector.completed.size());
+			Assert.assertTrue(collector.errors.isEmpty());
+			Assert.assertEquals(1, session.maxRunning.get());
+		}
+	}
+
+	@Test(timeout = 20000)
+	public void testSharedWorkers() throws Exception
+	{
+		// two executors on the same provider share its concurrency budget
+		String provider = "SHARED_P";
+		Configuration.setMaxConcurrency(provider, 1);
+		BatchExecutor other = new BatchExecutor(session);
+		Thread[] threads = new Thread[2];
+		Collector[] collectors = new Collector[2];
+		for (int t = 0; t < 2; t++)
+		{
+			BatchExecutor current = t == 0 ? executor : other;
+			Collector collector = collectors[t] = new Collector();
+			List<BatchRequest> requests = new ArrayList<>();
+			for (int i = 0; i < 5; i++)
+				requests.add(new BatchRequest(provider, "F" + t + i, "BUSY", null, null, null));
+			threads[t] = new Thread(() -> {
+				try
+				{
+					current.execute(requests, collector);
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+
+		Assert.assertEquals(5, collectors[0].completed.size());
+		Assert.assertEquals(5, collectors[1].completed.size());
+		Assert.assertEquals(1, session.maxRunning.get());
+	}
+
+	@Test(timeout = 20000)
+	public void testProviderBudget() throws Exception
+	{
+		try (MockSdmxServer server = new MockSdmxServer(new SdmxGenerator().setSeries(4).setObservations(5).setDimensions(2), 6).start())
+		{
+			String provider = "BUDGET_" + server.getPort();
+			SdmxClientHandler.addProvider(provider, server.getEndpoint(MockSdmxServer.V21).toString(), false, false, false, "Mock", SDMXClientFactory.SDMX_V2);
+			SdmxClientHandler.getFlows(provider, null);
+			Configuration.setMaxConcurrency(provider, 2);
+			server.setLatency(50);
+
+			// a batch and direct queries at the same time: the provider never gets more than its budget
+			List<Thread> threads = new ArrayList<>();
+			for (int t = 0; t < 3; t++)
+			{
+				String flow = "FLOW" + t;
+				threads.add(new Thread(() -> {
+					try
+					{
+						SdmxClientHandler.getTimeSeries(provider, flow + "/..", null, null);
+					}
+					catch (SdmxException e)
+					{
+						throw new IllegalStateException(e);
+					}
+				}));
+			}
+			for (Thread thread : threads)
+				thread.start();
+
+			List<BatchRequest> requests = new ArrayList<>();
+			for (int i = 0; i < 6; i++)
+				requests.add(new BatchRequest(provider, "FLOW" + i, "..", null, null, null));
+			Collector collector = new Collector();
+			new BatchExecutor().execute(requests, collector);
+			for (Thread thread : threads)
+				thread.join();
+
+			Assert.assertEquals(6, collector.completed.size());
+			Assert.assertTrue(collector.errors.isEmpty());
+			Assert.assertTrue(server.getMaxConcurrentRequests() <= 2);
+		}
+	}
+
+	@Test(timeout = 20000)
+	public void testMerged() throws Exception
+	{
+		Configuration.setMaxMergedKeyLength("MRG_P", 1000);
+		Collector collector = new Collector();
+		BatchRequest none = new BatchRequest("MRG_P", "F1", "A.NONE", null, null, null);
+		BatchRequest boom = new BatchRequest("MRG_P", "F2", "B.BOOM", null, null, null);
+		executor.execute(Arrays.asList(new BatchRequest("MRG_P", "F1", "A.X", null, null, null),
+				new BatchRequest("MRG_P", "F1", "A.Y", null, null, null), none, boom,
+				new BatchRequest("MRG_P", "F2", "B.Z", null, null, null)), collector);
+
+		// one query for each dataflow, split back by requested key
+		Assert.assertEquals(2, session.merged.size());
+		Assert.assertTrue(session.merged.contains("A.X+Y+NONE"));
+		Assert.assertEquals(5, collector.completed.size());
+		Assert.assertTrue(collector.completed.containsAll(Arrays.asList("F1.A.X", "F1.A.Y")));
+		Assert.assertTrue(collector.errors.get(none) instanceof SdmxXmlContentException);
+		Assert.assertTrue(collector.errors.get(boom) instanceof SdmxUnexpectedException);
+		Assert.assertEquals(3, collector.errors.size());
+
+		// a listener failing on a key does not stop the others
+		AtomicInteger calls = new AtomicInteger();
+		executor.execute(Arrays.asList(new BatchRequest("MRG_P", "F3", "C.X", null, null, null),
+				new BatchRequest("MRG_P", "F3", "C.Y", null, null, null),
+				new BatchRequest("MRG_P", "F3", "C.NONE", null, null, null)), new BatchListener() {
+					@Override
+					public void onResult(BatchRequest request, List<PortableTimeSeries<Double>> result)
+					{
+						calls.incrementAndGet();
+						throw new IllegalStateException("Listener failure");
+					}
+
+					@Override
+					public void onError(BatchRequest request, SdmxException error)
+					{
+						calls.incrementAndGet();
+						throw new IllegalStateException("Listener failure");
+					}
+				});
+		Assert.assertEquals(3, calls.get());
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * http://ec.europa.eu/idabc/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package it.bancaditalia.oss.sdmx.ut;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import it.bancaditalia.oss.sdmx.api.CodeHierarchy;
+import it.bancaditalia.oss.sdmx.api.Codelist;
+import it.bancaditalia.oss.sdmx.api.SDMXReference;
+import it.bancaditalia.oss.sdmx.util.LocalizedText;
+
+public class CodeHierarchyTest
+{
+	// EU27 --> (EA --> (IT, FR), PL), US
+	private static CodeHierarchy hierarchy()
+	{
+		Map<String, LocalizedText> codes = new HashMap<>();
+		for (String code : new String[] { "EU27", "EA", "IT", "FR", "PL", "US" })
+			codes.put(code, new LocalizedText(code));
+		Map<String, String> parents = new HashMap<>();
+		parents.put("EA", "EU27");
+		parents.put("IT", "EA");
+		parents.put("FR", "EA");
+		parents.put("PL", "EU27");
+		return new Codelist(new SDMXReference("CL_AREA", "ECB", "1.0"), codes, parents).getHierarchy();
+	}
+
+	@Test
+	public void testStructure()
+	{
+		CodeHierarchy hierarchy = hierarchy();
+		Assert.assertEquals(Arrays.asList("EU27", "US"), hierarchy.getRoots());
+		Assert.assertEquals(Arrays.asList("EA", "PL"), hierarchy.getChildren("EU27"));
+		Assert.assertEquals(2, hierarchy.getDepth("IT"));
+		Assert.assertEquals(Arrays.asList("EA", "EU27"), hierarchy.getAncestors("FR"));
+		Assert.assertTrue(hierarchy.isDescendant("IT", "EU27"));
+		Assert.assertTrue(hierarchy.isDescendant("EA", "EA"));
+		Assert.assertFalse(hierarchy.isDescendant("PL", "EA"));
+		Assert.assertFalse(hierarchy.isDescendant("US", "EU27"));
+	}
+
+	@Test
+	public void testToKey()
+	{
+		CodeHierarchy hierarchy = hierarchy();
+		Assert.assertEquals("EU27+EA+FR+IT+PL", hierarchy.toKey("EU27", false));
+		Assert.assertEquals("FR+IT+PL", hierarchy.toKey("EU27", true));
+		Assert.assertEquals("US", hierarchy.toKey("US", true));
+		Assert.assertNull(hierarchy.toKey("JP", false));
+	}
+
+	@Test
+	public void testCycle()
+	{
+		Map<String, LocalizedText> codes = new HashMap<>();
+		codes.put("A", new LocalizedText("A"));
+		codes.put("B", new LocalizedText("B"));
+		Map<String, String> parents = new HashMap<>();
+		parents.put("A", "B");
+		parents.put("B", "A");
+		CodeHierarchy hierarchy = new Codelist(new SDMXReference("CL", "ECB", "1.0"), codes, parents).getHierarchy();
+		Assert.assertEquals(Arrays.asList("A"), hierarchy.getRoots());
+		Assert.assertEquals("A+B", hierarchy.toKey("A", false));
+		Assert.assertEquals(Arrays.asList("A"), hierarchy.getAncestors("B"));
+	}
+
+	@Test
+	public void testBelowCycle()
+	{
+		// A hangs below the cycle B <--> C: the cycle is cut, not the branch of A
+		Map<String, LocalizedText> codes = new HashMap<>();
+		for (String code : new String[] { "A", "B", "C" })
+			codes.put(code, new LocalizedText(code));
+		Map<String, String> parents = new HashMap<>();
+		parents.put("A", "C");
+		parents.put("B", "C");
+		parents.put("C", "B");
+		CodeHierarchy hierarchy = new Codelist(new SDMXReference("CL", "ECB", "1.0"), codes, parents).getHierarchy();
+		Assert.assertEquals(Arrays.asList("C"), hierarchy.getRoots());
+		Assert.assertEquals("C", hierarchy.getParent("A"));
+		Assert.assertEquals("C+A+B", hierarchy.toKey("C", false));
+		Assert.assertEquals(Arrays.asList("C"), hierarchy.getAncestors("A"));
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * http://ec.europa.eu/idabc/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package it.bancaditalia.oss.sdmx.ut;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import it.bancaditalia.oss.sdmx.helper.CodeIndex;
+
+public class CodeIndexTest
+{
+	private static final CodeIndex INDEX = new CodeIndex(Arrays.asList("ITC4", "IT", "FR", "ITC", "DE"), 
+			Arrays.asList("Lombardia", "Italy", "France", "Nord-Ovest", "Germany (until 1990 former territory of the FRG)"));
+
+	@Test
+	public void testCodes()
+	{
+		Assert.assertEquals(rows(0, 1, 3), INDEX.find("it", false, true, false, null));
+		Assert.assertEquals(rows(0, 3), INDEX.find("ITC", true, true, false, null));
+		Assert.assertEquals(rows(), INDEX.find("itc", true, true, false, null));
+		Assert.assertEquals(rows(0, 1, 2, 3, 4), INDEX.find("", false, true, false, null));
+		// codes containing the text, as in the regular expression filter
+		Assert.assertEquals(rows(0), INDEX.find("c4", false, true, false, null));
+		Assert.assertEquals(rows(0, 3), INDEX.find("tc", false, true, false, null));
+	}
+
+	@Test
+	public void testDescriptions()
+	{
+		Assert.assertEquals(rows(1), INDEX.find("ital", false, false, true, null));
+		Assert.assertEquals(rows(3), INDEX.find("nord-ov", false, false, true, null));
+		Assert.assertEquals(rows(), INDEX.find("ovest nord", false, false, true, null));
+		Assert.assertEquals(rows(2, 4), INDEX.find("fr", false, true, true, null));
+		Assert.assertEquals(rows(4), INDEX.find("FRG", true, false, true, null));
+		Assert.assertEquals(rows(1), INDEX.find("taly", false, false, true, null));
+		Assert.assertEquals(rows(2, 4), INDEX.find("an", false, false, true, null));
+		Assert.assertEquals(rows(4), INDEX.find("former terr", false, false, true, null));
+	}
+
+	@Test
+	public void testRefine()
+	{
+		BitSet previous = INDEX.find("i", false, true, true, null);
+		Assert.assertEquals(rows(0, 1, 3, 4), previous);
+		Assert.assertEquals(rows(0, 3), INDEX.find("itc", false, true, true, previous));
+		// rows outside the previous result are not considered
+		Assert.assertEquals(rows(1), INDEX.find("it", false, true, true, rows(1, 2)));
+	}
+
+	private static BitSet rows(int... rows)
+	{
+		BitSet result = new BitSet();
+		for (int row : rows)
+			result.set(row);
+		return result;
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * http://ec.europa.eu/idabc/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package it.bancaditalia.oss.sdmx.ut;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import it.bancaditalia.oss.sdmx.api.Codelist;
+import it.bancaditalia.oss.sdmx.api.SDMXReference;
+import it.bancaditalia.oss.sdmx.client.CodelistResolver;
+import it.bancaditalia.oss.sdmx.client.Provider;
+import it.bancaditalia.oss.sdmx.client.RestSdmxClient;
+import it.bancaditalia.oss.sdmx.exceptions.SdmxException;
+import it.bancaditalia.oss.sdmx.exceptions.SdmxInvalidParameterException;
+import it.bancaditalia.oss.sdmx.util.Configuration;
+
+public class CodelistResolverTest
+{
+	// answers without contacting any provider: the codelist id tells what to do
+	private static class FakeClient extends RestSdmxClient
+	{
+		private final Map<String, AtomicInteger>	calls		= new ConcurrentHashMap<>();
+		private final CountDownLatch				slowStarted	= new CountDownLatch(1);
+		private final CountDownLatch				gate		= new CountDownLatch(1);
+		private final AtomicBoolean					interrupted	= new AtomicBoolean();
+
+		public FakeClient(String name)
+		{
+			super(name, URI.create("http://localhost/"), false, false, false);
+		}
+
+		@Override
+		public Codelist getCodes(SDMXReference cl) throws SdmxException
+		{
+			calls.computeIfAbsent(cl.getId(), k -> new AtomicInteger()).incrementAndGet();
+			try
+			{
+				switch (cl.getId())
+				{
+					case "FAIL":
+						slowStarted.await(5, TimeUnit.SECONDS);
+						throw new SdmxInvalidParameterException("Fail");
+					case "BOOM":
+						throw new IllegalStateException("Boom");
+					case "SLOW":
+						slowStarted.countDown();
+						gate.await(5, TimeUnit.SECONDS);
+						break;
+					default:
+				}
+			}
+			catch (InterruptedException e)
+			{
+				interrupted.set(true);
+				Thread.currentThread().interrupt();
+			}
+			return new Codelist(cl, null, null);
+		}
+	}
+
+	private static Provider provider(String name) throws SdmxException
+	{
+		return new Provider(name, URI.create("http://localhost/"), null, false, false, false, "Test", false, "V2");
+	}
+
+	private static SDMXReference cl(String id)
+	{
+		return new SDMXReference(id, "TEST", "1.0");
+	}
+
+	@Test
+	public void testResolve() throws Exception
+	{
+		// a budget of 0 still resolves with one worker
+		Provider provider = provider("RESOLVER_ZERO");
+		Configuration.setMaxConcurrency(provider.getName(), 0);
+		FakeClient client = new FakeClient(provider.getName());
+		CodelistResolver resolver = new CodelistResolver(provider, client);
+
+		Map<String, Codelist> result = resolver.resolve(Arrays.asList(cl("CL1"), cl("CL2"), cl("CL1"), cl("CL3")));
+		Assert.assertEquals(Arrays.asList("TEST/CL1/1.0", "TEST/CL2/1.0", "TEST/CL3/1.0"), Arrays.asList(result.keySet().toArray()));
+		Assert.assertEquals(1, client.calls.get("CL1").get());
+
+		// cached
+		Assert.assertEquals(3, resolver.resolve(Arrays.asList(cl("CL1"), cl("CL2"), cl("CL3"))).size());
+		Assert.assertEquals(1, client.calls.get("CL2").get());
+	}
+
+	@Test
+	public void testFailures() throws Exception
+	{
+		Provider provider = provider("RESOLVER_FAIL");
+		Configuration.setMaxConcurrency(provider.getName(), 2);
+		FakeClient client = new FakeClient(provider.getName());
+		CodelistResolver resolver = new CodelistResolver(provider, client);
+
+		try
+		{
+			resolver.resolve(Arrays.asList(cl("BOOM"), cl("CL1")));
+			Assert.fail("Expected a failure");
+		}
+		catch (IllegalStateException e)
+		{
+			Assert.assertEquals("Boom", e.getMessage());
+		}
+
+		// the failure of a codelist does not interrupt the loads that other callers may share
+		try
+		{
+			resolver.resolve(Arrays.asList(cl("FAIL"), cl("SLOW")));
+			Assert.fail("Expected a failure");
+		}
+		catch (SdmxInvalidParameterException e)
+		{
+			Assert.assertEquals("Fail", e.getMessage());
+		}
+		client.gate.countDown();
+		Assert.assertEquals(1, resolver.resolve(Arrays.asList(cl("SLOW"))).size());
+		Assert.assertEquals(1, client.calls.get("SLOW").get());
+		Assert.assertFalse(client.interrupted.get());
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * http://ec.europa.eu/idabc/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package it.bancaditalia.oss.sdmx.ut;
+
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale.LanguageRange;
+
+import javax.xml.stream.XMLInputFactory;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import it.bancaditalia.oss.sdmx.api.Codelist;
+import it.bancaditalia.oss.sdmx.api.DataFlowStructure;
+import it.bancaditalia.oss.sdmx.api.SDMXReference;
+import it.bancaditalia.oss.sdmx.exceptions.SdmxException;
+import it.bancaditalia.oss.sdmx.exceptions.SdmxXmlContentException;
+import it.bancaditalia.oss.sdmx.parser.v21.DataStructureParser;
+
+public class DataStructureParserTest
+{
+	private static final String	MESSAGE	= "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+			+ "<mes:Structure xmlns:mes=\"http://www.sdmx.org/resources/sdmxml/schemas/v2_1/message\""
+			+ " xmlns:str=\"http://www.sdmx.org/resources/sdmxml/schemas/v2_1/structure\""
+			+ " xmlns:com=\"http://www.sdmx.org/resources/sdmxml/schemas/v2_1/common\"><mes:Structures>"
+			+ "<str:Codelists>"
+			+ "<str:Codelist id=\"CL_FREQ\" agencyID=\"ECB\" version=\"1.0\"><com:Name xml:lang=\"en\">Frequency</com:Name>"
+			+ "<str:Code id=\"A\"><com:Name xml:lang=\"en\">Annual</com:Name><com:Name xml:lang=\"it\">Annuale</com:Name></str:Code>"
+			+ "<str:Code id=\"M\"><com:Name xml:lang=\"en\">Monthly</com:Name><str:Parent><Ref id=\"A\"/></str:Parent></str:Code>"
+			+ "</str:Codelist>"
+			+ "<str:Codelist id=\"CL_AREA\" agencyID=\"ECB\" version=\"1.0\"><com:Name xml:lang=\"en\">Area</com:Name>"
+			+ "<str:Code id=\"IT\"><com:Name xml:lang=\"en\">Italy</com:Name></str:Code>"
+			+ "</str:Codelist>"
+			+ "</str:Codelists>"
+			+ "<str:DataStructures><str:DataStructure id=\"ECB_TEST\" agencyID=\"ECB\" version=\"1.0\">"
+			+ "<com:Name xml:lang=\"en\">Test</com:Name><str:DataStructureComponents><str:DimensionList id=\"DimensionDescriptor\">"
+			+ "<str:Dimension id=\"FREQ\" position=\"1\"><str:LocalRepresentation><str:Enumeration>"
+			+ "<Ref id=\"CL_FREQ\" agencyID=\"ECB\" version=\"1.0\"/></str:Enumeration></str:LocalRepresentation></str:Dimension>"
+			+ "<str:Dimension id=\"REF_AREA\" position=\"2\"><str:LocalRepresentation><str:Enumeration>"
+			+ "<Ref id=\"CL_AREA\" agencyID=\"ECB\" version=\"1.0\"/></str:Enumeration></str:LocalRepresentation></str:Dimension>"
+			+ "</str:DimensionList></str:DataStructureComponents></str:DataStructure></str:DataStructures>"
+			+ "</mes:Structures></mes:Structure>";
+
+	private static DataFlowStructure parse(boolean deferCodelists) throws Exception
+	{
+		List<LanguageRange> languages = LanguageRange.parse("en");
+		return new DataStructureParser(deferCodelists)
+				.parse(XMLInputFactory.newFactory().createXMLEventReader(new StringReader(MESSAGE)), languages).get(0);
+	}
+
+	@Test
+	public void testDeferredCodelists() throws Exception
+	{
+		DataFlowStructure eager = parse(false);
+		DataFlowStructure lazy = parse(true);
+
+		Assert.assertEquals(Arrays.asList("FREQ", "REF_AREA"), Arrays.asList(lazy.getDimensions().get(0).getId(), lazy.getDimensions().get(1).getId()));
+		Codelist freq = lazy.getDimension("FREQ").getCodeList();
+		Assert.assertTrue(freq.isDeferred());
+		Assert.assertEquals(2, freq.estimatedSize());
+		Assert.assertTrue("Still deferred", freq.isDeferred());
+
+		Codelist expected = eager.getDimension("FREQ").getCodeList();
+		Assert.assertFalse(expected.isDeferred());
+		Assert.assertEquals("Annual", freq.get("A"));
+		Assert.assertFalse(freq.isDeferred());
+		Assert.assertEquals(expected.keySet(), freq.keySet());
+		Assert.assertEquals(expected.get("M"), freq.get("M"));
+		Assert.assertEquals("A", freq.getParent("M"));
+		Assert.assertEquals("Italy", lazy.getDimension("REF_AREA").getCodeList().get("IT"));
+	}
+
+	@Test
+	public void testFailedDecode() throws Exception
+	{
+		Codelist failing = new Codelist(new SDMXReference("CL_FREQ", "ECB", "1.0"), () -> {
+			throw new SdmxXmlContentException("Broken codelist");
+		}, 2);
+		try
+		{
+			failing.decode();
+			Assert.fail("Decoding should have failed");
+		}
+		catch (SdmxException e)
+		{
+			Assert.assertEquals("Broken codelist", e.getMessage());
+		}
+		Assert.assertTrue("Still deferred", failing.isDeferred());
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * http://ec.europa.eu/idabc/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package it.bancaditalia.oss.sdmx.ut;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import it.bancaditalia.oss.sdmx.api.Dataflow;
+import it.bancaditalia.oss.sdmx.client.FlowIndex;
+import it.bancaditalia.oss.sdmx.client.FlowIndex.Field;
+import it.bancaditalia.oss.sdmx.util.LocalizedText;
+
+public class FlowIndexTest
+{
+	private static FlowIndex index()
+	{
+		Map<String, Dataflow> flows = new LinkedHashMap<>();
+		for (String[] flow : new String[][] { { "EXR", "ECB", "Exchange Rates" }, 
+				{ "ICP", "ECB", "Inflation and consumer prices" }, 
+				{ "NAMA_10_GDP", "ESTAT", "GDP and main components" }, 
+				{ "GDP_EXR", "ESTAT", "Exchange rates of GDP deflators" } })
+		{
+			Dataflow dataflow = new Dataflow(flow[0], flow[1], "1.0", new LocalizedText(flow[2]));
+			flows.put(dataflow.getFullIdentifier(), dataflow);
+		}
+		return new FlowIndex(flows);
+	}
+
+	@Test
+	public void testGlob()
+	{
+		FlowIndex index = index();
+		Assert.assertEquals(4, index.glob(null).size());
+		Assert.assertEquals(Arrays.asList("EXR"), sorted(index.glob("EXR").values()));
+		Assert.assertEquals(Arrays.asList("EXR", "GDP_EXR"), sorted(index.glob("*EXR").values()));
+		Assert.assertEquals(Arrays.asList("GDP_EXR", "NAMA_10_GDP"), sorted(index.glob("*GDP*").values()));
+		Assert.assertEquals(Arrays.asList("ICP"), sorted(index.glob("Inflation*").values()));
+		Assert.assertEquals(Arrays.asList("EXR", "ICP"), sorted(index.glob("?[CX]?").values()));
+		Assert.assertTrue(index.glob("*gdp*").isEmpty());
+	}
+
+	@Test
+	public void testSubstring()
+	{
+		FlowIndex index = index();
+		Assert.assertEquals(Arrays.asList("EXR", "GDP_EXR"), ids(index.substring("exchange", false).values()));
+		Assert.assertTrue(index.substring("exchange", true).isEmpty());
+		Assert.assertEquals(Arrays.asList("NAMA_10_GDP", "GDP_EXR"), ids(index.substring("ESTAT", true, Field.AGENCY).values()));
+		Assert.assertTrue(index.substring("GDP", false, Field.AGENCY).isEmpty());
+		Assert.assertEquals(Arrays.asList("ICP"), ids(index.substring("cp", false, Field.ID).values()));
+		Assert.assertEquals(4, index.substring("", false).size());
+	}
+
+	@Test
+	public void testSearch()
+	{
+		FlowIndex index = index();
+		// a match in the id ranks first, then flows matching fewer keywords
+		Assert.assertEquals(Arrays.asList("GDP_EXR", "NAMA_10_GDP", "EXR"), ids(index.search("gdp exchange", 0)));
+		Assert.assertEquals(Arrays.asList("GDP_EXR"), ids(index.search("gdp exchange", 1)));
+		// the last keyword matches as a prefix
+		Assert.assertEquals(Arrays.asList("ICP"), ids(index.search("infl", 0)));
+		Assert.assertTrue(index.search(" ", 0).isEmpty());
+	}
+
+	private static List<String> sorted(Iterable<Dataflow> flows)
+	{
+		List<String> result = ids(flows);
+		Collections.sort(result);
+		return result;
+	}
+
+	private static List<String> ids(Iterable<Dataflow> flows)
+	{
+		List<String> result = new ArrayList<>();
+		for (Dataflow flow : flows)
+			result.add(flow.getId());
+		return result;
+	}
+
+	@Test
+	public void testWith()
+	{
+		FlowIndex index = index();
+		Dataflow exr = new Dataflow("EXR", "ECB", "1.0", new LocalizedText("Exchange Rates"));
+		FlowIndex replaced = index.with(exr.getFullIdentifier(), exr);
+		Assert.assertEquals(4, replaced.size());
+		Assert.assertSame(exr, replaced.glob("EXR").get(exr.getFullIdentifier()));
+		Assert.assertNotSame(exr, index.glob("EXR").get(exr.getFullIdentifier()));
+
+		Dataflow bsi = new Dataflow("BSI", "ECB", "1.0", new LocalizedText("Balance sheet items"));
+		FlowIndex added = replaced.with(bsi.getFullIdentifier(), bsi);
+		Assert.assertEquals(5, added.size());
+		Assert.assertEquals(Arrays.asList("BSI"), sorted(added.glob("Balance*").values()));
+		Assert.assertEquals(4, replaced.size());
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * http://ec.europa.eu/idabc/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package it.bancaditalia.oss.sdmx.ut;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.Locale.LanguageRange;
+
+import javax.xml.stream.XMLInputFactory;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import it.bancaditalia.oss.sdmx.api.DataFlowStructure;
+import it.bancaditalia.oss.sdmx.api.Dataflow;
+import it.bancaditalia.oss.sdmx.api.Dimension;
+import it.bancaditalia.oss.sdmx.api.PortableTimeSeries;
+import it.bancaditalia.oss.sdmx.parser.v21.GenericDataParser;
+import it.bancaditalia.oss.sdmx.util.LocalizedText;
+
+public class GenericDataParserTest
+{
+	private static final String	MESSAGE	= "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+			+ "<message:GenericData xmlns:message=\"http://www.sdmx.org/resources/sdmxml/schemas/v2_1/message\""
+			+ " xmlns:generic=\"http://www.sdmx.org/resources/sdmxml/schemas/v2_1/data/generic\"><message:DataSet>"
+			+ "<generic:Series><generic:SeriesKey><generic:Value id=\"FREQ\" value=\"A\"/><generic:Value id=\"REF_AREA\" value=\"IT\"/></generic:SeriesKey>"
+			+ "<generic:Attributes><generic:Value id=\"UNIT_MULT\" value=\"3\"/></generic:Attributes>"
+			+ "<generic:Obs><generic:ObsDimension value=\"2000\"/><generic:ObsValue value=\"1.0\"/></generic:Obs>"
+			+ "<generic:Obs><generic:ObsDimension value=\"2001\"/><generic:ObsValue value=\"2.0\"/></generic:Obs>"
+			+ "</generic:Series>"
+			+ "<generic:Series><generic:SeriesKey><generic:Value id=\"FREQ\" value=\"A\"/><generic:Value id=\"REF_AREA\" value=\"FR\"/></generic:SeriesKey>"
+			+ "<generic:Obs><generic:ObsDimension value=\"2002\"/><generic:ObsValue value=\"3.0\"/></generic:Obs>"
+			+ "</generic:Series>"
+			+ "</message:DataSet></message:GenericData>";
+
+	private static List<PortableTimeSeries<Double>> parse() throws Exception
+	{
+		DataFlowStructure dsd = new DataFlowStructure("ECB_TEST", "ECB", "1.0");
+		dsd.setDimension(new Dimension("FREQ", 1));
+		dsd.setDimension(new Dimension("REF_AREA", 2));
+		Dataflow dataflow = new Dataflow("TEST", "ECB", "1.0", new LocalizedText("Test"));
+		return new GenericDataParser(dsd, dataflow, true)
+				.parse(XMLInputFactory.newFactory().createXMLEventReader(new StringReader(MESSAGE)), LanguageRange.parse("en"));
+	}
+
+	@Test
+	public void testSeriesObservations() throws Exception
+	{
+		List<PortableTimeSeries<Double>> result = parse();
+		Assert.assertEquals(2, result.size());
+		// each series gets only its own observations
+		Assert.assertEquals(2, result.get(0).size());
+		Assert.assertEquals(1, result.get(1).size());
+		Assert.assertEquals("2002", result.get(1).get(0).getTimeslot());
+	}
+
+	@Test
+	public void testSeriesAttributes() throws Exception
+	{
+		List<PortableTimeSeries<Double>> result = parse();
+		Assert.assertEquals("3", result.get(0).getAttribute("UNIT_MULT"));
+		// the attributes of a series are not carried over to the next one
+		Assert.assertNull(result.get(1).getAttribute("UNIT_MULT"));
+	}
+}
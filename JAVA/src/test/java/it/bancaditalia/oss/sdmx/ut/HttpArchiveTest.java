@@ -0,0 +1,159 @@
+/*
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * http://ec.europa.eu/idabc/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package it.bancaditalia.oss.sdmx.ut;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import it.bancaditalia.oss.sdmx.api.PortableTimeSeries;
+import it.bancaditalia.oss.sdmx.client.SDMXClientFactory;
+import it.bancaditalia.oss.sdmx.client.SdmxClientHandler;
+import it.bancaditalia.oss.sdmx.exceptions.SdmxException;
+import it.bancaditalia.oss.sdmx.mock.MockSdmxServer;
+import it.bancaditalia.oss.sdmx.mock.SdmxGenerator;
+import it.bancaditalia.oss.sdmx.util.Configuration;
+
+public class HttpArchiveTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@After
+	public void tearDown()
+	{
+		Configuration.setHttpArchive(null, null);
+	}
+
+	@Test
+	public void testRecordReplay() throws Exception
+	{
+		File dir = folder.newFolder();
+		String endpoint;
+		List<PortableTimeSeries<Double>> recorded;
+
+		Configuration.setHttpArchive(dir.getPath(), Configuration.HTTP_ARCHIVE_RECORD);
+		try (MockSdmxServer server = new MockSdmxServer(new SdmxGenerator().setSeries(20).setObservations(6).setDimensions(2), 2).start())
+		{
+			server.setRedirects(1);
+			server.setGzip(true);
+			endpoint = server.getEndpoint(MockSdmxServer.V21).toString();
+			SdmxClientHandler.addProvider("REC_" + server.getPort(), endpoint, false, false, true, "Mock", SDMXClientFactory.SDMX_V2);
+			Assert.assertEquals(2, SdmxClientHandler.getFlows("REC_" + server.getPort(), null).size());
+			recorded = SdmxClientHandler.getTimeSeries("REC_" + server.getPort(), "FLOW1/C0+C1.C2", null, null);
+			Assert.assertEquals(2, recorded.size());
+		}
+		Assert.assertTrue(new File(dir, "index.txt").exists());
+
+		// the server is gone: everything comes from the archive
+		Configuration.setHttpArchive(dir.getPath(), Configuration.HTTP_ARCHIVE_REPLAY);
+		String provider = "REPLAY_" + System.nanoTime();
+		SdmxClientHandler.addProvider(provider, endpoint, false, false, true, "Replay", SDMXClientFactory.SDMX_V2);
+		Assert.assertEquals(2, SdmxClientHandler.getFlows(provider, null).size());
+		List<PortableTimeSeries<Double>> replayed = SdmxClientHandler.getTimeSeries(provider, "FLOW1/C0+C1.C2", null, null);
+		Assert.assertEquals(recorded.size(), replayed.size());
+		for (int i = 0; i < recorded.size(); i++)
+		{
+			Assert.assertEquals(recorded.get(i).getName(), replayed.get(i).getName());
+			Assert.assertEquals(recorded.get(i).getObservations(), replayed.get(i).getObservations());
+		}
+
+		try
+		{
+			SdmxClientHandler.getTimeSeries(provider, "FLOW1/C1.C0", null, null);
+			Assert.fail("Request not in the archive");
+		}
+		catch (SdmxException e)
+		{
+			// expected
+		}
+	}
+
+	@Test
+	public void testLargeResponse() throws Exception
+	{
+		File dir = folder.newFolder();
+		String endpoint;
+		int recorded;
+
+		Configuration.setHttpArchive(dir.getPath(), Configuration.HTTP_ARCHIVE_RECORD);
+		try (MockSdmxServer server = new MockSdmxServer(new SdmxGenerator().setSeries(2000).setObservations(60).setDimensions(3), 1).start())
+		{
+			endpoint = server.getEndpoint(MockSdmxServer.V21).toString();
+			SdmxClientHandler.addProvider("BIG_" + server.getPort(), endpoint, false, false, false, "Mock", SDMXClientFactory.SDMX_V2);
+			recorded = SdmxClientHandler.getTimeSeries("BIG_" + server.getPort(), "FLOW0/..", null, null).size();
+			Assert.assertEquals(2000, recorded);
+		}
+
+		File largest = null;
+		for (File file : dir.listFiles((d, name) -> name.endsWith(".http")))
+			if (largest == null || file.length() > largest.length())
+				largest = file;
+		Assert.assertTrue(largest.length() > 1 << 20);
+
+		Configuration.setHttpArchive(dir.getPath(), Configuration.HTTP_ARCHIVE_REPLAY);
+		String provider = "REPLAYBIG_" + System.nanoTime();
+		SdmxClientHandler.addProvider(provider, endpoint, false, false, false, "Replay", SDMXClientFactory.SDMX_V2);
+		Assert.assertEquals(recorded, SdmxClientHandler.getTimeSeries(provider, "FLOW0/..", null, null).size());
+
+		// a truncated recording is detected
+		try (RandomAccessFile file = new RandomAccessFile(largest, "rw"))
+		{
+			file.setLength(file.length() - 1);
+		}
+		provider = "REPLAYCUT_" + System.nanoTime();
+		SdmxClientHandler.addProvider(provider, endpoint, false, false, false, "Replay", SDMXClientFactory.SDMX_V2);
+		try
+		{
+			SdmxClientHandler.getTimeSeries(provider, "FLOW0/..", null, null);
+			Assert.fail("Truncated archive file");
+		}
+		catch (SdmxException e)
+		{
+			Assert.assertTrue(e.getMessage(), e.getMessage().contains("Truncated"));
+		}
+	}
+
+	@Test
+	public void testLongRequest() throws Exception
+	{
+		File dir = folder.newFolder();
+		String endpoint;
+		// a request longer than the 64KB limit of writeUTF
+		StringBuilder key = new StringBuilder("FLOW1/C0");
+		while (key.length() < 70000)
+			key.append("+C1");
+		key.append(".C2");
+
+		Configuration.setHttpArchive(dir.getPath(), Configuration.HTTP_ARCHIVE_RECORD);
+		try (MockSdmxServer server = new MockSdmxServer(new SdmxGenerator().setSeries(20).setObservations(6).setDimensions(2), 2).start())
+		{
+			endpoint = server.getEndpoint(MockSdmxServer.V21).toString();
+			SdmxClientHandler.addProvider("LONG_" + server.getPort(), endpoint, false, false, false, "Mock", SDMXClientFactory.SDMX_V2);
+			Assert.assertEquals(2, SdmxClientHandler.getTimeSeries("LONG_" + server.getPort(), key.toString(), null, null).size());
+		}
+
+		Configuration.setHttpArchive(dir.getPath(), Configuration.HTTP_ARCHIVE_REPLAY);
+		String provider = "REPLAYLONG_" + System.nanoTime();
+		SdmxClientHandler.addProvider(provider, endpoint, false, false, false, "Replay", SDMXClientFactory.SDMX_V2);
+		Assert.assertEquals(2, SdmxClientHandler.getTimeSeries(provider, key.toString(), null, null).size());
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * http://ec.europa.eu/idabc/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package it.bancaditalia.oss.sdmx.ut;
+
+import java.util.AbstractMap.SimpleEntry;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import it.bancaditalia.oss.sdmx.api.PortableTimeSeries;
+import it.bancaditalia.oss.sdmx.client.KeyMerger;
+import it.bancaditalia.oss.sdmx.client.KeyMerger.MergedKey;
+
+public class KeyMergerTest
+{
+	@Test
+	public void testMergeOnePosition()
+	{
+		List<MergedKey> merged = new KeyMerger(1000).merge(Arrays.asList("M.USD.EUR.SP00.A", "M.GBP.EUR.SP00.A", "M.JPY.EUR.SP00.A"));
+		Assert.assertEquals(1, merged.size());
+		Assert.assertEquals("M.USD+GBP+JPY.EUR.SP00.A", merged.get(0).getKey());
+		Assert.assertEquals(3, merged.get(0).getRequestedKeys().size());
+	}
+
+	@Test
+	public void testMergeProductOnly()
+	{
+		// a full product is merged in one query
+		List<MergedKey> product = new KeyMerger(1000).merge(Arrays.asList("M.USD", "M.GBP", "Q.USD", "Q.GBP"));
+		Assert.assertEquals(1, product.size());
+		Assert.assertEquals("M+Q.USD+GBP", product.get(0).getKey());
+
+		// keys differing in two positions are never merged, as they would also select M.GBP and Q.USD
+		List<MergedKey> diagonal = new KeyMerger(1000).merge(Arrays.asList("M.USD", "Q.GBP"));
+		Assert.assertEquals(2, diagonal.size());
+	}
+
+	@Test
+	public void testMaxLength()
+	{
+		List<MergedKey> merged = new KeyMerger(11).merge(Arrays.asList("M.USD.A", "M.GBP.A", "M.JPY.A"));
+		Assert.assertEquals(2, merged.size());
+		Assert.assertEquals("M.USD+GBP.A", merged.get(0).getKey());
+		Assert.assertEquals("M.JPY.A", merged.get(1).getKey());
+		Assert.assertEquals(Collections.singletonList("M.JPY.A"), merged.get(1).getRequestedKeys());
+	}
+
+	@Test
+	public void testSplit()
+	{
+		PortableTimeSeries<Double> usd = series("M", "USD");
+		PortableTimeSeries<Double> gbp = series("M", "GBP");
+		Map<String, List<PortableTimeSeries<Double>>> split = KeyMerger.split(Arrays.asList("M.USD", "M.GBP", "M.CHF", ".GBP"),
+				Arrays.asList(usd, gbp), Arrays.asList("FREQ", "CURRENCY"));
+
+		Assert.assertEquals(1, split.get("M.USD").size());
+		Assert.assertSame(usd, split.get("M.USD").get(0));
+		Assert.assertEquals(1, split.get("M.GBP").size());
+		Assert.assertSame(gbp, split.get("M.GBP").get(0));
+		Assert.assertTrue(split.get("M.CHF").isEmpty());
+		Assert.assertEquals(1, split.get(".GBP").size());
+		Assert.assertSame(gbp, split.get(".GBP").get(0));
+	}
+
+	private static PortableTimeSeries<Double> series(String freq, String currency)
+	{
+		Map<String, Entry<String, String>> dimensions = new LinkedHashMap<>();
+		dimensions.put("FREQ", new SimpleEntry<>(freq, null));
+		dimensions.put("CURRENCY", new SimpleEntry<>(currency, null));
+		return new PortableTimeSeries<>(null, dimensions, Collections.emptyMap(), Collections.emptyList());
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * http://ec.europa.eu/idabc/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package it.bancaditalia.oss.sdmx.ut;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import it.bancaditalia.oss.sdmx.client.SDMXClientFactory;
+import it.bancaditalia.oss.sdmx.client.SdmxClientHandler;
+import it.bancaditalia.oss.sdmx.event.CompletionEvent;
+import it.bancaditalia.oss.sdmx.event.ConnectionEvent;
+import it.bancaditalia.oss.sdmx.event.DecompressionEvent;
+import it.bancaditalia.oss.sdmx.event.FirstByteEvent;
+import it.bancaditalia.oss.sdmx.event.ParseStartEvent;
+import it.bancaditalia.oss.sdmx.event.ProgressEvent;
+import it.bancaditalia.oss.sdmx.event.RestSdmxEventListener;
+import it.bancaditalia.oss.sdmx.event.SeriesParsedEvent;
+import it.bancaditalia.oss.sdmx.event.TimedEvent;
+import it.bancaditalia.oss.sdmx.mock.MockSdmxServer;
+import it.bancaditalia.oss.sdmx.mock.SdmxGenerator;
+
+public class LifecycleEventsTest
+{
+	@Test
+	public void testDataQuery() throws Exception
+	{
+		List<TimedEvent> events = Collections.synchronizedList(new ArrayList<>());
+		try (MockSdmxServer server = new MockSdmxServer(new SdmxGenerator().setSeries(200).setObservations(100).setDimensions(2), 1).start())
+		{
+			server.setGzip(true);
+			String provider = "EVENTS_" + server.getPort();
+			SdmxClientHandler.addProvider(provider, server.getEndpoint(MockSdmxServer.V21).toString(), false, false, true, "Mock", SDMXClientFactory.SDMX_V2);
+			SdmxClientHandler.getFlows(provider, null);
+			SdmxClientHandler.getDataFlowStructure(provider, "FLOW0");
+
+			RestSdmxEventListener listener = event -> {
+				if (event instanceof TimedEvent && ((TimedEvent) event).getUrl().getPort() == server.getPort())
+					events.add((TimedEvent) event);
+			};
+			SdmxClientHandler.addEventListener(listener);
+			try
+			{
+				SdmxClientHandler.getTimeSeries(provider, "FLOW0/..", null, null);
+			}
+			finally
+			{
+				SdmxClientHandler.removeEventListener(listener);
+			}
+		}
+
+		List<Class<?>> sequence = new ArrayList<>();
+		for (TimedEvent event : events)
+			if (sequence.isEmpty() || sequence.get(sequence.size() - 1) != event.getClass())
+				sequence.add(event.getClass());
+		Assert.assertEquals(Arrays.asList(ConnectionEvent.class, FirstByteEvent.class, ProgressEvent.class,
+				DecompressionEvent.class, ParseStartEvent.class, SeriesParsedEvent.class, CompletionEvent.class), sequence);
+
+		for (int i = 1; i < events.size(); i++)
+		{
+			Assert.assertEquals(events.get(0).getStartTime(), events.get(i).getStartTime());
+			Assert.assertTrue(events.get(i).getTime() >= events.get(i - 1).getTime());
+		}
+
+		SeriesParsedEvent parsed = (SeriesParsedEvent) events.get(events.size() - 2);
+		Assert.assertEquals(200, parsed.getSeries());
+		Assert.assertEquals(20000, parsed.getObservations());
+		CompletionEvent completion = (CompletionEvent) events.get(events.size() - 1);
+		Assert.assertTrue(completion.isSuccessful());
+		Assert.assertEquals(200, completion.getStatus());
+		Assert.assertEquals(((DecompressionEvent) events.get(events.size() - 4)).getCompressedBytes(), completion.getBytes());
+	}
+
+	@Test
+	public void testFailingListener() throws Exception
+	{
+		AtomicInteger completions = new AtomicInteger();
+		try (MockSdmxServer server = new MockSdmxServer(new SdmxGenerator().setSeries(20).setObservations(10).setDimensions(2), 1).start())
+		{
+			String provider = "EVENTFAIL_" + server.getPort();
+			SdmxClientHandler.addProvider(provider, server.getEndpoint(MockSdmxServer.V21).toString(), false, false, false, "Mock", SDMXClientFactory.SDMX_V2);
+
+			RestSdmxEventListener failing = event -> {
+				throw new IllegalStateException("Listener failure");
+			};
+			RestSdmxEventListener counting = event -> {
+				if (event instanceof CompletionEvent && ((CompletionEvent) event).getUrl().getPort() == server.getPort())
+					completions.incrementAndGet();
+			};
+			SdmxClientHandler.addEventListener(failing);
+			SdmxClientHandler.addEventListener(counting);
+			try
+			{
+				// neither the query nor the other listeners are affected
+				Assert.assertEquals(20, SdmxClientHandler.getTimeSeries(provider, "FLOW0/..", null, null).size());
+			}
+			finally
+			{
+				SdmxClientHandler.removeEventListener(failing);
+				SdmxClientHandler.removeEventListener(counting);
+			}
+		}
+		Assert.assertTrue(completions.get() > 0);
+	}
+}
@@ -0,0 +1,99 @@
+/*
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * http://ec.europa.eu/idabc/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package it.bancaditalia.oss.sdmx.ut;
+
+import java.io.StringReader;
+import java.util.Locale.LanguageRange;
+
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.events.XMLEvent;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import it.bancaditalia.oss.sdmx.util.Configuration;
+import it.bancaditalia.oss.sdmx.util.LocalizedText;
+
+public class LocalizedTextTest
+{
+	private static LocalizedText parse(String languages, String... texts) throws Exception
+	{
+		StringBuilder xml = new StringBuilder("<Names>");
+		for (int i = 0; i < texts.length; i += 2)
+			xml.append("<Name xml:lang=\"").append(texts[i]).append("\">").append(texts[i + 1]).append("</Name>");
+		XMLEventReader reader = XMLInputFactory.newFactory().createXMLEventReader(new StringReader(xml.append("</Names>").toString()));
+
+		LocalizedText text = new LocalizedText(LanguageRange.parse(languages));
+		while (reader.hasNext())
+		{
+			XMLEvent event = reader.nextEvent();
+			if (event.isStartElement() && "Name".equals(event.asStartElement().getName().getLocalPart()))
+				text.setText(event.asStartElement(), reader);
+		}
+		return text;
+	}
+
+	@Test
+	public void testBestMatch() throws Exception
+	{
+		Assert.assertEquals("Annuale", parse("it,en", "en", "Annual", "fr", "Annuel", "it", "Annuale").getText());
+		Assert.assertEquals("Annual", parse("it,en", "en", "Annual", "fr", "Annuel").getText());
+		Assert.assertEquals("Annual", parse("en,it", "it", "Annuale", "en", "Annual").getText());
+		Assert.assertEquals("Annual", parse("en", "en-GB", "Annual").getText());
+	}
+
+	@Test
+	public void testNoMatch() throws Exception
+	{
+		// the first parsed text
+		Assert.assertEquals("Annuel", parse("de", "fr", "Annuel", "en", "Annual").getText());
+		Assert.assertNull(parse("de").getText());
+	}
+
+	@Test
+	public void testFallback() throws Exception
+	{
+		Configuration.setLanguageFallback("en");
+		try
+		{
+			Assert.assertEquals("Annual", parse("de", "fr", "Annuel", "en", "Annual").getText());
+			// a match is still preferred
+			Assert.assertEquals("Jahre", parse("de", "en", "Annual", "de", "Jahre").getText());
+		}
+		finally
+		{
+			Configuration.setLanguageFallback(null);
+		}
+		Assert.assertEquals("Annuel", parse("de", "fr", "Annuel", "en", "Annual").getText());
+	}
+
+	@Test
+	public void testKeepAll() throws Exception
+	{
+		Configuration.setKeepAllLanguages(true);
+		try
+		{
+			LocalizedText text = parse("it", "en", "Annual", "fr", "Annuel", "it", "Annuale");
+			Assert.assertEquals("Annuale", text.getText());
+			Assert.assertEquals("LocalizedText [en - Annual, fr - Annuel, it - Annuale]", text.toString());
+		}
+		finally
+		{
+			Configuration.setKeepAllLanguages(false);
+		}
+		Assert.assertEquals("LocalizedText [it - Annuale]", parse("it", "en", "Annual", "it", "Annuale").toString());
+	}
+}
@@ -0,0 +1,170 @@
+/*
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * http://ec.europa.eu/idabc/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package it.bancaditalia.oss.sdmx.ut;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import it.bancaditalia.oss.sdmx.util.MetadataCache;
+import it.bancaditalia.oss.sdmx.util.MetadataCache.Policy;
+
+public class MetadataCacheTest
+{
+	@Test
+	public void testLRU()
+	{
+		MetadataCache<String, String> cache = new MetadataCache<>("test", Policy.LRU, 10, String::length);
+		cache.put("a", "aaaa");
+		cache.put("b", "bbbb");
+		cache.get("a");
+		cache.put("c", "cccc");
+
+		Assert.assertNull(cache.get("b"));
+		Assert.assertEquals("aaaa", cache.get("a"));
+		Assert.assertEquals("cccc", cache.get("c"));
+		Assert.assertEquals(8, cache.getWeight());
+		Assert.assertEquals(1, cache.getEvictionCount());
+		Assert.assertEquals(3, cache.getHitCount());
+		Assert.assertEquals(1, cache.getMissCount());
+	}
+
+	@Test
+	public void testLFU()
+	{
+		MetadataCache<String, String> cache = new MetadataCache<>("test", Policy.LFU, 2);
+		cache.put("a", "1");
+		cache.put("b", "2");
+		cache.get("a");
+		cache.get("a");
+		cache.get("b");
+		cache.put("c", "3");
+
+		Assert.assertTrue(cache.containsKey("a"));
+		Assert.assertFalse(cache.containsKey("b"));
+		Assert.assertTrue(cache.containsKey("c"));
+	}
+
+	@Test
+	public void testLFUTies()
+	{
+		MetadataCache<String, String> cache = new MetadataCache<>("test", Policy.LFU, 3);
+		cache.put("a", "1");
+		cache.put("b", "2");
+		cache.put("c", "3");
+		// all used twice: b is the least recently used
+		cache.get("c");
+		cache.get("b");
+		cache.get("a");
+		cache.remove("c");
+		cache.put("c", "3");
+		cache.get("c");
+		cache.put("d", "4");
+
+		Assert.assertFalse(cache.containsKey("b"));
+		Assert.assertTrue(cache.containsKey("a"));
+		Assert.assertTrue(cache.containsKey("c"));
+		Assert.assertTrue(cache.containsKey("d"));
+
+		// the value replaced keeps its frequency
+		cache.put("d", "5");
+		cache.put("e", "6");
+		Assert.assertFalse(cache.containsKey("a"));
+		Assert.assertEquals("5", cache.get("d"));
+		Assert.assertEquals(3, cache.size());
+	}
+
+	@Test
+	public void testOversizedAndUnbounded()
+	{
+		MetadataCache<String, String> bounded = new MetadataCache<>("test", Policy.LRU, 3, String::length);
+		bounded.put("a", "a");
+		bounded.put("big", "bigger than max");
+		Assert.assertEquals(1, bounded.size());
+		Assert.assertTrue(bounded.containsKey("big"));
+
+		MetadataCache<String, String> unbounded = new MetadataCache<>("test", Policy.LRU, 0);
+		for (int i = 0; i < 1000; i++)
+			unbounded.put("k" + i, "v");
+		Assert.assertEquals(1000, unbounded.size());
+		Assert.assertEquals(0, unbounded.getEvictionCount());
+	}
+
+	@Test
+	public void testReplaceAll()
+	{
+		MetadataCache<String, String> cache = new MetadataCache<>("test", Policy.LRU, 2);
+		cache.put("old", "v");
+		Map<String, String> values = new LinkedHashMap<>();
+		values.put("a", "1");
+		values.put("b", "2");
+		Assert.assertEquals(0, cache.replaceAll(values));
+		Assert.assertEquals(values, cache.asMap());
+
+		values.put("c", "3");
+		Assert.assertEquals(1, cache.replaceAll(values));
+		Assert.assertEquals(2, cache.size());
+		Assert.assertFalse(cache.containsKey("a"));
+	}
+
+	@Test
+	public void testConcurrentLoad() throws Exception
+	{
+		MetadataCache<String, String> cache = new MetadataCache<>("test", Policy.LRU, 0);
+		AtomicInteger loads = new AtomicInteger();
+		CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try
+		{
+			List<Future<String>> results = new ArrayList<>();
+			for (int i = 0; i < 32; i++)
+				results.add(executor.submit((Callable<String>) () -> {
+					start.await();
+					return cache.get("key", k -> {
+						loads.incrementAndGet();
+						try
+						{
+							Thread.sleep(50);
+						}
+						catch (InterruptedException e)
+						{
+							Thread.currentThread().interrupt();
+						}
+						return "value";
+					});
+				}));
+			start.countDown();
+			for (Future<String> result : results)
+				Assert.assertEquals("value", result.get());
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+
+		Assert.assertEquals(1, loads.get());
+		Assert.assertEquals(1, cache.size());
+	}
+}
@@ -0,0 +1,154 @@
+/*
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * http://ec.europa.eu/idabc/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package it.bancaditalia.oss.sdmx.ut;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import it.bancaditalia.oss.sdmx.api.DataFlowStructure;
+import it.bancaditalia.oss.sdmx.api.Dimension;
+import it.bancaditalia.oss.sdmx.api.PortableTimeSeries;
+import it.bancaditalia.oss.sdmx.client.SDMXClientFactory;
+import it.bancaditalia.oss.sdmx.client.SdmxClientHandler;
+import it.bancaditalia.oss.sdmx.exceptions.SdmxException;
+import it.bancaditalia.oss.sdmx.mock.MockSdmxServer;
+import it.bancaditalia.oss.sdmx.mock.SdmxGenerator;
+
+public class MockSdmxServerTest
+{
+	private static SdmxGenerator generator()
+	{
+		return new SdmxGenerator().setSeries(40).setObservations(12).setDimensions(3);
+	}
+
+	@Test
+	public void testSdmx21() throws Exception
+	{
+		try (MockSdmxServer server = new MockSdmxServer(generator(), 3).start())
+		{
+			server.setRedirects(2);
+			String provider = "MOCK21_" + server.getPort();
+			SdmxClientHandler.addProvider(provider, server.getEndpoint(MockSdmxServer.V21).toString(), false, false, true, "Mock", SDMXClientFactory.SDMX_V2);
+
+			Assert.assertEquals(3, SdmxClientHandler.getFlows(provider, null).size());
+			List<PortableTimeSeries<Double>> result = SdmxClientHandler.getTimeSeries(provider, "FLOW1/C0+C1..C3", null, null);
+			Assert.assertEquals(8, result.size());
+			for (PortableTimeSeries<Double> ts : result)
+			{
+				Assert.assertEquals(12, ts.size());
+				Assert.assertTrue(ts.getName(), ts.getName().matches("FLOW1\\.C[01]\\.C\\d\\.C3"));
+			}
+			Assert.assertTrue("Redirections", server.getRequestCount() >= 9);
+		}
+	}
+
+	@Test
+	public void testSdmx30() throws Exception
+	{
+		try (MockSdmxServer server = new MockSdmxServer(generator(), 1).start())
+		{
+			String provider = "MOCK30_" + server.getPort();
+			SdmxClientHandler.addProvider(provider, server.getEndpoint(MockSdmxServer.V30).toString(), false, false, false, "Mock", SDMXClientFactory.SDMX_V3);
+
+			Assert.assertEquals(Integer.valueOf(12), SdmxClientHandler.getSeriesCount(provider, "FLOW0", "*.C1.*"));
+			List<PortableTimeSeries<Double>> result = SdmxClientHandler.getTimeSeries(provider, "FLOW0", "C2.*.*", null, null, null, false, null, false);
+			Assert.assertEquals(8, result.size());
+		}
+	}
+
+	@Test
+	public void testStructureCopies() throws Exception
+	{
+		try (MockSdmxServer server = new MockSdmxServer(generator(), 1).start())
+		{
+			String provider = "MOCKDSD_" + server.getPort();
+			SdmxClientHandler.addProvider(provider, server.getEndpoint(MockSdmxServer.V21).toString(), false, false, false, "Mock", SDMXClientFactory.SDMX_V2);
+			SdmxClientHandler.getFlows(provider, null);
+
+			// callers may modify the structures they get without affecting the cached one
+			DataFlowStructure dsd = SdmxClientHandler.getDataFlowStructure(provider, "FLOW0");
+			Dimension dim = dsd.getDimensions().get(0);
+			dim.setName("changed");
+			dsd.setDimension(new Dimension("EXTRA", dsd.getDimensions().size() + 1));
+			dsd.setMeasure("changed");
+
+			DataFlowStructure cached = SdmxClientHandler.getDataFlowStructure(provider, "FLOW0");
+			Assert.assertNotEquals("changed", cached.getDimension(dim.getId()).getName());
+			Assert.assertFalse(cached.isDimension("EXTRA"));
+			Assert.assertNotEquals("changed", cached.getMeasure());
+			Assert.assertSame(dim.getCodeList(), cached.getDimension(dim.getId()).getCodeList());
+		}
+	}
+
+	@Test
+	public void testFailures() throws Exception
+	{
+		try (MockSdmxServer server = new MockSdmxServer(generator(), 1).start())
+		{
+			String provider = "MOCKERR_" + server.getPort();
+			SdmxClientHandler.addProvider(provider, server.getEndpoint(MockSdmxServer.V21).toString(), false, false, false, "Mock", SDMXClientFactory.SDMX_V2);
+
+			server.failNext(429, 1);
+			try
+			{
+				SdmxClientHandler.getFlows(provider, null);
+				Assert.fail("Expected a failure");
+			}
+			catch (SdmxException e)
+			{
+				// expected
+			}
+			Assert.assertEquals(1, SdmxClientHandler.getFlows(provider, null).size());
+		}
+	}
+
+	@Test
+	public void testAsyncDelivery() throws Exception
+	{
+		try (MockSdmxServer server = new MockSdmxServer(generator(), 1).start())
+		{
+			server.setAsyncDelivery(200);
+			String footer = get(server.getEndpoint(MockSdmxServer.V21) + "/data/FLOW0/C0..", 200);
+			Matcher matcher = Pattern.compile("code=\"413\".*<com:Text[^>]*>([^<]+)</com:Text>").matcher(footer);
+			Assert.assertTrue(footer, matcher.find());
+
+			get(matcher.group(1), 404);
+			Thread.sleep(300);
+			Assert.assertTrue(get(matcher.group(1), 200).contains("<Series"));
+		}
+	}
+
+	private static String get(String url, int expectedStatus) throws Exception
+	{
+		HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+		Assert.assertEquals(url, expectedStatus, conn.getResponseCode());
+		if (expectedStatus != 200)
+			return null;
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8)))
+		{
+			return reader.lines().collect(Collectors.joining("\n"));
+		}
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * http://ec.europa.eu/idabc/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package it.bancaditalia.oss.sdmx.ut;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import it.bancaditalia.oss.sdmx.api.PortableTimeSeries;
+import it.bancaditalia.oss.sdmx.client.ProviderMetrics;
+import it.bancaditalia.oss.sdmx.client.ProviderMetricsMXBean;
+import it.bancaditalia.oss.sdmx.client.SDMXClientFactory;
+import it.bancaditalia.oss.sdmx.client.SdmxClientHandler;
+import it.bancaditalia.oss.sdmx.exceptions.SdmxException;
+import it.bancaditalia.oss.sdmx.mock.MockSdmxServer;
+import it.bancaditalia.oss.sdmx.mock.SdmxGenerator;
+import it.bancaditalia.oss.sdmx.util.LatencyHistogram;
+
+public class ProviderMetricsTest
+{
+	@Test
+	public void testHistogram()
+	{
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 1000; i++)
+			histogram.record(i * 1000000L);
+
+		LatencyHistogram.Snapshot snapshot = histogram.getSnapshot();
+		Assert.assertEquals(1000, snapshot.getCount());
+		Assert.assertEquals(500.5, snapshot.getMeanMillis(), 0.01);
+		Assert.assertEquals(500, snapshot.getP50Millis(), 500 * 0.125);
+		Assert.assertEquals(990, snapshot.getP99Millis(), 990 * 0.125);
+		Assert.assertEquals(1000, snapshot.getMaxMillis(), 0.001);
+
+		histogram.reset();
+		Assert.assertEquals(0, histogram.getSnapshot().getCount());
+	}
+
+	@Test
+	public void testMBean() throws Exception
+	{
+		try (MockSdmxServer server = new MockSdmxServer(new SdmxGenerator().setSeries(20).setObservations(10).setDimensions(2), 1).start())
+		{
+			server.setGzip(true);
+			String provider = "METRICS_" + server.getPort();
+			SdmxClientHandler.addProvider(provider, server.getEndpoint(MockSdmxServer.V21).toString(), false, false, true, "Mock", SDMXClientFactory.SDMX_V2);
+
+			SdmxClientHandler.getFlows(provider, null);
+			long observations = 0;
+			for (PortableTimeSeries<Double> ts : SdmxClientHandler.getTimeSeries(provider, "FLOW0/C0.", null, null))
+				observations += ts.size();
+			Assert.assertEquals(50, observations);
+			// served from the caches
+			SdmxClientHandler.getDataFlowStructure(provider, "FLOW0");
+			server.failNext(503, 1);
+			try
+			{
+				SdmxClientHandler.getTimeSeries(provider, "FLOW0/C1.", null, null);
+				Assert.fail("Expected a failure");
+			}
+			catch (SdmxException e)
+			{
+				// expected
+			}
+
+			MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName("it.bancaditalia.oss.sdmx:type=Provider,name=" + ObjectName.quote(provider));
+			Assert.assertTrue(mbs.isRegistered(name));
+			Assert.assertEquals(4L, mbs.getAttribute(name, "RequestCount"));
+			Assert.assertEquals(1L, mbs.getAttribute(name, "ErrorCount"));
+			Assert.assertEquals(observations, mbs.getAttribute(name, "ObservationsParsed"));
+			long wire = (Long) mbs.getAttribute(name, "BytesOnWire");
+			Assert.assertTrue(wire > 0 && wire < (Long) mbs.getAttribute(name, "BytesDecompressed"));
+			Assert.assertEquals(3L, ((CompositeData) mbs.getAttribute(name, "ParseTime")).get("count"));
+			Assert.assertEquals(4L, ((CompositeData) mbs.getAttribute(name, "TimeToFirstByte")).get("count"));
+
+			ProviderMetricsMXBean proxy = JMX.newMXBeanProxy(mbs, name, ProviderMetricsMXBean.class);
+			Assert.assertEquals(Long.valueOf(1), proxy.getErrorsByStatus().get("503"));
+			Map<String, Double> ratios = proxy.getCacheHitRatios();
+			Assert.assertTrue(ratios.toString(), ratios.get("structures") > 0);
+			// the client is created once and then reused
+			Assert.assertEquals(Long.valueOf(1), proxy.getCacheMisses().get(ProviderMetrics.CLIENTS_CACHE));
+			Assert.assertTrue(ratios.toString(), ratios.get(ProviderMetrics.CLIENTS_CACHE) > 0);
+			Assert.assertTrue(ratios.containsKey(ProviderMetrics.TIMESERIES_CACHE));
+		}
+	}
+}
@@ -0,0 +1,216 @@
+/*
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * http://ec.europa.eu/idabc/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package it.bancaditalia.oss.sdmx.ut;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import it.bancaditalia.oss.sdmx.api.BaseObservation;
+import it.bancaditalia.oss.sdmx.api.DoubleObservation;
+import it.bancaditalia.oss.sdmx.api.PortableTimeSeries;
+import it.bancaditalia.oss.sdmx.client.SDMXClientFactory;
+import it.bancaditalia.oss.sdmx.client.SdmxClientHandler;
+import it.bancaditalia.oss.sdmx.mock.MockSdmxServer;
+import it.bancaditalia.oss.sdmx.mock.SdmxGenerator;
+import it.bancaditalia.oss.sdmx.parser.v21.ResultSizeGuard;
+import it.bancaditalia.oss.sdmx.util.Configuration;
+
+public class ResultSizeGuardTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static PortableTimeSeries<Double> series(int n)
+	{
+		List<DoubleObservation> obs = new ArrayList<>();
+		for (int i = 0; i < n; i++)
+		{
+			Map<String, String> attributes = new HashMap<>();
+			attributes.put("OBS_STATUS", i % 2 == 0 ? "A" : "E");
+			if (i == 3)
+				attributes.put("OBS_CONF", "Fà");
+			obs.add(new DoubleObservation(String.format("2000-%02d", i + 1), i == 5 ? Double.NaN : i * 1.5, attributes));
+		}
+		return new PortableTimeSeries<>(null, Collections.<String, Entry<String, String>>emptyMap(), Collections.<String, String>emptyMap(), obs);
+	}
+
+	@Test
+	public void testSpill() throws Exception
+	{
+		List<PortableTimeSeries<Double>> result = new ArrayList<>();
+		try (ResultSizeGuard guard = new ResultSizeGuard(10000, 100, folder.getRoot()))
+		{
+			for (int i = 0; i < 20; i++)
+			{
+				PortableTimeSeries<Double> ts = series(12);
+				result.add(ts);
+				guard.completed(ts);
+			}
+			// 512 + 12 * 100 bytes per series: the budget is exceeded by the sixth series
+			Assert.assertEquals(20, guard.getSpilledCount());
+		}
+
+		PortableTimeSeries<Double> expected = series(12);
+		for (PortableTimeSeries<Double> ts : result)
+		{
+			Assert.assertFalse(ts.isObservationStoreInMemory());
+			Assert.assertEquals(expected.size(), ts.size());
+			for (int i = 0; i < expected.size(); i++)
+			{
+				Assert.assertEquals(expected.get(i).getTimeslot(), ts.get(i).getTimeslot());
+				Assert.assertEquals(expected.get(i).getValueAsDouble(), ts.get(i).getValueAsDouble(), 0);
+				Assert.assertEquals(expected.get(i).getAttributes(), ts.get(i).getAttributes());
+			}
+		}
+
+		// spilled series are copied on write and serialized as ordinary series
+		PortableTimeSeries<Double> ts = result.get(0);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes))
+		{
+			out.writeObject(ts);
+		}
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())))
+		{
+			@SuppressWarnings("unchecked")
+			PortableTimeSeries<Double> copy = (PortableTimeSeries<Double>) in.readObject();
+			Assert.assertTrue(copy.isObservationStoreInMemory());
+			Assert.assertEquals("2000-12", copy.get(11).getTimeslot());
+		}
+
+		ts.reverse();
+		Assert.assertTrue(ts.isObservationStoreInMemory());
+		Assert.assertEquals("2000-12", ts.get(0).getTimeslot());
+	}
+
+	@Test
+	public void testReadOnlyViews() throws Exception
+	{
+		try (ResultSizeGuard guard = new ResultSizeGuard(1, 100, folder.getRoot()))
+		{
+			PortableTimeSeries<Double> ts = series(12);
+			guard.completed(ts);
+			Assert.assertFalse(ts.isObservationStoreInMemory());
+
+			// reading and sorting an already sorted series keep the spilled store
+			ListIterator<BaseObservation<? extends Double>> iterator = ts.listIterator(12);
+			Assert.assertEquals("2000-12", iterator.previous().getTimeslot());
+			List<BaseObservation<? extends Double>> view = ts.subList(2, 5);
+			Assert.assertEquals(3, view.size());
+			Assert.assertEquals("2000-03", view.get(0).getTimeslot());
+			Collections.sort(ts);
+			Assert.assertFalse(ts.isObservationStoreInMemory());
+
+			// the first change copies the observations, and views see it
+			view.remove(0);
+			Assert.assertTrue(ts.isObservationStoreInMemory());
+			Assert.assertEquals(11, ts.size());
+			Assert.assertEquals("2000-04", ts.get(2).getTimeslot());
+			Assert.assertEquals("2000-04", view.get(0).getTimeslot());
+
+			PortableTimeSeries<Double> reversed = series(12);
+			Collections.reverse(reversed);
+			guard.completed(reversed);
+			Assert.assertFalse(reversed.isObservationStoreInMemory());
+			Collections.sort(reversed);
+			Assert.assertTrue(reversed.isObservationStoreInMemory());
+			Assert.assertEquals("2000-01", reversed.get(0).getTimeslot());
+		}
+	}
+
+	@Test
+	public void testUnderBudget() throws Exception
+	{
+		try (ResultSizeGuard guard = new ResultSizeGuard(1000000, 100, folder.getRoot()))
+		{
+			PortableTimeSeries<Double> ts = series(12);
+			guard.completed(ts);
+			Assert.assertEquals(0, guard.getSpilledCount());
+			Assert.assertTrue(ts.isObservationStoreInMemory());
+		}
+	}
+
+	@Test
+	public void testStaleFiles() throws Exception
+	{
+		File dir = folder.newFolder();
+		File stale = new File(dir, "sdmx123.spill");
+		Assert.assertTrue(stale.createNewFile());
+		File other = new File(dir, "other.spill");
+		Assert.assertTrue(other.createNewFile());
+		try (ResultSizeGuard guard = new ResultSizeGuard(1, 100, dir))
+		{
+			guard.completed(series(12));
+			Assert.assertEquals(1, guard.getSpilledCount());
+			Assert.assertFalse(stale.exists());
+			Assert.assertTrue(other.exists());
+		}
+	}
+
+	@Test
+	public void testQuery() throws Exception
+	{
+		long budget = Configuration.getResultMaxMemory();
+		try (MockSdmxServer server = new MockSdmxServer(new SdmxGenerator().setSeries(50).setObservations(40).setDimensions(2), 1).start())
+		{
+			String provider = "SPILL_" + server.getPort();
+			SdmxClientHandler.addProvider(provider, server.getEndpoint(MockSdmxServer.V21).toString(), false, false, false, "Mock", SDMXClientFactory.SDMX_V2);
+			SdmxClientHandler.getFlows(provider, null);
+			List<PortableTimeSeries<Double>> inMemory = SdmxClientHandler.getTimeSeries(provider, "FLOW0/..", null, null);
+
+			Configuration.setResultMaxMemory(1);
+			String spilledProvider = "SPILLED_" + server.getPort();
+			SdmxClientHandler.addProvider(spilledProvider, server.getEndpoint(MockSdmxServer.V21).toString(), false, false, false, "Mock", SDMXClientFactory.SDMX_V2);
+			SdmxClientHandler.getFlows(spilledProvider, null);
+			List<PortableTimeSeries<Double>> spilled = SdmxClientHandler.getTimeSeries(spilledProvider, "FLOW0/..", null, null);
+
+			Assert.assertEquals(inMemory.size(), spilled.size());
+			for (int i = 0; i < inMemory.size(); i++)
+			{
+				Assert.assertEquals(inMemory.get(i).getName(), spilled.get(i).getName());
+				Assert.assertEquals(inMemory.get(i).size(), spilled.get(i).size());
+				Assert.assertTrue(inMemory.get(i).isObservationStoreInMemory());
+				Assert.assertFalse(spilled.get(i).isObservationStoreInMemory());
+				for (int j = 0; j < inMemory.get(i).size(); j++)
+				{
+					BaseObservation<? extends Double> expected = inMemory.get(i).get(j);
+					BaseObservation<? extends Double> actual = spilled.get(i).get(j);
+					Assert.assertEquals(expected.getTimeslot(), actual.getTimeslot());
+					Assert.assertEquals(expected.getValueAsDouble(), actual.getValueAsDouble(), 0);
+					Assert.assertEquals(expected.getAttributes(), actual.getAttributes());
+				}
+			}
+		}
+		finally
+		{
+			Configuration.setResultMaxMemory(budget);
+		}
+	}
+}
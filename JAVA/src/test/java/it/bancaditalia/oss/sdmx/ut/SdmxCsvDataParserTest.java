@@ -0,0 +1,165 @@
+/*
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * http://ec.europa.eu/idabc/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package it.bancaditalia.oss.sdmx.ut;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Locale.LanguageRange;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import it.bancaditalia.oss.sdmx.api.BaseObservation;
+import it.bancaditalia.oss.sdmx.api.DataFlowStructure;
+import it.bancaditalia.oss.sdmx.api.Dataflow;
+import it.bancaditalia.oss.sdmx.api.Dimension;
+import it.bancaditalia.oss.sdmx.api.PortableTimeSeries;
+import it.bancaditalia.oss.sdmx.api.SdmxAttribute;
+import it.bancaditalia.oss.sdmx.client.SDMXClientFactory;
+import it.bancaditalia.oss.sdmx.client.SdmxClientHandler;
+import it.bancaditalia.oss.sdmx.mock.MockSdmxServer;
+import it.bancaditalia.oss.sdmx.mock.SdmxGenerator;
+import it.bancaditalia.oss.sdmx.parser.v21.SdmxCsvDataParser;
+import it.bancaditalia.oss.sdmx.util.Configuration;
+import it.bancaditalia.oss.sdmx.util.LocalizedText;
+
+public class SdmxCsvDataParserTest
+{
+	private static List<PortableTimeSeries<Double>> query(MockSdmxServer server, String provider, String format) throws Exception
+	{
+		SdmxClientHandler.addProvider(provider, server.getEndpoint(MockSdmxServer.V21).toString(), false, false, false, "Mock", SDMXClientFactory.SDMX_V2);
+		SDMXClientFactory.getProviders().get(provider).setDataFormat(format);
+		SdmxClientHandler.getFlows(provider, null);
+		return SdmxClientHandler.getTimeSeries(provider, "FLOW0/..", null, null);
+	}
+
+	private static void assertSameSeries(List<PortableTimeSeries<Double>> expected, List<PortableTimeSeries<Double>> actual)
+	{
+		Assert.assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++)
+		{
+			Assert.assertEquals(expected.get(i).getName(), actual.get(i).getName());
+			Assert.assertEquals(expected.get(i).getAttributesMap(), actual.get(i).getAttributesMap());
+			Assert.assertEquals(expected.get(i).size(), actual.get(i).size());
+			for (int j = 0; j < expected.get(i).size(); j++)
+			{
+				BaseObservation<? extends Double> expectedObs = expected.get(i).get(j);
+				BaseObservation<? extends Double> actualObs = actual.get(i).get(j);
+				Assert.assertEquals(expectedObs.getTimeslot(), actualObs.getTimeslot());
+				Assert.assertEquals(expectedObs.getValueAsDouble(), actualObs.getValueAsDouble(), 0);
+				Assert.assertEquals(expectedObs.getAttributes(), actualObs.getAttributes());
+			}
+		}
+	}
+
+	@Test
+	public void testCsv() throws Exception
+	{
+		try (MockSdmxServer server = new MockSdmxServer(new SdmxGenerator().setSeries(20).setObservations(30).setDimensions(3), 1).start())
+		{
+			server.setCsv(true);
+			List<PortableTimeSeries<Double>> xml = query(server, "CSVXML_" + server.getPort(), Configuration.DATA_FORMAT_XML);
+			List<PortableTimeSeries<Double>> csv = query(server, "CSV_" + server.getPort(), Configuration.DATA_FORMAT_CSV);
+
+			assertSameSeries(xml, csv);
+			Assert.assertNotNull(csv.get(0).getAttribute("UNIT"));
+			Assert.assertTrue(csv.get(0).getObsLevelAttributesNames().contains("OBS_STATUS"));
+			Assert.assertFalse(csv.get(0).getObsLevelAttributesNames().contains("UNIT"));
+		}
+	}
+
+	@Test
+	public void testSpill() throws Exception
+	{
+		try (MockSdmxServer server = new MockSdmxServer(new SdmxGenerator().setSeries(50).setObservations(40).setDimensions(3), 1).start())
+		{
+			server.setCsv(true);
+			List<PortableTimeSeries<Double>> xml = query(server, "SPILLXML_" + server.getPort(), Configuration.DATA_FORMAT_XML);
+			long budget = Configuration.getResultMaxMemory();
+			Configuration.setResultMaxMemory(10000);
+			try
+			{
+				List<PortableTimeSeries<Double>> csv = query(server, "SPILLCSV_" + server.getPort(), Configuration.DATA_FORMAT_CSV);
+				assertSameSeries(xml, csv);
+				for (PortableTimeSeries<Double> ts : csv)
+					Assert.assertFalse(ts.getName(), ts.isObservationStoreInMemory());
+			}
+			finally
+			{
+				Configuration.setResultMaxMemory(budget);
+			}
+		}
+	}
+
+	@Test
+	public void testFallback() throws Exception
+	{
+		try (MockSdmxServer server = new MockSdmxServer(new SdmxGenerator().setSeries(5).setObservations(10).setDimensions(2), 1).start())
+		{
+			List<PortableTimeSeries<Double>> xml = query(server, "NOCSVXML_" + server.getPort(), Configuration.DATA_FORMAT_XML);
+			// the server refuses SDMX-CSV with a 406: the query is repeated in XML
+			List<PortableTimeSeries<Double>> fallback = query(server, "NOCSV_" + server.getPort(), Configuration.DATA_FORMAT_CSV);
+
+			assertSameSeries(xml, fallback);
+		}
+	}
+
+	@Test
+	public void testNonContiguousRows() throws Exception
+	{
+		DataFlowStructure dsd = new DataFlowStructure("ECB_TEST", "ECB", "1.0");
+		dsd.setDimension(new Dimension("FREQ", 1));
+		dsd.setDimension(new Dimension("REF_AREA", 2));
+		dsd.setAttribute(new SdmxAttribute("OBS_STATUS"));
+		Dataflow dataflow = new Dataflow("TEST", "ECB", "1.0", new LocalizedText("Test"));
+		String csv = "DATAFLOW,FREQ,REF_AREA,TIME_PERIOD,OBS_VALUE,OBS_STATUS\n"
+				+ "ECB:TEST(1.0),A,IT,2000,1.0,A\n"
+				+ "ECB:TEST(1.0),A,FR,2000,10.0,A\n"
+				+ "ECB:TEST(1.0),A,IT,2001,2.0,A\n"
+				+ "ECB:TEST(1.0),A,FR,2001,20.0,E\n"
+				+ "ECB:TEST(1.0),A,IT,2002,3.0,A\n";
+
+		long budget = Configuration.getResultMaxMemory();
+		Configuration.setResultMaxMemory(1);
+		try
+		{
+			List<PortableTimeSeries<Double>> result = new SdmxCsvDataParser(dsd, dataflow, null)
+					.parse(new BufferedReader(new StringReader(csv)), LanguageRange.parse("en"));
+
+			// the late rows are merged into the series already completed and spilled
+			Assert.assertEquals(2, result.size());
+			PortableTimeSeries<Double> it = result.get(0);
+			Assert.assertEquals("IT", it.getDimension("REF_AREA"));
+			Assert.assertFalse(it.isObservationStoreInMemory());
+			Assert.assertEquals(3, it.size());
+			Assert.assertEquals("2002", it.get(2).getTimeslot());
+			Assert.assertEquals(3.0, it.get(2).getValueAsDouble(), 0);
+			Assert.assertEquals("A", it.getAttribute("OBS_STATUS"));
+
+			PortableTimeSeries<Double> fr = result.get(1);
+			Assert.assertEquals(2, fr.size());
+			Assert.assertFalse(fr.isObservationStoreInMemory());
+			// moved back to the observations when a late row has another value
+			Assert.assertNull(fr.getAttribute("OBS_STATUS"));
+			Assert.assertEquals("A", fr.get(0).getAttributeValue("OBS_STATUS"));
+			Assert.assertEquals("E", fr.get(1).getAttributeValue("OBS_STATUS"));
+		}
+		finally
+		{
+			Configuration.setResultMaxMemory(budget);
+		}
+	}
+}
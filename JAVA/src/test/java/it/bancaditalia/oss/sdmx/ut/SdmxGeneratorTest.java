@@ -0,0 +1,143 @@
+/*
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * http://ec.europa.eu/idabc/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package it.bancaditalia.oss.sdmx.ut;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale.LanguageRange;
+import java.util.Set;
+
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import it.bancaditalia.oss.sdmx.api.BaseObservation;
+import it.bancaditalia.oss.sdmx.api.Codelist;
+import it.bancaditalia.oss.sdmx.api.DataFlowStructure;
+import it.bancaditalia.oss.sdmx.api.Dataflow;
+import it.bancaditalia.oss.sdmx.api.PortableTimeSeries;
+import it.bancaditalia.oss.sdmx.mock.SdmxGenerator;
+import it.bancaditalia.oss.sdmx.parser.v21.CodelistParser;
+import it.bancaditalia.oss.sdmx.parser.v21.CompactDataParser;
+import it.bancaditalia.oss.sdmx.parser.v21.DataParsingResult;
+import it.bancaditalia.oss.sdmx.parser.v21.DataStructureParser;
+import it.bancaditalia.oss.sdmx.parser.v21.GenericDataParser;
+import it.bancaditalia.oss.sdmx.util.LocalizedText;
+
+public class SdmxGeneratorTest
+{
+	private static final List<LanguageRange>	LANGUAGES	= LanguageRange.parse("en");
+
+	private interface Message
+	{
+		public void write(ByteArrayOutputStream out) throws Exception;
+	}
+
+	private static XMLEventReader read(Message message) throws Exception
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		message.write(out);
+		return XMLInputFactory.newFactory().createXMLEventReader(
+				new InputStreamReader(new ByteArrayInputStream(out.toByteArray()), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testStructure() throws Exception
+	{
+		SdmxGenerator generator = new SdmxGenerator().setSeries(30).setDimensions(3).setAttributes(3).setLanguages(2);
+		DataFlowStructure dsd = new DataStructureParser().parse(read(generator::writeDataStructure), LANGUAGES).get(0);
+
+		Assert.assertEquals(generator.getStructureId(), dsd.getId());
+		Assert.assertEquals(3, dsd.getDimensions().size());
+		Assert.assertEquals("DIM2", dsd.getDimensions().get(1).getId());
+		Assert.assertEquals(4, generator.getCodesPerDimension());
+		Assert.assertEquals(4, dsd.getDimension("DIM1").getCodeList().size());
+		Assert.assertEquals(SdmxGenerator.TIME_DIMENSION, dsd.getTimeDimension());
+		Assert.assertEquals(SdmxGenerator.MEASURE, dsd.getMeasure());
+		Assert.assertEquals(4, dsd.getAttributes().size());
+		Assert.assertNotNull(dsd.getAttribute(SdmxGenerator.OBS_STATUS).getCodeList());
+	}
+
+	@Test
+	public void testData() throws Exception
+	{
+		SdmxGenerator generator = new SdmxGenerator().setSeries(50).setObservations(24).setAttributes(2).setMissingRatio(0.25);
+		DataFlowStructure dsd = new DataStructureParser().parse(read(generator::writeDataStructure), LANGUAGES).get(0);
+		Dataflow dataflow = new Dataflow("SYNTH", generator.getAgency(), "1.0", new LocalizedText("Synthetic"));
+
+		DataParsingResult specific = new CompactDataParser(dsd, dataflow, true).parse(read(generator::writeStructureSpecificData), LANGUAGES);
+		DataParsingResult generic = new GenericDataParser(dsd, dataflow, true).parse(read(generator::writeGenericData), LANGUAGES);
+
+		Assert.assertEquals(50, specific.size());
+		Assert.assertEquals(50, generic.size());
+		Set<String> names = new HashSet<>();
+		int observations = 0, missing = 0;
+		for (int s = 0; s < specific.size(); s++)
+		{
+			PortableTimeSeries<Double> ts = specific.get(s);
+			Assert.assertTrue("Duplicate key " + ts.getName(), names.add(ts.getName()));
+			Assert.assertEquals(ts.getName(), generic.get(s).getName());
+			Assert.assertEquals(24, ts.size());
+			Assert.assertEquals(24, generic.get(s).size());
+			for (int o = 0; o < ts.size(); o++)
+			{
+				BaseObservation<? extends Double> obs = ts.get(o);
+				Assert.assertEquals(obs.getTimeslot(), generic.get(s).get(o).getTimeslot());
+				Assert.assertEquals(obs.getValueAsDouble(), generic.get(s).get(o).getValueAsDouble(), 0);
+				Assert.assertEquals("Value 1", obs.getAttributeValue("ATTR1"));
+				observations++;
+				if (Double.isNaN(obs.getValueAsDouble()))
+					missing++;
+			}
+		}
+		Assert.assertEquals(generator.getObservationCount(), observations);
+		Assert.assertTrue("Missing values: " + missing, missing > observations / 8 && missing < observations / 2);
+	}
+
+	@Test
+	public void testRevisions() throws Exception
+	{
+		SdmxGenerator generator = new SdmxGenerator().setSeries(2).setObservations(3);
+		DataFlowStructure dsd = new DataStructureParser().parse(read(generator::writeDataStructure), LANGUAGES).get(0);
+		Dataflow dataflow = new Dataflow("SYNTH", generator.getAgency(), "1.0", new LocalizedText("Synthetic"));
+
+		DataParsingResult result = new CompactDataParser(dsd, dataflow, true).parse(read(out -> generator.writeRevisions(out, 3)), LANGUAGES);
+
+		Assert.assertEquals(2, result.size());
+		BaseObservation<? extends Double> obs = result.get(0).get(0);
+		Assert.assertEquals("Information", obs.getAttributeValue("action"));
+		Assert.assertEquals("2000-01-01T00:00:00", obs.getAttributeValue("validFromDate"));
+	}
+
+	@Test
+	public void testCodelistHierarchy() throws Exception
+	{
+		SdmxGenerator generator = new SdmxGenerator().setHierarchy(10).setLanguages(3);
+		Codelist codelist = new CodelistParser().parse(read(out -> generator.writeCodelist(out, "CL_TEST", 200)), LanguageRange.parse("it"));
+
+		Assert.assertEquals(200, codelist.size());
+		Assert.assertNull(codelist.getParent("C0"));
+		Assert.assertEquals("C0", codelist.getParent("C10"));
+		Assert.assertEquals("C1", codelist.getParent("C11"));
+		Assert.assertEquals("C19", codelist.getParent("C199"));
+		Assert.assertEquals("Code 5 of CL_TEST (it)", codelist.get("C5"));
+	}
+}
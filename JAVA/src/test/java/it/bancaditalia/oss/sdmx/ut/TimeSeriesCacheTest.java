@@ -0,0 +1,182 @@
+/*
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * http://ec.europa.eu/idabc/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package it.bancaditalia.oss.sdmx.ut;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.text.SimpleDateFormat;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TimeZone;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import it.bancaditalia.oss.sdmx.api.Dataflow;
+import it.bancaditalia.oss.sdmx.api.DoubleObservation;
+import it.bancaditalia.oss.sdmx.api.PortableTimeSeries;
+import it.bancaditalia.oss.sdmx.client.ProviderMetrics;
+import it.bancaditalia.oss.sdmx.client.TimeSeriesCache;
+import it.bancaditalia.oss.sdmx.util.Configuration;
+import it.bancaditalia.oss.sdmx.util.LocalizedText;
+
+public class TimeSeriesCacheTest
+{
+	@Rule
+	public TemporaryFolder		folder		= new TemporaryFolder();
+
+	private final Dataflow		dataflow	= new Dataflow("FLOW", "TEST", "1.0", new LocalizedText("Test flow"));
+	private final List<String>	requests	= new ArrayList<>();
+
+	@Before
+	public void setUp()
+	{
+		Configuration.setTimeSeriesCacheDir(folder.getRoot().getAbsolutePath());
+		TimeSeriesCache.getInstance().clear();
+	}
+
+	@After
+	public void tearDown()
+	{
+		TimeSeriesCache.getInstance().clear();
+		Configuration.setTimeSeriesCacheDir(null);
+	}
+
+	private static DoubleObservation obs(String timeslot, double value, String action)
+	{
+		Map<String, String> attributes = new HashMap<>();
+		if (action != null)
+			attributes.put("action", action);
+		return new DoubleObservation(timeslot, value, attributes);
+	}
+
+	private static PortableTimeSeries<Double> series(String code, DoubleObservation... obs)
+	{
+		Map<String, Entry<String, String>> dimensions = new LinkedHashMap<>();
+		dimensions.put("FREQ", new SimpleEntry<>("A", null));
+		dimensions.put("REF_AREA", new SimpleEntry<>(code, null));
+		return new PortableTimeSeries<>(null, dimensions, Collections.<String, String>emptyMap(), Arrays.asList(obs));
+	}
+
+	private List<PortableTimeSeries<Double>> query(List<PortableTimeSeries<Double>> response) throws Exception
+	{
+		return TimeSeriesCache.getInstance().getTimeSeries("TEST", dataflow, null, "A.IT+FR", null, null, null, updatedAfter -> {
+			requests.add(updatedAfter);
+			return response;
+		});
+	}
+
+	private static List<Double> values(PortableTimeSeries<Double> ts)
+	{
+		List<Double> result = new ArrayList<>();
+		for (int i = 0; i < ts.size(); i++)
+			result.add(ts.get(i).getValueAsDouble());
+		return result;
+	}
+
+	@Test
+	public void testMerge() throws Exception
+	{
+		ProviderMetrics.get("TEST").reset();
+		query(Arrays.asList(series("IT", obs("2000", 1, null), obs("2001", 2, null), obs("2002", 3, null))));
+		Assert.assertNull(requests.get(0));
+
+		long before = System.currentTimeMillis();
+		List<PortableTimeSeries<Double>> result = query(Arrays.asList(
+				series("IT", obs("2001", 20, null), obs("2002", 0, "Delete"), obs("2003", 4, null)),
+				series("FR", obs("2000", 5, null))));
+
+		// revised, deleted and appended observations, and a new series
+		Assert.assertEquals(2, result.size());
+		Assert.assertEquals("A.IT", result.get(0).getName());
+		Assert.assertEquals(Arrays.asList("2000", "2001", "2003"), result.get(0).getTimeSlots());
+		Assert.assertEquals(Arrays.asList(1.0, 20.0, 4.0), values(result.get(0)));
+		Assert.assertEquals("A.FR", result.get(1).getName());
+
+		// the changes are asked from before the first call, less the safety margin
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+		long updatedAfter = format.parse(requests.get(1)).getTime();
+		Assert.assertTrue(updatedAfter <= before - Configuration.getTimeSeriesCacheSyncMargin() * 1000);
+
+		// the copies handed out can be modified without affecting the cache
+		result.get(0).reverse();
+		result.get(0).clear();
+		result = query(Collections.<PortableTimeSeries<Double>>emptyList());
+		Assert.assertEquals(Arrays.asList(1.0, 20.0, 4.0), values(result.get(0)));
+
+		// one full download, then two deltas
+		Assert.assertEquals(Long.valueOf(2), ProviderMetrics.get("TEST").getCacheHits().get(ProviderMetrics.TIMESERIES_CACHE));
+		Assert.assertEquals(Long.valueOf(1), ProviderMetrics.get("TEST").getCacheMisses().get(ProviderMetrics.TIMESERIES_CACHE));
+	}
+
+	@Test
+	public void testPersistence() throws Exception
+	{
+		query(Arrays.asList(series("IT", obs("2000", 1, null), obs("2001", 2, null))));
+		TimeSeriesCache.getInstance().clearMemory();
+
+		List<PortableTimeSeries<Double>> result = query(Arrays.asList(series("IT", obs("2001", 0, "Delete"))));
+		Assert.assertNotNull("Delta query expected after reloading the cache file", requests.get(1));
+		Assert.assertEquals(1, result.size());
+		Assert.assertEquals(Arrays.asList("2000"), result.get(0).getTimeSlots());
+		Assert.assertEquals(Arrays.asList(1.0), values(result.get(0)));
+	}
+
+	@Test
+	public void testAppend() throws Exception
+	{
+		query(Arrays.asList(series("IT", obs("2000", 1, null), obs("2001", 2, null)), series("FR", obs("2000", 3, null))));
+		File[] files = folder.getRoot().listFiles((d, name) -> name.endsWith(".tsc"));
+		Assert.assertEquals(1, files.length);
+		long length = files[0].length();
+
+		// only the changed series is appended
+		query(Arrays.asList(series("FR", obs("2001", 4, null))));
+		Assert.assertTrue(files[0].length() > length);
+		Assert.assertTrue(files[0].length() < 2 * length);
+
+		// a record cut by a crash is ignored
+		try (DataOutputStream out = new DataOutputStream(new FileOutputStream(files[0], true)))
+		{
+			out.writeInt(1000);
+			out.writeUTF("2100-01-01T00:00:00Z");
+		}
+		TimeSeriesCache.getInstance().clearMemory();
+		List<PortableTimeSeries<Double>> result = query(Collections.<PortableTimeSeries<Double>>emptyList());
+		Assert.assertNotNull("Delta query expected after reloading the cache file", requests.get(2));
+		Assert.assertEquals(2, result.size());
+		Assert.assertEquals(Arrays.asList(1.0, 2.0), values(result.get(0)));
+		Assert.assertEquals(Arrays.asList(3.0, 4.0), values(result.get(1)));
+
+		// the file has been rewritten without the incomplete record
+		TimeSeriesCache.getInstance().clearMemory();
+		result = query(Collections.<PortableTimeSeries<Double>>emptyList());
+		Assert.assertEquals(Arrays.asList(3.0, 4.0), values(result.get(1)));
+		Assert.assertFalse(new File(files[0].getPath() + ".tmp").exists());
+	}
+}